@@ -35,6 +35,31 @@ import java.util.Map;
  *   <dd><code>cache.initial.capacity</code> - 患者初始化大小1000个；cache initial capacity (int) [default: 1000]</dd>
  *   <dd><code>cache.load.factor</code> - 缓存加载因子0.75； cache load factor (double) [default: 0.75]</dd>
  *   <dd><code>compression.enabled</code> - 压缩允许默认关闭，已经进行自定义的序列化；enable compression (boolean) [default: false]</dd>
+ *   <dd><code>memory.load.enabled</code> - load the whole store into a direct buffer instead of mapping it (boolean) [default: false]</dd>
+ *   <dd><code>ordinal.enabled</code> - assign a dense ordinal to each key when writing (boolean) [default: false]</dd>
+ *   <dd><code>key.log.enabled</code> - write a key log so stores are iterated in data order (boolean) [default: false]</dd>
+ *   <dd><code>zone.map.enabled</code> - write the keys in numeric value order with the min and max value of each block (boolean) [default: false]</dd>
+ *   <dd><code>zone.map.block.size</code> - number of values of a zone map block (int) [default: 1024]</dd>
+ *   <dd><code>intern.enabled</code> - share a single instance of identical string values read (boolean) [default: false]</dd>
+ *   <dd><code>intern.max.entries</code> - maximum number of interned values (int) [default: 100000]</dd>
+ *   <dd><code>access.profile.enabled</code> - record the access frequency of the keys read (boolean) [default: false]</dd>
+ *   <dd><code>access.profile.max.keys</code> - maximum number of keys recorded in the access profile (int) [default: 1000000]</dd>
+ *   <dd><code>access.profile.file</code> - access profile used to place the values of hot keys first when writing (string)</dd>
+ *   <dd><code>access.profile.hot.ratio</code> - ratio of the profiled accesses covered by the hot keys (double) [default: 1.0]</dd>
+ *   <dd><code>dense.keys.enabled</code> - address int or long keys covering a dense range directly (boolean) [default: false]</dd>
+ *   <dd><code>dense.keys.min.density</code> - min ratio of keys in their range for dense addressing (double) [default: 0.5]</dd>
+ *   <dd><code>vector.dimension</code> - dimension of the vectors of a vector store, 0 if disabled (int) [default: 0]</dd>
+ *   <dd><code>vector.quantization</code> - quantization of the vectors, none, int8 or fp16 (string) [default: none]</dd>
+ *   <dd><code>sparse.vector.quantization</code> - quantization of the sparse vector values, none, int8 or fp16 (string) [default: none]</dd>
+ *   <dd><code>sorted.keys.enabled</code> - store the keys in order for range scans, numbers, strings and byte arrays only (boolean) [default: false]</dd>
+ *   <dd><code>fst.index.enabled</code> - store the string keys in a finite-state transducer for prefix and fuzzy queries (boolean) [default: false]</dd>
+ *   <dd><code>multimap.enabled</code> - allow keys to be put several times, the values of a key are stored together (boolean) [default: false]</dd>
+ *   <dd><code>inverted.index.enabled</code> - store the keys of each value for reverse lookups (boolean) [default: false]</dd>
+ *   <dd><code>inverted.index.extractor</code> - class name of the <code>TermExtractor</code> indexing terms of the values instead of whole values (string)</dd>
+ *   <dd><code>aligned.arrays.enabled</code> - store int, long and double array values as aligned little-endian arrays (boolean) [default: false]</dd>
+ *   <dd><code>inline.max.size</code> - maximum slot space for values stored in the index next to their key, 0 to disable (int) [default: 0]</dd>
+ *   <dd><code>async.threads</code> - threads used by asynchronous lookups, 0 uses virtual threads when available (int) [default: 0]</dd>
+ *   <dd><code>shard.threads</code> - threads building and opening the shards of a sharded store, 0 uses the available processors (int) [default: 0]</dd>
  * </dl>
  * <p>
  *     默认属性加载优先，如下：-Dpaldb.mmap.data.enabled=false;
@@ -60,6 +85,56 @@ public class Configuration implements Serializable {
   public final static String CACHE_LOAD_FACTOR = "cache.load.factor";
   // Enable compression
   public final static String COMPRESSION_ENABLED = "compression.enabled";
+  // Load the store into memory
+  public final static String MEMORY_LOAD_ENABLED = "memory.load.enabled";
+  // Key ordinals enabled
+  public final static String ORDINAL_ENABLED = "ordinal.enabled";
+  // Key log enabled
+  public final static String KEY_LOG_ENABLED = "key.log.enabled";
+  // Zone maps enabled
+  public final static String ZONE_MAP_ENABLED = "zone.map.enabled";
+  // Zone map block size (in values)
+  public final static String ZONE_MAP_BLOCK_SIZE = "zone.map.block.size";
+  // Value interning enabled
+  public final static String INTERN_ENABLED = "intern.enabled";
+  // Maximum number of interned values
+  public final static String INTERN_MAX_ENTRIES = "intern.max.entries";
+  // Access profile recording enabled
+  public final static String ACCESS_PROFILE_ENABLED = "access.profile.enabled";
+  // Maximum number of keys recorded in the access profile
+  public final static String ACCESS_PROFILE_MAX_KEYS = "access.profile.max.keys";
+  // Access profile file used by the writer
+  public final static String ACCESS_PROFILE_FILE = "access.profile.file";
+  // Ratio of the profiled accesses covered by the hot keys
+  public final static String ACCESS_PROFILE_HOT_RATIO = "access.profile.hot.ratio";
+  // Dense int or long keys addressed directly
+  public final static String DENSE_KEYS_ENABLED = "dense.keys.enabled";
+  // Min ratio of the keys in their range for dense addressing
+  public final static String DENSE_KEYS_MIN_DENSITY = "dense.keys.min.density";
+  // Dimension of the vectors of a vector store
+  public final static String VECTOR_DIMENSION = "vector.dimension";
+  // Quantization of the vectors of a vector store
+  public final static String VECTOR_QUANTIZATION = "vector.quantization";
+  // Quantization of the sparse vector values
+  public final static String SPARSE_VECTOR_QUANTIZATION = "sparse.vector.quantization";
+  // Keys stored in order for range scans
+  public final static String SORTED_KEYS_ENABLED = "sorted.keys.enabled";
+  // String keys stored in a finite-state transducer for prefix and fuzzy queries
+  public final static String FST_INDEX_ENABLED = "fst.index.enabled";
+  // Keys put several times with their values grouped
+  public final static String MULTIMAP_ENABLED = "multimap.enabled";
+  // Keys of each value stored for reverse lookups
+  public final static String INVERTED_INDEX_ENABLED = "inverted.index.enabled";
+  // Term extractor class of the inverted index
+  public final static String INVERTED_INDEX_EXTRACTOR = "inverted.index.extractor";
+  // Aligned little-endian int, long and double array values
+  public final static String ALIGNED_ARRAYS_ENABLED = "aligned.arrays.enabled";
+  // Maximum size of the values inlined in the index slots, with their size
+  public final static String INLINE_MAX_SIZE = "inline.max.size";
+  // Asynchronous lookup threads
+  public final static String ASYNC_THREADS = "async.threads";
+  // Sharded store build and open threads
+  public final static String SHARD_THREADS = "shard.threads";
 
   // Property map
   protected final Map<String, String> properties = new HashMap<String, String>();
@@ -83,6 +158,29 @@ public class Configuration implements Serializable {
     putWithSystemPropertyDefault(CACHE_INITIAL_CAPACITY, "1000");//缓存初始化尺寸
     putWithSystemPropertyDefault(CACHE_LOAD_FACTOR, "0.75");//缓存阀值
     putWithSystemPropertyDefault(COMPRESSION_ENABLED, "false");//压缩关，序列化进行了定制；使用的是snappy
+    putWithSystemPropertyDefault(MEMORY_LOAD_ENABLED, "false");
+    putWithSystemPropertyDefault(ORDINAL_ENABLED, "false");
+    putWithSystemPropertyDefault(KEY_LOG_ENABLED, "false");
+    putWithSystemPropertyDefault(ZONE_MAP_ENABLED, "false");
+    putWithSystemPropertyDefault(ZONE_MAP_BLOCK_SIZE, "1024");
+    putWithSystemPropertyDefault(INTERN_ENABLED, "false");
+    putWithSystemPropertyDefault(INTERN_MAX_ENTRIES, "100000");
+    putWithSystemPropertyDefault(ACCESS_PROFILE_ENABLED, "false");
+    putWithSystemPropertyDefault(ACCESS_PROFILE_MAX_KEYS, "1000000");
+    putWithSystemPropertyDefault(ACCESS_PROFILE_HOT_RATIO, "1.0");
+    putWithSystemPropertyDefault(INLINE_MAX_SIZE, "0");
+    putWithSystemPropertyDefault(VECTOR_DIMENSION, "0");
+    putWithSystemPropertyDefault(VECTOR_QUANTIZATION, "none");
+    putWithSystemPropertyDefault(SPARSE_VECTOR_QUANTIZATION, "none");
+    putWithSystemPropertyDefault(ALIGNED_ARRAYS_ENABLED, "false");
+    putWithSystemPropertyDefault(SORTED_KEYS_ENABLED, "false");
+    putWithSystemPropertyDefault(FST_INDEX_ENABLED, "false");
+    putWithSystemPropertyDefault(MULTIMAP_ENABLED, "false");
+    putWithSystemPropertyDefault(INVERTED_INDEX_ENABLED, "false");
+    putWithSystemPropertyDefault(DENSE_KEYS_ENABLED, "false");
+    putWithSystemPropertyDefault(DENSE_KEYS_MIN_DENSITY, "0.5");
+    putWithSystemPropertyDefault(ASYNC_THREADS, "0");
+    putWithSystemPropertyDefault(SHARD_THREADS, "0");
 
     //Default cache size: (Xmx - 100mo);
     long cacheMemory = Math.max(0, Runtime.getRuntime().maxMemory() - (100 * 1024 * 1024)); //默认缓存内存100M
@@ -0,0 +1,178 @@
+/*
+* Copyright 2015 LinkedIn Corp. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*/
+
+package com.linkedin.paldb.api;
+
+import java.util.Arrays;
+
+
+/**
+ * Scan filter evaluated on the serialized entries, before deserialization.
+ * <p>
+ * Filters are built with the static factories and combined with <code>and</code>:
+ * <pre>
+ * Filter filter = Filter.keyPrefix("user:").and(Filter.valueRange(10, 100));
+ * Stream&lt;Map.Entry&lt;String, Integer&gt;&gt; entries = reader.scan(filter);
+ * </pre>
+ * Value ranges only read the blocks of sorted values overlapping the range when the store has been written with
+ * <code>zone.map.enabled</code>.
+ */
+public final class Filter {
+
+  // Inclusive numeric value range
+  private final double minValue;
+  private final double maxValue;
+  // String or byte array key prefix, null if not set
+  private final Object keyPrefix;
+  // Value type, null if not set
+  private final Class<?> valueType;
+
+  private Filter(double minValue, double maxValue, Object keyPrefix, Class<?> valueType) {
+    this.minValue = minValue;
+    this.maxValue = maxValue;
+    this.keyPrefix = keyPrefix;
+    this.valueType = valueType;
+  }
+
+  /**
+   * Creates a filter matching numeric values in <code>[min, max]</code>, other values don't match.
+   *
+   * @param min minimum value, inclusive
+   * @param max maximum value, inclusive
+   * @return new filter
+   */
+  public static Filter valueRange(double min, double max) {
+    if (Double.isNaN(min) || Double.isNaN(max) || min > max) {
+      throw new IllegalArgumentException("Invalid range [" + min + ", " + max + "]");
+    }
+    return new Filter(min, max, null, null);
+  }
+
+  /**
+   * Creates a filter matching string keys starting with <code>prefix</code>.
+   *
+   * @param prefix key prefix
+   * @return new filter
+   */
+  public static Filter keyPrefix(String prefix) {
+    if (prefix == null) {
+      throw new NullPointerException("The prefix can't be null");
+    }
+    return new Filter(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, prefix, null);
+  }
+
+  /**
+   * Creates a filter matching byte array keys starting with <code>prefix</code>.
+   *
+   * @param prefix key prefix
+   * @return new filter
+   */
+  public static Filter keyPrefix(byte[] prefix) {
+    if (prefix == null) {
+      throw new NullPointerException("The prefix can't be null");
+    }
+    return new Filter(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, prefix.clone(), null);
+  }
+
+  /**
+   * Creates a filter matching values of the given type or of a subtype, among the types supported natively.
+   *
+   * @param type value type, for instance <code>String.class</code>, <code>Number.class</code> or
+   * <code>int[].class</code>
+   * @return new filter
+   */
+  public static Filter valueType(Class<?> type) {
+    if (type == null) {
+      throw new NullPointerException("The type can't be null");
+    }
+    return new Filter(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, null, type);
+  }
+
+  /**
+   * Combines this filter with <code>other</code>, entries have to match both.
+   *
+   * @param other other filter
+   * @return new filter
+   * @throws IllegalArgumentException if both filters have a different key prefix or value type
+   */
+  public Filter and(Filter other) {
+    Object prefix = keyPrefix;
+    if (other.keyPrefix != null) {
+      if (prefix != null && !samePrefix(prefix, other.keyPrefix)) {
+        throw new IllegalArgumentException("Filters with different key prefixes can't be combined");
+      }
+      prefix = other.keyPrefix;
+    }
+    Class<?> type = valueType;
+    if (other.valueType != null) {
+      if (type != null && !type.equals(other.valueType)) {
+        throw new IllegalArgumentException("Filters with different value types can't be combined");
+      }
+      type = other.valueType;
+    }
+    return new Filter(Math.max(minValue, other.minValue), Math.min(maxValue, other.maxValue), prefix, type);
+  }
+
+  /**
+   * Returns true if this filter has a value range.
+   *
+   * @return true if values are filtered by range
+   */
+  public boolean hasValueRange() {
+    return minValue != Double.NEGATIVE_INFINITY || maxValue != Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Returns the minimum value, inclusive.
+   *
+   * @return minimum value or negative infinity if not set
+   */
+  public double getMinValue() {
+    return minValue;
+  }
+
+  /**
+   * Returns the maximum value, inclusive.
+   *
+   * @return maximum value or positive infinity if not set
+   */
+  public double getMaxValue() {
+    return maxValue;
+  }
+
+  /**
+   * Returns the key prefix, a string or a byte array.
+   *
+   * @return key prefix or null if not set
+   */
+  public Object getKeyPrefix() {
+    return keyPrefix;
+  }
+
+  /**
+   * Returns the value type.
+   *
+   * @return value type or null if not set
+   */
+  public Class<?> getValueType() {
+    return valueType;
+  }
+
+  private static boolean samePrefix(Object a, Object b) {
+    if (a instanceof byte[] && b instanceof byte[]) {
+      return Arrays.equals((byte[]) a, (byte[]) b);
+    }
+    return a.equals(b);
+  }
+}
@@ -18,6 +18,8 @@ import com.linkedin.paldb.impl.StoreImpl;
 import java.io.File;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
 
 
 /**
@@ -67,6 +69,8 @@ public final class PalDB {
    * <p>
    * The reader will read the stream and write its content to a temporary file when this method is called. This is
    * specifically suited for stream coming from the JAR as a resource. The stream will be closed by this method.
+   * <p>
+   * When <code>Configuration.MEMORY_LOAD_ENABLED</code> is set the content is loaded in a direct buffer instead.
    *
    * @param stream an input stream on a PalDB store file
    * @param config configuration
@@ -76,6 +80,47 @@ public final class PalDB {
     return StoreImpl.createReader(stream, config);
   }
 
+  /**
+   * Creates a store reader from the specified <code>buffer</code>.
+   * <p>
+   * The store is read from the buffer's position to its limit, heap and direct buffers are supported. The buffer's
+   * content isn't copied and shouldn't be modified while the reader is in use.
+   *
+   * @param buffer a buffer holding a PalDB store
+   * @param config configuration
+   * @return a store reader
+   */
+  public static StoreReader createReader(ByteBuffer buffer, Configuration config) {
+    return StoreImpl.createReader(buffer, config);
+  }
+
+  /**
+   * Creates a store reader from the specified <code>bytes</code>.
+   * <p>
+   * The array isn't copied and shouldn't be modified while the reader is in use.
+   *
+   * @param bytes a PalDB store as a byte array
+   * @param config configuration
+   * @return a store reader
+   */
+  public static StoreReader createReader(byte[] bytes, Configuration config) {
+    return StoreImpl.createReader(ByteBuffer.wrap(bytes), config);
+  }
+
+  /**
+   * Creates a store reader from the specified <code>resource</code>.
+   * <p>
+   * Resources on the file system are memory mapped, other resources (e.g. inside a JAR) are loaded in a direct buffer
+   * without going through a temporary file.
+   *
+   * @param resource URL of a PalDB store, as returned by <code>Class.getResource()</code>
+   * @param config configuration
+   * @return a store reader
+   */
+  public static StoreReader createReader(URL resource, Configuration config) {
+    return StoreImpl.createReader(resource, config);
+  }
+
   /**
    * Creates a store writer with the specified <code>file</code> as destination with a default configuration.
    * <p>
@@ -115,6 +160,34 @@ public final class PalDB {
     return StoreImpl.createWriter(stream, config);
   }
 
+  /**
+   * Creates a sharded store writer with the specified <code>folder</code> as destination.
+   * <p>
+   * Keys are routed by hash to <code>shards</code> stores, built in parallel when the writer is closed. The folder
+   * holds the shard files and a manifest and is created if missing.
+   *
+   * @param folder location of the output folder
+   * @param shards number of shards
+   * @param config configuration
+   * @return a store writer
+   */
+  public static StoreWriter createShardedWriter(File folder, int shards, Configuration config) {
+    return StoreImpl.createShardedWriter(folder, shards, config);
+  }
+
+  /**
+   * Creates a sharded store reader from the specified <code>folder</code>.
+   * <p>
+   * The shards listed in the folder's manifest are opened in parallel.
+   *
+   * @param folder a sharded PalDB store folder
+   * @param config configuration
+   * @return a sharded store reader
+   */
+  public static ShardedStoreReader createShardedReader(File folder, Configuration config) {
+    return StoreImpl.createShardedReader(folder, config);
+  }
+
   /**
    * Creates new configuration with default values.
    *
@@ -0,0 +1,137 @@
+/*
+* Copyright 2015 LinkedIn Corp. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*/
+
+package com.linkedin.paldb.api;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+
+
+/**
+ * Interface to read data from a sharded PalDB store.
+ * <p>
+ * Users of this class should initialize it by using the <code>PalDB.createShardedReader()</code> method, the
+ * shards are opened in parallel. Lookups are routed to the shard of their key by hash and batch lookups are fanned
+ * out to the shards concurrently. Call the <code>close()</code> to liberate resources when done.
+ */
+public interface ShardedStoreReader {
+
+  /**
+   * Closes the shard readers and free resources.
+   * <p>
+   * A closed reader can't be reopened.
+   */
+  public void close();
+
+  /**
+   * Returns the reader's configuration.
+   *
+   * @return the store configuration
+   */
+  public Configuration getConfiguration();
+
+  /**
+   * Returns the number of shards.
+   *
+   * @return shard count
+   */
+  public int getShardCount();
+
+  /**
+   * Returns the reader of a shard, e.g. to iterate on its keys.
+   *
+   * @param shard shard index, from 0 to <code>getShardCount() - 1</code>
+   * @return shard reader
+   */
+  public StoreReader getShard(int shard);
+
+  /**
+   * Returns the reader of the shard holding <code>key</code>.
+   *
+   * @param key key to route
+   * @return shard reader
+   */
+  public StoreReader getShardFor(Object key);
+
+  /**
+   * Returns the number of keys in all the shards.
+   *
+   * @return key count
+   */
+  public long size();
+
+  /**
+   * Gets the value for <code>key</code> or null if not found.
+   *
+   * @param key key to fetch
+   * @param <K> return type
+   * @return value or null if not found
+   */
+  public <K> K get(Object key);
+
+  /**
+   * Gets the value for <code>key</code> or <code>defaultValue</code> if not found.
+   *
+   * @param key key to fetch
+   * @param defaultValue default value
+   * @param <K> return type
+   * @return value of <code>defaultValue</code> if not found
+   */
+  public <K> K get(Object key, K defaultValue);
+
+  /**
+   * Checks whether the store contains <code>key</code>.
+   *
+   * @param key key to check
+   * @return true if the key is in the store
+   */
+  public boolean contains(Object key);
+
+  /**
+   * Returns the values put with <code>key</code> in a multimap store, in the order they were put.
+   *
+   * @param key key to fetch
+   * @param <V> value type
+   * @return ordered stream of values, empty if not found
+   * @throws UnsupportedOperationException if the store has been written without multimap
+   */
+  public <V> Stream<V> getAll(Object key);
+
+  /**
+   * Asynchronously gets the values for <code>keys</code> on the executors of the shards.
+   * <p>
+   * Keys are grouped by shard and the lookups of all the shards are issued concurrently, the result map follows the
+   * order of <code>keys</code>, keys not found are omitted.
+   *
+   * @param keys keys to fetch
+   * @param <K> key type
+   * @param <V> value type
+   * @return future completed with the values found
+   */
+  public <K, V> CompletableFuture<Map<K, V>> getAllAsync(Collection<? extends K> keys);
+
+  /**
+   * Asynchronously gets the values for <code>keys</code> on the given executor.
+   *
+   * @param keys keys to fetch
+   * @param executor executor to run the lookups on
+   * @param <K> key type
+   * @param <V> value type
+   * @return future completed with the values found
+   */
+  public <K, V> CompletableFuture<Map<K, V>> getAllAsync(Collection<? extends K> keys, Executor executor);
+}
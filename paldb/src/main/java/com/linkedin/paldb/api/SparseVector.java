@@ -0,0 +1,145 @@
+/*
+* Copyright 2015 LinkedIn Corp. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*/
+
+package com.linkedin.paldb.api;
+
+import java.util.Arrays;
+
+
+/**
+ * Sparse vector value, holding the non-zero values and their indices.
+ * <p>
+ * Sparse vectors are stored natively with delta encoded indices followed by their values, quantized when the store
+ * is written with <code>sparse.vector.quantization</code>:
+ * <pre>
+ * writer.put("doc", new SparseVector(new int[]{3, 17, 42}, new float[]{0.5f, 1f, 2f}));
+ * float score = reader.dot("doc", weights);
+ * </pre>
+ * The reader scores and visits stored vectors in place with <code>dot</code> and <code>forEachNonZero</code>.
+ */
+public final class SparseVector {
+
+  private final int[] indices;
+  private final float[] values;
+
+  /**
+   * Constructor.
+   *
+   * @param indices indices of the non-zero values, in increasing order
+   * @param values non-zero values
+   * @throws IllegalArgumentException if the lengths differ or the indices are negative or not increasing
+   */
+  public SparseVector(int[] indices, float[] values) {
+    if (indices == null || values == null) {
+      throw new NullPointerException("The indices and values can't be null");
+    }
+    if (indices.length != values.length) {
+      throw new IllegalArgumentException(
+          "The number of indices is " + indices.length + " but the number of values is " + values.length);
+    }
+    for (int i = 0; i < indices.length; i++) {
+      if (indices[i] < 0 || (i > 0 && indices[i] <= indices[i - 1])) {
+        throw new IllegalArgumentException("The indices should be non-negative and increasing: " + indices[i]);
+      }
+    }
+    this.indices = indices.clone();
+    this.values = values.clone();
+  }
+
+  /**
+   * Returns the number of non-zero values.
+   *
+   * @return size
+   */
+  public int size() {
+    return indices.length;
+  }
+
+  /**
+   * Returns the index of the <code>i</code>-th non-zero value.
+   *
+   * @param i position of the value
+   * @return index
+   */
+  public int getIndex(int i) {
+    return indices[i];
+  }
+
+  /**
+   * Returns the <code>i</code>-th non-zero value.
+   *
+   * @param i position of the value
+   * @return value
+   */
+  public float getValue(int i) {
+    return values[i];
+  }
+
+  /**
+   * Computes the dot product with a dense vector, indices beyond <code>dense</code> count as zero.
+   *
+   * @param dense dense vector
+   * @return dot product
+   */
+  public float dot(float[] dense) {
+    float sum = 0f;
+    for (int i = 0; i < indices.length && indices[i] < dense.length; i++) {
+      sum += values[i] * dense[indices[i]];
+    }
+    return sum;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof SparseVector)) {
+      return false;
+    }
+    SparseVector that = (SparseVector) o;
+    return Arrays.equals(indices, that.indices) && Arrays.equals(values, that.values);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Arrays.hashCode(indices) + Arrays.hashCode(values);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    for (int i = 0; i < indices.length; i++) {
+      if (i > 0) {
+        sb.append(", ");
+      }
+      sb.append(indices[i]).append('=').append(values[i]);
+    }
+    return sb.append('}').toString();
+  }
+
+  /**
+   * Callback receiving the non-zero values of a stored sparse vector.
+   */
+  public interface Consumer {
+
+    /**
+     * Receives a non-zero value, called by increasing index.
+     *
+     * @param index index of the value
+     * @param value value
+     */
+    void accept(int index, float value);
+  }
+}
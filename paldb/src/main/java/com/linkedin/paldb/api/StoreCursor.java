@@ -0,0 +1,62 @@
+/*
+* Copyright 2015 LinkedIn Corp. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*/
+
+package com.linkedin.paldb.api;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * Cursor over the serialized entries of a store.
+ * <p>
+ * The cursor doesn't allocate while scanning: key and value buffers point at the mapped store or at reused scratch
+ * space. Buffers are only valid until the next call to <code>advance()</code> and must not be modified.
+ * <pre>
+ * StoreCursor cursor = reader.cursor();
+ * while (cursor.advance()) {
+ *   ByteBuffer key = cursor.keyBuffer();
+ *   ByteBuffer value = cursor.valueBuffer();
+ * }
+ * </pre>
+ */
+public interface StoreCursor {
+
+  /**
+   * Moves the cursor to the next entry.
+   *
+   * @return true if the cursor is on an entry, false if the scan is over
+   */
+  public boolean advance();
+
+  /**
+   * Returns the serialized key of the current entry, between the buffer position and limit.
+   *
+   * @return key buffer
+   */
+  public ByteBuffer keyBuffer();
+
+  /**
+   * Returns the length of the serialized key of the current entry.
+   *
+   * @return key length
+   */
+  public int keyLength();
+
+  /**
+   * Returns the serialized value of the current entry, between the buffer position and limit.
+   *
+   * @return value buffer
+   */
+  public ByteBuffer valueBuffer();
+}
@@ -15,7 +15,18 @@
 package com.linkedin.paldb.api;
 
 import java.io.File;
+import java.io.InputStream;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
 
 
 /**
@@ -44,7 +55,7 @@ public interface StoreReader {
   /**
    * Returns the store file.
    *
-   * @return file
+   * @return file or null if the store was opened from a buffer or a stream loaded in memory
    */
   public File getFile();
 
@@ -74,6 +85,461 @@ public interface StoreReader {
    */
   public <K> K get(Object key, K defaultValue);
 
+  /**
+   * Checks whether the store contains <code>key</code>, only the index is read.
+   * <p>
+   * This is the lookup of set stores written with <code>StoreWriter.add</code>, whose keys all have the value
+   * <code>true</code>.
+   *
+   * @param key key to check
+   * @return true if the key is in the store
+   */
+  public boolean contains(Object key);
+
+  /**
+   * Resolves <code>key</code> to a handle which can be passed to <code>getByHandle</code>.
+   * <p>
+   * Handles are positive and stay valid for the lifetime of the store file, so they can be cached to skip key
+   * serialization, hashing and index probing on repeated lookups.
+   *
+   * @param key key to resolve
+   * @return handle or -1 if not found
+   */
+  public long resolve(Object key);
+
+  /**
+   * Gets the value for a handle returned by <code>resolve</code>.
+   *
+   * @param handle value handle
+   * @param <K> return type
+   * @return value
+   * @throws IllegalArgumentException if the handle is out of the store bounds
+   */
+  public <K> K getByHandle(long handle);
+
+  /**
+   * Gets the ordinal of <code>key</code>.
+   * <p>
+   * Ordinals are dense in <code>[0, size())</code> and require the store to be written with
+   * <code>ordinal.enabled</code>. Keys of the same serialized length get consecutive ordinals in insertion order,
+   * so iterating ordinals reads the values sequentially.
+   *
+   * @param key key to get the ordinal for
+   * @return ordinal or -1 if not found
+   * @throws UnsupportedOperationException if the store has been written without ordinals
+   */
+  public int ordinal(Object key);
+
+  /**
+   * Gets the value for <code>ordinal</code>.
+   *
+   * @param ordinal key ordinal
+   * @param <K> return type
+   * @return value
+   * @throws IndexOutOfBoundsException if the ordinal isn't in <code>[0, size())</code>
+   * @throws UnsupportedOperationException if the store has been written without ordinals
+   */
+  public <K> K getByOrdinal(int ordinal);
+
+  /**
+   * Gets a cursor over the serialized store entries.
+   * <p>
+   * The cursor reads raw keys and values without allocating, so very large scans don't create garbage. It uses its
+   * own buffers and is valid until the reader is closed.
+   *
+   * @return new cursor
+   */
+  public StoreCursor cursor();
+
+  /**
+   * Gets a spliterator over the store entries.
+   * <p>
+   * Splits cover ranges of the index and read with their own buffers, splits made between key lengths report their
+   * exact size. Entries aren't reused and can be retained.
+   *
+   * @param <K> key type
+   * @param <V> value type
+   * @return spliterator over the entries
+   */
+  public <K, V> Spliterator<Map.Entry<K, V>> spliterator();
+
+  /**
+   * Gets a sequential stream over the store entries.
+   *
+   * @param <K> key type
+   * @param <V> value type
+   * @return stream of entries
+   */
+  public <K, V> Stream<Map.Entry<K, V>> stream();
+
+  /**
+   * Gets a parallel stream over the store entries, splits are traversed concurrently.
+   *
+   * @param <K> key type
+   * @param <V> value type
+   * @return parallel stream of entries
+   */
+  public <K, V> Stream<Map.Entry<K, V>> parallelStream();
+
+  /**
+   * Gets a sequential stream over the partition <code>index</code> of <code>count</code> equal ranges of the index.
+   * <p>
+   * Partitions are disjoint and cover all entries, which allows to distribute a scan across processes.
+   *
+   * @param index partition index in <code>[0, count)</code>
+   * @param count number of partitions
+   * @param <K> key type
+   * @param <V> value type
+   * @return stream of the partition entries
+   */
+  public <K, V> Stream<Map.Entry<K, V>> partition(int index, int count);
+
+  /**
+   * Gets a sequential stream over the entries matching <code>filter</code>.
+   * <p>
+   * Keys and values are tested in their serialized form and only matching entries are deserialized. When the store
+   * was written with <code>zone.map.enabled</code>, value ranges only read the blocks of sorted values overlapping
+   * the range, in value order. Call <code>parallel()</code> on the stream to scan the splits concurrently.
+   *
+   * @param filter filter the entries must match
+   * @param <K> key type
+   * @param <V> value type
+   * @return stream of matching entries
+   */
+  public <K, V> Stream<Map.Entry<K, V>> scan(Filter filter);
+
+  /**
+   * Gets a uniform random sample of <code>k</code> distinct entries, without scanning the store.
+   * <p>
+   * Random index slots are picked and empty ones rejected, so only about <code>k / load.factor</code> slots are
+   * read. The same seed returns the same sample for a given store.
+   *
+   * @param k number of entries to sample, all entries are returned in random order if larger than the store size
+   * @param seed random seed
+   * @param <K> key type
+   * @param <V> value type
+   * @return sampled entries
+   */
+  public <K, V> List<Map.Entry<K, V>> sample(int k, long seed);
+
+  /**
+   * Returns a sequential stream over the entries whose keys are in <code>[from, to)</code>, in key order.
+   * <p>
+   * Keys are ordered by type, numbers then strings then byte arrays, and then by value. Strings are ordered by code
+   * point and byte arrays by unsigned bytes. <code>range(null, null)</code> iterates over the whole store in order.
+   *
+   * @param from lowest key, inclusive, null if unbounded
+   * @param to highest key, exclusive, null if unbounded
+   * @param <K> key type
+   * @param <V> value type
+   * @return ordered stream of entries
+   * @throws IllegalArgumentException if a bound isn't a number, a string or a byte array
+   * @throws UnsupportedOperationException if the store has been written without sorted keys
+   */
+  public <K, V> Stream<Map.Entry<K, V>> range(Object from, Object to);
+
+  /**
+   * Returns the entry with the greatest key lower than or equal to <code>key</code>, in the order of
+   * <code>range</code>.
+   *
+   * @param key key to compare to
+   * @param <K> key type
+   * @param <V> value type
+   * @return entry or null if all keys are greater
+   * @throws IllegalArgumentException if the key isn't a number, a string or a byte array
+   * @throws UnsupportedOperationException if the store has been written without sorted keys
+   */
+  public <K, V> Map.Entry<K, V> floor(Object key);
+
+  /**
+   * Returns the entry with the lowest key greater than or equal to <code>key</code>, in the order of
+   * <code>range</code>.
+   *
+   * @param key key to compare to
+   * @param <K> key type
+   * @param <V> value type
+   * @return entry or null if all keys are lower
+   * @throws IllegalArgumentException if the key isn't a number, a string or a byte array
+   * @throws UnsupportedOperationException if the store has been written without sorted keys
+   */
+  public <K, V> Map.Entry<K, V> ceiling(Object key);
+
+  /**
+   * Returns the entries whose string key starts with <code>prefix</code>, in the order of the UTF-8 bytes of the
+   * keys.
+   * <p>
+   * The keys are read from the key fst, only the values of the returned entries are read from the data.
+   *
+   * @param prefix key prefix, empty for all keys
+   * @param <V> value type
+   * @return ordered stream of entries
+   * @throws UnsupportedOperationException if the store has been written without the key fst
+   */
+  public <V> Stream<Map.Entry<String, V>> prefix(String prefix);
+
+  /**
+   * Returns the first <code>n</code> keys starting with <code>prefix</code>, in the order of <code>prefix</code>,
+   * without reading any value.
+   *
+   * @param prefix key prefix
+   * @param n maximum number of keys
+   * @return completed keys
+   * @throws UnsupportedOperationException if the store has been written without the key fst
+   */
+  public List<String> complete(String prefix, int n);
+
+  /**
+   * Returns the entries whose string key is within <code>maxEdits</code> insertions, deletions or substitutions of
+   * code points of <code>key</code>, in the order of <code>prefix</code>.
+   *
+   * @param key key to match
+   * @param maxEdits maximum edit distance
+   * @param <V> value type
+   * @return matching entries
+   * @throws UnsupportedOperationException if the store has been written without the key fst
+   */
+  public <V> List<Map.Entry<String, V>> fuzzy(String key, int maxEdits);
+
+  /**
+   * Returns the keys whose value is <code>value</code>, or whose value holds the term <code>value</code> when the
+   * store has been written with a <code>TermExtractor</code>.
+   * <p>
+   * The keys are found in the posting list of the value in the inverted index, without scanning the store.
+   *
+   * @param value value or term to look up
+   * @param <K> key type
+   * @return keys in index order
+   * @throws UnsupportedOperationException if the store has been written without the inverted index
+   */
+  public <K> List<K> keysForValue(Object value);
+
+  /**
+   * Returns the values put with <code>key</code> in a multimap store, in the order they were put.
+   * <p>
+   * The values of a key are stored together and deserialized one at a time as the stream is consumed, while
+   * <code>get</code> returns them all in an <code>Object[]</code>.
+   *
+   * @param key key to fetch
+   * @param <V> value type
+   * @return ordered stream of values, empty if not found
+   * @throws UnsupportedOperationException if the store has been written without multimap
+   */
+  public <V> Stream<V> getAll(Object key);
+
+  /**
+   * Returns a reader over the namespace <code>name</code>, a logical store held in this store's file.
+   * <p>
+   * The namespace is read in place from this store's buffer or mapping, with this reader's configuration. The same
+   * view is returned for the same name until it's closed and views are closed with this reader.
+   *
+   * @param name namespace name
+   * @return namespace reader or null if not found
+   * @throws NullPointerException if <code>name</code> is null
+   */
+  public StoreReader namespace(String name);
+
+  /**
+   * Returns the names of the namespaces held in this store, in the order they were created.
+   *
+   * @return namespace names, empty if none
+   */
+  public List<String> namespaces();
+
+  /**
+   * Gets a read-only view of the vector of <code>key</code> in a vector store.
+   * <p>
+   * Unquantized vectors are views of the mapped matrix and aren't copied, quantized vectors are decoded.
+   *
+   * @param key key to fetch
+   * @return vector or null if not found
+   * @throws UnsupportedOperationException if the store has been written without vectors
+   */
+  public FloatBuffer getVector(Object key);
+
+  /**
+   * Finds the <code>k</code> keys whose vectors best match <code>query</code> in a vector store.
+   * <p>
+   * The whole matrix is scanned in place, split in as many parts as available processors which run on the
+   * asynchronous lookups executor.
+   *
+   * @param query query vector
+   * @param k number of keys to return
+   * @param cosine score with the cosine similarity instead of the dot product
+   * @param <K> key type
+   * @return keys and scores, best first
+   * @throws IllegalArgumentException if the query dimension doesn't match the store's or <code>k</code> is
+   * negative
+   * @throws UnsupportedOperationException if the store has been written without vectors
+   */
+  public <K> List<Map.Entry<K, Float>> topK(float[] query, int k, boolean cosine);
+
+  /**
+   * Computes the dot product of the sparse vector value of <code>key</code> and a dense <code>query</code>.
+   * <p>
+   * The vector is decoded in place from the store without being materialized, indices beyond <code>query</code>
+   * count as zero.
+   *
+   * @param key key of the sparse vector
+   * @param query dense query
+   * @return dot product, 0 if not found
+   * @throws IllegalArgumentException if the value isn't a sparse vector
+   */
+  public float dot(Object key, float[] query);
+
+  /**
+   * Passes the non-zero values of the sparse vector value of <code>key</code> to <code>consumer</code>, by
+   * increasing index.
+   * <p>
+   * The vector is decoded in place from the store without being materialized.
+   *
+   * @param key key of the sparse vector
+   * @param consumer consumer receiving the values
+   * @return true if the key was found, false otherwise
+   * @throws IllegalArgumentException if the value isn't a sparse vector
+   */
+  public boolean forEachNonZero(Object key, SparseVector.Consumer consumer);
+
+  /**
+   * Gets a read-only view of the int array value of <code>key</code>.
+   * <p>
+   * Arrays written with <code>aligned.arrays.enabled</code> are little-endian views of the mapped data and aren't
+   * copied, other arrays are deserialized. Views are valid until the reader is closed.
+   *
+   * @param key key to fetch
+   * @return view of the array or null if not found
+   * @throws IllegalArgumentException if the value isn't an int array
+   */
+  public IntBuffer getIntBuffer(Object key);
+
+  /**
+   * Gets a read-only view of the long array value of <code>key</code>.
+   * <p>
+   * Arrays written with <code>aligned.arrays.enabled</code> are little-endian views of the mapped data and aren't
+   * copied, other arrays are deserialized. Views are valid until the reader is closed.
+   *
+   * @param key key to fetch
+   * @return view of the array or null if not found
+   * @throws IllegalArgumentException if the value isn't a long array
+   */
+  public LongBuffer getLongBuffer(Object key);
+
+  /**
+   * Gets a read-only view of the double array value of <code>key</code>.
+   * <p>
+   * Arrays written with <code>aligned.arrays.enabled</code> are little-endian views of the mapped data and aren't
+   * copied, other arrays are deserialized. Views are valid until the reader is closed.
+   *
+   * @param key key to fetch
+   * @return view of the array or null if not found
+   * @throws IllegalArgumentException if the value isn't a double array
+   */
+  public DoubleBuffer getDoubleBuffer(Object key);
+
+  /**
+   * Copies the int array value of <code>key</code> into <code>dest</code>, starting at <code>offset</code>.
+   *
+   * @param key key to fetch
+   * @param dest destination array
+   * @param offset offset in <code>dest</code>
+   * @return number of values copied or -1 if not found
+   * @throws IllegalArgumentException if the value isn't an int array
+   * @throws IndexOutOfBoundsException if the array doesn't fit in <code>dest</code>
+   */
+  public int getInto(Object key, int[] dest, int offset);
+
+  /**
+   * Copies the long array value of <code>key</code> into <code>dest</code>, starting at <code>offset</code>.
+   *
+   * @param key key to fetch
+   * @param dest destination array
+   * @param offset offset in <code>dest</code>
+   * @return number of values copied or -1 if not found
+   * @throws IllegalArgumentException if the value isn't a long array
+   * @throws IndexOutOfBoundsException if the array doesn't fit in <code>dest</code>
+   */
+  public int getInto(Object key, long[] dest, int offset);
+
+  /**
+   * Copies the double array value of <code>key</code> into <code>dest</code>, starting at <code>offset</code>.
+   *
+   * @param key key to fetch
+   * @param dest destination array
+   * @param offset offset in <code>dest</code>
+   * @return number of values copied or -1 if not found
+   * @throws IllegalArgumentException if the value isn't a double array
+   * @throws IndexOutOfBoundsException if the array doesn't fit in <code>dest</code>
+   */
+  public int getInto(Object key, double[] dest, int offset);
+
+  /**
+   * Writes the access frequency of the keys looked up since the reader was opened to <code>profileFile</code>.
+   * <p>
+   * Lookups are recorded when the reader is opened with <code>access.profile.enabled</code>, cache hits aren't
+   * recorded. Writing the next version of the store with <code>access.profile.file</code> set to the profile places
+   * the values of the most accessed keys before the others, so they share fewer pages.
+   *
+   * @param profileFile profile file to write
+   * @throws UnsupportedOperationException if the reader doesn't record accesses
+   */
+  public void writeAccessProfile(File profileFile);
+
+  /**
+   * Gets a stream over the byte array value for <code>key</code>.
+   * <p>
+   * The value is read in chunks from the store instead of being loaded in a single array, which suits very large
+   * values. Use <code>Channels.newChannel</code> to get a channel. The stream is valid until the reader is closed.
+   *
+   * @param key key to fetch
+   * @return stream over the value or null if not found
+   * @throws IllegalArgumentException if the value isn't a byte array
+   */
+  public InputStream getStream(Object key);
+
+  /**
+   * Asynchronously gets the value for <code>key</code> on the reader executor.
+   * <p>
+   * The executor is configured with <code>async.threads</code>, lookups bypass the cache and can run concurrently.
+   *
+   * @param key key to fetch
+   * @param <K> return type
+   * @return future completed with the value or null if not found
+   */
+  public <K> CompletableFuture<K> getAsync(Object key);
+
+  /**
+   * Asynchronously gets the value for <code>key</code> on the given executor.
+   *
+   * @param key key to fetch
+   * @param executor executor to run the lookup on
+   * @param <K> return type
+   * @return future completed with the value or null if not found
+   */
+  public <K> CompletableFuture<K> getAsync(Object key, Executor executor);
+
+  /**
+   * Asynchronously gets the values for <code>keys</code> on the reader executor.
+   * <p>
+   * Lookups are issued concurrently and the result map follows the order of <code>keys</code>, keys not found are
+   * omitted.
+   *
+   * @param keys keys to fetch
+   * @param <K> key type
+   * @param <V> value type
+   * @return future completed with the map of found keys and values
+   */
+  public <K, V> CompletableFuture<Map<K, V>> getAllAsync(Collection<? extends K> keys);
+
+  /**
+   * Asynchronously gets the values for <code>keys</code> on the given executor.
+   *
+   * @param keys keys to fetch
+   * @param executor executor to run the lookups on
+   * @param <K> key type
+   * @param <V> value type
+   * @return future completed with the map of found keys and values
+   */
+  public <K, V> CompletableFuture<Map<K, V>> getAllAsync(Collection<? extends K> keys, Executor executor);
+
   /**
    * Gets the int value for <code>key</code>.
    *
@@ -436,7 +902,8 @@ public interface StoreReader {
   /**
    * Gets the store iterable.
    * <p>
-   * Note that entry objects are reused.
+   * Note that entry objects are reused. Stores written with <code>key.log.enabled</code> are iterated in data
+   * order, which reads the values sequentially, others in index order.
    *
    * @param <K> key type
    * @param <V> value type
@@ -446,6 +913,8 @@ public interface StoreReader {
 
   /**
    * Gets the store keys iterable.
+   * <p>
+   * Stores written with <code>key.log.enabled</code> are iterated in insertion order for each key length.
    *
    * @param <K> key type
    * @return iterable over keys
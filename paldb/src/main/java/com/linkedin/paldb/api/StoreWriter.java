@@ -69,4 +69,45 @@ public interface StoreWriter {
    * null
    */
   public void put(byte[] key, byte[] value);
+
+  /**
+   * Add a key without value to the store, which is then a set.
+   * <p>
+   * Set stores only hold their keys in the index and have no data, they are read with
+   * <code>StoreReader.contains()</code> and the value of their keys is <code>true</code>. Keys can't be added to a
+   * store with values and values can't be put in a set store.
+   *
+   * @param key a key
+   * @throws NullPointerException if <code>key</code> is null
+   * @throws IllegalStateException if values have been put in the store
+   */
+  public void add(Object key);
+
+  /**
+   * Add a key with its vector to a vector store.
+   * <p>
+   * Vector stores are written with <code>vector.dimension</code>, their vectors are stored in a contiguous matrix
+   * and read with <code>StoreReader.getVector()</code> and <code>StoreReader.topK()</code>. Like set stores, the
+   * value of their keys is <code>true</code>.
+   *
+   * @param key a key
+   * @param vector a vector of the configured dimension
+   * @throws NullPointerException if <code>key</code> or <code>vector</code> is null
+   * @throws IllegalArgumentException if the vector dimension doesn't match the configured one
+   * @throws IllegalStateException if the vector dimension isn't configured or the matrix would exceed 2GB
+   */
+  public void addVector(Object key, float[] vector);
+
+  /**
+   * Returns the writer of the namespace <code>name</code>, a logical store held in this store's file.
+   * <p>
+   * Each namespace is an independent store written with this writer's configuration and read with
+   * <code>StoreReader.namespace()</code>. Namespaces share this writer's temporary folder and are written when they
+   * are closed, open namespaces are closed with this writer. The same writer is returned for the same name.
+   *
+   * @param name namespace name
+   * @return namespace writer
+   * @throws NullPointerException if <code>name</code> is null
+   */
+  public StoreWriter namespace(String name);
 }
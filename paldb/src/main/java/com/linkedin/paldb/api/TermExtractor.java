@@ -0,0 +1,43 @@
+/*
+* Copyright 2015 LinkedIn Corp. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*/
+
+package com.linkedin.paldb.api;
+
+import java.util.Collection;
+
+
+/**
+ * Extracts the terms of the values indexed by the inverted index.
+ * <p>
+ * The implementation is set by class name with <code>inverted.index.extractor</code> and should have a public
+ * constructor without arguments. Without extractor, the whole value is the only term.
+ * <pre>
+ * public class TagExtractor implements TermExtractor {
+ *   public Collection&lt;?&gt; extract(Object value) {
+ *     return ((Document) value).getTags();
+ *   }
+ * }
+ * </pre>
+ * The reader then returns the keys of the values holding a term with <code>keysForValue(term)</code>.
+ */
+public interface TermExtractor {
+
+  /**
+   * Extracts the terms of a value, terms are serialized like keys.
+   *
+   * @param value value to extract terms from
+   * @return terms, possibly empty
+   */
+  Collection<?> extract(Object value);
+}
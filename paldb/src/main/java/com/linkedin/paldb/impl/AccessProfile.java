@@ -0,0 +1,152 @@
+/*
+* Copyright 2015 LinkedIn Corp. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*/
+
+package com.linkedin.paldb.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Access frequencies of serialized keys, recorded by a reader and used by the writer to lay out hot values first.
+ * <p>
+ * The profile file holds the number of keys (int) followed by each key length (int), key bytes and access count
+ * (long), by decreasing count. Once <code>maxKeys</code> keys are recorded, new keys are ignored.
+ */
+final class AccessProfile {
+
+  // Access counts by serialized key
+  private final ConcurrentMap<ByteBuffer, AtomicLong> counts = new ConcurrentHashMap<ByteBuffer, AtomicLong>();
+  // Maximum number of keys
+  private final int maxKeys;
+
+  /**
+   * Constructor.
+   *
+   * @param maxKeys maximum number of keys recorded
+   */
+  AccessProfile(int maxKeys) {
+    this.maxKeys = maxKeys;
+  }
+
+  /**
+   * Records an access to the serialized key, can be called concurrently.
+   *
+   * @param key serialized key, retained and shouldn't be modified
+   */
+  void record(byte[] key) {
+    ByteBuffer wrapper = ByteBuffer.wrap(key);
+    AtomicLong count = counts.get(wrapper);
+    if (count == null) {
+      if (counts.size() >= maxKeys) {
+        return;
+      }
+      count = new AtomicLong();
+      AtomicLong previous = counts.putIfAbsent(wrapper, count);
+      if (previous != null) {
+        count = previous;
+      }
+    }
+    count.incrementAndGet();
+  }
+
+  /**
+   * Writes the profile to <code>file</code>.
+   *
+   * @param file profile file
+   * @throws IOException if an io error occurs
+   */
+  void write(File file)
+      throws IOException {
+    List<Map.Entry<ByteBuffer, Long>> entries = new ArrayList<Map.Entry<ByteBuffer, Long>>();
+    for (Map.Entry<ByteBuffer, AtomicLong> entry : counts.entrySet()) {
+      entries.add(new AbstractMap.SimpleImmutableEntry<ByteBuffer, Long>(entry.getKey(),
+          entry.getValue().get()));
+    }
+    Collections.sort(entries, new Comparator<Map.Entry<ByteBuffer, Long>>() {
+      @Override
+      public int compare(Map.Entry<ByteBuffer, Long> o1, Map.Entry<ByteBuffer, Long> o2) {
+        return o2.getValue().compareTo(o1.getValue());
+      }
+    });
+
+    DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      outputStream.writeInt(entries.size());
+      for (Map.Entry<ByteBuffer, Long> entry : entries) {
+        byte[] key = entry.getKey().array();
+        outputStream.writeInt(key.length);
+        outputStream.write(key);
+        outputStream.writeLong(entry.getValue());
+      }
+    } finally {
+      outputStream.close();
+    }
+  }
+
+  /**
+   * Reads the most accessed keys of a profile file, which together account for <code>ratio</code> of the accesses.
+   *
+   * @param file profile file
+   * @param ratio ratio of the accesses covered by the hot keys, in <code>(0, 1]</code>
+   * @return hot serialized keys
+   * @throws IOException if an io error occurs
+   */
+  static Set<ByteBuffer> readHotKeys(File file, double ratio)
+      throws IOException {
+    DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      int size = inputStream.readInt();
+      List<byte[]> keys = new ArrayList<byte[]>(size);
+      long[] keyCounts = new long[size];
+      long total = 0;
+      for (int i = 0; i < size; i++) {
+        byte[] key = new byte[inputStream.readInt()];
+        inputStream.readFully(key);
+        keys.add(key);
+        keyCounts[i] = inputStream.readLong();
+        total += keyCounts[i];
+      }
+
+      // Keys are sorted by decreasing count
+      Set<ByteBuffer> hotKeys = new HashSet<ByteBuffer>();
+      long covered = 0;
+      for (int i = 0; i < size && covered < ratio * total; i++) {
+        hotKeys.add(ByteBuffer.wrap(keys.get(i)));
+        covered += keyCounts[i];
+      }
+      return hotKeys;
+    } finally {
+      inputStream.close();
+    }
+  }
+}
@@ -0,0 +1,482 @@
+/*
+* Copyright 2015 LinkedIn Corp. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*/
+
+package com.linkedin.paldb.impl;
+
+import com.linkedin.paldb.utils.LongPacker;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Minimal acyclic finite-state transducer mapping the UTF-8 bytes of string keys to their rank in key order, and the
+ * ranks to the handles of their values.
+ * <p>
+ * Keys sharing prefixes share the arcs from the root and keys sharing suffixes share the arcs to the final nodes.
+ * The output of an arc is the number of keys lower than the keys reached through it, among the keys of its node, so
+ * the rank of a key is the sum of the outputs on its path.
+ * <p>
+ * The fst section holds the nodes, children before their parent, followed by the root address (long). A node holds
+ * its flags (byte), arc count (varint) and for each arc by increasing label the label (byte), output (varint) and
+ * target address (varint). The handles section holds the handle of each rank (long).
+ */
+final class KeyFst {
+
+  // Node flags
+  private static final int FINAL = 1;
+
+  private final ByteBuffer nodes;
+  private final ByteBuffer handles;
+  private final int root;
+
+  /**
+   * Constructor.
+   *
+   * @param nodes fst section
+   * @param handles handles section
+   */
+  KeyFst(ByteBuffer nodes, ByteBuffer handles) {
+    this.nodes = nodes;
+    this.handles = handles;
+    this.root = (int) nodes.getLong(nodes.limit() - Long.SIZE / Byte.SIZE);
+  }
+
+  /**
+   * Gets the number of keys.
+   *
+   * @return key count
+   */
+  long getKeyCount() {
+    return handles.limit() / (Long.SIZE / Byte.SIZE);
+  }
+
+  /**
+   * Gets the handle of the value of a rank.
+   *
+   * @param rank rank of the key
+   * @return handle
+   */
+  long getHandle(long rank) {
+    return handles.getLong((int) (rank * (Long.SIZE / Byte.SIZE)));
+  }
+
+  /**
+   * Gets the rank of a key.
+   *
+   * @param key UTF-8 key
+   * @return rank or -1 if the key isn't in the fst
+   */
+  long getRank(byte[] key) {
+    ByteBuffer buffer = nodes.duplicate();
+    long[] rank = new long[1];
+    int node = walk(buffer, root, key, rank);
+    if (node == -1 || (buffer.get(node) & FINAL) == 0) {
+      return -1;
+    }
+    return rank[0];
+  }
+
+  /**
+   * Returns a cursor over the keys starting with <code>prefix</code>, in key order.
+   *
+   * @param prefix UTF-8 prefix
+   * @return new cursor
+   */
+  Cursor prefix(byte[] prefix) {
+    ByteBuffer buffer = nodes.duplicate();
+    long[] rank = new long[1];
+    int node = walk(buffer, root, prefix, rank);
+    return new Cursor(buffer, prefix, node, rank[0]);
+  }
+
+  /**
+   * Finds the keys within <code>maxEdits</code> insertions, deletions or substitutions of code points of
+   * <code>key</code>, in key order.
+   *
+   * @param key key
+   * @param maxEdits maximum edit distance
+   * @return UTF-8 keys and their rank
+   */
+  List<Map.Entry<byte[], Long>> fuzzy(String key, int maxEdits) {
+    int[] query = key.codePoints().toArray();
+    int[] row = new int[query.length + 1];
+    for (int i = 0; i < row.length; i++) {
+      row[i] = i;
+    }
+    List<Map.Entry<byte[], Long>> matches = new ArrayList<Map.Entry<byte[], Long>>();
+    fuzzy(nodes.duplicate(), root, 0L, new byte[16], 0, 0, 0, row, query, maxEdits, matches);
+    return matches;
+  }
+
+  //Visit the nodes whose code points are within the maximum edits of a prefix of the query
+  private void fuzzy(ByteBuffer buffer, int node, long rank, byte[] key, int length, int codePoint, int pending,
+      int[] row, int[] query, int maxEdits, List<Map.Entry<byte[], Long>> matches) {
+    buffer.position(node);
+    boolean isFinal = (buffer.get() & FINAL) != 0;
+    if (isFinal && pending == 0 && row[query.length] <= maxEdits) {
+      matches.add(new AbstractMap.SimpleImmutableEntry<byte[], Long>(Arrays.copyOf(key, length), rank));
+    }
+    long arcRank = rank + (isFinal ? 1 : 0);
+    int arcCount = (int) unpackLong(buffer);
+    for (int i = 0; i < arcCount; i++) {
+      int label = buffer.get() & 0xff;
+      long output = unpackLong(buffer);
+      int target = (int) unpackLong(buffer);
+      int next = buffer.position();
+
+      // Decode the UTF-8 code point, the distances are updated once it's complete
+      int nextCodePoint;
+      int nextPending;
+      if (pending > 0) {
+        nextCodePoint = (codePoint << 6) | (label & 0x3f);
+        nextPending = pending - 1;
+      } else if (label >= 0xf0) {
+        nextCodePoint = label & 0x07;
+        nextPending = 3;
+      } else if (label >= 0xe0) {
+        nextCodePoint = label & 0x0f;
+        nextPending = 2;
+      } else if (label >= 0xc0) {
+        nextCodePoint = label & 0x1f;
+        nextPending = 1;
+      } else {
+        nextCodePoint = label;
+        nextPending = 0;
+      }
+      int[] nextRow = row;
+      if (nextPending == 0) {
+        nextRow = new int[row.length];
+        nextRow[0] = row[0] + 1;
+        int min = nextRow[0];
+        for (int j = 1; j < row.length; j++) {
+          int substitution = row[j - 1] + (query[j - 1] == nextCodePoint ? 0 : 1);
+          nextRow[j] = Math.min(substitution, Math.min(nextRow[j - 1], row[j]) + 1);
+          min = Math.min(min, nextRow[j]);
+        }
+        if (min > maxEdits) {
+          buffer.position(next);
+          continue;
+        }
+      }
+      if (length == key.length) {
+        key = Arrays.copyOf(key, length * 2);
+      }
+      key[length] = (byte) label;
+      fuzzy(buffer, target, arcRank + output, key, length + 1, nextCodePoint, nextPending, nextRow, query, maxEdits,
+          matches);
+      buffer.position(next);
+    }
+  }
+
+  //Follow the key from the node, returns the node reached or -1 and adds the outputs to rank[0]
+  private static int walk(ByteBuffer buffer, int node, byte[] key, long[] rank) {
+    for (byte b : key) {
+      buffer.position(node);
+      boolean isFinal = (buffer.get() & FINAL) != 0;
+      int arcCount = (int) unpackLong(buffer);
+      int target = -1;
+      for (int i = 0; i < arcCount && target == -1; i++) {
+        int label = buffer.get() & 0xff;
+        long output = unpackLong(buffer);
+        int address = (int) unpackLong(buffer);
+        if (label == (b & 0xff)) {
+          rank[0] += output + (isFinal ? 1 : 0);
+          target = address;
+        } else if (label > (b & 0xff)) {
+          return -1;
+        }
+      }
+      if (target == -1) {
+        return -1;
+      }
+      node = target;
+    }
+    return node;
+  }
+
+  //Unpack a long from the buffer
+  private static long unpackLong(ByteBuffer buffer) {
+    long result = 0;
+    for (int offset = 0; offset < 64; offset += 7) {
+      long b = buffer.get();
+      result |= (b & 0x7F) << offset;
+      if ((b & 0x80) == 0) {
+        return result;
+      }
+    }
+    throw new Error("Malformed long.");
+  }
+
+  /**
+   * Cursor over the keys below a node in key order, with a stack of the nodes on the path of the current key.
+   */
+  final class Cursor {
+
+    private final ByteBuffer buffer;
+    // Depth of the start node
+    private final int start;
+    private int depth;
+    private byte[] path;
+    // Per depth, position of the next arc, remaining arcs, rank of the node and whether its key is pending
+    private int[] arcPositions = new int[16];
+    private int[] arcsLeft = new int[16];
+    private long[] ranks = new long[16];
+    private boolean[] pending = new boolean[16];
+    // Current key
+    private byte[] key;
+    private long rank;
+
+    private Cursor(ByteBuffer buffer, byte[] prefix, int node, long rank) {
+      this.buffer = buffer;
+      this.start = prefix.length;
+      this.path = Arrays.copyOf(prefix, Math.max(16, prefix.length * 2));
+      this.depth = start - 1;
+      if (node != -1) {
+        push(node, rank);
+      }
+    }
+
+    /**
+     * Moves to the next key.
+     *
+     * @return true if there is a next key, false otherwise
+     */
+    boolean next() {
+      while (depth >= start) {
+        int level = depth - start;
+        if (pending[level]) {
+          pending[level] = false;
+          key = Arrays.copyOf(path, depth);
+          // The ranks of the arcs start after the node key
+          rank = ranks[level]++;
+          return true;
+        }
+        if (arcsLeft[level] == 0) {
+          depth--;
+          continue;
+        }
+        buffer.position(arcPositions[level]);
+        int label = buffer.get();
+        long output = unpackLong(buffer);
+        int target = (int) unpackLong(buffer);
+        arcPositions[level] = buffer.position();
+        arcsLeft[level]--;
+        if (depth == path.length) {
+          path = Arrays.copyOf(path, depth * 2);
+        }
+        path[depth] = (byte) label;
+        push(target, ranks[level] + output);
+      }
+      return false;
+    }
+
+    byte[] getKey() {
+      return key;
+    }
+
+    long getRank() {
+      return rank;
+    }
+
+    //Push the node reached with the given rank
+    private void push(int node, long nodeRank) {
+      depth++;
+      int level = depth - start;
+      if (level == arcPositions.length) {
+        arcPositions = Arrays.copyOf(arcPositions, level * 2);
+        arcsLeft = Arrays.copyOf(arcsLeft, level * 2);
+        ranks = Arrays.copyOf(ranks, level * 2);
+        pending = Arrays.copyOf(pending, level * 2);
+      }
+      buffer.position(node);
+      boolean isFinal = (buffer.get() & FINAL) != 0;
+      arcsLeft[level] = (int) unpackLong(buffer);
+      arcPositions[level] = buffer.position();
+      pending[level] = isFinal;
+      ranks[level] = nodeRank;
+    }
+  }
+
+  /**
+   * Builder of a minimal fst from keys added in increasing order, nodes are written once no more key can reach them
+   * and shared with the equivalent nodes already written.
+   */
+  static final class Builder {
+
+    private final DataOutputStream nodesStream;
+    private final DataOutputStream handlesStream;
+    // Written nodes by signature
+    private final Map<Signature, Node> register = new HashMap<Signature, Node>();
+    // Nodes on the path of the last key, not written yet
+    private final List<PathNode> path = new ArrayList<PathNode>();
+    private byte[] lastKey;
+    private long address;
+
+    /**
+     * Constructor.
+     *
+     * @param nodesStream fst section stream
+     * @param handlesStream handles section stream
+     */
+    Builder(DataOutputStream nodesStream, DataOutputStream handlesStream) {
+      this.nodesStream = nodesStream;
+      this.handlesStream = handlesStream;
+      path.add(new PathNode());
+    }
+
+    /**
+     * Adds a key.
+     *
+     * @param key UTF-8 key, greater than the previous key
+     * @param handle handle of the value
+     * @throws IOException if an io error occurs
+     */
+    void add(byte[] key, long handle)
+        throws IOException {
+      int common = 0;
+      if (lastKey != null) {
+        while (common < key.length && common < lastKey.length && key[common] == lastKey[common]) {
+          common++;
+        }
+        if (common == key.length || (common < lastKey.length && (key[common] & 0xff) < (lastKey[common] & 0xff))) {
+          throw new IllegalArgumentException("The keys should be added in increasing order");
+        }
+        freeze(common);
+      }
+      for (int i = common; i < key.length; i++) {
+        path.get(i).labels.add(key[i]);
+        if (path.size() == i + 1) {
+          path.add(new PathNode());
+        } else {
+          path.set(i + 1, new PathNode());
+        }
+      }
+      path.get(key.length).isFinal = true;
+      handlesStream.writeLong(handle);
+      lastKey = key;
+    }
+
+    /**
+     * Writes the remaining nodes and the root address.
+     *
+     * @throws IOException if an io error occurs
+     */
+    void finish()
+        throws IOException {
+      freeze(0);
+      Node root = write(path.get(0));
+      nodesStream.writeLong(root.address);
+    }
+
+    //Write the nodes of the last key deeper than the given depth, and link them to their parent
+    private void freeze(int depth)
+        throws IOException {
+      int last = lastKey == null ? 0 : lastKey.length;
+      for (int i = last; i > depth; i--) {
+        Node node = write(path.get(i));
+        path.get(i - 1).targets.add(node);
+      }
+    }
+
+    //Write the node or return the equivalent node already written
+    private Node write(PathNode pathNode)
+        throws IOException {
+      Signature signature = new Signature(pathNode);
+      Node node = register.get(signature);
+      if (node != null) {
+        return node;
+      }
+      long count = pathNode.isFinal ? 1 : 0;
+      long nodeAddress = address;
+      nodesStream.writeByte(pathNode.isFinal ? FINAL : 0);
+      address += 1 + LongPacker.packLong(nodesStream, pathNode.labels.size());
+      long output = 0;
+      for (int i = 0; i < pathNode.labels.size(); i++) {
+        Node target = pathNode.targets.get(i);
+        nodesStream.writeByte(pathNode.labels.get(i));
+        address += 1 + LongPacker.packLong(nodesStream, output) + LongPacker.packLong(nodesStream, target.address);
+        output += target.count;
+        count += target.count;
+      }
+      node = new Node(nodeAddress, count);
+      register.put(signature, node);
+      return node;
+    }
+  }
+
+  /**
+   * Written node, with the number of keys reached from it.
+   */
+  private static final class Node {
+
+    private final long address;
+    private final long count;
+
+    Node(long address, long count) {
+      this.address = address;
+      this.count = count;
+    }
+  }
+
+  /**
+   * Node on the path of the last key, its last arc has no target yet.
+   */
+  private static final class PathNode {
+
+    private final List<Byte> labels = new ArrayList<Byte>();
+    private final List<Node> targets = new ArrayList<Node>();
+    private boolean isFinal;
+  }
+
+  /**
+   * Node identity for the register, nodes are equivalent if they have the same flags and arcs.
+   */
+  private static final class Signature {
+
+    private final boolean isFinal;
+    private final byte[] labels;
+    private final long[] targets;
+
+    Signature(PathNode node) {
+      isFinal = node.isFinal;
+      labels = new byte[node.labels.size()];
+      targets = new long[labels.length];
+      for (int i = 0; i < labels.length; i++) {
+        labels[i] = node.labels.get(i);
+        targets[i] = node.targets.get(i).address;
+      }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Signature)) {
+        return false;
+      }
+      Signature that = (Signature) o;
+      return isFinal == that.isFinal && Arrays.equals(labels, that.labels) && Arrays.equals(targets, that.targets);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * Arrays.hashCode(labels) + Arrays.hashCode(targets)) + (isFinal ? 1 : 0);
+    }
+  }
+}
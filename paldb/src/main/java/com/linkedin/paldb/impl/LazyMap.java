@@ -0,0 +1,198 @@
+/*
+* Copyright 2015 LinkedIn Corp. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*/
+
+package com.linkedin.paldb.impl;
+
+import com.linkedin.paldb.utils.DataInputOutput;
+import com.linkedin.paldb.utils.HashUtils;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+
+/**
+ * Read-only map view over a serialized map value.
+ * <p>
+ * The serialized map holds an open addressing table of entry offsets followed by the serialized entries. Lookups
+ * hash the serialized key and probe the table, only the matching value is deserialized. Iterating deserializes the
+ * entries in order. Nested maps are views over the same bytes.
+ */
+final class LazyMap<K, V> extends AbstractMap<K, V> {
+
+  // Hash of the serialized keys, like the one used to write the table, one per thread as hashing isn't thread-safe
+  private static final ThreadLocal<HashUtils> HASH_UTILS = ThreadLocal.withInitial(HashUtils::new);
+
+  private final StorageSerialization serialization;
+  // Serialized bytes
+  private final byte[] buffer;
+  // Offset of the slot table, each slot holds an entry offset plus one or zero when empty
+  private final int tableOffset;
+  private final int slots;
+  // Offset of the entries
+  private final int entriesOffset;
+  private final int size;
+  // Entry set, created on first use
+  private Set<Map.Entry<K, V>> entrySet;
+
+  /**
+   * Constructor.
+   *
+   * @param serialization serialization
+   * @param buffer serialized bytes
+   * @param tableOffset offset of the slot table in <code>buffer</code>
+   * @param slots number of slots
+   * @param size number of entries
+   */
+  LazyMap(StorageSerialization serialization, byte[] buffer, int tableOffset, int slots, int size) {
+    this.serialization = serialization;
+    this.buffer = buffer;
+    this.tableOffset = tableOffset;
+    this.slots = slots;
+    this.entriesOffset = tableOffset + slots * (Integer.SIZE / Byte.SIZE);
+    this.size = size;
+  }
+
+  @Override
+  public V get(Object key) {
+    int position = find(key);
+    if (position == -1) {
+      return null;
+    }
+    try {
+      return (V) serialization.deserialize(reader(position));
+    } catch (Exception ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return find(key) != -1;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public Set<Map.Entry<K, V>> entrySet() {
+    if (entrySet == null) {
+      entrySet = new AbstractSet<Map.Entry<K, V>>() {
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+          return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+          return size;
+        }
+      };
+    }
+    return entrySet;
+  }
+
+  // UTILITIES
+
+  //Find the position of the value of the key, or -1 if not found
+  private int find(Object key) {
+    byte[] keyBytes;
+    try {
+      keyBytes = serialization.serialize(key, false);
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+    int hash = HASH_UTILS.get().hash(keyBytes);
+    for (int probe = 0; probe < slots; probe++) {
+      int slot = (int) ((hash + (long) probe) % slots);
+      int offset = readInt(tableOffset + slot * (Integer.SIZE / Byte.SIZE));
+      if (offset == 0) {
+        return -1;
+      }
+      int position = entriesOffset + offset - 1;
+      if (matches(keyBytes, position)) {
+        return position + keyBytes.length;
+      }
+    }
+    return -1;
+  }
+
+  //Compare the serialized key with the bytes at position
+  private boolean matches(byte[] keyBytes, int position) {
+    if (position + keyBytes.length > buffer.length) {
+      return false;
+    }
+    for (int i = 0; i < keyBytes.length; i++) {
+      if (buffer[position + i] != keyBytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int readInt(int position) {
+    return ((buffer[position] & 0xff) << 24) | ((buffer[position + 1] & 0xff) << 16)
+        | ((buffer[position + 2] & 0xff) << 8) | (buffer[position + 3] & 0xff);
+  }
+
+  //Get an input reading from position
+  private DataInputOutput reader(int position) {
+    DataInputOutput dataInputOutput = new DataInputOutput(buffer);
+    try {
+      dataInputOutput.skipBytes(position);
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+    return dataInputOutput;
+  }
+
+  /**
+   * Iterator deserializing the entries in order.
+   */
+  private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+
+    private final DataInputOutput dataInputOutput = reader(entriesOffset);
+    private int index;
+
+    @Override
+    public boolean hasNext() {
+      return index < size;
+    }
+
+    @Override
+    public Map.Entry<K, V> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      try {
+        K key = (K) serialization.deserialize(dataInputOutput);
+        V value = (V) serialization.deserialize(dataInputOutput);
+        index++;
+        return new AbstractMap.SimpleImmutableEntry<K, V>(key, value);
+      } catch (Exception ex) {
+        throw new RuntimeException(ex);
+      }
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Not supported yet.");
+    }
+  }
+}
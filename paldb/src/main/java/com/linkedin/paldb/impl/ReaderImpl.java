@@ -15,12 +15,49 @@
 package com.linkedin.paldb.impl;
 
 import com.linkedin.paldb.api.Configuration;
+import com.linkedin.paldb.api.Filter;
 import com.linkedin.paldb.api.NotFoundException;
+import com.linkedin.paldb.api.SparseVector;
+import com.linkedin.paldb.api.StoreCursor;
 import com.linkedin.paldb.api.StoreReader;
 import com.linkedin.paldb.utils.DataInputOutput;
+import com.linkedin.paldb.utils.LongPacker;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -42,18 +79,49 @@ public final class ReaderImpl implements StoreReader {
   private final StorageSerialization serialization;
   // Cache
   private final StorageCache cache;
-  // File
+  // Canonical values
+  private final StorageInterner interner;
+  // Access frequencies, null when not recorded
+  private final AccessProfile accessProfile;
+  // File (can be null)
   private final File file;
+  // Storage views used by asynchronous lookups
+  private final Queue<Lookup> lookups = new ConcurrentLinkedQueue<Lookup>();
+  // Asynchronous lookups executor, created on first use
+  private volatile ExecutorService executor;
+  // Namespace views opened so far, closed with this reader
+  private final Map<String, ReaderImpl> namespaces = new LinkedHashMap<String, ReaderImpl>();
   // Opened?
   private boolean opened;
 
   /**
-   * Private constructor.
+   * File constructor.
    *
    * @param config configuration
    * @param file store file
    */
   ReaderImpl(Configuration config, File file) {
+    this(config, file, null);
+  }
+
+  /**
+   * Buffer constructor.
+   *
+   * @param config configuration
+   * @param buffer buffer holding the store
+   */
+  ReaderImpl(Configuration config, ByteBuffer buffer) {
+    this(config, null, buffer);
+  }
+
+  /**
+   * Private constructor.
+   *
+   * @param config configuration
+   * @param file store file or null
+   * @param buffer buffer holding the store or null
+   */
+  private ReaderImpl(Configuration config, File file, ByteBuffer buffer) {
     this.config = config;
     this.file = file;
 
@@ -61,7 +129,7 @@ public final class ReaderImpl implements StoreReader {
     try {
       LOGGER.log(Level.INFO, "Opening reader storage");
       serialization = new StorageSerialization(config);
-      storage = new StorageReader(config, file);
+      storage = file != null ? new StorageReader(config, file) : new StorageReader(config, buffer);
     } catch (IOException ex) {
       throw new RuntimeException(ex);
     }
@@ -69,6 +137,13 @@ public final class ReaderImpl implements StoreReader {
 
     // Cache
     cache = StorageCache.initCache(config);
+
+    // Interner
+    interner = StorageInterner.initInterner(config);
+
+    // Access profile
+    accessProfile = config.getBoolean(Configuration.ACCESS_PROFILE_ENABLED)
+        ? new AccessProfile(config.getInt(Configuration.ACCESS_PROFILE_MAX_KEYS)) : null;
   }
 
   @Override
@@ -76,6 +151,18 @@ public final class ReaderImpl implements StoreReader {
     checkOpen();
     try {
       LOGGER.log(Level.INFO, "Closing reader storage");
+      if (executor != null) {
+        executor.shutdown();
+      }
+      synchronized (namespaces) {
+        for (ReaderImpl view : namespaces.values()) {
+          if (view.opened) {
+            view.close();
+          }
+        }
+        namespaces.clear();
+      }
+      lookups.clear();
       storage.close();
       opened = false;
     } catch (IOException ex) {
@@ -110,17 +197,38 @@ public final class ReaderImpl implements StoreReader {
     if (key == null) {
       throw new NullPointerException("The key can't be null");
     }
+    //Accesses are recorded before the cache so the hottest keys, served by the cache, are counted on each access
+    byte[] keyBytes = null;
+    if (accessProfile != null) {
+      try {
+        keyBytes = serialization.serializeKey(key);
+      } catch (IOException ex) {
+        throw new RuntimeException(ex);
+      }
+      accessProfile.record(keyBytes);
+    }
+
     //从缓存中直接获取数据；
     K value = cache.get(key);
 
     if (value == null) {
       try {
-        //序列化key字节;根据序列化key获取value
-        byte[] valueBytes = storage.get(serialization.serializeKey(key));
+        byte[] valueBytes;
+        if (keyBytes == null && storage.isDenseKey(key)) {
+          //Dense keys are addressed directly, without serialization nor hashing
+          long position = storage.getDensePosition(((Number) key).longValue());
+          valueBytes = position == -1 ? null : storage.getBytes(position);
+        } else {
+          //序列化key字节;根据序列化key获取value
+          if (keyBytes == null) {
+            keyBytes = serialization.serializeKey(key);
+          }
+          valueBytes = storage.get(keyBytes);
+        }
         if (valueBytes != null) {
 
           //反序列化
-          Object v = serialization.deserialize(dataInputOutput.reset(valueBytes));
+          Object v = deserialize(serialization, dataInputOutput, valueBytes);
           cache.put(key, v);
           return (K) v;
         } else {
@@ -135,6 +243,614 @@ public final class ReaderImpl implements StoreReader {
     return value;
   }
 
+  @Override
+  public boolean contains(Object key) {
+    checkOpen();
+    if (key == null) {
+      throw new NullPointerException("The key can't be null");
+    }
+    try {
+      if (accessProfile == null && storage.isDenseKey(key)) {
+        return storage.getDensePosition(((Number) key).longValue()) != -1;
+      }
+      byte[] keyBytes = serialization.serializeKey(key);
+      if (accessProfile != null) {
+        accessProfile.record(keyBytes);
+      }
+      return storage.contains(keyBytes);
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  @Override
+  public long resolve(Object key) {
+    checkOpen();
+    if (key == null) {
+      throw new NullPointerException("The key can't be null");
+    }
+    try {
+      if (storage.isDenseKey(key)) {
+        return storage.getDensePosition(((Number) key).longValue());
+      }
+      return storage.getPosition(serialization.serializeKey(key));
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  @Override
+  public <K> K getByHandle(long handle) {
+    checkOpen();
+    if (!storage.isValidPosition(handle)) {
+      throw new IllegalArgumentException("Invalid handle: " + handle);
+    }
+    try {
+      return (K) deserialize(serialization, dataInputOutput, storage.getBytes(handle));
+    } catch (Exception ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  @Override
+  public int ordinal(Object key) {
+    checkOrdinals();
+    if (key == null) {
+      throw new NullPointerException("The key can't be null");
+    }
+    try {
+      return storage.getOrdinal(serialization.serializeKey(key));
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  @Override
+  public <K> K getByOrdinal(int ordinal) {
+    checkOrdinals();
+    return getByHandle(storage.getOrdinalPosition(ordinal));
+  }
+
+  @Override
+  public StoreCursor cursor() {
+    checkOpen();
+    return storage.cursor();
+  }
+
+  @Override
+  public <K, V> Spliterator<Map.Entry<K, V>> spliterator() {
+    checkOpen();
+    return new ReaderSpliterator<K, V>(config, storage, 0, storage.getSlotCount());
+  }
+
+  @Override
+  public <K, V> Stream<Map.Entry<K, V>> stream() {
+    return StreamSupport.stream(this.<K, V>spliterator(), false);
+  }
+
+  @Override
+  public <K, V> Stream<Map.Entry<K, V>> parallelStream() {
+    return StreamSupport.stream(this.<K, V>spliterator(), true);
+  }
+
+  @Override
+  public <K, V> Stream<Map.Entry<K, V>> partition(int index, int count) {
+    checkOpen();
+    if (count <= 0 || index < 0 || index >= count) {
+      throw new IllegalArgumentException("Invalid partition " + index + " of " + count);
+    }
+    long slotCount = storage.getSlotCount();
+    long start = slotCount * index / count;
+    long end = slotCount * (index + 1) / count;
+    return StreamSupport.stream(new ReaderSpliterator<K, V>(config, storage, start, end), false);
+  }
+
+  @Override
+  public <K, V> Stream<Map.Entry<K, V>> scan(Filter filter) {
+    checkOpen();
+    if (filter == null) {
+      throw new NullPointerException("The filter can't be null");
+    }
+    return StreamSupport.stream(ReaderSpliterator.<K, V>scan(config, storage, filter), false);
+  }
+
+  @Override
+  public <K, V> Stream<Map.Entry<K, V>> range(Object from, Object to) {
+    SortedKeys sortedKeys = checkSorted();
+    SortedKeys.Cursor cursor = sortedKeys.seek(from == null ? null : SortedKeys.encode(from));
+    Iterator<Map.Entry<K, V>> iterator = new SortedIterator<K, V>(cursor, to == null ? null : SortedKeys.encode(to));
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+        Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+  }
+
+  @Override
+  public <K, V> Map.Entry<K, V> floor(Object key) {
+    SortedKeys sortedKeys = checkSorted();
+    if (key == null) {
+      throw new NullPointerException("The key can't be null");
+    }
+    SortedKeys.Cursor cursor = sortedKeys.floor(SortedKeys.encode(key));
+    return cursor != null && cursor.next() ? this.<K, V>getSortedEntry(cursor) : null;
+  }
+
+  @Override
+  public <K, V> Map.Entry<K, V> ceiling(Object key) {
+    SortedKeys sortedKeys = checkSorted();
+    if (key == null) {
+      throw new NullPointerException("The key can't be null");
+    }
+    SortedKeys.Cursor cursor = sortedKeys.seek(SortedKeys.encode(key));
+    return cursor.next() ? this.<K, V>getSortedEntry(cursor) : null;
+  }
+
+  @Override
+  public <V> Stream<Map.Entry<String, V>> prefix(String prefix) {
+    KeyFst keyFst = checkFst();
+    if (prefix == null) {
+      throw new NullPointerException("The prefix can't be null");
+    }
+    Iterator<Map.Entry<String, V>> iterator =
+        new FstIterator<V>(keyFst, keyFst.prefix(prefix.getBytes(StandardCharsets.UTF_8)));
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+        Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+  }
+
+  @Override
+  public List<String> complete(String prefix, int n) {
+    KeyFst keyFst = checkFst();
+    if (prefix == null) {
+      throw new NullPointerException("The prefix can't be null");
+    }
+    List<String> keys = new ArrayList<String>();
+    KeyFst.Cursor cursor = keyFst.prefix(prefix.getBytes(StandardCharsets.UTF_8));
+    while (keys.size() < n && cursor.next()) {
+      keys.add(new String(cursor.getKey(), StandardCharsets.UTF_8));
+    }
+    return keys;
+  }
+
+  @Override
+  public <V> List<Map.Entry<String, V>> fuzzy(String key, int maxEdits) {
+    KeyFst keyFst = checkFst();
+    if (key == null) {
+      throw new NullPointerException("The key can't be null");
+    }
+    if (maxEdits < 0) {
+      throw new IllegalArgumentException("The maximum edit distance can't be negative: " + maxEdits);
+    }
+    List<Map.Entry<String, V>> entries = new ArrayList<Map.Entry<String, V>>();
+    for (Map.Entry<byte[], Long> match : keyFst.fuzzy(key, maxEdits)) {
+      entries.add(this.<V>getFstEntry(keyFst, match.getKey(), match.getValue()));
+    }
+    return entries;
+  }
+
+  @Override
+  public StoreReader namespace(String name) {
+    checkOpen();
+    if (name == null) {
+      throw new NullPointerException();
+    }
+    synchronized (namespaces) {
+      ReaderImpl view = namespaces.get(name);
+      if (view == null || !view.opened) {
+        // The namespace store is read in place from the section
+        ByteBuffer section = storage.getSection(StorageWriter.NAMESPACE_SECTION_PREFIX + name);
+        if (section == null) {
+          return null;
+        }
+        view = new ReaderImpl(config, section);
+        namespaces.put(name, view);
+      }
+      return view;
+    }
+  }
+
+  @Override
+  public List<String> namespaces() {
+    checkOpen();
+    List<String> names = new ArrayList<String>();
+    for (String section : storage.getSectionNames()) {
+      if (section.startsWith(StorageWriter.NAMESPACE_SECTION_PREFIX)) {
+        names.add(section.substring(StorageWriter.NAMESPACE_SECTION_PREFIX.length()));
+      }
+    }
+    return names;
+  }
+
+  @Override
+  public <V> Stream<V> getAll(Object key) {
+    checkOpen();
+    if (!storage.hasSection(StorageWriter.MULTIMAP_SECTION)) {
+      throw new UnsupportedOperationException(
+          "The store has been written without multimap, see `" + Configuration.MULTIMAP_ENABLED + "`");
+    }
+    try {
+      long position = getValuePosition(key);
+      if (position == -1) {
+        return Stream.empty();
+      }
+
+      // The values follow the array head and length
+      final DataInputStream values = new DataInputStream(storage.getStream(position));
+      values.readUnsignedByte();
+      final int count = LongPacker.unpackInt(values);
+      Iterator<V> iterator = new Iterator<V>() {
+        private int index;
+
+        @Override
+        public boolean hasNext() {
+          return index < count;
+        }
+
+        @Override
+        public V next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          checkOpen();
+          index++;
+          try {
+            return (V) serialization.deserialize(values);
+          } catch (Exception ex) {
+            throw new RuntimeException(ex);
+          }
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException("Not supported yet.");
+        }
+      };
+      return StreamSupport.stream(Spliterators.spliterator(iterator, count, Spliterator.ORDERED), false);
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  @Override
+  public <K> List<K> keysForValue(Object value) {
+    SortedKeys invertedIndex = checkInverted();
+    if (value == null) {
+      throw new NullPointerException("The value can't be null");
+    }
+    try {
+      byte[] term = serialization.serializeKey(value);
+      SortedKeys.Cursor cursor = invertedIndex.seek(term);
+      if (!cursor.next() || !Arrays.equals(cursor.getSortKey(), term)) {
+        return Collections.emptyList();
+      }
+
+      // The posting list holds the first global slot followed by the gaps
+      DataInputOutput postings = new DataInputOutput(cursor.getKey());
+      List<K> keys = new ArrayList<K>((int) cursor.getHandle());
+      byte[] slotBuffer = new byte[storage.getMaxSlotSize()];
+      long slot = 0;
+      while (postings.available() > 0) {
+        slot += LongPacker.unpackLong(postings);
+        int keyLength = storage.getSlotKeyLength(slot);
+        storage.readSlot(slot, keyLength, slotBuffer);
+        keys.add((K) serialization.deserialize(dataInputOutput.reset(Arrays.copyOf(slotBuffer, keyLength))));
+      }
+      return keys;
+    } catch (Exception ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  @Override
+  public <K, V> List<Map.Entry<K, V>> sample(int k, long seed) {
+    checkOpen();
+    if (k < 0) {
+      throw new IllegalArgumentException("The sample size can't be negative: " + k);
+    }
+    int size = Math.min(k, storage.getKeyCount());
+    Random random = new Random(seed);
+    long slotCount = storage.getSlotCount();
+    byte[] slotBuffer = new byte[storage.getMaxSlotSize()];
+    long[] picked;
+    if (size * 2L <= storage.getKeyCount()) {
+      //Pick random slots, each key has one slot so weighting key lengths by slots is uniform over keys
+      Set<Long> pickedSet = new HashSet<Long>();
+      picked = new long[size];
+      int count = 0;
+      while (count < size) {
+        long slot = (long) (random.nextDouble() * slotCount);
+        if (!isEmptySlot(slot, slotBuffer) && pickedSet.add(slot)) {
+          picked[count++] = slot;
+        }
+      }
+    } else {
+      //Large sample, shuffle the used slots
+      long[] used = new long[storage.getKeyCount()];
+      int count = 0;
+      for (long slot = 0; slot < slotCount; slot++) {
+        if (!isEmptySlot(slot, slotBuffer)) {
+          used[count++] = slot;
+        }
+      }
+      for (int i = 0; i < size; i++) {
+        int j = i + random.nextInt(used.length - i);
+        long tmp = used[i];
+        used[i] = used[j];
+        used[j] = tmp;
+      }
+      picked = Arrays.copyOf(used, size);
+    }
+
+    //Read entries
+    List<Map.Entry<K, V>> result = new ArrayList<Map.Entry<K, V>>(size);
+    try {
+      for (long slot : picked) {
+        int keyLength = storage.getSlotKeyLength(slot);
+        long position = storage.readSlot(slot, keyLength, slotBuffer);
+        K key = (K) serialization.deserialize(dataInputOutput.reset(Arrays.copyOf(slotBuffer, keyLength)));
+        V value = (V) serialization.deserialize(dataInputOutput.reset(storage.getBytes(position)));
+        result.add(new AbstractMap.SimpleImmutableEntry<K, V>(key, value));
+      }
+    } catch (Exception ex) {
+      throw new RuntimeException(ex);
+    }
+    return result;
+  }
+
+  @Override
+  public void writeAccessProfile(File profileFile) {
+    checkOpen();
+    if (accessProfile == null) {
+      throw new UnsupportedOperationException(
+          "The reader has been opened without access profile, see `" + Configuration.ACCESS_PROFILE_ENABLED + "`");
+    }
+    try {
+      accessProfile.write(profileFile);
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  @Override
+  public FloatBuffer getVector(Object key) {
+    VectorMatrix matrix = checkVectors();
+    if (key == null) {
+      throw new NullPointerException("The key can't be null");
+    }
+    try {
+      //Rows are in ordinal order
+      int row = storage.getOrdinal(serialization.serializeKey(key));
+      return row == -1 ? null : matrix.getView(row);
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  @Override
+  public <K> List<Map.Entry<K, Float>> topK(final float[] query, final int k, final boolean cosine) {
+    final VectorMatrix matrix = checkVectors();
+    if (query == null) {
+      throw new NullPointerException("The query can't be null");
+    }
+    if (query.length != matrix.getDimension()) {
+      throw new IllegalArgumentException(
+          "The query dimension is " + query.length + ", expected was " + matrix.getDimension());
+    }
+    if (k < 0) {
+      throw new IllegalArgumentException("The number of keys can't be negative: " + k);
+    }
+
+    //Scan the parts of the matrix concurrently, each keeps its best rows
+    int rows = matrix.getRows();
+    int parts = Math.max(1, Math.min(rows, Runtime.getRuntime().availableProcessors()));
+    List<CompletableFuture<PriorityQueue<Map.Entry<Integer, Float>>>> futures =
+        new ArrayList<CompletableFuture<PriorityQueue<Map.Entry<Integer, Float>>>>(parts);
+    for (int i = 0; i < parts; i++) {
+      final int from = (int) ((long) rows * i / parts);
+      final int to = (int) ((long) rows * (i + 1) / parts);
+      futures.add(CompletableFuture.supplyAsync(() -> matrix.topK(query, k, cosine, from, to), getExecutor()));
+    }
+    PriorityQueue<Map.Entry<Integer, Float>> heap = VectorMatrix.createHeap(k);
+    for (CompletableFuture<PriorityQueue<Map.Entry<Integer, Float>>> future : futures) {
+      for (Map.Entry<Integer, Float> entry : future.join()) {
+        heap.add(entry);
+        if (heap.size() > k) {
+          heap.poll();
+        }
+      }
+    }
+
+    //Read the keys of the best rows from the index
+    List<Map.Entry<K, Float>> result = new ArrayList<Map.Entry<K, Float>>(heap.size());
+    byte[] slotBuffer = new byte[storage.getMaxSlotSize()];
+    try {
+      while (!heap.isEmpty()) {
+        Map.Entry<Integer, Float> entry = heap.poll();
+        long slot = storage.getVectorSlot(entry.getKey());
+        int keyLength = storage.getSlotKeyLength(slot);
+        storage.readSlot(slot, keyLength, slotBuffer);
+        @SuppressWarnings("unchecked")
+        K key = (K) serialization.deserialize(dataInputOutput.reset(Arrays.copyOf(slotBuffer, keyLength)));
+        result.add(new AbstractMap.SimpleImmutableEntry<K, Float>(key, entry.getValue()));
+      }
+    } catch (Exception ex) {
+      throw new RuntimeException(ex);
+    }
+    Collections.reverse(result);
+    return result;
+  }
+
+  @Override
+  public float dot(Object key, float[] query) {
+    checkOpen();
+    if (query == null) {
+      throw new NullPointerException("The query can't be null");
+    }
+    try {
+      long position = getValuePosition(key);
+      return position == -1 ? 0f : StorageSerialization.dotSparseVector(storage.getValueBuffer(position), query);
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  @Override
+  public boolean forEachNonZero(Object key, SparseVector.Consumer consumer) {
+    checkOpen();
+    if (consumer == null) {
+      throw new NullPointerException("The consumer can't be null");
+    }
+    try {
+      long position = getValuePosition(key);
+      if (position == -1) {
+        return false;
+      }
+      StorageSerialization.forEachNonZero(storage.getValueBuffer(position), consumer);
+      return true;
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  @Override
+  public IntBuffer getIntBuffer(Object key) {
+    Object value = getArray(key, StorageSerialization.ALIGNED_INT_ARRAY);
+    if (value == null) {
+      return null;
+    } else if (value instanceof ByteBuffer) {
+      return ((ByteBuffer) value).asIntBuffer().asReadOnlyBuffer();
+    } else if (value instanceof int[]) {
+      return IntBuffer.wrap((int[]) value).asReadOnlyBuffer();
+    }
+    throw new IllegalArgumentException("The value isn't an int array");
+  }
+
+  @Override
+  public LongBuffer getLongBuffer(Object key) {
+    Object value = getArray(key, StorageSerialization.ALIGNED_LONG_ARRAY);
+    if (value == null) {
+      return null;
+    } else if (value instanceof ByteBuffer) {
+      return ((ByteBuffer) value).asLongBuffer().asReadOnlyBuffer();
+    } else if (value instanceof long[]) {
+      return LongBuffer.wrap((long[]) value).asReadOnlyBuffer();
+    }
+    throw new IllegalArgumentException("The value isn't a long array");
+  }
+
+  @Override
+  public DoubleBuffer getDoubleBuffer(Object key) {
+    Object value = getArray(key, StorageSerialization.ALIGNED_DOUBLE_ARRAY);
+    if (value == null) {
+      return null;
+    } else if (value instanceof ByteBuffer) {
+      return ((ByteBuffer) value).asDoubleBuffer().asReadOnlyBuffer();
+    } else if (value instanceof double[]) {
+      return DoubleBuffer.wrap((double[]) value).asReadOnlyBuffer();
+    }
+    throw new IllegalArgumentException("The value isn't a double array");
+  }
+
+  @Override
+  public int getInto(Object key, int[] dest, int offset) {
+    IntBuffer buffer = getIntBuffer(key);
+    if (buffer == null) {
+      return -1;
+    }
+    int length = buffer.remaining();
+    buffer.get(dest, offset, length);
+    return length;
+  }
+
+  @Override
+  public int getInto(Object key, long[] dest, int offset) {
+    LongBuffer buffer = getLongBuffer(key);
+    if (buffer == null) {
+      return -1;
+    }
+    int length = buffer.remaining();
+    buffer.get(dest, offset, length);
+    return length;
+  }
+
+  @Override
+  public int getInto(Object key, double[] dest, int offset) {
+    DoubleBuffer buffer = getDoubleBuffer(key);
+    if (buffer == null) {
+      return -1;
+    }
+    int length = buffer.remaining();
+    buffer.get(dest, offset, length);
+    return length;
+  }
+
+  @Override
+  public InputStream getStream(Object key) {
+    checkOpen();
+    if (key == null) {
+      throw new NullPointerException("The key can't be null");
+    }
+    try {
+      byte[] keyBytes = serialization.serializeKey(key);
+      if (accessProfile != null) {
+        accessProfile.record(keyBytes);
+      }
+      long position = storage.getPosition(keyBytes);
+      if (position == -1) {
+        return null;
+      }
+      return StorageSerialization.deserializeByteArrayStream(storage.getStream(position));
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  @Override
+  public <K> CompletableFuture<K> getAsync(Object key) {
+    checkOpen();
+    return getAsync(key, getExecutor());
+  }
+
+  @Override
+  public <K> CompletableFuture<K> getAsync(final Object key, Executor executor) {
+    checkOpen();
+    if (key == null) {
+      throw new NullPointerException("The key can't be null");
+    }
+    return CompletableFuture.supplyAsync(() -> {
+      Object value = lookup(key);
+      return value == Lookup.NOT_FOUND ? null : (K) value;
+    }, executor);
+  }
+
+  @Override
+  public <K, V> CompletableFuture<Map<K, V>> getAllAsync(Collection<? extends K> keys) {
+    checkOpen();
+    return getAllAsync(keys, getExecutor());
+  }
+
+  @Override
+  public <K, V> CompletableFuture<Map<K, V>> getAllAsync(Collection<? extends K> keys, Executor executor) {
+    checkOpen();
+    final List<K> keyList = new ArrayList<K>(keys);
+    final List<CompletableFuture<Object>> futures = new ArrayList<CompletableFuture<Object>>(keyList.size());
+    for (final K key : keyList) {
+      if (key == null) {
+        throw new NullPointerException("The key can't be null");
+      }
+      futures.add(CompletableFuture.supplyAsync(() -> lookup(key), executor));
+    }
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).thenApply(v -> {
+      Map<K, V> result = new LinkedHashMap<K, V>(keyList.size() * 4 / 3 + 1);
+      for (int i = 0; i < keyList.size(); i++) {
+        Object found = futures.get(i).join();
+        if (found != Lookup.NOT_FOUND) {
+          @SuppressWarnings("unchecked")
+          V value = (V) found;
+          result.put(keyList.get(i), value);
+        }
+      }
+      return result;
+    });
+  }
+
   @Override
   public int getInt(Object key, int defaultValue) {
     return get(key, defaultValue);
@@ -408,17 +1124,223 @@ public final class ReaderImpl implements StoreReader {
   @Override
   public <K, V> Iterable<Map.Entry<K, V>> iterable() {
     checkOpen();
+    if (storage.hasKeyLog()) {
+      return new ReaderIterable(storage.getKeyLogIterable(true), serialization);
+    }
     return new ReaderIterable(storage, serialization);
   }
 
   @Override
   public <K> Iterable<K> keys() {
     checkOpen();
+    if (storage.hasKeyLog()) {
+      return new ReaderKeyIterable<K>(storage.getKeyLogIterable(false), serialization);
+    }
     return new ReaderKeyIterable<K>(storage, serialization);
   }
 
   // UTILITIES
 
+  //Check whether the reader is open
+  boolean isOpen() {
+    return opened;
+  }
+
+  /**
+   * Checks whether the given global index slot is empty.
+   *
+   * @param slot global slot
+   * @param slotBuffer buffer the slot is read into
+   * @return true if the slot is empty
+   */
+  private boolean isEmptySlot(long slot, byte[] slotBuffer) {
+    return storage.readSlot(slot, storage.getSlotKeyLength(slot), slotBuffer) == -1;
+  }
+
+  //Get the data position of the value of the key, or -1 if not found
+  private long getValuePosition(Object key)
+      throws IOException {
+    if (key == null) {
+      throw new NullPointerException("The key can't be null");
+    }
+    if (accessProfile == null && storage.isDenseKey(key)) {
+      return storage.getDensePosition(((Number) key).longValue());
+    }
+    byte[] keyBytes = serialization.serializeKey(key);
+    if (accessProfile != null) {
+      accessProfile.record(keyBytes);
+    }
+    return storage.getPosition(keyBytes);
+  }
+
+  //Get a view over the content of the aligned array value of the key, the deserialized value if it isn't an
+  //aligned array of that type or null if not found
+  private Object getArray(Object key, int head) {
+    checkOpen();
+    try {
+      long position = getValuePosition(key);
+      if (position == -1) {
+        return null;
+      }
+      ByteBuffer view = StorageSerialization.getAlignedView(storage.getValueBuffer(position), head);
+      return view != null ? view : deserialize(serialization, dataInputOutput, storage.getBytes(position));
+    } catch (Exception ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  //Get the entry of the current key of the sorted keys cursor
+  private <K, V> Map.Entry<K, V> getSortedEntry(SortedKeys.Cursor cursor) {
+    try {
+      K key = (K) serialization.deserialize(dataInputOutput.reset(cursor.getKey()));
+      V value = (V) deserialize(serialization, dataInputOutput, storage.getBytes(cursor.getHandle()));
+      return new AbstractMap.SimpleImmutableEntry<K, V>(key, value);
+    } catch (Exception ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  //Get the entry of a key of the key fst
+  private <V> Map.Entry<String, V> getFstEntry(KeyFst keyFst, byte[] key, long rank) {
+    try {
+      V value = (V) deserialize(serialization, dataInputOutput, storage.getBytes(keyFst.getHandle(rank)));
+      return new AbstractMap.SimpleImmutableEntry<String, V>(new String(key, StandardCharsets.UTF_8), value);
+    } catch (Exception ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  private SortedKeys checkInverted() {
+    checkOpen();
+    SortedKeys invertedIndex = storage.getInvertedIndex();
+    if (invertedIndex == null) {
+      throw new UnsupportedOperationException(
+          "The store has been written without the inverted index, see `" + Configuration.INVERTED_INDEX_ENABLED + "`");
+    }
+    return invertedIndex;
+  }
+
+  private KeyFst checkFst() {
+    checkOpen();
+    KeyFst keyFst = storage.getKeyFst();
+    if (keyFst == null) {
+      throw new UnsupportedOperationException(
+          "The store has been written without the key fst, see `" + Configuration.FST_INDEX_ENABLED + "`");
+    }
+    return keyFst;
+  }
+
+  private SortedKeys checkSorted() {
+    checkOpen();
+    SortedKeys sortedKeys = storage.getSortedKeys();
+    if (sortedKeys == null) {
+      throw new UnsupportedOperationException(
+          "The store has been written without sorted keys, see `" + Configuration.SORTED_KEYS_ENABLED + "`");
+    }
+    return sortedKeys;
+  }
+
+  //Check that the store is open and has been written with vectors, returns the vector matrix
+  private VectorMatrix checkVectors() {
+    checkOpen();
+    VectorMatrix matrix = storage.getVectorMatrix();
+    if (matrix == null) {
+      throw new UnsupportedOperationException(
+          "The store has been written without vectors, see `" + Configuration.VECTOR_DIMENSION + "`");
+    }
+    return matrix;
+  }
+
+  /**
+   * Checks if the store is open and has been written with ordinals, throws an exception otherwise.
+   */
+  private void checkOrdinals() {
+    checkOpen();
+    if (!storage.hasOrdinals()) {
+      throw new UnsupportedOperationException(
+          "The store has been written without ordinals, see `" + Configuration.ORDINAL_ENABLED + "`");
+    }
+  }
+
+  /**
+   * Deserializes a value read by a lookup, returning the canonical instance when interning is enabled.
+   *
+   * @param serialization serialization
+   * @param dataInputOutput buffer
+   * @param valueBytes serialized value
+   * @return value
+   * @throws Exception if an error occurs
+   */
+  private Object deserialize(StorageSerialization serialization, DataInputOutput dataInputOutput, byte[] valueBytes)
+      throws Exception {
+    Object value = interner.get(valueBytes);
+    if (value == null) {
+      value = interner.put(valueBytes, serialization.deserialize(dataInputOutput.reset(valueBytes)));
+    }
+    return value;
+  }
+
+  /**
+   * Looks up <code>key</code> with a pooled storage view, can be called concurrently.
+   *
+   * @param key key to fetch
+   * @return value or <code>Lookup.NOT_FOUND</code>
+   */
+  private Object lookup(Object key) {
+    Lookup lookup = lookups.poll();
+    if (lookup == null) {
+      lookup = new Lookup(storage.duplicate(), new StorageSerialization(config));
+    }
+    try {
+      byte[] keyBytes = lookup.serialization.serializeKey(key);
+      if (accessProfile != null) {
+        accessProfile.record(keyBytes);
+      }
+      byte[] valueBytes = lookup.storage.get(keyBytes);
+      Object value = Lookup.NOT_FOUND;
+      if (valueBytes != null) {
+        value = deserialize(lookup.serialization, lookup.dataInputOutput, valueBytes);
+      }
+      return value;
+    } catch (Exception ex) {
+      throw new RuntimeException(ex);
+    } finally {
+      // Buffers are reset on each use so the view is pooled back even after a failure
+      lookups.offer(lookup);
+    }
+  }
+
+  /**
+   * Gets the asynchronous lookups executor, creating it if needed.
+   * <p>
+   * A fixed pool is used when <code>async.threads</code> is positive, virtual threads otherwise when the JVM
+   * supports them.
+   *
+   * @return executor
+   */
+  private ExecutorService getExecutor() {
+    ExecutorService result = executor;
+    if (result == null) {
+      synchronized (this) {
+        result = executor;
+        if (result == null) {
+          int threads = config.getInt(Configuration.ASYNC_THREADS);
+          if (threads > 0) {
+            result = Executors.newFixedThreadPool(threads, new AsyncThreadFactory());
+          } else {
+            try {
+              result = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (Exception ex) {
+              result = Executors.newCachedThreadPool(new AsyncThreadFactory());
+            }
+          }
+          executor = result;
+        }
+      }
+    }
+    return result;
+  }
+
   /**
    * Checks if the store is open and throws an exception otherwise.
    */
@@ -427,4 +1349,116 @@ public final class ReaderImpl implements StoreReader {
       throw new IllegalStateException("The store is closed");
     }
   }
+
+  /**
+   * Storage view and buffers used by a single asynchronous lookup at a time.
+   */
+  private static final class Lookup {
+
+    // Marker for keys not found
+    private static final Object NOT_FOUND = new Object();
+
+    private final StorageReader storage;
+    private final StorageSerialization serialization;
+    private final DataInputOutput dataInputOutput = new DataInputOutput();
+
+    private Lookup(StorageReader storage, StorageSerialization serialization) {
+      this.storage = storage;
+      this.serialization = serialization;
+    }
+  }
+
+  /**
+   * Iterator over the sorted keys up to an encoded key, exclusive.
+   */
+  private final class SortedIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+
+    private final SortedKeys.Cursor cursor;
+    // Encoded upper bound, null if unbounded
+    private final byte[] to;
+    // Whether the cursor is on the next entry, null if not known yet
+    private Boolean hasNext;
+
+    private SortedIterator(SortedKeys.Cursor cursor, byte[] to) {
+      this.cursor = cursor;
+      this.to = to;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (hasNext == null) {
+        hasNext = cursor.next() && (to == null || SortedKeys.compare(cursor.getSortKey(), to) < 0);
+      }
+      return hasNext;
+    }
+
+    @Override
+    public Map.Entry<K, V> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      hasNext = null;
+      checkOpen();
+      return getSortedEntry(cursor);
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Not supported yet.");
+    }
+  }
+
+  /**
+   * Iterator over the keys of a key fst cursor.
+   */
+  private final class FstIterator<V> implements Iterator<Map.Entry<String, V>> {
+
+    private final KeyFst keyFst;
+    private final KeyFst.Cursor cursor;
+    // Whether the cursor is on the next entry, null if not known yet
+    private Boolean hasNext;
+
+    private FstIterator(KeyFst keyFst, KeyFst.Cursor cursor) {
+      this.keyFst = keyFst;
+      this.cursor = cursor;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (hasNext == null) {
+        hasNext = cursor.next();
+      }
+      return hasNext;
+    }
+
+    @Override
+    public Map.Entry<String, V> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      hasNext = null;
+      checkOpen();
+      return getFstEntry(keyFst, cursor.getKey(), cursor.getRank());
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Not supported yet.");
+    }
+  }
+
+  /**
+   * Daemon thread factory for the asynchronous lookups executor.
+   */
+  private static final class AsyncThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "paldb-async-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
 }
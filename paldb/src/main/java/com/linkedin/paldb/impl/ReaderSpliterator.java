@@ -0,0 +1,318 @@
+/*
+* Copyright 2015 LinkedIn Corp. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*/
+
+package com.linkedin.paldb.impl;
+
+import com.linkedin.paldb.api.Configuration;
+import com.linkedin.paldb.api.Filter;
+import com.linkedin.paldb.utils.DataInputOutput;
+import java.util.AbstractMap;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+
+/**
+ * Store spliterator over a range of index slots.
+ * <p>
+ * The index slots of all key lengths form a single range, splits are made at key length boundaries when possible so
+ * their size is exact, and in the middle of the slot range otherwise. Each split reads with its own storage view and
+ * serialization, created when the traversal starts, so splits can be traversed in parallel.
+ * <p>
+ * With a filter, keys and values are tested in their serialized form before being deserialized. Value ranges on
+ * stores with a zone map are read in value order instead, over the zone rows of the blocks overlapping the range.
+ */
+public final class ReaderSpliterator<K, V> implements Spliterator<Map.Entry<K, V>> {
+
+  // Minimum number of slots of a split
+  private final static int MIN_SPLIT_SLOTS = 1024;
+
+  // Configuration
+  private final Configuration config;
+  // Storage views are created from this reader
+  private final StorageReader source;
+  // Slot range, or zone row range when reading in value order
+  private long slot;
+  private final long endSlot;
+  // Whether the range is over zone rows
+  private final boolean rows;
+  // Optional filter
+  private final Filter filter;
+  // Exact number of remaining entries or -1 if unknown
+  private long remaining;
+  // Traversal state, created on first use
+  private StorageReader storage;
+  private StorageSerialization serialization;
+  private DataInputOutput dataInputOutput;
+  private byte[] slotBuffer;
+  private int keyLength;
+  private long keyLengthEndSlot;
+  private StorageFilter storageFilter;
+  private ByteBuffer zoneSlots;
+
+  /**
+   * Constructor.
+   *
+   * @param config configuration
+   * @param source storage to create views from
+   * @param startSlot first global slot
+   * @param endSlot end global slot, exclusive
+   */
+  ReaderSpliterator(Configuration config, StorageReader source, long startSlot, long endSlot) {
+    this(config, source, startSlot, endSlot, null);
+  }
+
+  /**
+   * Constructor with filter.
+   *
+   * @param config configuration
+   * @param source storage to create views from
+   * @param startSlot first global slot
+   * @param endSlot end global slot, exclusive
+   * @param filter filter the entries must match, or null
+   */
+  ReaderSpliterator(Configuration config, StorageReader source, long startSlot, long endSlot, Filter filter) {
+    this(config, source, startSlot, endSlot, filter, false);
+  }
+
+  /**
+   * Private constructor.
+   *
+   * @param config configuration
+   * @param source storage to create views from
+   * @param start first global slot or zone row
+   * @param end end global slot or zone row, exclusive
+   * @param filter filter the entries must match, or null
+   * @param rows whether the range is over zone rows
+   */
+  private ReaderSpliterator(Configuration config, StorageReader source, long start, long end, Filter filter,
+      boolean rows) {
+    this.config = config;
+    this.source = source;
+    this.slot = start;
+    this.endSlot = end;
+    this.filter = filter;
+    this.rows = rows;
+    this.remaining = filter == null ? countEntries(source, start, end) : -1;
+  }
+
+  /**
+   * Creates a spliterator over the entries matching <code>filter</code>.
+   * <p>
+   * When the filter has a value range and the store has a zone map, only the zone rows of the blocks overlapping
+   * the range are read. The blocks hold sorted values so they're found with a binary search on their bounds.
+   *
+   * @param config configuration
+   * @param source storage to create views from
+   * @param filter filter the entries must match
+   * @param <K> key type
+   * @param <V> value type
+   * @return new spliterator
+   */
+  static <K, V> ReaderSpliterator<K, V> scan(Configuration config, StorageReader source, Filter filter) {
+    if (!filter.hasValueRange() || !source.hasSection(StorageWriter.ZONE_SLOTS_SECTION)) {
+      return new ReaderSpliterator<K, V>(config, source, 0, source.getSlotCount(), filter);
+    }
+    ByteBuffer zoneMap = source.getSection(StorageWriter.ZONE_MAP_SECTION);
+    int blockSize = zoneMap.getInt(0);
+    int blockCount = (zoneMap.limit() - (Integer.SIZE / Byte.SIZE)) / (2 * (Long.SIZE / Byte.SIZE));
+    long rowCount = source.getSection(StorageWriter.ZONE_SLOTS_SECTION).limit() / (Long.SIZE / Byte.SIZE);
+
+    //First block whose max is in the range and first block after it whose min is above the range
+    int low = 0;
+    int high = blockCount;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (getBlockBound(zoneMap, mid, true) < filter.getMinValue()) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    int startBlock = low;
+    high = blockCount;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (getBlockBound(zoneMap, mid, false) <= filter.getMaxValue()) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    long start = (long) startBlock * blockSize;
+    long end = Math.max(start, Math.min((long) low * blockSize, rowCount));
+    return new ReaderSpliterator<K, V>(config, source, start, end, filter, true);
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super Map.Entry<K, V>> action) {
+    if (storage == null) {
+      start();
+    }
+    while (slot < endSlot) {
+      long globalSlot = slot++;
+      if (rows) {
+        globalSlot = zoneSlots.getLong((int) (globalSlot * (Long.SIZE / Byte.SIZE)));
+        keyLength = storage.getSlotKeyLength(globalSlot);
+      } else if (globalSlot >= keyLengthEndSlot) {
+        nextKeyLength(globalSlot);
+      }
+      long position = storage.readSlot(globalSlot, keyLength, slotBuffer);
+      if (position != -1) {
+        byte[] value = null;
+        if (storageFilter != null) {
+          if (!storageFilter.testKey(slotBuffer, keyLength)) {
+            continue;
+          }
+          if (storageFilter.hasValueTest()) {
+            value = readValue(position);
+            if (!storageFilter.testValue(value)) {
+              continue;
+            }
+          }
+        }
+        action.accept(readEntry(value != null ? value : readValue(position)));
+        if (remaining > 0) {
+          remaining--;
+        }
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public Spliterator<Map.Entry<K, V>> trySplit() {
+    //Only unstarted ranges are split
+    if (storage != null || endSlot - slot < 2 * MIN_SPLIT_SLOTS) {
+      return null;
+    }
+    //Prefer the key length boundary closest to the middle, if it's not too far, zone rows are split in the middle
+    long middle = slot + (endSlot - slot) / 2;
+    long split = middle;
+    long bestDistance = (endSlot - slot) / 4 + 1;
+    for (int i = 0; !rows && i <= source.getMaxKeyLength(); i++) {
+      long start = source.getSlotStart(i);
+      long distance = Math.abs(start - middle);
+      if (source.getSlots(i) > 0 && start > slot && start < endSlot && distance < bestDistance) {
+        split = start;
+        bestDistance = distance;
+      }
+    }
+    ReaderSpliterator<K, V> prefix = new ReaderSpliterator<K, V>(config, source, slot, split, filter, rows);
+    slot = split;
+    remaining = filter == null ? countEntries(source, slot, endSlot) : -1;
+    return prefix;
+  }
+
+  @Override
+  public long estimateSize() {
+    if (remaining >= 0) {
+      return remaining;
+    }
+    //Zone rows all have a value, the estimate is an upper bound
+    if (rows) {
+      return endSlot - slot;
+    }
+    //Estimate with the load of each key length
+    double estimate = 0;
+    for (int i = 0; i <= source.getMaxKeyLength(); i++) {
+      long overlap = getOverlap(source, i, slot, endSlot);
+      if (overlap > 0) {
+        estimate += source.getKeyCount(i) * (overlap / (double) source.getSlots(i));
+      }
+    }
+    return Math.round(estimate);
+  }
+
+  @Override
+  public int characteristics() {
+    return (remaining >= 0 ? SIZED : 0) | DISTINCT | NONNULL | IMMUTABLE;
+  }
+
+  // UTILITIES
+
+  //Create the storage view and buffers
+  private void start() {
+    storage = source.duplicate();
+    serialization = new StorageSerialization(config);
+    dataInputOutput = new DataInputOutput();
+    slotBuffer = new byte[Math.max(1, storage.getMaxSlotSize())];
+    if (rows) {
+      zoneSlots = storage.getSection(StorageWriter.ZONE_SLOTS_SECTION);
+    } else if (slot < endSlot) {
+      nextKeyLength(slot);
+    }
+    if (filter != null) {
+      storageFilter = new StorageFilter(filter, serialization);
+    }
+  }
+
+  //Move to the key length of the given slot
+  private void nextKeyLength(long globalSlot) {
+    keyLength = storage.getSlotKeyLength(globalSlot);
+    keyLengthEndSlot = storage.getSlotStart(keyLength) + storage.getSlots(keyLength);
+  }
+
+  //Get the min or max value of a zone map block
+  private static double getBlockBound(ByteBuffer zoneMap, int block, boolean max) {
+    int offset = (Integer.SIZE / Byte.SIZE) + block * 2 * (Long.SIZE / Byte.SIZE);
+    return zoneMap.getDouble(max ? offset + (Long.SIZE / Byte.SIZE) : offset);
+  }
+
+  //Read the value bytes at the data position
+  private byte[] readValue(long position) {
+    try {
+      return storage.getBytes(position);
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  //Deserialize the entry of the slot in the slot buffer and its value bytes
+  private Map.Entry<K, V> readEntry(byte[] valueBytes) {
+    try {
+      K key = (K) serialization.deserialize(dataInputOutput.reset(Arrays.copyOf(slotBuffer, keyLength)));
+      V value = (V) serialization.deserialize(dataInputOutput.reset(valueBytes));
+      return new AbstractMap.SimpleImmutableEntry<K, V>(key, value);
+    } catch (Exception ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  //Count the entries in the slot range if it only covers full key lengths, -1 otherwise
+  private static long countEntries(StorageReader storage, long startSlot, long endSlot) {
+    long count = 0;
+    for (int i = 0; i <= storage.getMaxKeyLength(); i++) {
+      long overlap = getOverlap(storage, i, startSlot, endSlot);
+      if (overlap > 0) {
+        if (overlap != storage.getSlots(i)) {
+          return -1;
+        }
+        count += storage.getKeyCount(i);
+      }
+    }
+    return count;
+  }
+
+  //Get the number of slots of the key length within the slot range
+  private static long getOverlap(StorageReader storage, int keyLength, long startSlot, long endSlot) {
+    long start = storage.getSlotStart(keyLength);
+    long end = start + storage.getSlots(keyLength);
+    return Math.max(0, Math.min(end, endSlot) - Math.max(start, startSlot));
+  }
+}
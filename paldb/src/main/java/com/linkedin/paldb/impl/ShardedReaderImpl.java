@@ -0,0 +1,214 @@
+/*
+* Copyright 2015 LinkedIn Corp. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*/
+
+package com.linkedin.paldb.impl;
+
+import com.linkedin.paldb.api.Configuration;
+import com.linkedin.paldb.api.ShardedStoreReader;
+import com.linkedin.paldb.api.StoreReader;
+import com.linkedin.paldb.utils.HashUtils;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+
+/**
+ * Sharded store reader implementation.
+ */
+public final class ShardedReaderImpl implements ShardedStoreReader {
+
+  // Logger
+  private final static Logger LOGGER = Logger.getLogger(ShardedReaderImpl.class.getName());
+  // Configuration
+  private final Configuration config;
+  // Shard readers
+  private final ReaderImpl[] shards;
+  // Serialization
+  private final StorageSerialization serialization;
+  // Routing hash
+  private final HashUtils hashUtils;
+  // Opened?
+  private boolean opened;
+
+  /**
+   * Folder constructor.
+   *
+   * @param config configuration
+   * @param folder store folder
+   */
+  ShardedReaderImpl(Configuration config, File folder) {
+    this.config = config;
+
+    // Open the shards listed in the manifest
+    final Shards.Manifest manifest;
+    try {
+      manifest = Shards.readManifest(folder);
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+    LOGGER.log(Level.INFO, "Opening {0} shard readers", manifest.files.length);
+    serialization = new StorageSerialization(config);
+    hashUtils = new HashUtils(manifest.seed);
+    shards = new ReaderImpl[manifest.files.length];
+    try {
+      Shards.runAll(config, shards.length, shard -> shards[shard] = new ReaderImpl(config, manifest.files[shard]));
+    } catch (RuntimeException ex) {
+      closeShards();
+      throw ex;
+    }
+    opened = true;
+  }
+
+  @Override
+  public void close() {
+    checkOpen();
+    LOGGER.log(Level.INFO, "Closing sharded reader");
+    opened = false;
+    closeShards();
+  }
+
+  @Override
+  public Configuration getConfiguration() {
+    return config;
+  }
+
+  @Override
+  public int getShardCount() {
+    return shards.length;
+  }
+
+  @Override
+  public StoreReader getShard(int shard) {
+    checkOpen();
+    return shards[shard];
+  }
+
+  @Override
+  public StoreReader getShardFor(Object key) {
+    checkOpen();
+    return shards[getShardIndex(key)];
+  }
+
+  @Override
+  public long size() {
+    checkOpen();
+    long size = 0;
+    for (ReaderImpl shard : shards) {
+      size += shard.size();
+    }
+    return size;
+  }
+
+  @Override
+  public <K> K get(Object key) {
+    return get(key, null);
+  }
+
+  @Override
+  public <K> K get(Object key, K defaultValue) {
+    return getShardFor(key).get(key, defaultValue);
+  }
+
+  @Override
+  public boolean contains(Object key) {
+    return getShardFor(key).contains(key);
+  }
+
+  @Override
+  public <V> Stream<V> getAll(Object key) {
+    return getShardFor(key).getAll(key);
+  }
+
+  @Override
+  public <K, V> CompletableFuture<Map<K, V>> getAllAsync(Collection<? extends K> keys) {
+    return getAllAsync(keys, null);
+  }
+
+  @Override
+  public <K, V> CompletableFuture<Map<K, V>> getAllAsync(Collection<? extends K> keys, Executor executor) {
+    checkOpen();
+    // Group the keys by shard
+    final List<K> keyList = new ArrayList<K>(keys);
+    final int[] keyShards = new int[keyList.size()];
+    List<List<K>> shardKeys = new ArrayList<List<K>>(shards.length);
+    for (int i = 0; i < shards.length; i++) {
+      shardKeys.add(new ArrayList<K>());
+    }
+    for (int i = 0; i < keyList.size(); i++) {
+      keyShards[i] = getShardIndex(keyList.get(i));
+      shardKeys.get(keyShards[i]).add(keyList.get(i));
+    }
+
+    // Look up the shards concurrently and merge the results in key order
+    final List<CompletableFuture<Map<K, V>>> futures = new ArrayList<CompletableFuture<Map<K, V>>>(shards.length);
+    for (int i = 0; i < shards.length; i++) {
+      List<K> group = shardKeys.get(i);
+      if (group.isEmpty()) {
+        futures.add(CompletableFuture.<Map<K, V>>completedFuture(null));
+      } else if (executor != null) {
+        futures.add(shards[i].<K, V>getAllAsync(group, executor));
+      } else {
+        futures.add(shards[i].<K, V>getAllAsync(group));
+      }
+    }
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).thenApply(v -> {
+      Map<K, V> result = new LinkedHashMap<K, V>(keyList.size() * 4 / 3 + 1);
+      for (int i = 0; i < keyList.size(); i++) {
+        Map<K, V> shardResult = futures.get(keyShards[i]).join();
+        K key = keyList.get(i);
+        V value = shardResult.get(key);
+        if (value != null || shardResult.containsKey(key)) {
+          result.put(key, value);
+        }
+      }
+      return result;
+    });
+  }
+
+  // UTILITIES
+
+  private int getShardIndex(Object key) {
+    if (key == null) {
+      throw new NullPointerException("The key can't be null");
+    }
+    try {
+      return Shards.getShard(hashUtils, serialization.serializeKey(key), shards.length);
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  private void closeShards() {
+    for (ReaderImpl shard : shards) {
+      if (shard != null && shard.isOpen()) {
+        shard.close();
+      }
+    }
+  }
+
+  private void checkOpen() {
+    if (!opened) {
+      throw new IllegalStateException("The store is closed");
+    }
+  }
+}
@@ -0,0 +1,189 @@
+/*
+* Copyright 2015 LinkedIn Corp. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*/
+
+package com.linkedin.paldb.impl;
+
+import com.linkedin.paldb.api.Configuration;
+import com.linkedin.paldb.api.StoreWriter;
+import com.linkedin.paldb.utils.HashUtils;
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Sharded store writer implementation.
+ * <p>
+ * Keys are routed by hash to a store writer per shard, the shards are built in parallel on close and the manifest is
+ * written last.
+ */
+public final class ShardedWriterImpl implements StoreWriter {
+
+  // Logger
+  private final static Logger LOGGER = Logger.getLogger(ShardedWriterImpl.class.getName());
+  // Configuration
+  private final Configuration config;
+  // Store folder
+  private final File folder;
+  // Shard files
+  private final File[] files;
+  // Shard writers
+  private final WriterImpl[] shards;
+  // Serialization
+  private final StorageSerialization serialization;
+  // Routing hash
+  private final HashUtils hashUtils = new HashUtils(Shards.HASH_SEED);
+  // Opened?
+  private boolean opened;
+
+  /**
+   * Folder constructor.
+   *
+   * @param config configuration
+   * @param folder store folder
+   * @param shardCount number of shards
+   */
+  ShardedWriterImpl(Configuration config, File folder, int shardCount)
+      throws IOException {
+    if (shardCount <= 0) {
+      throw new IllegalArgumentException("Illegal shard count = " + shardCount + ", should be positive");
+    }
+    this.config = config;
+    this.folder = folder;
+
+    // Open shards
+    LOGGER.log(Level.INFO, "Opening {0} shard writers", shardCount);
+    serialization = new StorageSerialization(config);
+    files = new File[shardCount];
+    shards = new WriterImpl[shardCount];
+    try {
+      for (int i = 0; i < shardCount; i++) {
+        files[i] = new File(folder, Shards.getFileName(i));
+        shards[i] = new WriterImpl(config, files[i]);
+      }
+    } catch (IOException | RuntimeException ex) {
+      // Release the temporary folders of the shards already opened and delete their files
+      for (int i = 0; i < shardCount && shards[i] != null; i++) {
+        try {
+          shards[i].close();
+        } catch (RuntimeException closeEx) {
+          ex.addSuppressed(closeEx);
+        }
+        files[i].delete();
+      }
+      throw ex;
+    }
+    opened = true;
+  }
+
+  @Override
+  public void close() {
+    checkOpen();
+    opened = false;
+    LOGGER.log(Level.INFO, "Closing sharded writer, writing to folder at " + folder.getAbsolutePath());
+    Shards.runAll(config, shards.length, shard -> shards[shard].close());
+    try {
+      Shards.writeManifest(folder, Shards.HASH_SEED, files);
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  @Override
+  public Configuration getConfiguration() {
+    return config;
+  }
+
+  @Override
+  public void put(Object key, Object value) {
+    checkOpen();
+    if (key == null) {
+      throw new NullPointerException();
+    }
+    try {
+      byte[] keyBytes = serialization.serializeKey(key);
+      getShard(keyBytes).put(keyBytes, serialization.serializeValue(value));
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  @Override
+  public void putAll(Object[] keys, Object[] values) {
+    checkOpen();
+    if (keys == null || values == null) {
+      throw new NullPointerException();
+    }
+    if (keys.length != values.length) {
+      throw new IllegalArgumentException("Key and value collections should be the same size");
+    }
+    int size = keys.length;
+    for (int i = 0; i < size; i++) {
+      put(keys[i], values[i]);
+    }
+  }
+
+  @Override
+  public void put(byte[] key, byte[] value) {
+    checkOpen();
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    }
+    getShard(key).put(key, value);
+  }
+
+  @Override
+  public void add(Object key) {
+    checkOpen();
+    if (key == null) {
+      throw new NullPointerException();
+    }
+    getKeyShard(key).add(key);
+  }
+
+  @Override
+  public void addVector(Object key, float[] vector) {
+    checkOpen();
+    if (key == null || vector == null) {
+      throw new NullPointerException();
+    }
+    getKeyShard(key).addVector(key, vector);
+  }
+
+  @Override
+  public StoreWriter namespace(String name) {
+    throw new UnsupportedOperationException("Namespaces aren't supported by sharded stores");
+  }
+
+  // UTILITIES
+
+  private WriterImpl getKeyShard(Object key) {
+    try {
+      return getShard(serialization.serializeKey(key));
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  private WriterImpl getShard(byte[] key) {
+    return shards[Shards.getShard(hashUtils, key, shards.length)];
+  }
+
+  private void checkOpen() {
+    if (!opened) {
+      throw new IllegalStateException("The store is closed");
+    }
+  }
+}
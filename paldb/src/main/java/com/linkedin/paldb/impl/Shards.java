@@ -0,0 +1,208 @@
+/*
+* Copyright 2015 LinkedIn Corp. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*/
+
+package com.linkedin.paldb.impl;
+
+import com.linkedin.paldb.api.Configuration;
+import com.linkedin.paldb.utils.HashUtils;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * Layout and routing of sharded stores.
+ * <p>
+ * A sharded store is a folder holding one PalDB store per shard and a manifest written once all the shards are
+ * built. Keys are routed to a shard by the hash of their serialized bytes, with a seed independent of the one of the
+ * shard index so the keys of a shard still spread over its slots.
+ */
+final class Shards {
+
+  // Manifest file name, in the store folder
+  final static String MANIFEST_FILE = "manifest.paldb";
+  // Manifest header
+  private final static String MANIFEST_HEADER = "PALDB_SHARDS_V1";
+  // Seed of the routing hash
+  final static int HASH_SEED = 0x5f3759df;
+
+  private Shards() {
+  }
+
+  /**
+   * Returns the file name of a shard.
+   *
+   * @param shard shard index
+   * @return file name in the store folder
+   */
+  static String getFileName(int shard) {
+    return String.format("shard-%05d.paldb", shard);
+  }
+
+  /**
+   * Returns the shard of a serialized key.
+   *
+   * @param hashUtils hash seeded with the manifest seed
+   * @param key serialized key
+   * @param shardCount number of shards
+   * @return shard index
+   */
+  static int getShard(HashUtils hashUtils, byte[] key, int shardCount) {
+    return hashUtils.hash(key) % shardCount;
+  }
+
+  /**
+   * Writes the manifest of built shards: header, seed, shard count, creation time and name and length of each shard.
+   *
+   * @param folder store folder
+   * @param seed routing hash seed
+   * @param files shard files
+   * @throws IOException if an io error occurs
+   */
+  static void writeManifest(File folder, int seed, File[] files)
+      throws IOException {
+    DataOutputStream outputStream =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(folder, MANIFEST_FILE))));
+    try {
+      outputStream.writeUTF(MANIFEST_HEADER);
+      outputStream.writeInt(seed);
+      outputStream.writeInt(files.length);
+      outputStream.writeLong(System.currentTimeMillis());
+      for (File file : files) {
+        outputStream.writeUTF(file.getName());
+        outputStream.writeLong(file.length());
+      }
+    } finally {
+      outputStream.close();
+    }
+  }
+
+  /**
+   * Reads the manifest of a sharded store and checks the shard files.
+   *
+   * @param folder store folder
+   * @return manifest
+   * @throws IOException if an io error occurs
+   */
+  static Manifest readManifest(File folder)
+      throws IOException {
+    DataInputStream inputStream =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(new File(folder, MANIFEST_FILE))));
+    try {
+      String header = inputStream.readUTF();
+      if (!MANIFEST_HEADER.equals(header)) {
+        throw new RuntimeException(
+            "Version mismatch, expected was '" + MANIFEST_HEADER + "' and found '" + header + "'");
+      }
+      int seed = inputStream.readInt();
+      File[] files = new File[inputStream.readInt()];
+      inputStream.readLong();
+      for (int i = 0; i < files.length; i++) {
+        files[i] = new File(folder, inputStream.readUTF());
+        long length = inputStream.readLong();
+        // Catches missing or truncated shards, e.g. an incomplete copy
+        if (files[i].length() != length) {
+          throw new IllegalStateException(
+              "The shard " + files[i].getAbsolutePath() + " doesn't match the manifest, expected " + length
+                  + " bytes and found " + files[i].length());
+        }
+      }
+      return new Manifest(seed, files);
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  /**
+   * Runs <code>task</code> for each shard in parallel, on <code>shard.threads</code> threads.
+   * <p>
+   * All the tasks are waited for and the first failure is rethrown.
+   *
+   * @param config configuration
+   * @param shardCount number of shards
+   * @param task task to run
+   */
+  static void runAll(Configuration config, int shardCount, final ShardTask task) {
+    int threads = config.getInt(Configuration.SHARD_THREADS);
+    if (threads <= 0) {
+      threads = Runtime.getRuntime().availableProcessors();
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, shardCount)));
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>(shardCount);
+      for (int i = 0; i < shardCount; i++) {
+        final int shard = i;
+        futures.add(executor.submit(() -> {
+          task.run(shard);
+          return null;
+        }));
+      }
+      RuntimeException error = null;
+      for (Future<Void> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException ex) {
+          if (error == null) {
+            Throwable cause = ex.getCause();
+            error = cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+          }
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          throw new RuntimeException(ex);
+        }
+      }
+      if (error != null) {
+        throw error;
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Task run for each shard.
+   */
+  interface ShardTask {
+
+    void run(int shard)
+        throws IOException;
+  }
+
+  /**
+   * Sharded store manifest.
+   */
+  static final class Manifest {
+
+    // Routing hash seed
+    final int seed;
+    // Shard files, by shard index
+    final File[] files;
+
+    Manifest(int seed, File[] files) {
+      this.seed = seed;
+      this.files = files;
+    }
+  }
+}
@@ -0,0 +1,491 @@
+/*
+* Copyright 2015 LinkedIn Corp. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*/
+
+package com.linkedin.paldb.impl;
+
+import com.linkedin.paldb.utils.LongPacker;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+
+/**
+ * Keys in the unsigned byte order of an order preserving encoding, with a sparse block index.
+ * <p>
+ * The keys section holds for each key the encoded key length (varint) and bytes, the serialized key length (varint)
+ * and bytes and the handle of its value (varint). The blocks section holds the position in the keys section of
+ * every <code>BLOCK_SIZE</code>-th key (long), so a key is found with a binary search on the blocks and a scan of
+ * a single block.
+ * <p>
+ * Keys are ordered by type, numbers then strings then byte arrays. Integral numbers are ordered by value, as are
+ * floating point numbers, strings are ordered by code point and byte arrays by unsigned bytes.
+ */
+final class SortedKeys {
+
+  // Number of keys per block of the sparse index
+  static final int BLOCK_SIZE = 64;
+  // Encoding types
+  private static final int INTEGRAL = 0x10;
+  private static final int FLOATING_POINT = 0x11;
+  private static final int STRING = 0x20;
+  private static final int BYTE_ARRAY = 0x30;
+
+  private final ByteBuffer keys;
+  private final ByteBuffer blocks;
+  private final int blockCount;
+
+  /**
+   * Constructor.
+   *
+   * @param keys keys section
+   * @param blocks blocks section
+   */
+  SortedKeys(ByteBuffer keys, ByteBuffer blocks) {
+    this.keys = keys;
+    this.blocks = blocks;
+    this.blockCount = blocks.limit() / (Long.SIZE / Byte.SIZE);
+  }
+
+  /**
+   * Encodes the key so the unsigned byte order of encoded keys is the order of the keys.
+   *
+   * @param key key to encode
+   * @return encoded key
+   * @throws IllegalArgumentException if the key type can't be sorted
+   */
+  static byte[] encode(Object key) {
+    if (key instanceof Integer || key instanceof Long || key instanceof Short || key instanceof Byte) {
+      return encodeLong(INTEGRAL, ((Number) key).longValue() ^ Long.MIN_VALUE);
+    } else if (key instanceof Double || key instanceof Float) {
+      // Negative numbers have their bits flipped, positive numbers their sign
+      long bits = Double.doubleToLongBits(((Number) key).doubleValue());
+      return encodeLong(FLOATING_POINT, bits ^ (bits < 0 ? -1L : Long.MIN_VALUE));
+    } else if (key instanceof String) {
+      return encodeBytes(STRING, ((String) key).getBytes(StandardCharsets.UTF_8));
+    } else if (key instanceof byte[]) {
+      return encodeBytes(BYTE_ARRAY, (byte[]) key);
+    }
+    throw new IllegalArgumentException(
+        "The key type " + key.getClass().getName() + " can't be sorted, only numbers, strings and byte arrays can");
+  }
+
+  /**
+   * Decodes a floating point key encoded with <code>encode</code>.
+   *
+   * @param sortKey encoded key
+   * @return key value
+   */
+  static double decodeDouble(byte[] sortKey) {
+    long bits = ByteBuffer.wrap(sortKey, 1, Long.SIZE / Byte.SIZE).getLong();
+    return Double.longBitsToDouble(bits ^ (bits < 0 ? Long.MIN_VALUE : -1L));
+  }
+
+  /**
+   * Compares encoded keys as unsigned bytes.
+   *
+   * @param a first key
+   * @param b second key
+   * @return comparison result
+   */
+  static int compare(byte[] a, byte[] b) {
+    int length = Math.min(a.length, b.length);
+    for (int i = 0; i < length; i++) {
+      int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+      if (cmp != 0) {
+        return cmp;
+      }
+    }
+    return a.length - b.length;
+  }
+
+  /**
+   * Returns a cursor before the first key greater than or equal to <code>from</code>.
+   *
+   * @param from encoded key, null to start before the first key
+   * @return new cursor
+   */
+  Cursor seek(byte[] from) {
+    int position = getBlockPosition(from);
+    if (from != null) {
+      // Skip the smaller keys of the block
+      Cursor cursor = new Cursor(position);
+      while (cursor.next() && compare(cursor.sortKey, from) < 0) {
+        position = cursor.nextPosition;
+      }
+    }
+    return new Cursor(position);
+  }
+
+  /**
+   * Returns a cursor before the last key lower than or equal to <code>to</code>.
+   *
+   * @param to encoded key
+   * @return new cursor or null if all keys are greater
+   */
+  Cursor floor(byte[] to) {
+    int position = getBlockPosition(to);
+    int floorPosition = -1;
+    Cursor cursor = new Cursor(position);
+    while (cursor.next() && compare(cursor.sortKey, to) <= 0) {
+      floorPosition = position;
+      position = cursor.nextPosition;
+    }
+    return floorPosition == -1 ? null : new Cursor(floorPosition);
+  }
+
+  //Get the position of the last block whose first key is lower than the encoded key, or of the first block
+  private int getBlockPosition(byte[] sortKey) {
+    if (sortKey == null || blockCount == 0) {
+      return 0;
+    }
+    int low = 0;
+    int high = blockCount - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      Cursor cursor = new Cursor(getBlock(mid));
+      cursor.next();
+      if (compare(cursor.sortKey, sortKey) < 0) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return getBlock(low);
+  }
+
+  private int getBlock(int block) {
+    return (int) blocks.getLong(block * (Long.SIZE / Byte.SIZE));
+  }
+
+  private static byte[] encodeLong(int type, long value) {
+    return ByteBuffer.allocate(1 + Long.SIZE / Byte.SIZE).put((byte) type).putLong(value).array();
+  }
+
+  private static byte[] encodeBytes(int type, byte[] bytes) {
+    byte[] res = new byte[bytes.length + 1];
+    res[0] = (byte) type;
+    System.arraycopy(bytes, 0, res, 1, bytes.length);
+    return res;
+  }
+
+  /**
+   * Cursor over the keys in order, reading with absolute positions so cursors can be used concurrently.
+   */
+  final class Cursor {
+
+    // Position of the next key
+    private int nextPosition;
+    // Current key
+    private byte[] sortKey;
+    private byte[] key;
+    private long handle;
+
+    private Cursor(int nextPosition) {
+      this.nextPosition = nextPosition;
+    }
+
+    /**
+     * Moves to the next key.
+     *
+     * @return true if there is a next key, false otherwise
+     */
+    boolean next() {
+      if (nextPosition >= keys.limit()) {
+        return false;
+      }
+      ByteBuffer buffer = keys.duplicate();
+      buffer.position(nextPosition);
+      try {
+        sortKey = new byte[LongPacker.unpackInt(buffer)];
+        buffer.get(sortKey);
+        key = new byte[LongPacker.unpackInt(buffer)];
+        buffer.get(key);
+        handle = unpackLong(buffer);
+      } catch (IOException ex) {
+        throw new RuntimeException(ex);
+      }
+      nextPosition = buffer.position();
+      return true;
+    }
+
+    byte[] getSortKey() {
+      return sortKey;
+    }
+
+    byte[] getKey() {
+      return key;
+    }
+
+    long getHandle() {
+      return handle;
+    }
+  }
+
+  //Unpack a long from the buffer
+  private static long unpackLong(ByteBuffer buffer) {
+    long result = 0;
+    for (int offset = 0; offset < 64; offset += 7) {
+      long b = buffer.get();
+      result |= (b & 0x7F) << offset;
+      if ((b & 0x80) == 0) {
+        return result;
+      }
+    }
+    throw new Error("Malformed long.");
+  }
+
+  /**
+   * Builder sorting the keys, sorted runs are written to temporary files when the keys don't fit in memory and
+   * merged at the end.
+   */
+  static final class Builder {
+
+    // Default memory used by the keys before a run is written
+    private static final long RUN_MEMORY = 64L * 1024 * 1024;
+
+    private final File tempFolder;
+    private final long runMemory;
+    private final List<Record> records = new ArrayList<Record>();
+    private final List<File> runs = new ArrayList<File>();
+    private long memory;
+
+    /**
+     * Constructor.
+     *
+     * @param tempFolder folder of the sorted runs
+     */
+    Builder(File tempFolder) {
+      this(tempFolder, RUN_MEMORY);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param tempFolder folder of the sorted runs
+     * @param runMemory memory used by the keys before a run is written
+     */
+    Builder(File tempFolder, long runMemory) {
+      this.tempFolder = tempFolder;
+      this.runMemory = runMemory;
+    }
+
+    /**
+     * Adds a key.
+     *
+     * @param sortKey encoded key
+     * @param key serialized key
+     * @param handle handle of the value
+     * @throws IOException if an io error occurs
+     */
+    void add(byte[] sortKey, byte[] key, long handle)
+        throws IOException {
+      records.add(new Record(sortKey, key, handle));
+      memory += sortKey.length + key.length + 64;
+      if (memory >= runMemory) {
+        writeRun();
+      }
+    }
+
+    /**
+     * Writes the keys section and the blocks section.
+     *
+     * @param keysFile keys section file
+     * @param blocksFile blocks section file
+     * @throws IOException if an io error occurs
+     */
+    void build(File keysFile, File blocksFile)
+        throws IOException {
+      if (!runs.isEmpty() && !records.isEmpty()) {
+        writeRun();
+      }
+      DataOutputStream keysStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(keysFile)));
+      DataOutputStream blocksStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(blocksFile)));
+      try {
+        long count = 0;
+        if (runs.isEmpty()) {
+          Collections.sort(records, RECORD_COMPARATOR);
+          for (Record record : records) {
+            write(record, count++, keysStream, blocksStream);
+          }
+        } else {
+          PriorityQueue<RunReader> heap = new PriorityQueue<RunReader>(runs.size(), new Comparator<RunReader>() {
+            @Override
+            public int compare(RunReader o1, RunReader o2) {
+              return RECORD_COMPARATOR.compare(o1.record, o2.record);
+            }
+          });
+          List<RunReader> readers = new ArrayList<RunReader>();
+          try {
+            for (File run : runs) {
+              RunReader reader = new RunReader(run);
+              readers.add(reader);
+              if (reader.next()) {
+                heap.add(reader);
+              }
+            }
+            while (!heap.isEmpty()) {
+              RunReader reader = heap.poll();
+              write(reader.record, count++, keysStream, blocksStream);
+              if (reader.next()) {
+                heap.add(reader);
+              }
+            }
+          } finally {
+            for (RunReader reader : readers) {
+              reader.close();
+            }
+          }
+        }
+      } finally {
+        keysStream.close();
+        blocksStream.close();
+        for (File run : runs) {
+          run.delete();
+        }
+      }
+    }
+
+    //Write the key and the block position of every block first key
+    private static void write(Record record, long count, DataOutputStream keysStream, DataOutputStream blocksStream)
+        throws IOException {
+      if (count % BLOCK_SIZE == 0) {
+        blocksStream.writeLong(keysStream.size());
+      }
+      record.write(keysStream);
+    }
+
+    //Sort the keys in memory and write them in a run
+    private void writeRun()
+        throws IOException {
+      Collections.sort(records, RECORD_COMPARATOR);
+      // Builders can share the temporary folder
+      File run = File.createTempFile("sorted_run", ".dat", tempFolder);
+      run.deleteOnExit();
+      runs.add(run);
+      DataOutputStream runStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run)));
+      try {
+        for (Record record : records) {
+          record.write(runStream);
+        }
+      } finally {
+        runStream.close();
+      }
+      records.clear();
+      memory = 0;
+    }
+  }
+
+  private static final Comparator<Record> RECORD_COMPARATOR = new Comparator<Record>() {
+    @Override
+    public int compare(Record o1, Record o2) {
+      return SortedKeys.compare(o1.sortKey, o2.sortKey);
+    }
+  };
+
+  /**
+   * Reader of a sorted run or of a keys section file.
+   */
+  static final class RunReader {
+
+    private final DataInputStream inputStream;
+    // Current record
+    private Record record;
+
+    RunReader(File run)
+        throws IOException {
+      inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(run)));
+    }
+
+    //Read the next record, returns false at the end of the run
+    boolean next()
+        throws IOException {
+      record = Record.read(inputStream);
+      return record != null;
+    }
+
+    byte[] getSortKey() {
+      return record.sortKey;
+    }
+
+    byte[] getKey() {
+      return record.key;
+    }
+
+    long getHandle() {
+      return record.handle;
+    }
+
+    void close()
+        throws IOException {
+      inputStream.close();
+    }
+  }
+
+  /**
+   * Key with its encoded key and handle.
+   */
+  private static final class Record {
+
+    private final byte[] sortKey;
+    private final byte[] key;
+    private final long handle;
+
+    Record(byte[] sortKey, byte[] key, long handle) {
+      this.sortKey = sortKey;
+      this.key = key;
+      this.handle = handle;
+    }
+
+    void write(DataOutputStream outputStream)
+        throws IOException {
+      LongPacker.packInt(outputStream, sortKey.length);
+      outputStream.write(sortKey);
+      LongPacker.packInt(outputStream, key.length);
+      outputStream.write(key);
+      LongPacker.packLong(outputStream, handle);
+    }
+
+    //Read a record, or null at the end of the stream
+    static Record read(DataInputStream inputStream)
+        throws IOException {
+      int b = inputStream.read();
+      if (b == -1) {
+        return null;
+      }
+      // The first byte of the encoded key length has been read
+      int length = b & 0x7F;
+      for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+        b = inputStream.readUnsignedByte();
+        length |= (b & 0x7F) << shift;
+      }
+      byte[] sortKey = new byte[length];
+      inputStream.readFully(sortKey);
+      byte[] key = new byte[LongPacker.unpackInt(inputStream)];
+      inputStream.readFully(key);
+      return new Record(sortKey, key, LongPacker.unpackLong(inputStream));
+    }
+  }
+}
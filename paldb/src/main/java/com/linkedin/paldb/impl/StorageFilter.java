@@ -0,0 +1,118 @@
+/*
+* Copyright 2015 LinkedIn Corp. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*/
+
+package com.linkedin.paldb.impl;
+
+import com.linkedin.paldb.api.Filter;
+import java.io.IOException;
+import java.util.Arrays;
+
+
+/**
+ * Evaluates a <code>Filter</code> on serialized keys and values.
+ * <p>
+ * Key prefixes are compared on the serialized content, as strings and byte arrays serialize their content with a
+ * prefix-free encoding. Value types are tested on the serialized header and only numbers are deserialized.
+ */
+final class StorageFilter {
+
+  private final Filter filter;
+  private final StorageSerialization serialization;
+  // Serialized prefix header and content, header is -1 without prefix
+  private final int prefixHead;
+  private final byte[] prefixContent;
+
+  /**
+   * Constructor.
+   *
+   * @param filter filter to evaluate
+   * @param serialization serialization
+   */
+  StorageFilter(Filter filter, StorageSerialization serialization) {
+    this.filter = filter;
+    this.serialization = serialization;
+    Object prefix = filter.getKeyPrefix();
+    if (prefix != null) {
+      try {
+        byte[] bytes = serialization.serialize(prefix);
+        prefixHead = prefix instanceof String ? StorageSerialization.STRING : StorageSerialization.BYTE_ARRAY;
+        prefixContent = Arrays.copyOfRange(bytes, StorageSerialization.getContentPosition(bytes, bytes.length),
+            bytes.length);
+      } catch (IOException ex) {
+        throw new RuntimeException(ex);
+      }
+    } else {
+      prefixHead = -1;
+      prefixContent = null;
+    }
+  }
+
+  /**
+   * Returns true if the filter tests values.
+   *
+   * @return true if values are needed
+   */
+  boolean hasValueTest() {
+    return filter.getValueType() != null || filter.hasValueRange();
+  }
+
+  /**
+   * Tests a serialized key.
+   *
+   * @param key buffer holding the serialized key
+   * @param keyLength serialized key length
+   * @return true if the key matches
+   */
+  boolean testKey(byte[] key, int keyLength) {
+    if (prefixHead == -1) {
+      return true;
+    }
+    int head = key[0] & 0xff;
+    if (prefixHead == StorageSerialization.STRING ? head != StorageSerialization.STRING
+        && head != StorageSerialization.STRING_EMPTY : head != StorageSerialization.BYTE_ARRAY) {
+      return false;
+    }
+    int position = StorageSerialization.getContentPosition(key, keyLength);
+    if (keyLength - position < prefixContent.length) {
+      return false;
+    }
+    for (int i = 0; i < prefixContent.length; i++) {
+      if (key[position + i] != prefixContent[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Tests a serialized value.
+   *
+   * @param value serialized value
+   * @return true if the value matches
+   */
+  boolean testValue(byte[] value) {
+    Class<?> valueType = filter.getValueType();
+    if (valueType != null) {
+      Class<?> type = value.length > 0 ? StorageSerialization.getType(value[0] & 0xff) : null;
+      if (type == null || !valueType.isAssignableFrom(type)) {
+        return false;
+      }
+    }
+    if (filter.hasValueRange()) {
+      double number = serialization.getNumber(value);
+      return number >= filter.getMinValue() && number <= filter.getMaxValue();
+    }
+    return true;
+  }
+}
@@ -0,0 +1,137 @@
+/*
+* Copyright 2015 LinkedIn Corp. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*/
+
+package com.linkedin.paldb.impl;
+
+import com.linkedin.paldb.api.Configuration;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Canonical map of string values keyed by their serialized bytes.
+ * <dl>
+ *   <dt>The interner can be configured with the following properties:</dt>
+ *   <dd><code>intern.enabled</code> - interning enabled</dd>
+ *   <dd><code>intern.max.entries</code> - maximum number of canonical values</dd>
+ * </dl>
+ * <p>
+ * Identical values share a single instance and values already interned are returned without being decoded. Only
+ * <code>String</code> and <code>String[]</code> values are interned, once the map is full new values are returned
+ * as is. The map can be used concurrently.
+ */
+public class StorageInterner {
+
+  /**
+   * Factory to create and initialize the interner.
+   *
+   * @param configuration configuration
+   * @return new interner
+   */
+  static StorageInterner initInterner(Configuration configuration) {
+    if (configuration.getBoolean(Configuration.INTERN_ENABLED)
+        && configuration.getInt(Configuration.INTERN_MAX_ENTRIES) > 0) {
+      return new StorageInterner(configuration.getInt(Configuration.INTERN_MAX_ENTRIES));
+    } else {
+      return new DisabledInterner();
+    }
+  }
+
+  // Canonical values
+  private final ConcurrentMap<ByteBuffer, Object> values;
+  // Maximum number of values
+  private final int maxEntries;
+
+  /**
+   * Constructor.
+   *
+   * @param maxEntries maximum number of canonical values
+   */
+  private StorageInterner(int maxEntries) {
+    this.maxEntries = maxEntries;
+    this.values = new ConcurrentHashMap<ByteBuffer, Object>();
+  }
+
+  /**
+   * Gets the canonical value for the serialized bytes.
+   *
+   * @param bytes serialized value
+   * @return canonical value or null if not interned
+   */
+  public Object get(byte[] bytes) {
+    if (!isInterned(bytes)) {
+      return null;
+    }
+    return values.get(ByteBuffer.wrap(bytes));
+  }
+
+  /**
+   * Interns the value deserialized from <code>bytes</code> and returns the canonical instance.
+   * <p>
+   * The bytes are retained by the interner and shouldn't be modified.
+   *
+   * @param bytes serialized value
+   * @param value deserialized value
+   * @return canonical value, <code>value</code> if it isn't interned
+   */
+  public Object put(byte[] bytes, Object value) {
+    if (!isInterned(bytes) || values.size() >= maxEntries) {
+      return value;
+    }
+    Object previous = values.putIfAbsent(ByteBuffer.wrap(bytes), value);
+    return previous != null ? previous : value;
+  }
+
+  /**
+   * Returns the number of canonical values.
+   *
+   * @return size
+   */
+  public int size() {
+    return values.size();
+  }
+
+  //Returns true if the serialized value type is interned
+  private static boolean isInterned(byte[] bytes) {
+    if (bytes.length == 0) {
+      return false;
+    }
+    int head = bytes[0] & 0xff;
+    return head == StorageSerialization.STRING || head == StorageSerialization.STRING_ARRAY;
+  }
+
+  /**
+   * Special disabled interner implementation.
+   */
+  private static final class DisabledInterner extends StorageInterner {
+
+    /**
+     * Constructor.
+     */
+    DisabledInterner() {
+      super(0);
+    }
+
+    @Override
+    public Object get(byte[] bytes) {
+      return null;
+    }
+
+    @Override
+    public Object put(byte[] bytes, Object value) {
+      return value;
+    }
+  }
+}
@@ -15,27 +15,37 @@
 package com.linkedin.paldb.impl;
 
 import com.linkedin.paldb.api.Configuration;
+import com.linkedin.paldb.api.StoreCursor;
+import com.linkedin.paldb.utils.ByteBufferInputStream;
 import com.linkedin.paldb.utils.DataInputOutput;
 import com.linkedin.paldb.utils.FormatVersion;
 import com.linkedin.paldb.utils.HashUtils;
 import com.linkedin.paldb.utils.LongPacker;
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
+import java.util.AbstractMap;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -75,9 +85,33 @@ public class StorageReader implements Iterable<Map.Entry<byte[], byte[]>> {
   private final long[] dataOffsets;
   // Data size
   private final long dataSize;
+  // Global position of the first slot for different key length
+  private final long[] slotStarts;
+  // Whether the values of each key length are inlined in the index slots
+  private final boolean[] inlineValues;
+  // Whether the store is a set, its keys have no data and their value is true
+  private final boolean keysOnly;
+  // Vector matrix, created on first use and shared by the views
+  private final AtomicReference<VectorMatrix> vectorMatrix;
+  // Sorted keys, null if the store hasn't been written with sorted keys
+  private final SortedKeys sortedKeys;
+  private final KeyFst keyFst;
+  private final SortedKeys invertedIndex;
+  // Dense index addressing int or long keys directly by their value, null if the store has none
+  private final ByteBuffer denseIndex;
+  private final Class<?> denseKeyType;
+  private final long denseMin;
+  private final int denseRange;
+  private final int denseHandleSize;
+  // Sections following the data, by name: position and length
+  private final Map<String, long[]> sections;
+  // Sections mapped on first use, shared between views
+  private final ConcurrentMap<String, ByteBuffer> mappedSections;
+  // Store content when loaded in memory
+  private final ByteBuffer storeBuffer;
   // Index and data buffers
-  private MappedByteBuffer indexBuffer;
-  private MappedByteBuffer[] dataBuffers;
+  private ByteBuffer indexBuffer;
+  private ByteBuffer[] dataBuffers;
   // FileChannel
   private RandomAccessFile mappedFile;
   private FileChannel channel;
@@ -89,14 +123,51 @@ public class StorageReader implements Iterable<Map.Entry<byte[], byte[]>> {
 
   private final HashUtils hashUtils;
 
+  /**
+   * File constructor.
+   * <p>
+   * The file is memory mapped unless <code>Configuration.MEMORY_LOAD_ENABLED</code> is set, in which case
+   * its content is fully loaded into a direct buffer.
+   *
+   * @param configuration configuration
+   * @param file store file
+   * @throws IOException if an io error occurs
+   */
   StorageReader(Configuration configuration, File file)
       throws IOException {
+    this(configuration, file, configuration.getBoolean(Configuration.MEMORY_LOAD_ENABLED) ? loadFile(file) : null);
+  }
+
+  /**
+   * Buffer constructor.
+   * <p>
+   * The store content is read from the buffer's position to its limit, without any copy.
+   *
+   * @param configuration configuration
+   * @param buffer buffer holding the store
+   * @throws IOException if an io error occurs
+   */
+  StorageReader(Configuration configuration, ByteBuffer buffer)
+      throws IOException {
+    this(configuration, null, buffer.slice());
+  }
+
+  /**
+   * Private constructor, at least one of <code>file</code> and <code>buffer</code> is set.
+   *
+   * @param configuration configuration
+   * @param file store file or null
+   * @param buffer in-memory store content or null
+   * @throws IOException if an io error occurs
+   */
+  private StorageReader(Configuration configuration, File file, ByteBuffer buffer)
+      throws IOException {
     path = file;
     config = configuration;
-    if (!file.exists()) {
+    if (buffer == null && !file.exists()) {
       throw new FileNotFoundException("File " + file.getAbsolutePath() + " not found");
     }
-    LOGGER.log(Level.INFO, "Opening file {0}", file.getName());
+    LOGGER.log(Level.INFO, "Opening {0}", file != null ? "file " + file.getName() : "buffer");
 
     //Config
     segmentSize = config.getLong(Configuration.MMAP_SEGMENT_SIZE);
@@ -112,7 +183,11 @@ public class StorageReader implements Iterable<Map.Entry<byte[], byte[]>> {
     //Open file and read metadata
     long createdAt = 0;
     FormatVersion formatVersion = null;
-    FileInputStream inputStream = new FileInputStream(path);
+    String[] sectionNames = new String[0];
+    long[] sectionLengths = new long[0];
+    long dataLength = -1;
+    InputStream inputStream =
+        buffer != null ? new ByteBufferInputStream(buffer.duplicate()) : new FileInputStream(path);
     DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(inputStream));
     try {
       int ignoredBytes = -2;
@@ -135,7 +210,7 @@ public class StorageReader implements Iterable<Map.Entry<byte[], byte[]>> {
       dataInputStream.readFully(versionFound, mark.length, versionFound.length - mark.length);
 
       formatVersion = FormatVersion.fromBytes(versionFound);
-      if (formatVersion == null || !formatVersion.is(FormatVersion.getLatestVersion())) {
+      if (formatVersion == null) {
         throw new RuntimeException(
                 "Version mismatch, expected was '" + FormatVersion.getLatestVersion() + "' and found '" + formatVersion
                         + "'");
@@ -178,6 +253,18 @@ public class StorageReader implements Iterable<Map.Entry<byte[], byte[]>> {
         throw new RuntimeException();
       }
 
+      //Read sections and data length
+      if (formatVersion.is(FormatVersion.PALDB_V2)) {
+        int sectionCount = dataInputStream.readInt();
+        sectionNames = new String[sectionCount];
+        sectionLengths = new long[sectionCount];
+        for (int i = 0; i < sectionCount; i++) {
+          sectionNames[i] = dataInputStream.readUTF();
+          sectionLengths[i] = dataInputStream.readLong();
+        }
+        dataLength = dataInputStream.readLong();
+      }
+
       //Read index and data offset
       indexOffset = dataInputStream.readInt() + ignoredBytes;
       dataOffset = dataInputStream.readLong() + ignoredBytes;
@@ -187,19 +274,87 @@ public class StorageReader implements Iterable<Map.Entry<byte[], byte[]>> {
       inputStream.close();
     }
 
-    //Create Mapped file in read-only mode
-    mappedFile = new RandomAccessFile(path, "r");
-    channel = mappedFile.getChannel();
-    long fileSize = path.length();
+    long fileSize;
+    if (buffer != null) {
+      //The store is already in memory, slice the index and data
+      fileSize = buffer.limit();
+      indexBuffer = slice(buffer, indexOffset, dataOffset - indexOffset);
+    } else {
+      //Create Mapped file in read-only mode
+      mappedFile = new RandomAccessFile(path, "r");
+      channel = mappedFile.getChannel();
+      fileSize = path.length();
 
-    //Create index buffer ；  索引的便宜起始位置-索引数据文件长度；
-    indexBuffer = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, dataOffset - indexOffset);
+      //Create index buffer ；  索引的便宜起始位置-索引数据文件长度；
+      indexBuffer = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, dataOffset - indexOffset);
+    }
 
     //Create data buffers
-    dataSize = fileSize - dataOffset;
+    dataSize = dataLength >= 0 ? dataLength : fileSize - dataOffset;
+
+    //Global slots, key lengths are ordered in the index
+    slotStarts = new long[maxKeyLength + 1];
+    long slotCount = 0;
+    for (int i = 0; i < slotStarts.length; i++) {
+      slotStarts[i] = slotCount;
+      slotCount += slots[i];
+    }
+
+    //Sections, mapped on first use
+    storeBuffer = buffer;
+    sections = new LinkedHashMap<String, long[]>();
+    mappedSections = new ConcurrentHashMap<String, ByteBuffer>();
+    long sectionOffset = dataOffset + dataSize;
+    for (int i = 0; i < sectionNames.length; i++) {
+      sections.put(sectionNames[i], new long[]{sectionOffset, sectionLengths[i]});
+      sectionOffset += sectionLengths[i];
+    }
+
+    keysOnly = sections.containsKey(StorageWriter.KEYS_ONLY_SECTION);
+
+    //Vector matrix, mapped on first use
+    vectorMatrix = new AtomicReference<VectorMatrix>();
+
+    //Sorted keys
+    ByteBuffer sortedKeysSection = getSection(StorageWriter.SORTED_KEYS_SECTION);
+    sortedKeys = sortedKeysSection != null
+        ? new SortedKeys(sortedKeysSection, getSection(StorageWriter.SORTED_BLOCKS_SECTION)) : null;
+
+    //Key fst
+    ByteBuffer fstIndexSection = getSection(StorageWriter.FST_INDEX_SECTION);
+    keyFst = fstIndexSection != null
+        ? new KeyFst(fstIndexSection, getSection(StorageWriter.FST_HANDLES_SECTION)) : null;
+
+    //Inverted index, the terms are sorted like keys with their posting list
+    ByteBuffer invertedTermsSection = getSection(StorageWriter.INVERTED_TERMS_SECTION);
+    invertedIndex = invertedTermsSection != null
+        ? new SortedKeys(invertedTermsSection, getSection(StorageWriter.INVERTED_BLOCKS_SECTION)) : null;
+
+    //Dense index, the header holds the key type, min, range and handle size
+    denseIndex = getSection(StorageWriter.DENSE_INDEX_SECTION);
+    if (denseIndex != null) {
+      denseKeyType = denseIndex.get(0) == 1 ? Long.class : Integer.class;
+      denseMin = denseIndex.getLong(1);
+      denseRange = denseIndex.getInt(9);
+      denseHandleSize = denseIndex.get(13);
+    } else {
+      denseKeyType = null;
+      denseMin = 0;
+      denseRange = 0;
+      denseHandleSize = 0;
+    }
+
+    //Key lengths whose values are inlined in the index slots
+    inlineValues = new boolean[maxKeyLength + 1];
+    ByteBuffer inlineValuesSection = getSection(StorageWriter.INLINE_VALUES_SECTION);
+    if (inlineValuesSection != null) {
+      for (int i = 0; i < inlineValuesSection.limit(); i += Integer.SIZE / Byte.SIZE) {
+        inlineValues[inlineValuesSection.getInt(i)] = true;
+      }
+    }
 
     //Check if data size fits in memory map limit
-    if (!config.getBoolean(Configuration.MMAP_DATA_ENABLED)) {
+    if (buffer == null && !config.getBoolean(Configuration.MMAP_DATA_ENABLED)) {
       //Use classical disk read
       mMapData = false;
       dataBuffers = null;
@@ -209,12 +364,16 @@ public class StorageReader implements Iterable<Map.Entry<byte[], byte[]>> {
 
       //Build data buffers
       int bufArraySize = (int) (dataSize / segmentSize) + ((dataSize % segmentSize != 0) ? 1 : 0);
-      dataBuffers = new MappedByteBuffer[bufArraySize];
+      dataBuffers = new ByteBuffer[bufArraySize];
       int bufIdx = 0;
       for (long offset = 0; offset < dataSize; offset += segmentSize) {
         long remainingFileSize = dataSize - offset;
         long thisSegmentSize = Math.min(segmentSize, remainingFileSize);
-        dataBuffers[bufIdx++] = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + offset, thisSegmentSize);
+        if (buffer != null) {
+          dataBuffers[bufIdx++] = slice(buffer, dataOffset + offset, thisSegmentSize);
+        } else {
+          dataBuffers[bufIdx++] = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + offset, thisSegmentSize);
+        }
       }
     }
 
@@ -230,8 +389,13 @@ public class StorageReader implements Iterable<Map.Entry<byte[], byte[]>> {
       }
     }
     statMsg.append("  Index size: " + integerFormat.format((dataOffset - indexOffset) / (1024.0 * 1024.0)) + " Mb\n");
-    statMsg.append("  Data size: " + integerFormat.format((fileSize - dataOffset) / (1024.0 * 1024.0)) + " Mb\n");
-    if (mMapData) {
+    statMsg.append("  Data size: " + integerFormat.format(dataSize / (1024.0 * 1024.0)) + " Mb\n");
+    for (Map.Entry<String, long[]> section : sections.entrySet()) {
+      statMsg.append("  Section " + section.getKey() + ": " + section.getValue()[1] + " bytes\n");
+    }
+    if (buffer != null) {
+      statMsg.append("  Store loaded in memory, " + (buffer.isDirect() ? "direct" : "heap") + " buffer");
+    } else if (mMapData) {
       statMsg.append("  Number of memory mapped data buffers: " + dataBuffers.length);
     } else {
       statMsg.append("  Memory mapped data disabled, using disk");
@@ -239,18 +403,144 @@ public class StorageReader implements Iterable<Map.Entry<byte[], byte[]>> {
     LOGGER.info(statMsg.toString());
   }
 
+  /**
+   * View constructor, shares the metadata, mappings and channel of <code>reader</code> but uses its own buffers.
+   *
+   * @param reader reader to create a view of
+   */
+  private StorageReader(StorageReader reader) {
+    path = reader.path;
+    config = reader.config;
+    segmentSize = reader.segmentSize;
+    keyCount = reader.keyCount;
+    keyCounts = reader.keyCounts;
+    slotSizes = reader.slotSizes;
+    slots = reader.slots;
+    keyLengthCount = reader.keyLengthCount;
+    maxKeyLength = reader.maxKeyLength;
+    indexOffset = reader.indexOffset;
+    indexOffsets = reader.indexOffsets;
+    dataOffset = reader.dataOffset;
+    dataOffsets = reader.dataOffsets;
+    dataSize = reader.dataSize;
+    slotStarts = reader.slotStarts;
+    inlineValues = reader.inlineValues;
+    keysOnly = reader.keysOnly;
+    vectorMatrix = reader.vectorMatrix;
+    sortedKeys = reader.sortedKeys;
+    keyFst = reader.keyFst;
+    invertedIndex = reader.invertedIndex;
+    denseIndex = reader.denseIndex;
+    denseKeyType = reader.denseKeyType;
+    denseMin = reader.denseMin;
+    denseRange = reader.denseRange;
+    denseHandleSize = reader.denseHandleSize;
+    sections = reader.sections;
+    mappedSections = reader.mappedSections;
+    storeBuffer = reader.storeBuffer;
+    mappedFile = reader.mappedFile;
+    channel = reader.channel;
+    mMapData = reader.mMapData;
+    slotBuffer = new byte[reader.slotBuffer.length];
+    hashUtils = new HashUtils();
+    indexBuffer = reader.indexBuffer.duplicate();
+    if (reader.dataBuffers != null) {
+      dataBuffers = new ByteBuffer[reader.dataBuffers.length];
+      for (int i = 0; i < dataBuffers.length; i++) {
+        dataBuffers[i] = reader.dataBuffers[i].duplicate();
+      }
+    }
+  }
+
+  /**
+   * Creates a view of this reader which can be used concurrently with it.
+   * <p>
+   * Readers aren't thread-safe as lookups move buffer positions, each thread should use its own view. Views share
+   * the underlying mappings and channel and don't need to be closed.
+   *
+   * @return new reader view
+   */
+  StorageReader duplicate() {
+    if (indexBuffer == null) {
+      throw new IllegalStateException("The store is closed");
+    }
+    return new StorageReader(this);
+  }
+
   //Get the value for the given key or null
   public byte[] get(byte[] key)
       throws IOException {
+    int slot = findSlot(key);
+    if (slot == -1) {
+      return null;
+    }
+    if (inlineValues[key.length]) {
+      //The value follows the key in the slot, no data read needed
+      return getSlotBytes(slotBuffer, key.length);
+    }
+    return getBytes(dataOffsets[key.length] + getSlotOffset(slotBuffer, key.length));
+  }
+
+  //Check whether the key is looked up in the dense index, which only holds keys of a single type
+  boolean isDenseKey(Object key) {
+    return denseIndex != null && key.getClass() == denseKeyType;
+  }
+
+  //Get the data position of the value for the given dense key or -1 if not found, a single read of the dense index
+  long getDensePosition(long key) {
+    long index = key - denseMin;
+    if (index < 0 || index >= denseRange) {
+      return -1;
+    }
+    int position = (int) (StorageWriter.DENSE_INDEX_HEADER_SIZE + index * denseHandleSize);
+    long handle = 0;
+    for (int i = 0; i < denseHandleSize; i++) {
+      handle = (handle << Byte.SIZE) | (denseIndex.get(position + i) & 0xff);
+    }
+    return handle == 0 ? -1 : handle;
+  }
+
+  //Check whether the store contains the given key, without reading its value
+  boolean contains(byte[] key) {
+    return findSlot(key) != -1;
+  }
+
+  //Get the data position of the value for the given key or -1 if not found
+  long getPosition(byte[] key) {
+    int slot = findSlot(key);
+    return slot == -1 ? -1
+        : getValuePosition(key.length, indexOffsets[key.length] + slot * slotSizes[key.length], slotBuffer);
+  }
+
+  //Get the data offset of the slot, 0 if empty
+  //Set stores slots only hold the key, serialized keys never start with a zero byte which marks empty slots
+  private long getSlotOffset(byte[] slot, int keyLength) {
+    if (keysOnly) {
+      return slot[0] == 0 ? 0 : 1;
+    }
+    return LongPacker.unpackLong(slot, keyLength);
+  }
+
+  //Get the value position of the slot at the given index position, or -1 if empty
+  //Inline values are positioned after the data, at their index position
+  private long getValuePosition(int keyLength, int indexPosition, byte[] slot) {
+    long offset = getSlotOffset(slot, keyLength);
+    if (offset == 0) {
+      return -1;
+    }
+    return inlineValues[keyLength] ? dataSize + indexPosition + keyLength : dataOffsets[keyLength] + offset;
+  }
+
+  //Find the slot of the given key or -1 if not found, the slot content is left in the slot buffer
+  private int findSlot(byte[] key) {
     int keyLength = key.length;
     if (keyLength >= slots.length || keyCounts[keyLength] == 0) {
-      return null;
+      return -1;
     }
     long hash = (long) hashUtils.hash(key);
     int numSlots = slots[keyLength];//对应key长度的桶数量
     int slotSize = slotSizes[keyLength];//桶的尺寸
     int indexOffset = indexOffsets[keyLength];//对应key长度的索引偏移
-    long dataOffset = dataOffsets[keyLength];//对应key长度的数据偏移
 
       /**
        * 使用开放寻址法是槽本身直接存放数据，在插入数据时如果key所映射到的索引已经有数据了，这说明发生了冲突，这时会寻找下一个槽，如果该槽
@@ -274,23 +564,241 @@ public class StorageReader implements Iterable<Map.Entry<byte[], byte[]>> {
       indexBuffer.get(slotBuffer, 0, slotSize);
 
       //提取偏离值
-      long offset = LongPacker.unpackLong(slotBuffer, keyLength);
+      long offset = getSlotOffset(slotBuffer, keyLength);
       if (offset == 0) {//没有数据返回
-        return null;
+        return -1;
       }
 
       //桶中的key与key是否匹配
     if (isKey(slotBuffer, key)) {
 //      if (Arrays.equals(slotBuffer,key)) {
-        //从内存获取或则从硬盘获取
-        byte[] value = mMapData ? getMMapBytes(dataOffset + offset) : getDiskBytes(dataOffset + offset);
-        return value;
+        return slot;
       }
     }
-    return null;
+    return -1;
+  }
+
+  //Get the max key length, -1 if the store is empty
+  int getMaxKeyLength() {
+    return maxKeyLength;
+  }
+
+  //Get the number of keys for the given key length
+  int getKeyCount(int keyLength) {
+    return keyCounts[keyLength];
+  }
+
+  //Get the number of slots for the given key length
+  int getSlots(int keyLength) {
+    return slots[keyLength];
+  }
+
+  //Get the global position of the first slot for the given key length
+  long getSlotStart(int keyLength) {
+    return slotStarts[keyLength];
+  }
+
+  //Get the size of the largest slot
+  int getMaxSlotSize() {
+    return slotBuffer.length;
+  }
+
+  //Get the number of slots in the index, over all key lengths
+  long getSlotCount() {
+    return maxKeyLength < 0 ? 0 : slotStarts[maxKeyLength] + slots[maxKeyLength];
+  }
+
+  //Get the key length of the given global slot
+  int getSlotKeyLength(long globalSlot) {
+    for (int i = maxKeyLength; i >= 0; i--) {
+      if (slots[i] > 0 && slotStarts[i] <= globalSlot) {
+        return i;
+      }
+    }
+    throw new IndexOutOfBoundsException("Slot " + globalSlot + " is out of range");
+  }
+
+  //Read the given global slot with the given key length into the buffer and return the data position or -1 if empty
+  long readSlot(long globalSlot, int keyLength, byte[] buffer) {
+    int slotSize = slotSizes[keyLength];
+    int indexPosition = (int) (indexOffsets[keyLength] + (globalSlot - slotStarts[keyLength]) * slotSize);
+    indexBuffer.position(indexPosition);
+    indexBuffer.get(buffer, 0, slotSize);
+    return getValuePosition(keyLength, indexPosition, buffer);
   }
 
-    /**
+  //Check whether the store has been written with ordinals
+  boolean hasOrdinals() {
+    return sections.containsKey(StorageWriter.ORDINAL_HANDLES_SECTION);
+  }
+
+  //Get the ordinal of the given key or -1 if not found
+  int getOrdinal(byte[] key) {
+    int slot = findSlot(key);
+    if (slot == -1) {
+      return -1;
+    }
+    long globalSlot = slotStarts[key.length] + slot;
+    return getSection(StorageWriter.ORDINAL_SLOTS_SECTION).getInt((int) (globalSlot * (Integer.SIZE / Byte.SIZE)));
+  }
+
+  //Get the data position of the value for the given ordinal
+  long getOrdinalPosition(int ordinal) {
+    if (ordinal < 0 || ordinal >= keyCount) {
+      throw new IndexOutOfBoundsException("Ordinal " + ordinal + " is out of range [0, " + keyCount + ")");
+    }
+    return getSection(StorageWriter.ORDINAL_HANDLES_SECTION).getLong(ordinal * (Long.SIZE / Byte.SIZE));
+  }
+
+  //Get the vector matrix or null if the store isn't a vector store, the matrix is mapped on first use
+  VectorMatrix getVectorMatrix() {
+    VectorMatrix matrix = vectorMatrix.get();
+    if (matrix == null) {
+      ByteBuffer section = getSection(StorageWriter.VECTOR_MATRIX_SECTION);
+      if (section == null) {
+        return null;
+      }
+      vectorMatrix.compareAndSet(null, new VectorMatrix(section));
+      matrix = vectorMatrix.get();
+    }
+    return matrix;
+  }
+
+  //Get the sorted keys or null if the store hasn't been written with sorted keys
+  SortedKeys getSortedKeys() {
+    return sortedKeys;
+  }
+
+  //Get the key fst or null if the store hasn't been written with the key fst
+  KeyFst getKeyFst() {
+    return keyFst;
+  }
+
+  //Get the inverted index or null if the store hasn't been written with the inverted index
+  SortedKeys getInvertedIndex() {
+    return invertedIndex;
+  }
+
+  //Get the global slot of the given vector row
+  long getVectorSlot(int row) {
+    return getSection(StorageWriter.VECTOR_ROWS_SECTION).getInt(row * (Integer.SIZE / Byte.SIZE));
+  }
+
+  //Get the names of the sections in store order
+  Collection<String> getSectionNames() {
+    return Collections.unmodifiableSet(sections.keySet());
+  }
+
+  //Check whether the store has the given section
+  boolean hasSection(String name) {
+    return sections.containsKey(name);
+  }
+
+  //Get a section following the data or null if not found, reads must use absolute positions
+  ByteBuffer getSection(String name) {
+    ByteBuffer section = mappedSections.get(name);
+    if (section == null) {
+      long[] positionAndLength = sections.get(name);
+      if (positionAndLength == null) {
+        return null;
+      }
+      if (positionAndLength[1] > Integer.MAX_VALUE) {
+        throw new IllegalStateException("The section '" + name + "' is larger than 2GB and can only be streamed");
+      }
+      try {
+        if (storeBuffer != null) {
+          section = slice(storeBuffer, positionAndLength[0], positionAndLength[1]);
+        } else {
+          section = channel.map(FileChannel.MapMode.READ_ONLY, positionAndLength[0], positionAndLength[1]);
+        }
+      } catch (IOException ex) {
+        throw new RuntimeException(ex);
+      }
+      ByteBuffer previous = mappedSections.putIfAbsent(name, section);
+      if (previous != null) {
+        section = previous;
+      }
+    }
+    return section;
+  }
+
+  //Get a sequential stream over a section or null if not found, sections of any size can be streamed
+  InputStream getSectionStream(String name) {
+    long[] positionAndLength = sections.get(name);
+    if (positionAndLength == null) {
+      return null;
+    }
+    if (storeBuffer != null) {
+      return new ByteBufferInputStream(slice(storeBuffer, positionAndLength[0], positionAndLength[1]));
+    }
+    return new BufferedInputStream(new ChannelInputStream(positionAndLength[0], positionAndLength[1]), 1 << 16);
+  }
+
+  //Check whether the data position is within the data section or the index for inline values, the first byte of
+  //each key length is reserved
+  boolean isValidPosition(long position) {
+    return position > 0 && position < dataSize + (dataOffset - indexOffset);
+  }
+
+  //Get the value at the given data position, from memory or from disk
+  byte[] getBytes(long position)
+      throws IOException {
+    if (keysOnly) {
+      return getKeysOnlyBytes();
+    }
+    if (position >= dataSize) {
+      return getIndexBytes((int) (position - dataSize));
+    }
+    return mMapData ? getMMapBytes(position) : getDiskBytes(position);
+  }
+
+  //Get a stream over the value at the given data position, the value is read in chunks and never fully loaded
+  InputStream getStream(long position)
+      throws IOException {
+    //Inline values are small and read at once
+    if (keysOnly || position >= dataSize) {
+      return new ByteArrayInputStream(getBytes(position));
+    }
+
+    //Read the size of the data
+    int maxLen = (int) Math.min(5, dataSize - position);
+    sizeBuffer.reset();
+    if (mMapData) {
+      for (int off = 0; off < maxLen; ) {
+        ByteBuffer buf = getDataBuffer(position + off);
+        int count = Math.min(maxLen - off, buf.remaining());
+        buf.get(sizeBuffer.getBuf(), off, count);
+        off += count;
+      }
+    } else {
+      readFully(ByteBuffer.wrap(sizeBuffer.getBuf(), 0, maxLen), dataOffset + position);
+    }
+    int size = LongPacker.unpackInt(sizeBuffer);
+    return new ValueInputStream(position + sizeBuffer.getPos(), size);
+  }
+
+  //Get a buffer positioned at the content of the value at the given data position, mapped values within a
+  //segment and inline values aren't copied, the buffer is shared and only valid until the next read
+  ByteBuffer getValueBuffer(long position)
+      throws IOException {
+    if (!keysOnly && position >= dataSize) {
+      indexBuffer.position((int) (position - dataSize));
+      LongPacker.unpackInt(indexBuffer);
+      return indexBuffer;
+    }
+    if (!keysOnly && mMapData) {
+      ByteBuffer buf = getDataBuffer(position);
+      if (buf.remaining() >= Math.min(5, dataSize - position)) {
+        int size = LongPacker.unpackInt(buf);
+        if (buf.remaining() >= size) {
+          return buf;
+        }
+      }
+    }
+    return ByteBuffer.wrap(getBytes(position));
+  }
+
+  /**
      *
      * @param slotBuffer  key+偏移量
      * @param key
@@ -305,11 +813,41 @@ public class StorageReader implements Iterable<Map.Entry<byte[], byte[]>> {
     return true;
   }
 
+  //Get the value of the keys of a set store
+  private static byte[] getKeysOnlyBytes() {
+    return new byte[]{StorageSerialization.BOOLEAN_TRUE};
+  }
+
+  //Get the value inlined in the slot buffer after the key
+  private static byte[] getSlotBytes(byte[] slot, int offset) {
+    int size = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = slot[offset++];
+      size |= (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return Arrays.copyOfRange(slot, offset, offset + size);
+  }
+
+  //Get the value inlined in the index at the given index position
+  private byte[] getIndexBytes(int indexPosition)
+      throws IOException {
+    indexBuffer.position(indexPosition);
+    int size = LongPacker.unpackInt(indexBuffer);
+    byte[] res = new byte[size];
+    indexBuffer.get(res, 0, size);
+    return res;
+  }
+
   //Close the reader channel
   public void close()
       throws IOException {
-    channel.close();
-    mappedFile.close();
+    if (channel != null) {
+      channel.close();
+      mappedFile.close();
+    }
     indexBuffer = null;
     dataBuffers = null;
     mappedFile = null;
@@ -379,22 +917,34 @@ public class StorageReader implements Iterable<Map.Entry<byte[], byte[]>> {
   //Get data from disk
   private byte[] getDiskBytes(long offset)
       throws IOException {
-    mappedFile.seek(dataOffset + offset);
+    long position = dataOffset + offset;
 
-    //Get size of data
-    int size = LongPacker.unpackInt(mappedFile);
+    //Get size of data, positional reads keep the channel shareable between views
+    sizeBuffer.reset();
+    readFully(ByteBuffer.wrap(sizeBuffer.getBuf(), 0, (int) Math.min(5, dataSize - offset)), position);
+    int size = LongPacker.unpackInt(sizeBuffer);
 
     //Create output bytes
     byte[] res = new byte[size];
 
     //Read data
-    if (mappedFile.read(res) == -1) {
-      throw new EOFException();
-    }
+    readFully(ByteBuffer.wrap(res), position + sizeBuffer.getPos());
 
     return res;
   }
 
+  //Fill the buffer with the channel content at the given position
+  private void readFully(ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      int count = channel.read(buffer, position);
+      if (count == -1) {
+        throw new EOFException();
+      }
+      position += count;
+    }
+  }
+
   //Return the data buffer for the given position
   private ByteBuffer getDataBuffer(long index) {
     ByteBuffer buf = dataBuffers[(int) (index / segmentSize)];
@@ -402,6 +952,42 @@ public class StorageReader implements Iterable<Map.Entry<byte[], byte[]>> {
     return buf;
   }
 
+  //Return a view of the buffer's content between the given position and length
+  private static ByteBuffer slice(ByteBuffer buffer, long position, long length) {
+    ByteBuffer view = buffer.duplicate();
+    view.position((int) position);
+    view.limit((int) (position + length));
+    return view.slice();
+  }
+
+  //Load the file content into a direct buffer
+  private static ByteBuffer loadFile(File file)
+      throws IOException {
+    if (!file.exists()) {
+      throw new FileNotFoundException("File " + file.getAbsolutePath() + " not found");
+    }
+    long size = file.length();
+    if (size > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(
+          "The `" + Configuration.MEMORY_LOAD_ENABLED + "` setting can't be used with stores larger than 2GB");
+    }
+    LOGGER.log(Level.INFO, "Loading file {0} in memory", file.getName());
+    ByteBuffer buffer = ByteBuffer.allocateDirect((int) size);
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    try {
+      FileChannel fileChannel = randomAccessFile.getChannel();
+      while (buffer.hasRemaining()) {
+        if (fileChannel.read(buffer) == -1) {
+          throw new EOFException();
+        }
+      }
+    } finally {
+      randomAccessFile.close();
+    }
+    buffer.flip();
+    return buffer;
+  }
+
   private String formatCreatedAt(long createdAt) {
     SimpleDateFormat sdf = new SimpleDateFormat("yyyy.MM.dd G 'at' HH:mm:ss z");
     Calendar cl = Calendar.getInstance();
@@ -418,6 +1004,29 @@ public class StorageReader implements Iterable<Map.Entry<byte[], byte[]>> {
     return new StorageIterator(false);
   }
 
+  //Check whether the store has been written with a key log
+  boolean hasKeyLog() {
+    return sections.containsKey(StorageWriter.KEY_LOG_SECTION);
+  }
+
+  //Get an iterable over the entries in data order, using the key log
+  Iterable<Map.Entry<byte[], byte[]>> getKeyLogIterable(final boolean withValue) {
+    return new Iterable<Map.Entry<byte[], byte[]>>() {
+      @Override
+      public Iterator<Map.Entry<byte[], byte[]>> iterator() {
+        return new KeyLogIterator(withValue);
+      }
+    };
+  }
+
+  //Create a cursor over the entries, with its own buffers
+  StoreCursor cursor() {
+    if (indexBuffer == null) {
+      throw new IllegalStateException("The store is closed");
+    }
+    return new StorageCursor();
+  }
+
   private class StorageIterator implements Iterator<Map.Entry<byte[], byte[]>> {
 
     private final FastEntry entry = new FastEntry();
@@ -462,7 +1071,7 @@ public class StorageReader implements Iterable<Map.Entry<byte[], byte[]>> {
         long offset = 0;
         while (offset == 0) {
           indexBuffer.get(currentSlotBuffer);
-          offset = LongPacker.unpackLong(currentSlotBuffer, currentKeyLength);
+          offset = getSlotOffset(currentSlotBuffer, currentKeyLength);
           currentIndexOffset += currentSlotBuffer.length;
         }
 
@@ -470,8 +1079,11 @@ public class StorageReader implements Iterable<Map.Entry<byte[], byte[]>> {
         byte[] value = null;
 
         if (withValue) {
-          long valueOffset = currentDataOffset + offset;
-          value = mMapData ? getMMapBytes(valueOffset) : getDiskBytes(valueOffset);
+          if (inlineValues[currentKeyLength]) {
+            value = getSlotBytes(currentSlotBuffer, currentKeyLength);
+          } else {
+            value = getBytes(currentDataOffset + offset);
+          }
         }
 
         entry.set(key, value);
@@ -516,4 +1128,354 @@ public class StorageReader implements Iterable<Map.Entry<byte[], byte[]>> {
       }
     }
   }
+
+  /**
+   * Input stream over a value, reads chunks from the data buffers or from the channel.
+   * <p>
+   * The stream uses its own buffer views so it stays valid while the reader is used, until the reader is closed.
+   */
+  private final class ValueInputStream extends InputStream {
+
+    // Data position of the next byte
+    private long position;
+    // Bytes left to read
+    private long remaining;
+
+    private ValueInputStream(long position, long size) {
+      this.position = position;
+      this.remaining = size;
+    }
+
+    @Override
+    public int read()
+        throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len)
+        throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (remaining == 0) {
+        return -1;
+      }
+      int count = (int) Math.min(len, remaining);
+      if (mMapData) {
+        //Don't cross segment boundaries, the next call reads from the next segment
+        ByteBuffer buf = dataBuffers[(int) (position / segmentSize)].duplicate();
+        buf.position((int) (position % segmentSize));
+        count = Math.min(count, buf.remaining());
+        buf.get(b, off, count);
+      } else {
+        count = channel.read(ByteBuffer.wrap(b, off, count), dataOffset + position);
+        if (count == -1) {
+          throw new EOFException();
+        }
+      }
+      position += count;
+      remaining -= count;
+      return count;
+    }
+
+    @Override
+    public long skip(long n) {
+      long count = Math.max(0, Math.min(n, remaining));
+      position += count;
+      remaining -= count;
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return (int) Math.min(Integer.MAX_VALUE, remaining);
+    }
+  }
+
+  /**
+   * Cursor over the index slots, keys and values are views of the index and data buffers.
+   * <p>
+   * Values are copied to a scratch buffer when read from disk or when spread over two data buffers.
+   */
+  private final class StorageCursor implements StoreCursor {
+
+    // Views, positioned on the current entry
+    private final ByteBuffer keyView;
+    private final ByteBuffer[] dataViews;
+    // Views for absolute reads, their limits aren't changed
+    private final ByteBuffer[] sizeViews;
+    private final ByteBuffer inlineView;
+    private final ByteBuffer keysOnlyView = ByteBuffer.wrap(getKeysOnlyBytes());
+    private ByteBuffer valueView;
+    // Scratch buffers
+    private final byte[] slotScratch;
+    private final ByteBuffer sizeScratch = ByteBuffer.allocate(5);
+    private ByteBuffer valueScratch = ByteBuffer.allocate(256);
+    // Position
+    private final long slotCount;
+    private long slot;
+    private int keyLength;
+    private long keyLengthEndSlot;
+
+    private StorageCursor() {
+      keyView = indexBuffer.duplicate();
+      inlineView = indexBuffer.duplicate();
+      if (mMapData) {
+        dataViews = new ByteBuffer[dataBuffers.length];
+        sizeViews = new ByteBuffer[dataBuffers.length];
+        for (int i = 0; i < dataViews.length; i++) {
+          dataViews[i] = dataBuffers[i].duplicate();
+          sizeViews[i] = dataBuffers[i].duplicate();
+        }
+      } else {
+        dataViews = null;
+        sizeViews = null;
+      }
+      slotScratch = new byte[slotBuffer.length];
+      slotCount = getSlotCount();
+    }
+
+    @Override
+    public boolean advance() {
+      while (slot < slotCount) {
+        if (slot >= keyLengthEndSlot) {
+          keyLength = getSlotKeyLength(slot);
+          keyLengthEndSlot = slotStarts[keyLength] + slots[keyLength];
+        }
+        int slotSize = slotSizes[keyLength];
+        int indexPosition = (int) (indexOffsets[keyLength] + (slot++ - slotStarts[keyLength]) * slotSize);
+        keyView.limit(keyView.capacity());
+        keyView.position(indexPosition);
+        keyView.get(slotScratch, 0, slotSize);
+        long position = getValuePosition(keyLength, indexPosition, slotScratch);
+        if (position != -1) {
+          keyView.limit(indexPosition + keyLength);
+          keyView.position(indexPosition);
+          try {
+            readValue(position);
+          } catch (IOException ex) {
+            throw new RuntimeException(ex);
+          }
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public ByteBuffer keyBuffer() {
+      return keyView;
+    }
+
+    @Override
+    public int keyLength() {
+      return keyLength;
+    }
+
+    @Override
+    public ByteBuffer valueBuffer() {
+      return valueView;
+    }
+
+    //Position the value view on the value at the given data position
+    private void readValue(long position)
+        throws IOException {
+      int size;
+      if (keysOnly) {
+        //Set store, the value is true
+        keysOnlyView.clear();
+        valueView = keysOnlyView;
+        return;
+      }
+      if (position >= dataSize) {
+        //Inline value, a view of the index
+        inlineView.limit(inlineView.capacity());
+        inlineView.position((int) (position - dataSize));
+        size = LongPacker.unpackInt(inlineView);
+        inlineView.limit(inlineView.position() + size);
+        valueView = inlineView;
+        return;
+      }
+      if (mMapData) {
+        //Read size
+        size = 0;
+        int shift = 0;
+        byte b;
+        do {
+          b = sizeViews[(int) (position / segmentSize)].get((int) (position % segmentSize));
+          size |= (b & 0x7F) << shift;
+          shift += 7;
+          position++;
+        } while ((b & 0x80) != 0);
+
+        int segment = (int) (position / segmentSize);
+        int segmentPosition = (int) (position % segmentSize);
+        if (size == 0 || segmentPosition + size <= dataViews[segment].capacity()) {
+          //Continuous value
+          valueView = dataViews[segment];
+          valueView.limit(segmentPosition + size);
+          valueView.position(segmentPosition);
+          return;
+        }
+
+        //The value is spread over multiple buffers
+        prepareScratch(size);
+        while (valueScratch.hasRemaining()) {
+          ByteBuffer buf = dataViews[(int) (position / segmentSize)];
+          buf.limit(buf.capacity());
+          buf.position((int) (position % segmentSize));
+          int count = Math.min(valueScratch.remaining(), buf.remaining());
+          buf.limit(buf.position() + count);
+          valueScratch.put(buf);
+          position += count;
+        }
+      } else {
+        //Read size and value from disk
+        sizeScratch.clear();
+        sizeScratch.limit((int) Math.min(5, dataSize - position));
+        readFully(sizeScratch, dataOffset + position);
+        sizeScratch.flip();
+        size = LongPacker.unpackInt(sizeScratch);
+        prepareScratch(size);
+        readFully(valueScratch, dataOffset + position + sizeScratch.position());
+      }
+      valueScratch.flip();
+      valueView = valueScratch;
+    }
+
+    //Clear the value scratch buffer and make sure it can hold the given size
+    private void prepareScratch(int size) {
+      if (valueScratch.capacity() < size) {
+        valueScratch = ByteBuffer.allocate(Math.max(size, valueScratch.capacity() * 2));
+      }
+      valueScratch.clear();
+      valueScratch.limit(size);
+    }
+  }
+
+  /**
+   * Input stream over a region of the channel, with positional reads so the channel stays shareable.
+   */
+  private final class ChannelInputStream extends InputStream {
+
+    // Channel position of the next byte
+    private long position;
+    // Bytes left to read
+    private long remaining;
+
+    private ChannelInputStream(long position, long length) {
+      this.position = position;
+      this.remaining = length;
+    }
+
+    @Override
+    public int read()
+        throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len)
+        throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (remaining == 0) {
+        return -1;
+      }
+      int count = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)), position);
+      if (count == -1) {
+        throw new EOFException();
+      }
+      position += count;
+      remaining -= count;
+      return count;
+    }
+
+    @Override
+    public long skip(long n) {
+      long count = Math.max(0, Math.min(n, remaining));
+      position += count;
+      remaining -= count;
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return (int) Math.min(Integer.MAX_VALUE, remaining);
+    }
+  }
+
+  /**
+   * Iterator over the key log, which holds keys and data offsets for each key length in data order.
+   * <p>
+   * Values are read front to back so scans are sequential reads, identical consecutive values are read once.
+   */
+  private final class KeyLogIterator implements Iterator<Map.Entry<byte[], byte[]>> {
+
+    private final DataInputStream keyLogStream;
+    private final boolean withValue;
+    private int currentKeyLength = -1;
+    private long keyIndex;
+    private long keyLimit;
+    private long lastPosition = -1;
+    private byte[] lastValue;
+
+    private KeyLogIterator(boolean value) {
+      withValue = value;
+      keyLogStream = new DataInputStream(getSectionStream(StorageWriter.KEY_LOG_SECTION));
+      nextKeyLength();
+    }
+
+    private void nextKeyLength() {
+      for (int i = currentKeyLength + 1; i < keyCounts.length; i++) {
+        if (keyCounts[i] > 0) {
+          currentKeyLength = i;
+          keyLimit += keyCounts[i];
+          break;
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return keyIndex < keyLimit;
+    }
+
+    @Override
+    public Map.Entry<byte[], byte[]> next() {
+      try {
+        byte[] key = new byte[currentKeyLength];
+        keyLogStream.readFully(key);
+        long position = dataOffsets[currentKeyLength] + LongPacker.unpackLong(keyLogStream);
+
+        byte[] value = null;
+        if (withValue) {
+          if (position != lastPosition) {
+            lastValue = getBytes(position);
+            lastPosition = position;
+          }
+          value = lastValue;
+        }
+
+        if (++keyIndex == keyLimit) {
+          nextKeyLength();
+          if (keyIndex == keyLimit) {
+            keyLogStream.close();
+          }
+        }
+        return new AbstractMap.SimpleImmutableEntry<byte[], byte[]>(key, value);
+      } catch (IOException ex) {
+        throw new RuntimeException(ex);
+      }
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Not supported.");
+    }
+  }
 }
@@ -16,16 +16,24 @@ package com.linkedin.paldb.impl;
 
 import com.linkedin.paldb.api.Configuration;
 import com.linkedin.paldb.api.Serializer;
+import com.linkedin.paldb.api.SparseVector;
 import com.linkedin.paldb.api.UnsupportedTypeException;
 import com.linkedin.paldb.utils.DataInputOutput;
+import com.linkedin.paldb.utils.HashUtils;
 import com.linkedin.paldb.utils.LongPacker;
+import java.io.ByteArrayInputStream;
 import java.io.DataInput;
+import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Array;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
 import org.xerial.snappy.Snappy;
 
 /**
@@ -38,6 +46,10 @@ public final class StorageSerialization {
   private final DataInputOutput dataInputOutput = new DataInputOutput();
   //Compression
   private final boolean compression;
+  //Sparse vector quantization
+  private final int sparseQuantization;
+  //Aligned primitive arrays
+  private final boolean alignedArrays;
   //Serializers
   private Serializers serializers;
 
@@ -51,6 +63,8 @@ public final class StorageSerialization {
    */
   public StorageSerialization(Configuration config) {
     this.compression = config.getBoolean(Configuration.COMPRESSION_ENABLED);
+    this.sparseQuantization = VectorMatrix.getQuantization(config.get(Configuration.SPARSE_VECTOR_QUANTIZATION, "none"));
+    this.alignedArrays = config.getBoolean(Configuration.ALIGNED_ARRAYS_ENABLED);
     this.serializers = config.getSerializers();
   }
 
@@ -92,7 +106,7 @@ public final class StorageSerialization {
   public byte[] serializeValue(Object value)
       throws IOException {
 
-    serializeObject(value, dataInputOutput.reset(), compression);
+    serializeValue(value, dataInputOutput.reset());
     return dataInputOutput.toByteArray();
   }
 
@@ -105,7 +119,11 @@ public final class StorageSerialization {
    */
   public void serializeValue(Object value, DataOutput dataOutput)
       throws IOException {
-    serializeObject(value, dataOutput, compression);
+    if (alignedArrays && (value instanceof int[] || value instanceof long[] || value instanceof double[])) {
+      serializeAlignedArray(dataOutput, value);
+    } else {
+      serializeObject(value, dataOutput, compression);
+    }
   }
 
   /**
@@ -314,6 +332,17 @@ public final class StorageSerialization {
   final static int BYTE_ARRAY = 70;
   final static int STRING_ARRAY = 71;
   final static int ARRAY_OBJECT = 72;
+  final static int HASH_MAP = 73;
+  final static int SPARSE_VECTOR = 74;
+  final static int SPARSE_VECTOR_INT8 = 75;
+  final static int SPARSE_VECTOR_FP16 = 76;
+  final static int ALIGNED_INT_ARRAY = 77;
+  final static int ALIGNED_LONG_ARRAY = 78;
+  final static int ALIGNED_DOUBLE_ARRAY = 79;
+  // Alignment of the content of aligned arrays in the data
+  final static int ALIGNMENT = 8;
+  // Load factor of the slot table of serialized maps
+  final static double MAP_LOAD_FACTOR = 0.75;
   final static int STRING_EMPTY = 101;
   final static int NOTUSED_STRING_C = 102;
   final static int STRING = 103;
@@ -405,6 +434,8 @@ public final class StorageSerialization {
       serializeIntIntArray(out, (int[][]) obj, compress);
     } else if (obj instanceof long[][]) {
       serializeLongLongArray(out, (long[][]) obj, compress);
+    } else if (obj instanceof SparseVector) {
+      serializeSparseVector(out, (SparseVector) obj, sparseQuantization);
     } else {
       // Custom
       Serializer serializer = serializers.getSerializer(obj.getClass());
@@ -412,6 +443,8 @@ public final class StorageSerialization {
         int index = serializers.getIndex(obj.getClass());
         out.write(CUSTOM + index);
         serializer.write(out, obj);
+      } else if (obj instanceof Map) {
+        serializeMap(out, (Map) obj);
       } else if (obj instanceof Object[]) {
         serializeObjectArray(out, (Object[]) obj);
       } else {
@@ -824,6 +857,162 @@ public final class StorageSerialization {
     }
   }
 
+  private void serializeMap(final DataOutput out, final Map<?, ?> val)
+      throws IOException {
+    // Entries are serialized first to fill the slot table with their offsets
+    int size = val.size();
+    int slots = Math.max(1, (int) Math.ceil(size / MAP_LOAD_FACTOR));
+    int[] table = new int[slots];
+    DataInputOutput entries = new DataInputOutput();
+    HashUtils hashUtils = new HashUtils();
+    for (Map.Entry<?, ?> entry : val.entrySet()) {
+      int offset = entries.getPos();
+      byte[] keyBytes = serialize(entry.getKey(), false);
+      entries.write(keyBytes);
+      serialize(entries, entry.getValue());
+
+      int slot = hashUtils.hash(keyBytes) % slots;
+      while (table[slot] != 0) {
+        slot = (slot + 1) % slots;
+      }
+      table[slot] = offset + 1;
+    }
+
+    out.write(HASH_MAP);
+    LongPacker.packInt(out, size);
+    LongPacker.packInt(out, slots);
+    LongPacker.packInt(out, entries.getPos());
+    for (int offset : table) {
+      out.writeInt(offset);
+    }
+    out.write(entries.getBuf(), 0, entries.getPos());
+  }
+
+  private static void serializeSparseVector(final DataOutput out, final SparseVector val, int quantization)
+      throws IOException {
+    // Each value follows the delta of its index so the vector can be decoded in a single pass
+    int size = val.size();
+    float scale = 0f;
+    if (quantization == VectorMatrix.INT8) {
+      for (int i = 0; i < size; i++) {
+        scale = Math.max(scale, Math.abs(val.getValue(i)));
+      }
+      scale /= Byte.MAX_VALUE;
+      out.write(SPARSE_VECTOR_INT8);
+      LongPacker.packInt(out, size);
+      out.writeFloat(scale);
+    } else {
+      out.write(quantization == VectorMatrix.FP16 ? SPARSE_VECTOR_FP16 : SPARSE_VECTOR);
+      LongPacker.packInt(out, size);
+    }
+    int previous = 0;
+    for (int i = 0; i < size; i++) {
+      int index = val.getIndex(i);
+      LongPacker.packInt(out, index - previous);
+      previous = index;
+      float value = val.getValue(i);
+      if (quantization == VectorMatrix.INT8) {
+        out.write(scale == 0f ? 0 : Math.round(value / scale));
+      } else if (quantization == VectorMatrix.FP16) {
+        out.writeShort(VectorMatrix.toHalf(value));
+      } else {
+        out.writeFloat(value);
+      }
+    }
+  }
+
+  private static void serializeAlignedArray(final DataOutput out, final Object val)
+      throws IOException {
+    // The padding is set when the position of the value is known, see alignArray
+    if (val instanceof int[]) {
+      out.write(ALIGNED_INT_ARRAY);
+      LongPacker.packInt(out, ((int[]) val).length);
+      out.write(0);
+      for (int v : (int[]) val) {
+        out.writeInt(Integer.reverseBytes(v));
+      }
+    } else if (val instanceof long[]) {
+      out.write(ALIGNED_LONG_ARRAY);
+      LongPacker.packInt(out, ((long[]) val).length);
+      out.write(0);
+      for (long v : (long[]) val) {
+        out.writeLong(Long.reverseBytes(v));
+      }
+    } else {
+      out.write(ALIGNED_DOUBLE_ARRAY);
+      LongPacker.packInt(out, ((double[]) val).length);
+      out.write(0);
+      for (double v : (double[]) val) {
+        out.writeLong(Long.reverseBytes(Double.doubleToRawLongBits(v)));
+      }
+    }
+  }
+
+  /**
+   * Pads the serialized aligned array so its content is aligned once written with its size at
+   * <code>position</code>, other values are returned as is.
+   *
+   * @param value serialized value
+   * @param position position of the value size, relative to an aligned position
+   * @return serialized value, padded for the position
+   */
+  static byte[] alignArray(byte[] value, long position) {
+    int head = value[0] & 0xff;
+    if (head != ALIGNED_INT_ARRAY && head != ALIGNED_LONG_ARRAY && head != ALIGNED_DOUBLE_ARRAY) {
+      return value;
+    }
+    // The padding length follows the head and the array length
+    int padOffset = 1;
+    while ((value[padOffset++] & 0x80) != 0) {
+    }
+    int contentOffset = padOffset + 1 + value[padOffset];
+    int contentLength = value.length - contentOffset;
+    // A longer value may need a longer size, so up to two alignments are tried
+    for (int padding = 0; padding < 2 * ALIGNMENT; padding++) {
+      int length = padOffset + 1 + padding + contentLength;
+      if ((position + getPackedIntLength(length) + length - contentLength) % ALIGNMENT == 0) {
+        byte[] res = new byte[length];
+        System.arraycopy(value, 0, res, 0, padOffset);
+        res[padOffset] = (byte) padding;
+        System.arraycopy(value, contentOffset, res, length - contentLength, contentLength);
+        return res;
+      }
+    }
+    throw new IllegalStateException("The array can't be aligned");
+  }
+
+  /**
+   * Gets a little-endian view over the content of the serialized aligned array, without copy.
+   *
+   * @param buffer buffer positioned at the serialized value, its position is left unchanged
+   * @param head head of the expected aligned array type
+   * @return view of the array content or null if the value isn't an aligned array of that type
+   * @throws IOException if an io error occurs
+   */
+  static ByteBuffer getAlignedView(ByteBuffer buffer, int head)
+      throws IOException {
+    if ((buffer.get(buffer.position()) & 0xff) != head) {
+      return null;
+    }
+    int elementSize = head == ALIGNED_INT_ARRAY ? Integer.SIZE / Byte.SIZE : Long.SIZE / Byte.SIZE;
+    ByteBuffer view = buffer.duplicate();
+    view.get();
+    int length = LongPacker.unpackInt(view);
+    int padding = view.get();
+    view.position(view.position() + padding);
+    view.limit(view.position() + length * elementSize);
+    return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private static int getPackedIntLength(int value) {
+    int length = 1;
+    while ((value & ~0x7F) != 0) {
+      value >>>= 7;
+      length++;
+    }
+    return length;
+  }
+
   public Object deserialize(byte[] buf)
       throws ClassNotFoundException, IOException {
     DataInputOutput bs = new DataInputOutput(buf);
@@ -835,6 +1024,164 @@ public final class StorageSerialization {
     return ret;
   }
 
+  /**
+   * Returns the numeric value of a serialized value, without deserializing other types.
+   *
+   * @param value serialized value
+   * @return numeric value or <code>NaN</code> if the value isn't a number
+   */
+  double getNumber(byte[] value) {
+    Class<?> type = value.length > 0 ? getType(value[0] & 0xff) : null;
+    if (type == null || !Number.class.isAssignableFrom(type)) {
+      return Double.NaN;
+    }
+    try {
+      return ((Number) deserialize(value)).doubleValue();
+    } catch (Exception ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  /**
+   * Returns the type of the values serialized with the given header.
+   *
+   * @param head serialized value header
+   * @return type or null for custom or unknown headers
+   */
+  static Class<?> getType(int head) {
+    if (head >= INTEGER_MINUS_1 && head <= INTEGER_PACK || head == INTEGER_MINUS_MAX) {
+      return Integer.class;
+    } else if (head >= LONG_MINUS_1 && head <= LONG_MINUS_MAX) {
+      return Long.class;
+    } else if (head >= SHORT_MINUS_1 && head <= SHORT_FULL) {
+      return Short.class;
+    } else if (head >= BYTE_MINUS_1 && head <= BYTE_FULL) {
+      return Byte.class;
+    } else if (head >= FLOAT_MINUS_1 && head <= FLOAT_FULL) {
+      return Float.class;
+    } else if (head >= DOUBLE_MINUS_1 && head <= DOUBLE_FULL) {
+      return Double.class;
+    }
+    switch (head) {
+      case BOOLEAN_TRUE:
+      case BOOLEAN_FALSE:
+        return Boolean.class;
+      case CHAR:
+        return Character.class;
+      case STRING:
+      case STRING_EMPTY:
+        return String.class;
+      case BIGDECIMAL:
+        return BigDecimal.class;
+      case BIGINTEGER:
+        return BigInteger.class;
+      case BOOLEAN_ARRAY:
+        return boolean[].class;
+      case SHORT_ARRAY:
+      case SHORT_ARRAY_C:
+        return short[].class;
+      case ARRAY_INT_B:
+      case ARRAY_INT_S:
+      case ARRAY_INT_I:
+      case ARRAY_INT_PACKED:
+      case ARRAY_INT_C:
+        return int[].class;
+      case ARRAY_LONG_B:
+      case ARRAY_LONG_S:
+      case ARRAY_LONG_I:
+      case ARRAY_LONG_L:
+      case ARRAY_LONG_PACKED:
+      case ARRAY_LONG_C:
+        return long[].class;
+      case FLOAT_ARRAY:
+      case FLOAT_ARRAY_C:
+        return float[].class;
+      case DOUBLE_ARRAY:
+      case DOUBLE_ARRAY_C:
+        return double[].class;
+      case CHAR_ARRAY:
+      case CHAR_ARRAY_C:
+        return char[].class;
+      case BYTE_ARRAY:
+      case BYTE_ARRAY_C:
+        return byte[].class;
+      case STRING_ARRAY:
+        return String[].class;
+      case INT_INT_ARRAY:
+        return int[][].class;
+      case LONG_LONG_ARRAY:
+        return long[][].class;
+      case HASH_MAP:
+        return Map.class;
+      case ALIGNED_INT_ARRAY:
+        return int[].class;
+      case ALIGNED_LONG_ARRAY:
+        return long[].class;
+      case ALIGNED_DOUBLE_ARRAY:
+        return double[].class;
+      case SPARSE_VECTOR:
+      case SPARSE_VECTOR_INT8:
+      case SPARSE_VECTOR_FP16:
+        return SparseVector.class;
+      case ARRAY_OBJECT:
+        return Object[].class;
+      case CLASS:
+        return Class.class;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Returns the position of the content of a serialized string or uncompressed byte array, after its header and
+   * length.
+   *
+   * @param bytes serialized value
+   * @param length serialized value length
+   * @return content position or -1 if the value isn't a string or an uncompressed byte array
+   */
+  static int getContentPosition(byte[] bytes, int length) {
+    if (length == 0) {
+      return -1;
+    }
+    int head = bytes[0] & 0xff;
+    if (head == STRING_EMPTY) {
+      return 1;
+    }
+    if (head != STRING && head != BYTE_ARRAY) {
+      return -1;
+    }
+    int position = 1;
+    while (position < length && (bytes[position++] & 0x80) != 0) {
+    }
+    return position;
+  }
+
+  /**
+   * Returns a stream over the content of the byte array serialized in <code>is</code>.
+   * <p>
+   * Uncompressed arrays are streamed from <code>is</code>, compressed arrays are uncompressed in memory.
+   *
+   * @param is stream positioned on a serialized byte array
+   * @return stream over the array content
+   * @throws IOException if an error occurs while reading
+   * @throws IllegalArgumentException if the serialized value isn't a byte array
+   */
+  static InputStream deserializeByteArrayStream(InputStream is)
+      throws IOException {
+    DataInputStream dis = new DataInputStream(is);
+    final int head = dis.readUnsignedByte();
+    switch (head) {
+      case BYTE_ARRAY:
+        LongPacker.unpackInt(dis);
+        return is;
+      case BYTE_ARRAY_C:
+        return new ByteArrayInputStream(deserializeByteCompressedArray(dis));
+      default:
+        throw new IllegalArgumentException("The value isn't a byte array");
+    }
+  }
+
   public Object deserialize(DataInput is)
       throws IOException, ClassNotFoundException {
     Object ret = null;
@@ -1097,6 +1444,19 @@ public final class StorageSerialization {
         case ARRAY_OBJECT:
           ret = deserializeArrayObject(is);
           break;
+        case HASH_MAP:
+          ret = deserializeMap(is);
+          break;
+        case SPARSE_VECTOR:
+        case SPARSE_VECTOR_INT8:
+        case SPARSE_VECTOR_FP16:
+          ret = deserializeSparseVector(is, head);
+          break;
+        case ALIGNED_INT_ARRAY:
+        case ALIGNED_LONG_ARRAY:
+        case ALIGNED_DOUBLE_ARRAY:
+          ret = deserializeAlignedArray(is, head);
+          break;
         case -1:
           throw new EOFException();
       }
@@ -1104,6 +1464,138 @@ public final class StorageSerialization {
     return ret;
   }
 
+  private Map deserializeMap(DataInput is)
+      throws IOException {
+    int size = LongPacker.unpackInt(is);
+    int slots = LongPacker.unpackInt(is);
+    int length = slots * (Integer.SIZE / Byte.SIZE) + LongPacker.unpackInt(is);
+    // Views share the buffer when reading from memory
+    if (is instanceof DataInputOutput) {
+      DataInputOutput dataInputOutput = (DataInputOutput) is;
+      int offset = dataInputOutput.getPos();
+      dataInputOutput.skipBytes(length);
+      return new LazyMap(this, dataInputOutput.getBuf(), offset, slots, size);
+    }
+    byte[] bytes = new byte[length];
+    is.readFully(bytes);
+    return new LazyMap(this, bytes, 0, slots, size);
+  }
+
+  private static Object deserializeAlignedArray(DataInput is, int head)
+      throws IOException {
+    int size = LongPacker.unpackInt(is);
+    is.skipBytes(is.readUnsignedByte());
+    if (head == ALIGNED_INT_ARRAY) {
+      int[] ret = new int[size];
+      for (int i = 0; i < size; i++) {
+        ret[i] = Integer.reverseBytes(is.readInt());
+      }
+      return ret;
+    } else if (head == ALIGNED_LONG_ARRAY) {
+      long[] ret = new long[size];
+      for (int i = 0; i < size; i++) {
+        ret[i] = Long.reverseBytes(is.readLong());
+      }
+      return ret;
+    }
+    double[] ret = new double[size];
+    for (int i = 0; i < size; i++) {
+      ret[i] = Double.longBitsToDouble(Long.reverseBytes(is.readLong()));
+    }
+    return ret;
+  }
+
+  private static SparseVector deserializeSparseVector(DataInput is, int head)
+      throws IOException {
+    int size = LongPacker.unpackInt(is);
+    float scale = head == SPARSE_VECTOR_INT8 ? is.readFloat() : 0f;
+    int[] indices = new int[size];
+    float[] values = new float[size];
+    int index = 0;
+    for (int i = 0; i < size; i++) {
+      index += LongPacker.unpackInt(is);
+      indices[i] = index;
+      if (head == SPARSE_VECTOR_INT8) {
+        values[i] = scale * is.readByte();
+      } else if (head == SPARSE_VECTOR_FP16) {
+        values[i] = VectorMatrix.fromHalf(is.readShort());
+      } else {
+        values[i] = is.readFloat();
+      }
+    }
+    return new SparseVector(indices, values);
+  }
+
+  /**
+   * Computes the dot product of the serialized sparse vector and <code>query</code>, decoding the vector in place.
+   * <p>
+   * The buffer is read from its position, indices beyond <code>query</code> count as zero.
+   *
+   * @param buffer buffer positioned at the serialized vector
+   * @param query dense query
+   * @return dot product
+   * @throws IOException if an io error occurs
+   * @throws IllegalArgumentException if the value isn't a sparse vector
+   */
+  static float dotSparseVector(ByteBuffer buffer, float[] query)
+      throws IOException {
+    int head = getSparseVectorHead(buffer);
+    int size = LongPacker.unpackInt(buffer);
+    float scale = head == SPARSE_VECTOR_INT8 ? buffer.getFloat() : 1f;
+    float sum = 0f;
+    int index = 0;
+    for (int i = 0; i < size; i++) {
+      index += LongPacker.unpackInt(buffer);
+      float value = readSparseValue(buffer, head);
+      if (index < query.length) {
+        sum += value * query[index];
+      }
+    }
+    return sum * scale;
+  }
+
+  /**
+   * Passes the non-zero values of the serialized sparse vector to <code>consumer</code>, decoding the vector in
+   * place.
+   *
+   * @param buffer buffer positioned at the serialized vector
+   * @param consumer consumer receiving the values
+   * @throws IOException if an io error occurs
+   * @throws IllegalArgumentException if the value isn't a sparse vector
+   */
+  static void forEachNonZero(ByteBuffer buffer, SparseVector.Consumer consumer)
+      throws IOException {
+    int head = getSparseVectorHead(buffer);
+    int size = LongPacker.unpackInt(buffer);
+    float scale = head == SPARSE_VECTOR_INT8 ? buffer.getFloat() : 1f;
+    int index = 0;
+    for (int i = 0; i < size; i++) {
+      index += LongPacker.unpackInt(buffer);
+      consumer.accept(index, scale * readSparseValue(buffer, head));
+    }
+  }
+
+  //Read the head of a serialized sparse vector
+  private static int getSparseVectorHead(ByteBuffer buffer) {
+    int head = buffer.get() & 0xff;
+    if (head != SPARSE_VECTOR && head != SPARSE_VECTOR_INT8 && head != SPARSE_VECTOR_FP16) {
+      throw new IllegalArgumentException("The value isn't a sparse vector");
+    }
+    return head;
+  }
+
+  //Read a sparse vector value, int8 values are returned unscaled
+  private static float readSparseValue(ByteBuffer buffer, int head) {
+    switch (head) {
+      case SPARSE_VECTOR_INT8:
+        return buffer.get();
+      case SPARSE_VECTOR_FP16:
+        return VectorMatrix.fromHalf(buffer.getShort());
+      default:
+        return buffer.getFloat();
+    }
+  }
+
   private static String deserializeString(DataInput buf)
       throws IOException {
     int len = LongPacker.unpackInt(buf);
@@ -15,6 +15,8 @@
 package com.linkedin.paldb.impl;
 
 import com.linkedin.paldb.api.Configuration;
+import com.linkedin.paldb.api.TermExtractor;
+import com.linkedin.paldb.utils.DataInputOutput;
 import com.linkedin.paldb.utils.FormatVersion;
 import com.linkedin.paldb.utils.HashUtils;
 import com.linkedin.paldb.utils.LongPacker;
@@ -29,12 +31,16 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -44,9 +50,70 @@ import java.util.logging.Logger;
 public class StorageWriter {
 
   private final static Logger LOGGER = Logger.getLogger(StorageWriter.class.getName());
+  // Section holding the data position of each ordinal (long)
+  final static String ORDINAL_HANDLES_SECTION = "ordinal.handles";
+  // Section holding the ordinal of each index slot (int)
+  final static String ORDINAL_SLOTS_SECTION = "ordinal.slots";
+  // Section holding the keys and data offsets of each key length in data order
+  final static String KEY_LOG_SECTION = "key.log";
+  // Section holding the key lengths (int) whose values are inlined in the index slots
+  final static String INLINE_VALUES_SECTION = "inline.values";
+  // Empty section marking a set store, whose keys have been added without values
+  final static String KEYS_ONLY_SECTION = "keys.only";
+  // Empty section marking multimap stores, whose values are arrays of the values put with each key
+  final static String MULTIMAP_SECTION = "multimap";
+  // Section holding the dense key type (byte), min (long), range (int), handle size (byte) and the handle of each key
+  // of the range (handle size bytes, zero for holes)
+  final static String DENSE_INDEX_SECTION = "dense.index";
+  // Size of the dense index header
+  final static int DENSE_INDEX_HEADER_SIZE = 14;
+  // Section holding the vector matrix, rows in ordinal order
+  final static String VECTOR_MATRIX_SECTION = "vector.matrix";
+  // Section holding the global slot (int) of each vector row
+  final static String VECTOR_ROWS_SECTION = "vector.rows";
+  // Section holding the keys in order with the handle of their value, see SortedKeys
+  final static String SORTED_KEYS_SECTION = "sorted.keys";
+  // Section holding the position in the sorted keys of the first key of each block (long)
+  final static String SORTED_BLOCKS_SECTION = "sorted.blocks";
+  // Section holding the nodes of the string keys fst, see KeyFst
+  final static String FST_INDEX_SECTION = "fst.index";
+  // Section holding the handle of the value of each key rank in the fst (long)
+  final static String FST_HANDLES_SECTION = "fst.handles";
+  // Section holding the terms in order with the posting list of the global slots of their keys, see SortedKeys
+  final static String INVERTED_TERMS_SECTION = "inverted.terms";
+  // Section holding the position in the terms of the first term of each block (long)
+  final static String INVERTED_BLOCKS_SECTION = "inverted.blocks";
+  // Section holding the block size (int) and the min and max numeric values of each block of zone rows (double)
+  final static String ZONE_MAP_SECTION = "zone.map";
+  // Section holding the global slot (long) of each key with a numeric value, in value order
+  final static String ZONE_SLOTS_SECTION = "zone.slots";
+  // Prefix of the sections holding the store of each namespace, followed by the namespace name
+  final static String NAMESPACE_SECTION_PREFIX = "namespace.";
   // Configuration
   private final Configuration config;
   private final double loadFactor;
+  private final boolean ordinals;
+  private final boolean keyLog;
+  private final boolean zoneMap;
+  private final boolean sortedKeys;
+  private final boolean fstIndex;
+  private final boolean invertedIndex;
+  private final boolean multimap;
+  // Term extractor of the inverted index, null if the whole value is the term
+  private final TermExtractor termExtractor;
+  private final int zoneMapBlockSize;
+  // Maximum size of the values inlined in the index slots, 0 if disabled
+  private final int inlineMaxSize;
+  // Vector dimension, 0 if disabled, and quantization
+  private final int vectorDimension;
+  private final int vectorQuantization;
+  // Dense key detection, the min density of the key range
+  private final boolean denseKeys;
+  private final double denseKeysMinDensity;
+  // Aligned arrays, whose content is aligned in the data
+  private final boolean alignedArrays;
+  // Serialized keys whose values are placed first, null without access profile
+  private final Set<ByteBuffer> hotKeys;
   // Output
   private final File tempFolder;
   //
@@ -72,6 +139,13 @@ public class StorageWriter {
   // Max offset length ；维护index指向data的位移的存储字段类型
   private int[] maxOffsetLengths;
 
+  // Max value length and whether values are inlined in the index slots, for each key length
+  private int[] maxValueLengths;
+  private boolean[] inlineValues;
+
+  // Whether the keys have been added without values, the store then has no data
+  private boolean keysOnly;
+
   // Number of keys key 的数量=key 的最大长度+1
   private int keyCount;
   private int[] keyCounts;
@@ -84,15 +158,137 @@ public class StorageWriter {
 
   private HashUtils hashUtils;
 
+  // Sections appended after the data, by name
+  private final Map<String, File> sections = new LinkedHashMap<String, File>();
+
+  // Numeric value of each key for zone maps, by key length
+  private File[] numberFiles = new File[0];
+  private DataOutputStream[] numberStreams = new DataOutputStream[0];
+
+  // Encoded key of each key for sorted keys, by key length
+  private File[] sortKeyFiles = new File[0];
+  private DataOutputStream[] sortKeyStreams = new DataOutputStream[0];
+  // Sorted keys, built with the index for sorted keys and the key fst
+  private SortedKeys.Builder sortedKeysBuilder;
+
+  // Serialized terms of each value for the inverted index, by key length
+  private File[] termFiles = new File[0];
+  private DataOutputStream[] termStreams = new DataOutputStream[0];
+  // Terms with the global slot of their keys, built with the index
+  private SortedKeys.Builder termsBuilder;
+
+  // Multimap values sorted by key and insertion order, null if not a multimap
+  private SortedKeys.Builder multimapBuilder;
+  private long multimapValueCount;
+
+  // Vector rows, for each key length
+  private File[] vectorFiles = new File[0];
+  private DataOutputStream[] vectorStreams = new DataOutputStream[0];
+  private RandomAccessFile vectorRowsAccessFile;
+  private StorageSerialization serialization;
+  // Numeric values with the global slot of their keys, built with the index
+  private SortedKeys.Builder zoneBuilder;
+
+  // Dense keys type, null if the keys aren't all ints or all longs, and range
+  private Class<?> denseKeyType;
+  private long denseMin = Long.MAX_VALUE;
+  private long denseMax = Long.MIN_VALUE;
+  // Dense index, written while building the index
+  private RandomAccessFile denseIndexAccessFile;
+  private MappedByteBuffer denseIndexBuffer;
+  private int denseHandleSize;
+
+  // Key log, written while building the index
+  private DataOutputStream keyLogStream;
+
+  // Ordinal sections, written while building the index
+  private DataOutputStream ordinalHandlesStream;
+  private RandomAccessFile ordinalSlotsAccessFile;
+  // Global position of the first slot and of the data for each key length
+  private long[] slotStarts;
+  private long[] dataStarts;
+  // Total data length
+  private long datasLength;
+  // Values of the hot keys, placed before the data of all key lengths
+  private File hotDataFile;
+
   StorageWriter(Configuration configuration, OutputStream stream) {
+    this(configuration, stream, null);
+  }
+
+  /**
+   * Constructor writing the temporary files to <code>folder</code>, which is created if needed.
+   *
+   * @param configuration configuration
+   * @param stream output stream
+   * @param folder temporary folder or null to create a new one
+   */
+  StorageWriter(Configuration configuration, OutputStream stream, File folder) {
     config = configuration;
     loadFactor = config.getDouble(Configuration.LOAD_FACTOR);
     if (loadFactor <= 0.0 || loadFactor >= 1.0) {
       throw new IllegalArgumentException("Illegal load factor = " + loadFactor + ", should be between 0.0 and 1.0.");
     }
+    vectorDimension = config.getInt(Configuration.VECTOR_DIMENSION);
+    vectorQuantization = VectorMatrix.getQuantization(config.get(Configuration.VECTOR_QUANTIZATION, "none"));
+    // Vector rows are in ordinal order
+    ordinals = config.getBoolean(Configuration.ORDINAL_ENABLED) || vectorDimension > 0;
+    keyLog = config.getBoolean(Configuration.KEY_LOG_ENABLED);
+    zoneMap = config.getBoolean(Configuration.ZONE_MAP_ENABLED);
+    zoneMapBlockSize = config.getInt(Configuration.ZONE_MAP_BLOCK_SIZE);
+    if (zoneMap) {
+      if (zoneMapBlockSize <= 0) {
+        throw new IllegalArgumentException("Illegal zone map block size = " + zoneMapBlockSize);
+      }
+      serialization = new StorageSerialization(config);
+    }
+    inlineMaxSize = config.getInt(Configuration.INLINE_MAX_SIZE);
+    denseKeys = config.getBoolean(Configuration.DENSE_KEYS_ENABLED);
+    denseKeysMinDensity = config.getDouble(Configuration.DENSE_KEYS_MIN_DENSITY);
+    alignedArrays = config.getBoolean(Configuration.ALIGNED_ARRAYS_ENABLED);
+    sortedKeys = config.getBoolean(Configuration.SORTED_KEYS_ENABLED);
+    fstIndex = config.getBoolean(Configuration.FST_INDEX_ENABLED);
+    invertedIndex = config.getBoolean(Configuration.INVERTED_INDEX_ENABLED);
+    multimap = config.getBoolean(Configuration.MULTIMAP_ENABLED);
+    String extractor = config.get(Configuration.INVERTED_INDEX_EXTRACTOR, null);
+    if (invertedIndex && extractor != null) {
+      try {
+        termExtractor = config.<TermExtractor>getClass(Configuration.INVERTED_INDEX_EXTRACTOR)
+            .getDeclaredConstructor().newInstance();
+      } catch (Exception ex) {
+        throw new IllegalArgumentException("Illegal term extractor = " + extractor, ex);
+      }
+    } else {
+      termExtractor = null;
+    }
+    if (invertedIndex && serialization == null) {
+      serialization = new StorageSerialization(config);
+    }
+    if ((sortedKeys || fstIndex) && serialization == null) {
+      serialization = new StorageSerialization(config);
+    }
+    if (denseKeys && serialization == null) {
+      serialization = new StorageSerialization(config);
+    }
+    String accessProfile = config.get(Configuration.ACCESS_PROFILE_FILE, null);
+    if (accessProfile != null) {
+      try {
+        hotKeys = AccessProfile.readHotKeys(new File(accessProfile),
+            config.getDouble(Configuration.ACCESS_PROFILE_HOT_RATIO));
+      } catch (IOException ex) {
+        throw new RuntimeException(ex);
+      }
+    } else {
+      hotKeys = null;
+    }
 
     // Create temp path folder
-    tempFolder = TempUtils.createTempDir("paldbtempwriter");
+    if (folder != null) {
+      folder.mkdirs();
+      tempFolder = folder;
+    } else {
+      tempFolder = TempUtils.createTempDir("paldbtempwriter");
+    }
     tempFolder.deleteOnExit();
     LOGGER.log(Level.INFO, "Creating temporary folder at {0}", tempFolder.toString());
     outputStream = stream instanceof BufferedOutputStream ? stream : new BufferedOutputStream(stream);
@@ -104,6 +300,7 @@ public class StorageWriter {
     lastValuesLength = new int[0];
     dataLengths = new long[0];
     maxOffsetLengths = new int[0];
+    maxValueLengths = new int[0];
     keyCounts = new int[0];
     hashUtils = new HashUtils();
   }
@@ -116,8 +313,34 @@ public class StorageWriter {
    */
   public void put(byte[] key, byte[] value)
       throws IOException {
+    if (vectorDimension > 0) {
+      throw new IllegalStateException("Values can't be put in a vector store");
+    }
+    if (keysOnly) {
+      throw new IllegalStateException("Values can't be put in a store with added keys");
+    }
+
+    // Values of a multimap are grouped by key when closing
+    if (multimap) {
+      recordMultimapValue(key, value);
+    } else {
+      putValue(key, value);
+    }
+  }
+
+  //Write the key and its value
+  private void putValue(byte[] key, byte[] value)
+      throws IOException {
     int keyLength = key.length;
 
+    // Record the encoded key for sorted keys first, it fails for keys which can't be sorted
+    if (sortedKeys || fstIndex) {
+      writeSortKey(key);
+    }
+
+    // Extract the terms before writing anything, the extractor may fail
+    List<byte[]> terms = invertedIndex ? getTerms(value) : null;
+
     //Get the Output stream for that keyLength, each key length has its own file
     //通过key 的长度获取输出流，每个key 长度维护一个索引文件与流；自动扩容
     DataOutputStream indexStream = getIndexStream(keyLength);
@@ -148,40 +371,171 @@ public class StorageWriter {
       // Get stream；获取指定长度key对应的value的输出流
       DataOutputStream dataStream = getDataStream(keyLength);
 
+      // Pad aligned arrays for their position, the data of each key length starts at an aligned position
+      byte[] data = alignedArrays ? StorageSerialization.alignArray(value, dataLength) : value;
+
       // Write size and value；
         // 3.写入value的长度和value的值
-      int valueSize = LongPacker.packInt(dataStream, value.length);
-      dataStream.write(value);
+      int valueSize = LongPacker.packInt(dataStream, data.length);
+      dataStream.write(data);
 
       // Update data length；更新数据偏移量，这里的偏移量是下一个写入value的偏移量(值长度长度+值长度)
-      dataLengths[keyLength] += valueSize + value.length;
+      dataLengths[keyLength] += valueSize + data.length;
 
       // Update last value；更新上一次写入的value值
       lastValues[keyLength] = value;
       //更新keyLength对应的key的保存的data的长度
-      lastValuesLength[keyLength] = valueSize + value.length;
+      lastValuesLength[keyLength] = valueSize + data.length;
+      maxValueLengths[keyLength] = Math.max(data.length, maxValueLengths[keyLength]);
 
       valueCount++; //数据+1
     }
 
+    // Record the dense key range
+    if (denseKeys) {
+      recordDenseKey(key);
+    }
+
+    // Record the max value length for inlining
+    maxValueLengths[keyLength] = Math.max(value.length, maxValueLengths[keyLength]);
+
+    // Record the numeric value for zone maps
+    if (zoneMap) {
+      getNumberStream(keyLength).writeDouble(serialization.getNumber(value));
+    }
+
+    // Record the terms for the inverted index
+    if (invertedIndex) {
+      writeTerms(keyLength, terms);
+    }
     keyCount++; //总数key+1
     keyCounts[keyLength]++; //对应长度个数key+1
   }
 
+  /**
+   * Adds a key without value, the store is then a set and has no data.
+   *
+   * @param key serialized key
+   * @throws IOException if an io error occurs
+   */
+  public void add(byte[] key)
+      throws IOException {
+    if (vectorDimension > 0) {
+      throw new IllegalStateException("Keys of a vector store are added with their vector");
+    }
+    addKey(key);
+  }
+
+  /**
+   * Adds a key with its vector, the store is then a set and the vectors are stored in a matrix.
+   *
+   * @param key serialized key
+   * @param vector vector of the configured dimension
+   * @throws IOException if an io error occurs
+   */
+  public void addVector(byte[] key, float[] vector)
+      throws IOException {
+    if (vectorDimension == 0) {
+      throw new IllegalStateException("The vector dimension isn't configured");
+    }
+    if (vector.length != vectorDimension) {
+      throw new IllegalArgumentException(
+          "The vector dimension is " + vector.length + ", expected was " + vectorDimension);
+    }
+    // The matrix is mapped as a single buffer
+    if (VectorMatrix.HEADER_SIZE + (keyCount + 1L) * VectorMatrix.getRowSize(vectorDimension, vectorQuantization)
+        > Integer.MAX_VALUE) {
+      throw new IllegalStateException("The vector matrix can't be larger than 2GB, " + keyCount
+          + " vectors of dimension " + vectorDimension + " have already been added");
+    }
+    addKey(key);
+    VectorMatrix.writeRow(getVectorStream(key.length), vector, vectorQuantization);
+  }
+
+  //Add a key without value
+  private void addKey(byte[] key)
+      throws IOException {
+    if (multimap) {
+      throw new IllegalStateException("Keys can't be added to a multimap store");
+    }
+    if (keyCount > 0 && !keysOnly) {
+      throw new IllegalStateException("Keys can't be added to a store with values");
+    }
+    keysOnly = true;
+    int keyLength = key.length;
+
+    // Record the encoded key for sorted keys first, it fails for keys which can't be sorted
+    if (sortedKeys || fstIndex) {
+      writeSortKey(key);
+    }
+
+    // Write key and a non-zero offset, the slots only hold the key
+    DataOutputStream indexStream = getIndexStream(keyLength);
+    indexStream.write(key);
+    maxOffsetLengths[keyLength] = LongPacker.packLong(indexStream, 1);
+
+    // Record the dense key range
+    if (denseKeys) {
+      recordDenseKey(key);
+    }
+
+    // Keys have no numeric value for zone maps
+    if (zoneMap) {
+      getNumberStream(keyLength).writeDouble(Double.NaN);
+    }
+
+    // Keys have no terms for the inverted index
+    if (invertedIndex) {
+      writeTerms(keyLength, new ArrayList<byte[]>());
+    }
+    keyCount++;
+    keyCounts[keyLength]++;
+  }
+
   /**
    * 通过close动作来完成PalDB文件的生成
    * @throws IOException
    */
   public void close()
       throws IOException {
+    // Write the grouped values of a multimap first, like values put with distinct keys
+    if (multimap) {
+      writeMultimapValues();
+    }
+
     // Close the data and index streams
     // 关闭及数据与索引文件流
-    for (DataOutputStream dos : dataStreams) {
+    for (int i = 0; i < dataStreams.length; i++) {
+      if (dataStreams[i] != null) {
+        // Pad the data so the data of the next key length starts at an aligned position
+        while (alignedArrays && dataLengths[i] % StorageSerialization.ALIGNMENT != 0) {
+          dataStreams[i].writeByte(0);
+          dataLengths[i]++;
+        }
+        dataStreams[i].close();
+      }
+    }
+    for (DataOutputStream dos : indexStreams) {
       if (dos != null) {
         dos.close();
       }
     }
-    for (DataOutputStream dos : indexStreams) {
+    for (DataOutputStream dos : numberStreams) {
+      if (dos != null) {
+        dos.close();
+      }
+    }
+    for (DataOutputStream dos : sortKeyStreams) {
+      if (dos != null) {
+        dos.close();
+      }
+    }
+    for (DataOutputStream dos : termStreams) {
+      if (dos != null) {
+        dos.close();
+      }
+    }
+    for (DataOutputStream dos : vectorStreams) {
       if (dos != null) {
         dos.close();
       }
@@ -191,16 +545,266 @@ public class StorageWriter {
     LOGGER.log(Level.INFO, "Number of keys: {0}", keyCount);
     LOGGER.log(Level.INFO, "Number of values: {0}", valueCount);
 
-    // Prepare files to merge
+    // Temporary files, merged in order once all are built
     // 准备合并文件
     List<File> filesToMerge = new ArrayList<File>();
+    List<File> tempFiles = new ArrayList<File>();
 
     try {
 
-      //Write metadata file
+      // Inline the values of the key lengths whose values all fit in the slots
+      inlineValues = new boolean[keyCounts.length];
+      DataOutputStream inlineValuesStream = null;
+      for (int i = 0; i < keyCounts.length; i++) {
+        inlineValues[i] = inlineMaxSize > 0 && !keysOnly && keyCounts[i] > 0 && getInlineSize(i) <= inlineMaxSize;
+        if (inlineValues[i]) {
+          if (inlineValuesStream == null) {
+            File inlineValuesFile = new File(tempFolder, "inline_values.dat");
+            inlineValuesFile.deleteOnExit();
+            tempFiles.add(inlineValuesFile);
+            inlineValuesStream = new DataOutputStream(new FileOutputStream(inlineValuesFile));
+            addSection(INLINE_VALUES_SECTION, inlineValuesFile);
+          }
+          inlineValuesStream.writeInt(i);
+        }
+      }
+      if (inlineValuesStream != null) {
+        inlineValuesStream.close();
+      }
+
+      // Set stores have no data, the slots only hold the keys
+      if (keysOnly) {
+        File keysOnlyFile = new File(tempFolder, "keys_only.dat");
+        keysOnlyFile.deleteOnExit();
+        tempFiles.add(keysOnlyFile);
+        new FileOutputStream(keysOnlyFile).close();
+        addSection(KEYS_ONLY_SECTION, keysOnlyFile);
+      }
+      if (multimap) {
+        File multimapFile = new File(tempFolder, "multimap.dat");
+        multimapFile.deleteOnExit();
+        tempFiles.add(multimapFile);
+        new FileOutputStream(multimapFile).close();
+        addSection(MULTIMAP_SECTION, multimapFile);
+      }
+
+      // Move the values of hot keys before the data, offsets then start at the data position of all key lengths
+      if (hotKeys != null && !keysOnly) {
+        hotDataFile = new File(tempFolder, "data_hot.dat");
+        hotDataFile.deleteOnExit();
+        tempFiles.add(hotDataFile);
+        relayout();
+      }
+
+      // Prepare the data position and the global slot of each key length
+      slotStarts = new long[keyCounts.length];
+      dataStarts = new long[keyCounts.length];
+      long slotCount = 0;
+      datasLength = hotDataFile != null ? hotDataFile.length() : 0;
+      for (int i = 0; i < keyCounts.length; i++) {
+        slotStarts[i] = slotCount;
+        dataStarts[i] = hotDataFile != null ? 0 : datasLength;
+        if (keyCounts[i] > 0) {
+          slotCount += getSlots(i);
+          if (!inlineValues[i] && !keysOnly) {
+            datasLength += dataLengths[i];
+          }
+        }
+      }
+
+      // Inline values have positions after the data, at the position of their slot in the index
+      long indexStart = 0;
+      for (int i = 0; i < keyCounts.length; i++) {
+        if (keyCounts[i] > 0) {
+          if (inlineValues[i]) {
+            dataStarts[i] = datasLength + indexStart;
+          }
+          indexStart += (long) getSlotSize(i) * getSlots(i);
+        }
+      }
+
+      // Prepare the key log, which holds the keys and data offsets of each key length in data order
+      File keyLogFile = new File(tempFolder, "key_log.dat");
+      if (keyLog) {
+        keyLogFile.deleteOnExit();
+        tempFiles.add(keyLogFile);
+        keyLogStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(keyLogFile)));
+      }
+
+      // Prepare ordinal sections
+      File ordinalHandlesFile = new File(tempFolder, "ordinal_handles.dat");
+      File ordinalSlotsFile = new File(tempFolder, "ordinal_slots.dat");
+      if (ordinals) {
+        ordinalHandlesFile.deleteOnExit();
+        tempFiles.add(ordinalHandlesFile);
+        ordinalHandlesStream =
+            new DataOutputStream(new BufferedOutputStream(new FileOutputStream(ordinalHandlesFile)));
+        ordinalSlotsFile.deleteOnExit();
+        tempFiles.add(ordinalSlotsFile);
+        ordinalSlotsAccessFile = new RandomAccessFile(ordinalSlotsFile, "rw");
+        ordinalSlotsAccessFile.setLength(slotCount * (Integer.SIZE / Byte.SIZE));
+      }
+
+      // Prepare the vector rows section
+      File vectorRowsFile = new File(tempFolder, "vector_rows.dat");
+      if (vectorDimension > 0) {
+        vectorRowsFile.deleteOnExit();
+        tempFiles.add(vectorRowsFile);
+        vectorRowsAccessFile = new RandomAccessFile(vectorRowsFile, "rw");
+        vectorRowsAccessFile.setLength((long) keyCount * (Integer.SIZE / Byte.SIZE));
+      }
+
+      // Prepare the dense index when the int or long keys cover enough of their range, handles are at most the data
+      // length plus the index length for inline values
+      if (denseKeys && denseKeyType != null && keyCount > 0) {
+        long range = denseMax - denseMin + 1;
+        denseHandleSize = (Long.SIZE - Long.numberOfLeadingZeros(datasLength + indexStart) + 7) / Byte.SIZE;
+        if (range > 0 && keyCount >= denseKeysMinDensity * range
+            && DENSE_INDEX_HEADER_SIZE + range * denseHandleSize <= Integer.MAX_VALUE) {
+          File denseIndexFile = new File(tempFolder, "dense_index.dat");
+          denseIndexFile.deleteOnExit();
+          tempFiles.add(denseIndexFile);
+          denseIndexAccessFile = new RandomAccessFile(denseIndexFile, "rw");
+          denseIndexAccessFile.setLength(DENSE_INDEX_HEADER_SIZE + range * denseHandleSize);
+          denseIndexBuffer = denseIndexAccessFile.getChannel()
+              .map(FileChannel.MapMode.READ_WRITE, 0, denseIndexAccessFile.length());
+          denseIndexBuffer.put((byte) (denseKeyType == Long.class ? 1 : 0));
+          denseIndexBuffer.putLong(denseMin);
+          denseIndexBuffer.putInt((int) range);
+          denseIndexBuffer.put((byte) denseHandleSize);
+          addSection(DENSE_INDEX_SECTION, denseIndexFile);
+        }
+      }
+
+      // Prepare zone map rows
+      if (zoneMap) {
+        zoneBuilder = new SortedKeys.Builder(tempFolder);
+      }
+
+      // Prepare sorted keys
+      if (sortedKeys || fstIndex) {
+        sortedKeysBuilder = new SortedKeys.Builder(tempFolder);
+      }
+      if (invertedIndex) {
+        termsBuilder = new SortedKeys.Builder(tempFolder);
+      }
+
+      // Build index file
+      List<File> indexFilesToMerge = new ArrayList<File>();
+      int ordinal = 0;
+      for (int i = 0; i < indexFiles.length; i++) {
+        if (indexFiles[i] != null) {
+          File indexFile = buildIndex(i, ordinal);
+          tempFiles.add(indexFile);
+          indexFilesToMerge.add(indexFile);
+          ordinal += keyCounts[i];
+        }
+      }
+
+      // Stats collisions
+      LOGGER.log(Level.INFO, "Number of collisions: {0}", collisions);
+
+      if (keyLog) {
+        keyLogStream.close();
+        addSection(KEY_LOG_SECTION, keyLogFile);
+      }
+
+      // Write the vector matrix, rows of each key length are in insertion order like ordinals
+      if (vectorDimension > 0) {
+        vectorRowsAccessFile.close();
+        File vectorMatrixFile = new File(tempFolder, "vector_matrix.dat");
+        vectorMatrixFile.deleteOnExit();
+        tempFiles.add(vectorMatrixFile);
+        List<File> rowFiles = new ArrayList<File>();
+        for (File vectorFile : vectorFiles) {
+          if (vectorFile != null) {
+            tempFiles.add(vectorFile);
+            rowFiles.add(vectorFile);
+          }
+        }
+        OutputStream vectorMatrixStream = new BufferedOutputStream(new FileOutputStream(vectorMatrixFile));
+        try {
+          VectorMatrix.writeHeader(vectorMatrixStream, vectorDimension, keyCount, vectorQuantization);
+          mergeFiles(rowFiles, vectorMatrixStream);
+        } finally {
+          vectorMatrixStream.close();
+        }
+        addSection(VECTOR_MATRIX_SECTION, vectorMatrixFile);
+        addSection(VECTOR_ROWS_SECTION, vectorRowsFile);
+      }
+
+      if (denseIndexBuffer != null) {
+        denseIndexBuffer.force();
+        denseIndexBuffer = null;
+        denseIndexAccessFile.close();
+      }
+
+      if (ordinals) {
+        ordinalHandlesStream.close();
+        ordinalSlotsAccessFile.close();
+        addSection(ORDINAL_HANDLES_SECTION, ordinalHandlesFile);
+        addSection(ORDINAL_SLOTS_SECTION, ordinalSlotsFile);
+      }
+
+      // Write sorted keys
+      if (sortedKeysBuilder != null) {
+        File sortedKeysFile = new File(tempFolder, "sorted_keys.dat");
+        sortedKeysFile.deleteOnExit();
+        tempFiles.add(sortedKeysFile);
+        File sortedBlocksFile = new File(tempFolder, "sorted_blocks.dat");
+        sortedBlocksFile.deleteOnExit();
+        tempFiles.add(sortedBlocksFile);
+        sortedKeysBuilder.build(sortedKeysFile, sortedBlocksFile);
+        if (sortedKeys) {
+          addSection(SORTED_KEYS_SECTION, sortedKeysFile);
+          addSection(SORTED_BLOCKS_SECTION, sortedBlocksFile);
+        }
+
+        // Build the key fst from a pass on the sorted keys
+        if (fstIndex) {
+          File fstIndexFile = new File(tempFolder, "fst_index.dat");
+          fstIndexFile.deleteOnExit();
+          tempFiles.add(fstIndexFile);
+          File fstHandlesFile = new File(tempFolder, "fst_handles.dat");
+          fstHandlesFile.deleteOnExit();
+          tempFiles.add(fstHandlesFile);
+          buildKeyFst(sortedKeysFile, fstIndexFile, fstHandlesFile);
+          addSection(FST_INDEX_SECTION, fstIndexFile);
+          addSection(FST_HANDLES_SECTION, fstHandlesFile);
+        }
+      }
+
+      // Write inverted index
+      if (invertedIndex) {
+        File invertedTermsFile = new File(tempFolder, "inverted_terms.dat");
+        invertedTermsFile.deleteOnExit();
+        tempFiles.add(invertedTermsFile);
+        File invertedBlocksFile = new File(tempFolder, "inverted_blocks.dat");
+        invertedBlocksFile.deleteOnExit();
+        tempFiles.add(invertedBlocksFile);
+        buildInvertedIndex(invertedTermsFile, invertedBlocksFile);
+        addSection(INVERTED_TERMS_SECTION, invertedTermsFile);
+        addSection(INVERTED_BLOCKS_SECTION, invertedBlocksFile);
+      }
+
+      // Write zone map
+      if (zoneMap) {
+        File zoneMapFile = new File(tempFolder, "zone_map.dat");
+        zoneMapFile.deleteOnExit();
+        tempFiles.add(zoneMapFile);
+        File zoneSlotsFile = new File(tempFolder, "zone_slots.dat");
+        zoneSlotsFile.deleteOnExit();
+        tempFiles.add(zoneSlotsFile);
+        buildZoneMap(zoneMapFile, zoneSlotsFile);
+        addSection(ZONE_MAP_SECTION, zoneMapFile);
+        addSection(ZONE_SLOTS_SECTION, zoneSlotsFile);
+      }
+
+      //Write metadata file, once the sections are known
       //写元数据文件
       File metadataFile = new File(tempFolder, "metadata.dat");
       metadataFile.deleteOnExit();
+      tempFiles.add(metadataFile);
       FileOutputStream metadataOututStream = new FileOutputStream(metadataFile);
       DataOutputStream metadataDataOutputStream = new DataOutputStream(metadataOututStream);
       writeMetadata(metadataDataOutputStream);
@@ -208,36 +812,140 @@ public class StorageWriter {
       metadataOututStream.close();
       filesToMerge.add(metadataFile);
 
-      // Build index file
-      for (int i = 0; i < indexFiles.length; i++) {
-        if (indexFiles[i] != null) {
-          filesToMerge.add(buildIndex(i));
-        }
-      }
-
-      // Stats collisions
-      LOGGER.log(Level.INFO, "Number of collisions: {0}", collisions);
+      // Add index files
+      filesToMerge.addAll(indexFilesToMerge);
 
       // Add data files
-      for (File dataFile : dataFiles) {
-        if (dataFile != null) {
-          filesToMerge.add(dataFile);
+      if (hotDataFile != null) {
+        filesToMerge.add(hotDataFile);
+      }
+      for (int i = 0; i < dataFiles.length; i++) {
+        if (dataFiles[i] != null) {
+          tempFiles.add(dataFiles[i]);
+          if (!inlineValues[i]) {
+            filesToMerge.add(dataFiles[i]);
+          }
         }
       }
 
+      // Add sections
+      for (File sectionFile : sections.values()) {
+        tempFiles.add(sectionFile);
+        filesToMerge.add(sectionFile);
+      }
+
       // Merge and write to output
       checkFreeDiskSpace(filesToMerge);
       mergeFiles(filesToMerge, outputStream);
     } finally {
       outputStream.close();
-      cleanup(filesToMerge);
+      if (keyLogStream != null) {
+        keyLogStream.close();
+      }
+      if (ordinalHandlesStream != null) {
+        ordinalHandlesStream.close();
+      }
+      if (denseIndexAccessFile != null) {
+        denseIndexAccessFile.close();
+      }
+      if (vectorRowsAccessFile != null) {
+        vectorRowsAccessFile.close();
+      }
+      if (ordinalSlotsAccessFile != null) {
+        ordinalSlotsAccessFile.close();
+      }
+      cleanup(tempFiles);
+    }
+  }
+
+  /**
+   * Adds a section to the store, the content of <code>file</code> is appended after the data.
+   * <p>
+   * Sections are added before closing and the file is deleted once merged.
+   *
+   * @param name section name
+   * @param file section content
+   */
+  void addSection(String name, File file) {
+    if (sections.containsKey(name)) {
+      throw new IllegalArgumentException("A section named '" + name + "' has already been added");
+    }
+    sections.put(name, file);
+  }
+
+  //Get the temporary folder sections can be written to
+  File getTempFolder() {
+    return tempFolder;
+  }
+
+  //Get the number of slots for the given key length
+  private int getSlots(int keyLength) {
+    return (int) Math.round(keyCounts[keyLength] / loadFactor);
+  }
+
+  //Record the type and range of the key for the dense index
+  private void recordDenseKey(byte[] key) {
+    if (keyCount > 0 && denseKeyType == null) {
+      return;
+    }
+    Number number = getDenseKey(key);
+    if (number == null || (denseKeyType != null && number.getClass() != denseKeyType)) {
+      denseKeyType = null;
+      return;
+    }
+    denseKeyType = number.getClass();
+    denseMin = Math.min(denseMin, number.longValue());
+    denseMax = Math.max(denseMax, number.longValue());
+  }
+
+  //Write the handle of the key in the dense index, big endian on the handle size
+  private void putDenseHandle(byte[] key, long handle) {
+    long index = getDenseKey(key).longValue() - denseMin;
+    int position = (int) (DENSE_INDEX_HEADER_SIZE + index * denseHandleSize);
+    for (int i = denseHandleSize - 1; i >= 0; i--) {
+      denseIndexBuffer.put(position + i, (byte) handle);
+      handle >>>= Byte.SIZE;
+    }
+  }
+
+  //Get the value of an int or long serialized key, or null for other types
+  private Number getDenseKey(byte[] key) {
+    Class<?> type = StorageSerialization.getType(key[0] & 0xff);
+    if (type != Integer.class && type != Long.class) {
+      return null;
+    }
+    try {
+      return (Number) serialization.deserialize(key);
+    } catch (Exception ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  //Get the slot size for the given key length, slots hold the key and the data offset or the inline value
+  //Set stores only hold the key, serialized keys never start with a zero byte which marks empty slots
+  private int getSlotSize(int keyLength) {
+    if (keysOnly) {
+      return keyLength;
+    }
+    return keyLength + (inlineValues[keyLength] ? getInlineSize(keyLength) : maxOffsetLengths[keyLength]);
+  }
+
+  //Get the size of the largest value of the given key length with its size
+  private int getInlineSize(int keyLength) {
+    int length = maxValueLengths[keyLength];
+    int sizeLength = 1;
+    while ((length & ~0x7F) != 0) {
+      length >>>= 7;
+      sizeLength++;
     }
+    return sizeLength + maxValueLengths[keyLength];
   }
 
   private void writeMetadata(DataOutputStream dataOutputStream)
       throws IOException {
-    //Write format version ；版本号
-    dataOutputStream.writeUTF(FormatVersion.getLatestVersion().name());
+    //Write format version, the first version is kept when there are no sections ；版本号
+    FormatVersion formatVersion = sections.isEmpty() ? FormatVersion.PALDB_V1 : FormatVersion.PALDB_V2;
+    dataOutputStream.writeUTF(formatVersion.name());
 
     //Write time ；写入时间戳
     dataOutputStream.writeLong(System.currentTimeMillis());
@@ -256,7 +964,6 @@ public class StorageWriter {
     dataOutputStream.writeInt(maxKeyLength);
 
     // For each keyLength
-    long datasLength = 0l;
     for (int i = 0; i < keyCounts.length; i++) {
       if (keyCounts[i] > 0) {
         // Write the key length;key 长度
@@ -267,24 +974,21 @@ public class StorageWriter {
 
         // 构建开放式寻址
         // Write slot count ;桶数量 哈希表 slot 数量 = 该 key 长度下的 key 数量 / loadFactor（默认0.75，可手动指定）
-        int slots = (int) Math.round(keyCounts[i] / loadFactor);
+        int slots = getSlots(i);
         dataOutputStream.writeInt(slots);
 
         // Write slot size ;slot_size=i+最大偏移量长度
-        int offsetLength = maxOffsetLengths[i];
-        dataOutputStream.writeInt(i + offsetLength);       //每个 slot 的大小是固定的，等于 key 长度 +  value 位置的最大长度（因此，slot 里的数据其实是有部分空闲的）。
+        int slotSize = getSlotSize(i);
+        dataOutputStream.writeInt(slotSize);       //每个 slot 的大小是固定的，等于 key 长度 +  value 位置的最大长度（因此，slot 里的数据其实是有部分空闲的）。
 
           // Write index offset ；该长度的键在数据文件中的索引偏移
         dataOutputStream.writeInt((int) indexesLength);
 
         // Increment index length ；该长度的键所有桶的长度+索引累计长度
-        indexesLength += (i + offsetLength) * slots;
+        indexesLength += slotSize * slots;
 
         // Write data length ；该长度的数据在数据文件中的数据偏移
-        dataOutputStream.writeLong(datasLength);
-
-        // Increment data length ；数据累计长度(值长度长度+值长度) 下一个长度 value的开始位置；
-        datasLength += dataLengths[i];
+        dataOutputStream.writeLong(dataStarts[i]);
       }
     }
 
@@ -295,25 +999,44 @@ public class StorageWriter {
       throw new RuntimeException();
     }
 
+    //Write the sections and the data length, sections follow the data in order
+    if (formatVersion.is(FormatVersion.PALDB_V2)) {
+      dataOutputStream.writeInt(sections.size());
+      for (Map.Entry<String, File> section : sections.entrySet()) {
+        dataOutputStream.writeUTF(section.getKey());
+        dataOutputStream.writeLong(section.getValue().length());
+      }
+      dataOutputStream.writeLong(datasLength);
+    }
+
     //Write the position of the index and the data
     // 元数据文件+key文件+value文件的顺序，先写入key索引文件起始位移，再写入value的data文件的起始位移。
     int indexOffset = dataOutputStream.size() + (Integer.SIZE / Byte.SIZE) + (Long.SIZE / Byte.SIZE);
+    // Pad the metadata so the data starts at an aligned position
+    int padding = 0;
+    if (alignedArrays) {
+      padding = (int) ((StorageSerialization.ALIGNMENT - (indexOffset + indexesLength) % StorageSerialization.ALIGNMENT)
+          % StorageSerialization.ALIGNMENT);
+      indexOffset += padding;
+    }
     //索引整体偏移量
     dataOutputStream.writeInt(indexOffset);
     //value 整体偏移量=索引偏移量+索引长度
     dataOutputStream.writeLong(indexOffset + indexesLength);
+    dataOutputStream.write(new byte[padding]);
   }
 
-  private File buildIndex(int keyLength)  //会有多个索引文件
+  private File buildIndex(int keyLength, int firstOrdinal)  //会有多个索引文件
       throws IOException {
 
       // 根据该长度下key的数目/负载因子计算存储的slot的格式
       long count = keyCounts[keyLength];
-      int slots = (int) Math.round(count / loadFactor);
+      int slots = getSlots(keyLength);
     int offsetLength = maxOffsetLengths[keyLength];
+    boolean inline = inlineValues[keyLength];
 
       //注意slotSize的计算方式，slot里面保存的内容包括key的长度以及指向data的偏移量占用的字节数
-      int slotSize = keyLength + offsetLength;
+      int slotSize = getSlotSize(keyLength);
 
     // Init index
     File indexFile = new File(tempFolder, "index" + keyLength + ".dat");
@@ -323,11 +1046,53 @@ public class StorageWriter {
       indexAccessFile.setLength(slots * slotSize);// 设置重建key的文件的长度 mmap 根据桶的长度；
       FileChannel indexChannel = indexAccessFile.getChannel();
       MappedByteBuffer byteBuffer = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexAccessFile.length());  //映射内存的起始位置与空间大小
+      MappedByteBuffer ordinalSlotsBuffer = null;
+      if (ordinals) {
+        ordinalSlotsBuffer = ordinalSlotsAccessFile.getChannel()
+            .map(FileChannel.MapMode.READ_WRITE, slotStarts[keyLength] * (Integer.SIZE / Byte.SIZE),
+                (long) slots * (Integer.SIZE / Byte.SIZE));
+      }
+      MappedByteBuffer vectorRowsBuffer = null;
+      if (vectorDimension > 0) {
+        vectorRowsBuffer = vectorRowsAccessFile.getChannel()
+            .map(FileChannel.MapMode.READ_WRITE, (long) firstOrdinal * (Integer.SIZE / Byte.SIZE),
+                count * (Integer.SIZE / Byte.SIZE));
+      }
 
       // Init reading stream
         // 初始化输入流
       File tempIndexFile = indexFiles[keyLength];
       DataInputStream tempIndexStream = new DataInputStream(new BufferedInputStream(new FileInputStream(tempIndexFile)));
+      DataInputStream numberStream = null;
+      if (zoneMap) {
+        numberStream = new DataInputStream(new BufferedInputStream(new FileInputStream(numberFiles[keyLength])));
+      }
+      DataInputStream sortKeyStream = null;
+      if (sortedKeysBuilder != null) {
+        sortKeyStream = new DataInputStream(new BufferedInputStream(new FileInputStream(sortKeyFiles[keyLength])));
+      }
+      DataInputStream termStream = null;
+      if (termsBuilder != null) {
+        termStream = new DataInputStream(new BufferedInputStream(new FileInputStream(termFiles[keyLength])));
+      }
+      // Inline values are read from the data file, in data order
+      DataInputStream dataStream = null;
+      byte[] record = null;
+      long recordOffset = -1;
+      long dataPosition = 0;
+      if (inline) {
+        dataStream = new DataInputStream(new BufferedInputStream(new FileInputStream(dataFiles[keyLength])));
+      }
+      // Keys are in insertion order after a relayout, the key log entries of the other keys follow the hot ones
+      File coldKeyLogFile = null;
+      DataOutputStream coldKeyLogStream = null;
+      long coldStart = 0;
+      if (keyLog && hotDataFile != null && !inline) {
+        coldStart = hotDataFile.length();
+        coldKeyLogFile = new File(tempFolder, "key_log_cold" + keyLength + ".dat");
+        coldKeyLogFile.deleteOnExit();
+        coldKeyLogStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(coldKeyLogFile)));
+      }
       try {
 
         byte[] keyBuffer = new byte[keyLength];  //one key byte数组
@@ -343,6 +1108,17 @@ public class StorageWriter {
           // Read offset
           long offset = LongPacker.unpackLong(tempIndexStream);  //读取 data偏移地址
 
+          // Read the value record to inline, offsets never decrease
+          if (inline && offset != recordOffset) {
+            dataStream.skipBytes((int) (offset - dataPosition));
+            int size = LongPacker.unpackInt(dataStream);
+            record = new byte[getInlineSize(keyLength)];
+            int sizeLength = LongPacker.packLong(record, size);
+            dataStream.readFully(record, sizeLength, size);
+            recordOffset = offset;
+            dataPosition = offset + sizeLength + size;
+          }
+
           // Hash
           long hash = (long) hashUtils.hash(keyBuffer);  // Hash，根据key进行重hash后确定放置到具体的slot位置
 
@@ -354,13 +1130,68 @@ public class StorageWriter {
             byteBuffer.position(slot * slotSize);  //内存块指定地址；
             byteBuffer.get(slotBuffer); //获取桶长度数据；byteBuffer获取完 key 数据之后，就会移动指针到 slotBuffer 的位置；
 
-            long found = LongPacker.unpackLong(slotBuffer, keyLength); //是否存在 key ，偏移地址是否为 0
+            long found = keysOnly ? slotBuffer[0] : LongPacker.unpackLong(slotBuffer, keyLength); //是否存在 key ，偏移地址是否为 0
             if (found == 0) {
               // The spot is empty use it； 桶为空则使用
               byteBuffer.position(slot * slotSize); // 根据hash值写入key以及key对应value在data文件的偏移量
               byteBuffer.put(keyBuffer); //保存 key
-              int pos = LongPacker.packLong(offsetBuffer, offset);
-              byteBuffer.put(offsetBuffer, 0, pos); //保存data偏移量 ,pos = offsetBuffer长度
+              if (inline) {
+                // The value record follows the key and the value position is the position of the record
+                byteBuffer.put(record);
+                offset = (long) slot * slotSize + keyLength;
+              } else if (!keysOnly) {
+                int pos = LongPacker.packLong(offsetBuffer, offset);
+                byteBuffer.put(offsetBuffer, 0, pos); //保存data偏移量 ,pos = offsetBuffer长度
+              }
+
+              // Keys are read in data order, hot values all come before the others
+              if (keyLog) {
+                DataOutputStream logStream =
+                    coldKeyLogStream != null && offset >= coldStart ? coldKeyLogStream : keyLogStream;
+                logStream.write(keyBuffer);
+                LongPacker.packLong(logStream, offset);
+              }
+
+              // Dense keys are addressed by their value
+              if (denseIndexBuffer != null) {
+                putDenseHandle(keyBuffer, dataStarts[keyLength] + offset);
+              }
+
+              // Keys are read in ordinal order
+              if (ordinals) {
+                ordinalHandlesStream.writeLong(dataStarts[keyLength] + offset);
+                ordinalSlotsBuffer.putInt(slot * (Integer.SIZE / Byte.SIZE), firstOrdinal + i);
+              }
+
+              // Vector rows are in ordinal order
+              if (vectorRowsBuffer != null) {
+                vectorRowsBuffer.putInt(i * (Integer.SIZE / Byte.SIZE), (int) slotStarts[keyLength] + slot);
+              }
+
+              // Encoded keys are read in lockstep with the keys
+              if (sortKeyStream != null) {
+                byte[] sortKey = new byte[LongPacker.unpackInt(sortKeyStream)];
+                sortKeyStream.readFully(sortKey);
+                sortedKeysBuilder.add(sortKey, keyBuffer.clone(), dataStarts[keyLength] + offset);
+              }
+
+              // Terms are read in lockstep with the keys and point to the global slot
+              if (termStream != null) {
+                int termCount = LongPacker.unpackInt(termStream);
+                for (int t = 0; t < termCount; t++) {
+                  byte[] term = new byte[LongPacker.unpackInt(termStream)];
+                  termStream.readFully(term);
+                  termsBuilder.add(term, new byte[0], slotStarts[keyLength] + slot);
+                }
+              }
+
+              // Numbers are read in lockstep with the keys and sorted with their global slot
+              if (zoneMap) {
+                double number = numberStream.readDouble();
+                if (!Double.isNaN(number)) {
+                  zoneBuilder.add(SortedKeys.encode(number), new byte[0], slotStarts[keyLength] + slot);
+                }
+              }
               break;
             } else {
               collision = true;
@@ -378,6 +1209,11 @@ public class StorageWriter {
           }
         }
 
+        if (coldKeyLogStream != null) {
+          coldKeyLogStream.close();
+          mergeFiles(Arrays.asList(coldKeyLogFile), keyLogStream);
+        }
+
         String msg = "  Max offset length: " + offsetLength + " bytes" +
                 "\n  Slot size: " + slotSize + " bytes";
 
@@ -385,11 +1221,32 @@ public class StorageWriter {
       } finally {
         // Close input
         tempIndexStream.close();
+        if (numberStream != null) {
+          numberStream.close();
+          numberFiles[keyLength].delete();
+        }
+        if (sortKeyStream != null) {
+          sortKeyStream.close();
+          sortKeyFiles[keyLength].delete();
+        }
+        if (termStream != null) {
+          termStream.close();
+          termFiles[keyLength].delete();
+        }
+        if (dataStream != null) {
+          dataStream.close();
+        }
+        if (coldKeyLogStream != null) {
+          coldKeyLogStream.close();
+          coldKeyLogFile.delete();
+        }
 
         // Close index and make sure resources are liberated
         indexChannel.close();
         indexChannel = null;
         byteBuffer = null;
+        ordinalSlotsBuffer = null;
+        vectorRowsBuffer = null;
 
         // Delete temp index file
         if (tempIndexFile.delete()) {
@@ -405,6 +1262,129 @@ public class StorageWriter {
     return indexFile;
   }
 
+  //Copy the values of the hot keys to the hot data file and the others to new data files, in two passes
+  //The first pass measures the hot values so the offsets written by the second pass are relative to the data start
+  private void relayout()
+      throws IOException {
+    long hotLength = 1;
+    long coldLength = 0;
+    for (int i = 0; i < indexFiles.length; i++) {
+      if (indexFiles[i] != null && !inlineValues[i]) {
+        hotLength = relayout(i, hotLength, 0, null, null, null);
+        coldLength += dataLengths[i];
+      }
+    }
+
+    DataOutputStream hotStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(hotDataFile)));
+    try {
+      // Write one byte so the zero offset is reserved
+      hotStream.writeByte(0);
+      long coldStart = hotLength;
+      hotLength = 1;
+      for (int i = 0; i < indexFiles.length; i++) {
+        if (indexFiles[i] != null && !inlineValues[i]) {
+          File indexFile = new File(tempFolder, "temp_index_hot" + i + ".dat");
+          indexFile.deleteOnExit();
+          File dataFile = new File(tempFolder, "data_cold" + i + ".dat");
+          dataFile.deleteOnExit();
+          DataOutputStream indexStream =
+              new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+          DataOutputStream dataStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dataFile)));
+          try {
+            maxOffsetLengths[i] = 0;
+            hotLength = relayout(i, hotLength, coldStart, hotStream, dataStream, indexStream);
+          } finally {
+            indexStream.close();
+            dataStream.close();
+          }
+          coldStart += dataLengths[i];
+          indexFiles[i].delete();
+          dataFiles[i].delete();
+          indexFiles[i] = indexFile;
+          dataFiles[i] = dataFile;
+        }
+      }
+    } finally {
+      hotStream.close();
+    }
+    LOGGER.log(Level.INFO, "Moved {0} bytes of hot values before {1} bytes of other values",
+        new Object[]{hotLength, coldLength});
+  }
+
+  //Copy the values of the key length, without streams only the lengths are computed
+  //Returns the hot data length and sets the data length of the key length to the length of the other values
+  private long relayout(int keyLength, long hotLength, long coldStart, DataOutputStream hotStream,
+      DataOutputStream dataStream, DataOutputStream indexStream)
+      throws IOException {
+    DataInputStream tempIndexStream =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(indexFiles[keyLength])));
+    DataInputStream tempDataStream =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(dataFiles[keyLength])));
+    try {
+      byte[] keyBuffer = new byte[keyLength];
+      byte[] sizeBuffer = new byte[10];
+      byte[] value = null;
+      // Offsets of the last value read and of its last copies, values are shared by consecutive keys
+      long valueOffset = -1;
+      long dataPosition = 0;
+      long lastHotOffset = -1;
+      long lastHotPosition = 0;
+      long lastColdOffset = -1;
+      long lastColdPosition = 0;
+      long coldLength = 0;
+      for (int i = 0; i < keyCounts[keyLength]; i++) {
+        tempIndexStream.readFully(keyBuffer);
+        long offset = LongPacker.unpackLong(tempIndexStream);
+
+        // Offsets never decrease so values are read sequentially
+        if (offset != valueOffset) {
+          tempDataStream.skipBytes((int) (offset - dataPosition));
+          value = new byte[LongPacker.unpackInt(tempDataStream)];
+          tempDataStream.readFully(value);
+          valueOffset = offset;
+          dataPosition = offset + LongPacker.packLong(sizeBuffer, value.length) + value.length;
+        }
+        int recordLength = LongPacker.packLong(sizeBuffer, value.length) + value.length;
+
+        long position;
+        if (hotKeys.contains(ByteBuffer.wrap(keyBuffer))) {
+          if (lastHotOffset != offset) {
+            lastHotOffset = offset;
+            lastHotPosition = hotLength;
+            if (hotStream != null) {
+              hotStream.write(sizeBuffer, 0, recordLength - value.length);
+              hotStream.write(value);
+            }
+            hotLength += recordLength;
+          }
+          position = lastHotPosition;
+        } else {
+          if (lastColdOffset != offset) {
+            lastColdOffset = offset;
+            lastColdPosition = coldStart + coldLength;
+            if (dataStream != null) {
+              dataStream.write(sizeBuffer, 0, recordLength - value.length);
+              dataStream.write(value);
+            }
+            coldLength += recordLength;
+          }
+          position = lastColdPosition;
+        }
+
+        if (indexStream != null) {
+          indexStream.write(keyBuffer);
+          int offsetLength = LongPacker.packLong(indexStream, position);
+          maxOffsetLengths[keyLength] = Math.max(offsetLength, maxOffsetLengths[keyLength]);
+        }
+      }
+      dataLengths[keyLength] = coldLength;
+      return hotLength;
+    } finally {
+      tempIndexStream.close();
+      tempDataStream.close();
+    }
+  }
+
   //Fail if the size of the expected store file exceed 2/3rd of the free disk space
   private void checkFreeDiskSpace(List<File> inputFiles) {
     //Check for free space
@@ -494,6 +1474,368 @@ public class StorageWriter {
     return dos;
   }
 
+  //Get the number stream for the specified keyLength, create it if needed
+  private DataOutputStream getNumberStream(int keyLength)
+      throws IOException {
+    if (numberStreams.length <= keyLength) {
+      numberStreams = Arrays.copyOf(numberStreams, keyLength + 1);
+      numberFiles = Arrays.copyOf(numberFiles, keyLength + 1);
+    }
+
+    DataOutputStream dos = numberStreams[keyLength];
+    if (dos == null) {
+      File file = new File(tempFolder, "temp_number" + keyLength + ".dat");
+      file.deleteOnExit();
+      numberFiles[keyLength] = file;
+
+      dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+      numberStreams[keyLength] = dos;
+    }
+    return dos;
+  }
+
+  //Write the encoded key of the serialized key
+  private void writeSortKey(byte[] key)
+      throws IOException {
+    Object object;
+    try {
+      object = serialization.deserialize(key);
+    } catch (ClassNotFoundException ex) {
+      throw new RuntimeException(ex);
+    }
+    if (fstIndex && !(object instanceof String)) {
+      throw new IllegalArgumentException(
+          "The key type " + object.getClass().getName() + " can't be stored in the key fst, only strings can");
+    }
+    // Unpaired surrogates are encoded as '?' and the key would collide with another one in the fst
+    if (fstIndex && hasUnpairedSurrogate((String) object)) {
+      throw new IllegalArgumentException(
+          "The key '" + object + "' has an unpaired surrogate and can't be stored in the key fst");
+    }
+    byte[] sortKey = SortedKeys.encode(object);
+    DataOutputStream dos = getSortKeyStream(key.length);
+    LongPacker.packInt(dos, sortKey.length);
+    dos.write(sortKey);
+  }
+
+  //Check whether the string has a surrogate which isn't part of a pair, it can't be encoded in UTF-8
+  private static boolean hasUnpairedSurrogate(String string) {
+    for (int i = 0; i < string.length(); i++) {
+      char c = string.charAt(i);
+      if (Character.isHighSurrogate(c) && i + 1 < string.length() && Character.isLowSurrogate(string.charAt(i + 1))) {
+        i++;
+      } else if (Character.isSurrogate(c)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  //Build the key fst from the sorted keys, which are all strings
+  private void buildKeyFst(File sortedKeysFile, File fstIndexFile, File fstHandlesFile)
+      throws IOException {
+    SortedKeys.RunReader reader = new SortedKeys.RunReader(sortedKeysFile);
+    DataOutputStream fstIndexStream =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fstIndexFile)));
+    DataOutputStream fstHandlesStream =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fstHandlesFile)));
+    try {
+      KeyFst.Builder builder = new KeyFst.Builder(fstIndexStream, fstHandlesStream);
+      while (reader.next()) {
+        // Strip the encoding type of the UTF-8 bytes
+        byte[] sortKey = reader.getSortKey();
+        builder.add(Arrays.copyOfRange(sortKey, 1, sortKey.length), reader.getHandle());
+      }
+      builder.finish();
+    } finally {
+      reader.close();
+      fstIndexStream.close();
+      fstHandlesStream.close();
+    }
+  }
+
+  //Record a multimap value, sorted by key length and bytes then insertion order
+  private void recordMultimapValue(byte[] key, byte[] value)
+      throws IOException {
+    if (multimapBuilder == null) {
+      multimapBuilder = new SortedKeys.Builder(tempFolder);
+    }
+    ByteBuffer sortKey = ByteBuffer.allocate(key.length + (Integer.SIZE + Long.SIZE) / Byte.SIZE);
+    sortKey.putInt(key.length).put(key).putLong(multimapValueCount++);
+    multimapBuilder.add(sortKey.array(), value, 0);
+  }
+
+  //Write the values of each key as an array, values are read back from the sorted records one at a time
+  private void writeMultimapValues()
+      throws IOException {
+    if (multimapBuilder == null) {
+      return;
+    }
+    File multimapValuesFile = new File(tempFolder, "multimap_values.dat");
+    multimapValuesFile.deleteOnExit();
+    File multimapBlocksFile = new File(tempFolder, "multimap_blocks.dat");
+    multimapBlocksFile.deleteOnExit();
+    multimapBuilder.build(multimapValuesFile, multimapBlocksFile);
+    multimapBlocksFile.delete();
+
+    SortedKeys.RunReader reader = new SortedKeys.RunReader(multimapValuesFile);
+    try {
+      DataInputOutput values = new DataInputOutput();
+      byte[] key = null;
+      int count = 0;
+      boolean hasNext;
+      do {
+        hasNext = reader.next();
+        byte[] sortKey = hasNext ? reader.getSortKey() : null;
+        if (key != null && (!hasNext || !isMultimapKey(sortKey, key))) {
+          putValue(key, getMultimapGroup(values, count));
+          values.reset();
+          count = 0;
+        }
+        if (hasNext) {
+          key = Arrays.copyOfRange(sortKey, Integer.SIZE / Byte.SIZE, sortKey.length - Long.SIZE / Byte.SIZE);
+          values.write(reader.getKey());
+          count++;
+        }
+      } while (hasNext);
+    } finally {
+      reader.close();
+      multimapValuesFile.delete();
+    }
+    multimapBuilder = null;
+  }
+
+  //Check whether the sort key of a multimap value holds the key
+  private static boolean isMultimapKey(byte[] sortKey, byte[] key) {
+    int offset = Integer.SIZE / Byte.SIZE;
+    if (sortKey.length != offset + key.length + Long.SIZE / Byte.SIZE) {
+      return false;
+    }
+    for (int i = 0; i < key.length; i++) {
+      if (sortKey[offset + i] != key[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  //Serialize the values of a key as an object array, whose elements are the serialized values
+  private static byte[] getMultimapGroup(DataInputOutput values, int count)
+      throws IOException {
+    DataInputOutput group = new DataInputOutput();
+    group.write(StorageSerialization.ARRAY_OBJECT);
+    LongPacker.packInt(group, count);
+    group.write(values.getBuf(), 0, values.getPos());
+    return group.toByteArray();
+  }
+
+  //Get the serialized terms of the serialized value
+  private List<byte[]> getTerms(byte[] value)
+      throws IOException {
+    Object object;
+    try {
+      object = serialization.deserialize(value);
+    } catch (ClassNotFoundException ex) {
+      throw new RuntimeException(ex);
+    }
+    List<byte[]> terms = new ArrayList<byte[]>();
+    if (termExtractor == null) {
+      if (object != null) {
+        terms.add(serialization.serializeKey(object));
+      }
+    } else {
+      for (Object term : termExtractor.extract(object)) {
+        terms.add(serialization.serializeKey(term));
+      }
+    }
+    return terms;
+  }
+
+  //Write the terms of a value, the count followed by each term size and bytes
+  private void writeTerms(int keyLength, List<byte[]> terms)
+      throws IOException {
+    DataOutputStream dos = getTermStream(keyLength);
+    LongPacker.packInt(dos, terms.size());
+    for (byte[] term : terms) {
+      LongPacker.packInt(dos, term.length);
+      dos.write(term);
+    }
+  }
+
+  //Get the term stream for the specified keyLength, create it if needed
+  private DataOutputStream getTermStream(int keyLength)
+      throws IOException {
+    if (termStreams.length <= keyLength) {
+      termStreams = Arrays.copyOf(termStreams, keyLength + 1);
+      termFiles = Arrays.copyOf(termFiles, keyLength + 1);
+    }
+
+    DataOutputStream dos = termStreams[keyLength];
+    if (dos == null) {
+      File file = new File(tempFolder, "temp_terms" + keyLength + ".dat");
+      file.deleteOnExit();
+      termFiles[keyLength] = file;
+
+      dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+      termStreams[keyLength] = dos;
+    }
+    return dos;
+  }
+
+  //Group the sorted terms with the delta encoded global slots of their keys
+  private void buildInvertedIndex(File invertedTermsFile, File invertedBlocksFile)
+      throws IOException {
+    File sortedTermsFile = new File(tempFolder, "sorted_terms.dat");
+    sortedTermsFile.deleteOnExit();
+    File sortedTermBlocksFile = new File(tempFolder, "sorted_term_blocks.dat");
+    sortedTermBlocksFile.deleteOnExit();
+    termsBuilder.build(sortedTermsFile, sortedTermBlocksFile);
+    sortedTermBlocksFile.delete();
+
+    SortedKeys.Builder postingsBuilder = new SortedKeys.Builder(tempFolder);
+    SortedKeys.RunReader reader = new SortedKeys.RunReader(sortedTermsFile);
+    try {
+      byte[] term = null;
+      long[] slots = new long[16];
+      int count = 0;
+      boolean hasNext;
+      do {
+        hasNext = reader.next();
+        if (term != null && (!hasNext || !Arrays.equals(term, reader.getSortKey()))) {
+          count = sortDistinct(slots, count);
+          postingsBuilder.add(term, encodePostings(slots, count), count);
+          count = 0;
+        }
+        if (hasNext) {
+          term = reader.getSortKey();
+          if (count == slots.length) {
+            slots = Arrays.copyOf(slots, count * 2);
+          }
+          slots[count++] = reader.getHandle();
+        }
+      } while (hasNext);
+    } finally {
+      reader.close();
+      sortedTermsFile.delete();
+    }
+    postingsBuilder.build(invertedTermsFile, invertedBlocksFile);
+  }
+
+  /**
+   * Writes the zone map over the keys with a numeric value sorted by value.
+   * <p>
+   * Index slots are in hash order so blocks of slots hold values spread over the whole range, while blocks of
+   * sorted values are disjoint and a value range only matches the blocks overlapping it.
+   *
+   * @param zoneMapFile file to write the block size and the min and max value of each block to
+   * @param zoneSlotsFile file to write the global slot of each key to, in value order
+   * @throws IOException if an io error occurs
+   */
+  private void buildZoneMap(File zoneMapFile, File zoneSlotsFile)
+      throws IOException {
+    File sortedNumbersFile = new File(tempFolder, "sorted_numbers.dat");
+    sortedNumbersFile.deleteOnExit();
+    File sortedNumberBlocksFile = new File(tempFolder, "sorted_number_blocks.dat");
+    sortedNumberBlocksFile.deleteOnExit();
+    zoneBuilder.build(sortedNumbersFile, sortedNumberBlocksFile);
+    sortedNumberBlocksFile.delete();
+
+    SortedKeys.RunReader reader = new SortedKeys.RunReader(sortedNumbersFile);
+    DataOutputStream zoneMapStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(zoneMapFile)));
+    DataOutputStream zoneSlotsStream =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(zoneSlotsFile)));
+    try {
+      zoneMapStream.writeInt(zoneMapBlockSize);
+      long row = 0;
+      double previous = Double.NaN;
+      while (reader.next()) {
+        double number = SortedKeys.decodeDouble(reader.getSortKey());
+        // Values are sorted so a block spans from its first to its last value
+        if (row % zoneMapBlockSize == 0) {
+          if (row > 0) {
+            zoneMapStream.writeDouble(previous);
+          }
+          zoneMapStream.writeDouble(number);
+        }
+        zoneSlotsStream.writeLong(reader.getHandle());
+        previous = number;
+        row++;
+      }
+      if (row > 0) {
+        zoneMapStream.writeDouble(previous);
+      }
+    } finally {
+      reader.close();
+      zoneMapStream.close();
+      zoneSlotsStream.close();
+      sortedNumbersFile.delete();
+    }
+  }
+
+  //Sort the slots and drop the duplicates of keys extracting the same term several times, returns the new count
+  private static int sortDistinct(long[] slots, int count) {
+    Arrays.sort(slots, 0, count);
+    int distinct = 0;
+    for (int i = 0; i < count; i++) {
+      if (distinct == 0 || slots[i] != slots[distinct - 1]) {
+        slots[distinct++] = slots[i];
+      }
+    }
+    return distinct;
+  }
+
+  //Encode the sorted slots, as the first slot followed by the gaps
+  private static byte[] encodePostings(long[] slots, int count)
+      throws IOException {
+    DataInputOutput postings = new DataInputOutput();
+    long previous = 0;
+    for (int i = 0; i < count; i++) {
+      LongPacker.packLong(postings, slots[i] - previous);
+      previous = slots[i];
+    }
+    return postings.toByteArray();
+  }
+
+  //Get the encoded key stream for the specified keyLength, create it if needed
+  private DataOutputStream getSortKeyStream(int keyLength)
+      throws IOException {
+    if (sortKeyStreams.length <= keyLength) {
+      sortKeyStreams = Arrays.copyOf(sortKeyStreams, keyLength + 1);
+      sortKeyFiles = Arrays.copyOf(sortKeyFiles, keyLength + 1);
+    }
+
+    DataOutputStream dos = sortKeyStreams[keyLength];
+    if (dos == null) {
+      File file = new File(tempFolder, "temp_sort_key" + keyLength + ".dat");
+      file.deleteOnExit();
+      sortKeyFiles[keyLength] = file;
+
+      dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+      sortKeyStreams[keyLength] = dos;
+    }
+    return dos;
+  }
+
+  //Get the vector stream for the specified keyLength, create it if needed
+  private DataOutputStream getVectorStream(int keyLength)
+      throws IOException {
+    if (vectorStreams.length <= keyLength) {
+      vectorStreams = Arrays.copyOf(vectorStreams, keyLength + 1);
+      vectorFiles = Arrays.copyOf(vectorFiles, keyLength + 1);
+    }
+
+    DataOutputStream dos = vectorStreams[keyLength];
+    if (dos == null) {
+      File file = new File(tempFolder, "temp_vector" + keyLength + ".dat");
+      file.deleteOnExit();
+      vectorFiles[keyLength] = file;
+
+      dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+      vectorStreams[keyLength] = dos;
+    }
+    return dos;
+  }
+
   //Get the index stream for the specified keyLength, create it if needed
   private DataOutputStream getIndexStream(int keyLength)
       throws IOException {
@@ -504,6 +1846,7 @@ public class StorageWriter {
 
       keyCounts = Arrays.copyOf(keyCounts, keyLength + 1);
       maxOffsetLengths = Arrays.copyOf(maxOffsetLengths, keyLength + 1);
+      maxValueLengths = Arrays.copyOf(maxValueLengths, keyLength + 1);
 
       lastValues = Arrays.copyOf(lastValues, keyLength + 1);
       lastValuesLength = Arrays.copyOf(lastValuesLength, keyLength + 1);
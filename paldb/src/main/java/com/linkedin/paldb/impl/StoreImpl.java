@@ -15,13 +15,19 @@
 package com.linkedin.paldb.impl;
 
 import com.linkedin.paldb.api.Configuration;
+import com.linkedin.paldb.api.ShardedStoreReader;
 import com.linkedin.paldb.api.StoreReader;
 import com.linkedin.paldb.api.StoreWriter;
 import com.linkedin.paldb.utils.TempUtils;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -49,8 +55,12 @@ public final class StoreImpl {
     if (stream == null || config == null) {
       throw new NullPointerException();
     }
-    LOGGER.log(Level.INFO, "Initialize reader from stream, copying into temp folder");
     try {
+      if (config.getBoolean(Configuration.MEMORY_LOAD_ENABLED)) {
+        LOGGER.log(Level.INFO, "Initialize reader from stream, loading into memory");
+        return new ReaderImpl(config, copyIntoBuffer(stream, -1));
+      }
+      LOGGER.log(Level.INFO, "Initialize reader from stream, copying into temp folder");
       File file = TempUtils.copyIntoTempFile("paldbtempreader", stream);
       LOGGER.log(Level.INFO, "Copied stream into temp file {0}", file.getName());
       return new ReaderImpl(config, file);
@@ -59,6 +69,32 @@ public final class StoreImpl {
     }
   }
 
+  public static StoreReader createReader(ByteBuffer buffer, Configuration config) {
+    if (buffer == null || config == null) {
+      throw new NullPointerException();
+    }
+    LOGGER.log(Level.INFO, "Initialize reader from {0} buffer", buffer.isDirect() ? "direct" : "heap");
+    return new ReaderImpl(config, buffer);
+  }
+
+  public static StoreReader createReader(URL resource, Configuration config) {
+    if (resource == null || config == null) {
+      throw new NullPointerException();
+    }
+    try {
+      if ("file".equals(resource.getProtocol())) {
+        return createReader(new File(resource.toURI()), config);
+      }
+      LOGGER.log(Level.INFO, "Initialize reader from resource {0}, loading into memory", resource);
+      URLConnection connection = resource.openConnection();
+      return new ReaderImpl(config, copyIntoBuffer(connection.getInputStream(), connection.getContentLengthLong()));
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    } catch (URISyntaxException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
   public static StoreWriter createWriter(File file, Configuration config) {
     if (file == null || config == null) {
       throw new NullPointerException();
@@ -86,4 +122,62 @@ public final class StoreImpl {
     LOGGER.info("Initialize writer from stream");
     return new WriterImpl(config, stream);
   }
+
+  public static StoreWriter createShardedWriter(File folder, int shards, Configuration config) {
+    if (folder == null || config == null) {
+      throw new NullPointerException();
+    }
+    try {
+      LOGGER.log(Level.INFO, "Initialize sharded writer from folder {0}", folder.getName());
+      if (!folder.exists()) {
+        if (folder.mkdirs()) {
+          LOGGER.log(Level.INFO, "Creating directories for path {0}", folder.getName());
+        } else {
+          throw new RuntimeException(String.format("Couldn't create directory %s", folder));
+        }
+      }
+      return new ShardedWriterImpl(config, folder, shards);
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  public static ShardedStoreReader createShardedReader(File folder, Configuration config) {
+    if (folder == null || config == null) {
+      throw new NullPointerException();
+    }
+    LOGGER.log(Level.INFO, "Initialize sharded reader from folder {0}", folder.getName());
+    return new ShardedReaderImpl(config, folder);
+  }
+
+  //Copy the stream into a direct buffer and close it, the size is used as a hint when positive
+  private static ByteBuffer copyIntoBuffer(InputStream inputStream, long size)
+      throws IOException {
+    try {
+      byte[] buffer = new byte[8192];
+      int length;
+      if (size > 0 && size <= Integer.MAX_VALUE) {
+        ByteBuffer res = ByteBuffer.allocateDirect((int) size);
+        while (res.hasRemaining() && (length = inputStream.read(buffer, 0, Math.min(buffer.length, res.remaining())))
+            > 0) {
+          res.put(buffer, 0, length);
+        }
+        if (res.hasRemaining() || inputStream.read() != -1) {
+          throw new IOException("The stream size doesn't match the expected size " + size);
+        }
+        res.flip();
+        return res;
+      }
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      while ((length = inputStream.read(buffer)) > 0) {
+        bytes.write(buffer, 0, length);
+      }
+      ByteBuffer res = ByteBuffer.allocateDirect(bytes.size());
+      res.put(bytes.toByteArray());
+      res.flip();
+      return res;
+    } finally {
+      inputStream.close();
+    }
+  }
 }
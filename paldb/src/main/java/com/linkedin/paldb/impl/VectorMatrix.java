@@ -0,0 +1,359 @@
+/*
+* Copyright 2015 LinkedIn Corp. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*/
+
+package com.linkedin.paldb.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.AbstractMap;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+
+/**
+ * Fixed dimension vectors stored as a contiguous little-endian matrix, one row per vector.
+ * <p>
+ * The matrix holds a header with the dimension, row count and quantization (int), padded to 16 bytes, followed by
+ * the rows. Rows hold <code>float</code> values, <code>fp16</code> values or an <code>int8</code> scale (float)
+ * followed by the quantized values. Reads use absolute positions so the matrix can be scanned concurrently.
+ */
+final class VectorMatrix {
+
+  // Quantizations
+  static final int NONE = 0;
+  static final int INT8 = 1;
+  static final int FP16 = 2;
+  // Header size
+  static final int HEADER_SIZE = 16;
+
+  private final ByteBuffer buffer;
+  private final FloatBuffer floats;
+  private final int dimension;
+  private final int rows;
+  private final int quantization;
+  private final int rowSize;
+  // Row norms for cosine similarity, computed on first use
+  private volatile float[] norms;
+
+  /**
+   * Constructor.
+   *
+   * @param section matrix section
+   */
+  VectorMatrix(ByteBuffer section) {
+    buffer = section.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    dimension = buffer.getInt(0);
+    rows = buffer.getInt(4);
+    quantization = buffer.getInt(8);
+    rowSize = getRowSize(dimension, quantization);
+    if (quantization == NONE) {
+      buffer.position(HEADER_SIZE);
+      floats = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+      buffer.position(0);
+    } else {
+      floats = null;
+    }
+  }
+
+  /**
+   * Gets the quantization for the given configuration value.
+   *
+   * @param name quantization name, <code>none</code>, <code>int8</code> or <code>fp16</code>
+   * @return quantization
+   */
+  static int getQuantization(String name) {
+    if ("none".equals(name)) {
+      return NONE;
+    } else if ("int8".equals(name)) {
+      return INT8;
+    } else if ("fp16".equals(name)) {
+      return FP16;
+    }
+    throw new IllegalArgumentException("Illegal vector quantization = " + name + ", should be none, int8 or fp16.");
+  }
+
+  /**
+   * Gets the size of a row.
+   *
+   * @param dimension vector dimension
+   * @param quantization quantization
+   * @return row size in bytes
+   */
+  static int getRowSize(int dimension, int quantization) {
+    switch (quantization) {
+      case INT8:
+        return (Float.SIZE / Byte.SIZE) + dimension;
+      case FP16:
+        return dimension * (Short.SIZE / Byte.SIZE);
+      default:
+        return dimension * (Float.SIZE / Byte.SIZE);
+    }
+  }
+
+  /**
+   * Writes the matrix header.
+   *
+   * @param outputStream output stream
+   * @param dimension vector dimension
+   * @param rows row count
+   * @param quantization quantization
+   * @throws IOException if an io error occurs
+   */
+  static void writeHeader(OutputStream outputStream, int dimension, int rows, int quantization)
+      throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(dimension).putInt(rows).putInt(quantization);
+    outputStream.write(header.array());
+  }
+
+  /**
+   * Writes a row.
+   *
+   * @param outputStream output stream
+   * @param vector vector values
+   * @param quantization quantization
+   * @throws IOException if an io error occurs
+   */
+  static void writeRow(OutputStream outputStream, float[] vector, int quantization)
+      throws IOException {
+    ByteBuffer row = ByteBuffer.allocate(getRowSize(vector.length, quantization)).order(ByteOrder.LITTLE_ENDIAN);
+    if (quantization == INT8) {
+      //Symmetric quantization with a scale per row
+      float max = 0f;
+      for (float v : vector) {
+        max = Math.max(max, Math.abs(v));
+      }
+      float scale = max / Byte.MAX_VALUE;
+      row.putFloat(scale);
+      for (float v : vector) {
+        row.put(scale == 0f ? 0 : (byte) Math.round(v / scale));
+      }
+    } else if (quantization == FP16) {
+      for (float v : vector) {
+        row.putShort(toHalf(v));
+      }
+    } else {
+      for (float v : vector) {
+        row.putFloat(v);
+      }
+    }
+    outputStream.write(row.array());
+  }
+
+  int getDimension() {
+    return dimension;
+  }
+
+  int getRows() {
+    return rows;
+  }
+
+  /**
+   * Gets a read-only view over a row, only unquantized rows can be viewed without copy.
+   *
+   * @param row row
+   * @return view of the row values
+   */
+  FloatBuffer getView(int row) {
+    if (floats == null) {
+      float[] values = new float[dimension];
+      get(row, values, 0);
+      return FloatBuffer.wrap(values).asReadOnlyBuffer();
+    }
+    FloatBuffer view = floats.duplicate();
+    view.position(row * dimension);
+    view.limit(row * dimension + dimension);
+    return view.slice().asReadOnlyBuffer();
+  }
+
+  /**
+   * Copies the values of a row.
+   *
+   * @param row row
+   * @param dest destination array
+   * @param offset offset in <code>dest</code>
+   */
+  void get(int row, float[] dest, int offset) {
+    for (int i = 0; i < dimension; i++) {
+      dest[offset + i] = getValue(row, i);
+    }
+  }
+
+  /**
+   * Computes the dot product of a row and a query.
+   *
+   * @param row row
+   * @param query query values
+   * @return dot product
+   */
+  float dot(int row, float[] query) {
+    float sum = 0f;
+    if (floats != null) {
+      int base = row * dimension;
+      for (int i = 0; i < dimension; i++) {
+        sum += floats.get(base + i) * query[i];
+      }
+    } else if (quantization == INT8) {
+      int base = HEADER_SIZE + row * rowSize;
+      float scale = buffer.getFloat(base);
+      base += Float.SIZE / Byte.SIZE;
+      for (int i = 0; i < dimension; i++) {
+        sum += buffer.get(base + i) * query[i];
+      }
+      sum *= scale;
+    } else {
+      for (int i = 0; i < dimension; i++) {
+        sum += getValue(row, i) * query[i];
+      }
+    }
+    return sum;
+  }
+
+  /**
+   * Scans the rows in <code>[from, to)</code> and keeps the <code>k</code> best scores.
+   *
+   * @param query query values
+   * @param k number of rows to keep
+   * @param cosine cosine similarity instead of dot product
+   * @param from first row
+   * @param to row after the last row
+   * @return heap of the best rows and their score, lowest score first
+   */
+  PriorityQueue<Map.Entry<Integer, Float>> topK(float[] query, int k, boolean cosine, int from, int to) {
+    PriorityQueue<Map.Entry<Integer, Float>> heap = createHeap(k);
+    float queryNorm = cosine ? norm(query) : 1f;
+    float[] rowNorms = cosine ? getNorms() : null;
+    for (int row = from; row < to && k > 0; row++) {
+      float score = dot(row, query);
+      if (cosine) {
+        float norm = rowNorms[row] * queryNorm;
+        score = norm == 0f ? 0f : score / norm;
+      }
+      if (heap.size() < k) {
+        heap.add(new AbstractMap.SimpleImmutableEntry<Integer, Float>(row, score));
+      } else if (score > heap.peek().getValue()) {
+        heap.poll();
+        heap.add(new AbstractMap.SimpleImmutableEntry<Integer, Float>(row, score));
+      }
+    }
+    return heap;
+  }
+
+  /**
+   * Creates a heap keeping the lowest score first.
+   *
+   * @param k heap capacity
+   * @return new heap
+   */
+  static PriorityQueue<Map.Entry<Integer, Float>> createHeap(int k) {
+    return new PriorityQueue<Map.Entry<Integer, Float>>(Math.max(1, k), new Comparator<Map.Entry<Integer, Float>>() {
+      @Override
+      public int compare(Map.Entry<Integer, Float> o1, Map.Entry<Integer, Float> o2) {
+        return o1.getValue().compareTo(o2.getValue());
+      }
+    });
+  }
+
+  // UTILITIES
+
+  //Get the norm of each row, computed once as concurrent scans would compute the same values
+  private float[] getNorms() {
+    float[] rowNorms = norms;
+    if (rowNorms == null) {
+      rowNorms = new float[rows];
+      float[] values = new float[dimension];
+      for (int row = 0; row < rows; row++) {
+        get(row, values, 0);
+        rowNorms[row] = norm(values);
+      }
+      norms = rowNorms;
+    }
+    return rowNorms;
+  }
+
+  //Get the value of the given row and column
+  private float getValue(int row, int column) {
+    switch (quantization) {
+      case INT8:
+        int base = HEADER_SIZE + row * rowSize;
+        return buffer.getFloat(base) * buffer.get(base + (Float.SIZE / Byte.SIZE) + column);
+      case FP16:
+        return fromHalf(buffer.getShort(HEADER_SIZE + row * rowSize + column * (Short.SIZE / Byte.SIZE)));
+      default:
+        return floats.get(row * dimension + column);
+    }
+  }
+
+  private static float norm(float[] values) {
+    float sum = 0f;
+    for (float v : values) {
+      sum += v * v;
+    }
+    return (float) Math.sqrt(sum);
+  }
+
+  //Convert a float to a half precision float, rounding to nearest
+  static short toHalf(float value) {
+    int bits = Float.floatToIntBits(value);
+    int sign = (bits >>> 16) & 0x8000;
+    int exponent = ((bits >>> 23) & 0xff) - 127 + 15;
+    int mantissa = bits & 0x7fffff;
+    if (((bits >>> 23) & 0xff) == 0xff) {
+      //Infinity or NaN
+      return (short) (sign | 0x7c00 | (mantissa != 0 ? 0x200 : 0));
+    }
+    if (exponent >= 0x1f) {
+      //Overflow to infinity
+      return (short) (sign | 0x7c00);
+    }
+    if (exponent <= 0) {
+      //Subnormal or zero
+      if (exponent < -10) {
+        return (short) sign;
+      }
+      mantissa |= 0x800000;
+      int shift = 14 - exponent;
+      int half = mantissa >> shift;
+      if (((mantissa >> (shift - 1)) & 1) != 0) {
+        half++;
+      }
+      return (short) (sign | half);
+    }
+    int half = sign | (exponent << 10) | (mantissa >> 13);
+    if ((mantissa & 0x1000) != 0) {
+      //Round, a carry into the exponent is still correct
+      half++;
+    }
+    return (short) half;
+  }
+
+  //Convert a half precision float to a float
+  static float fromHalf(short half) {
+    int sign = (half & 0x8000) << 16;
+    int exponent = (half >>> 10) & 0x1f;
+    int mantissa = half & 0x3ff;
+    if (exponent == 0) {
+      //Subnormal or zero
+      return (sign != 0 ? -1f : 1f) * mantissa * (1f / (1 << 24));
+    }
+    if (exponent == 0x1f) {
+      return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+    }
+    return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+  }
+}
@@ -20,6 +20,8 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -41,6 +43,8 @@ public final class WriterImpl implements StoreWriter {
   private final File file;
   // Stream 应用输出流FileOutputStream把数据写入本地文件
   private final OutputStream outputStream;
+  // Namespace writers, by name
+  private final Map<String, WriterImpl> namespaces = new LinkedHashMap<String, WriterImpl>();
   // Opened?
   private boolean opened;
 
@@ -71,8 +75,21 @@ public final class WriterImpl implements StoreWriter {
    *
    * @param config configuration
    * @param stream output stream
+   * @param file output file (can be null)
    */
   private WriterImpl(Configuration config, OutputStream stream, File file) {
+    this(config, stream, file, null);
+  }
+
+  /**
+   * Private constructor.
+   *
+   * @param config configuration
+   * @param stream output stream
+   * @param file output file (can be null)
+   * @param tempFolder temporary folder or null to create a new one
+   */
+  private WriterImpl(Configuration config, OutputStream stream, File file, File tempFolder) {
     this.config = config;
     this.outputStream = stream;
     this.file = file;
@@ -80,7 +97,7 @@ public final class WriterImpl implements StoreWriter {
     // Open storage
     LOGGER.log(Level.INFO, "Opening writer storage");
     serialization = new StorageSerialization(config);
-    storage = new StorageWriter(config, outputStream);
+    storage = new StorageWriter(config, outputStream, tempFolder);
     opened = true;
   }
 
@@ -94,6 +111,12 @@ public final class WriterImpl implements StoreWriter {
         LOGGER.log(Level.INFO, "Closing writer storage, writing to stream");
       }
 
+      // Namespaces are sections of the store so they're written first
+      for (WriterImpl namespace : namespaces.values()) {
+        if (namespace.opened) {
+          namespace.close();
+        }
+      }
       storage.close();
       outputStream.close();
       opened = false;
@@ -149,6 +172,56 @@ public final class WriterImpl implements StoreWriter {
     }
   }
 
+  @Override
+  public void add(Object key) {
+    checkOpen();
+    if (key == null) {
+      throw new NullPointerException();
+    }
+    try {
+      storage.add(serialization.serializeKey(key));
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  @Override
+  public void addVector(Object key, float[] vector) {
+    checkOpen();
+    if (key == null || vector == null) {
+      throw new NullPointerException();
+    }
+    try {
+      storage.addVector(serialization.serializeKey(key), vector);
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  @Override
+  public StoreWriter namespace(String name) {
+    checkOpen();
+    if (name == null) {
+      throw new NullPointerException();
+    }
+    WriterImpl namespace = namespaces.get(name);
+    if (namespace == null) {
+      // The namespace store is written to a section file in the temporary folder
+      File tempFolder = storage.getTempFolder();
+      File sectionFile = new File(tempFolder, "namespace" + namespaces.size() + ".dat");
+      sectionFile.deleteOnExit();
+      try {
+        namespace = new WriterImpl(config, new FileOutputStream(sectionFile), null,
+            new File(tempFolder, "namespace" + namespaces.size()));
+      } catch (IOException ex) {
+        throw new RuntimeException(ex);
+      }
+      storage.addSection(StorageWriter.NAMESPACE_SECTION_PREFIX + name, sectionFile);
+      namespaces.put(name, namespace);
+    }
+    return namespace;
+  }
+
   // UTILITIES
 
   private void checkOpen() {
@@ -21,10 +21,12 @@ import java.util.Arrays;
 /**
  * Enum that represents the version of the data format.
  * <p>
- * The format version ensures compatibility between the writer and the reader (i.e. should be equal).
+ * The format version ensures compatibility between the writer and the reader. The second version adds sections
+ * after the data, stores without sections are still written with the first version.
  */
 public enum FormatVersion {
-  PALDB_V1;
+  PALDB_V1,
+  PALDB_V2;
 
   /**
    * Returns true if <code>fv</code> is equals to <code>this</code>.
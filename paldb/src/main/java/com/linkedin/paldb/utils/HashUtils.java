@@ -23,7 +23,23 @@ import java.util.zip.Checksum;
 public class HashUtils {
 
   // Hash implementation
-  private final Murmur3A hash = new Murmur3A(42);
+  private final Murmur3A hash;
+
+  /**
+   * Default constructor, with the seed used by the store index.
+   */
+  public HashUtils() {
+    this(42);
+  }
+
+  /**
+   * Seed constructor, a different seed gives hashes independent of the store index ones.
+   *
+   * @param seed hash seed
+   */
+  public HashUtils(int seed) {
+    hash = new Murmur3A(seed);
+  }
 
   /**
    * Returns the positive hash for the given <code>bytes</code>.
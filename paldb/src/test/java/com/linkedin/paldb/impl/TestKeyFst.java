@@ -0,0 +1,186 @@
+/*
+* Copyright 2015 LinkedIn Corp. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*/
+
+package com.linkedin.paldb.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+public class TestKeyFst {
+
+  @Test
+  public void testEmpty()
+      throws IOException {
+    KeyFst fst = build();
+    Assert.assertEquals(fst.getKeyCount(), 0L);
+    Assert.assertEquals(fst.getRank(new byte[0]), -1L);
+    Assert.assertFalse(fst.prefix(new byte[0]).next());
+    Assert.assertTrue(fst.fuzzy("foo", 2).isEmpty());
+  }
+
+  @Test
+  public void testRanks()
+      throws IOException {
+    // Shared prefixes and suffixes, and keys prefix of other keys
+    String[] keys = new String[]{"", "a", "ab", "abc", "b", "bc", "http://a.com/index.html", "http://b.com/index.html",
+        "z", "é", "日本"};
+    KeyFst fst = build(keys);
+    Assert.assertEquals(fst.getKeyCount(), keys.length);
+    for (int i = 0; i < keys.length; i++) {
+      Assert.assertEquals(fst.getRank(utf8(keys[i])), i);
+      Assert.assertEquals(fst.getHandle(i), i * 10L);
+    }
+    Assert.assertEquals(fst.getRank(utf8("ac")), -1L);
+    Assert.assertEquals(fst.getRank(utf8("http://")), -1L);
+    Assert.assertEquals(fst.getRank(utf8("abcd")), -1L);
+  }
+
+  @Test
+  public void testSharedSuffixes()
+      throws IOException {
+    // The suffixes are shared so the fst is much smaller than the keys
+    String[] keys = new String[1000];
+    int size = 0;
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = String.format("http://www.example.com/%04d/index.html", i);
+      size += keys[i].length();
+    }
+    ByteArrayOutputStream nodes = new ByteArrayOutputStream();
+    build(nodes, keys);
+    Assert.assertTrue(nodes.size() < size / 10, "Size " + nodes.size());
+  }
+
+  @Test
+  public void testPrefix()
+      throws IOException {
+    String[] keys = new String[]{"car", "card", "care", "cart", "cat", "dog"};
+    KeyFst fst = build(keys);
+    Assert.assertEquals(prefix(fst, "car"), Arrays.asList("car:0", "card:1", "care:2", "cart:3"));
+    Assert.assertEquals(prefix(fst, "ca"), Arrays.asList("car:0", "card:1", "care:2", "cart:3", "cat:4"));
+    Assert.assertEquals(prefix(fst, "cart"), Arrays.asList("cart:3"));
+    Assert.assertEquals(prefix(fst, ""), Arrays.asList("car:0", "card:1", "care:2", "cart:3", "cat:4", "dog:5"));
+    Assert.assertTrue(prefix(fst, "cb").isEmpty());
+    Assert.assertTrue(prefix(fst, "dogs").isEmpty());
+  }
+
+  @Test
+  public void testFuzzy()
+      throws IOException {
+    String[] keys = new String[]{"cafe", "café", "car", "card", "care", "cart", "cat", "dog"};
+    KeyFst fst = build(keys);
+    Assert.assertEquals(fuzzy(fst, "car", 0), Arrays.asList("car:2"));
+    Assert.assertEquals(fuzzy(fst, "car", 1), Arrays.asList("car:2", "card:3", "care:4", "cart:5", "cat:6"));
+    Assert.assertEquals(fuzzy(fst, "cafe", 1), Arrays.asList("cafe:0", "café:1", "care:4"));
+    Assert.assertEquals(fuzzy(fst, "dgo", 2), Arrays.asList("dog:7"));
+    Assert.assertTrue(fuzzy(fst, "xyz", 1).isEmpty());
+  }
+
+  @Test
+  public void testRandomKeys()
+      throws IOException {
+    // Small alphabet keys share many prefixes and suffixes
+    Random random = new Random(42);
+    TreeSet<String> set = new TreeSet<String>();
+    while (set.size() < 500) {
+      StringBuilder sb = new StringBuilder();
+      int length = random.nextInt(8);
+      for (int i = 0; i < length; i++) {
+        sb.append((char) ('a' + random.nextInt(4)));
+      }
+      set.add(sb.toString());
+    }
+    String[] keys = set.toArray(new String[0]);
+    KeyFst fst = build(keys);
+    List<String> all = new ArrayList<String>();
+    KeyFst.Cursor cursor = fst.prefix(new byte[0]);
+    while (cursor.next()) {
+      Assert.assertEquals(cursor.getRank(), all.size());
+      all.add(new String(cursor.getKey(), StandardCharsets.UTF_8));
+    }
+    Assert.assertEquals(all, Arrays.asList(keys));
+    for (int i = 0; i < keys.length; i++) {
+      Assert.assertEquals(fst.getRank(utf8(keys[i])), i);
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testUnsorted()
+      throws IOException {
+    build("b", "a");
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testDuplicate()
+      throws IOException {
+    build("a", "a");
+  }
+
+  // UTILITIES
+
+  private static KeyFst build(String... keys)
+      throws IOException {
+    ByteArrayOutputStream nodes = new ByteArrayOutputStream();
+    ByteArrayOutputStream handles = build(nodes, keys);
+    return new KeyFst(ByteBuffer.wrap(nodes.toByteArray()), ByteBuffer.wrap(handles.toByteArray()));
+  }
+
+  private static ByteArrayOutputStream build(ByteArrayOutputStream nodes, String... keys)
+      throws IOException {
+    ByteArrayOutputStream handles = new ByteArrayOutputStream();
+    DataOutputStream nodesStream = new DataOutputStream(nodes);
+    DataOutputStream handlesStream = new DataOutputStream(handles);
+    KeyFst.Builder builder = new KeyFst.Builder(nodesStream, handlesStream);
+    for (int i = 0; i < keys.length; i++) {
+      builder.add(utf8(keys[i]), i * 10L);
+    }
+    builder.finish();
+    nodesStream.flush();
+    handlesStream.flush();
+    return handles;
+  }
+
+  private static List<String> prefix(KeyFst fst, String prefix) {
+    List<String> res = new ArrayList<String>();
+    KeyFst.Cursor cursor = fst.prefix(utf8(prefix));
+    while (cursor.next()) {
+      res.add(new String(cursor.getKey(), StandardCharsets.UTF_8) + ":" + cursor.getRank());
+    }
+    return res;
+  }
+
+  private static List<String> fuzzy(KeyFst fst, String key, int maxEdits) {
+    List<String> res = new ArrayList<String>();
+    for (Map.Entry<byte[], Long> match : fst.fuzzy(key, maxEdits)) {
+      res.add(new String(match.getKey(), StandardCharsets.UTF_8) + ":" + match.getValue());
+    }
+    return res;
+  }
+
+  private static byte[] utf8(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,236 @@
+/*
+* Copyright 2015 LinkedIn Corp. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*/
+
+package com.linkedin.paldb.impl;
+
+import com.linkedin.paldb.api.Configuration;
+import com.linkedin.paldb.api.PalDB;
+import com.linkedin.paldb.api.ShardedStoreReader;
+import com.linkedin.paldb.api.StoreReader;
+import com.linkedin.paldb.api.StoreWriter;
+import com.linkedin.paldb.utils.TempUtils;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+
+public class TestShardedStore {
+
+  private File storeFolder;
+
+  @BeforeMethod
+  public void setUp() {
+    storeFolder = TempUtils.createTempDir("paldbtestsharded");
+  }
+
+  @AfterMethod
+  public void cleanUp() {
+    File[] files = storeFolder.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    storeFolder.delete();
+  }
+
+  @Test
+  public void testShardedStore() {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.SHARD_THREADS, "2");
+    StoreWriter writer = PalDB.createShardedWriter(storeFolder, 4, configuration);
+    for (int i = 0; i < 1000; i++) {
+      writer.put(i, "foo" + i);
+      writer.put("key" + i, (long) i);
+    }
+    writer.close();
+
+    Assert.assertTrue(new File(storeFolder, Shards.MANIFEST_FILE).exists());
+    ShardedStoreReader reader = PalDB.createShardedReader(storeFolder, configuration);
+    try {
+      Assert.assertEquals(reader.getShardCount(), 4);
+      Assert.assertEquals(reader.size(), 2000L);
+      for (int i = 0; i < 1000; i++) {
+        Assert.assertEquals(reader.get(i), "foo" + i);
+        Assert.assertEquals(reader.get("key" + i), (Object) (long) i);
+        Assert.assertTrue(reader.contains(i));
+        // The key is only in its shard
+        Assert.assertEquals(reader.getShardFor(i).get(i), "foo" + i);
+      }
+      Assert.assertNull(reader.get(1000));
+      Assert.assertEquals(reader.get(1000, "bar"), "bar");
+      Assert.assertFalse(reader.contains("key1000"));
+
+      // The keys are spread over the shards
+      long size = 0;
+      for (int i = 0; i < reader.getShardCount(); i++) {
+        Assert.assertTrue(reader.getShard(i).size() > 300, "Shard " + i + " size " + reader.getShard(i).size());
+        size += reader.getShard(i).size();
+      }
+      Assert.assertEquals(size, 2000L);
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testGetAllAsync() {
+    StoreWriter writer = PalDB.createShardedWriter(storeFolder, 3, new Configuration());
+    for (int i = 0; i < 100; i++) {
+      writer.put(i, "foo" + i);
+    }
+    writer.close();
+
+    ShardedStoreReader reader = PalDB.createShardedReader(storeFolder, new Configuration());
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Integer> keys = new ArrayList<Integer>();
+      for (int i = 150; i >= -50; i--) {
+        keys.add(i);
+      }
+      List<Integer> expected = keys.stream().filter(k -> k >= 0 && k < 100).collect(Collectors.toList());
+      Map<Integer, String> result = reader.<Integer, String>getAllAsync(keys).join();
+      Assert.assertEquals(new ArrayList<Integer>(result.keySet()), expected);
+      for (Map.Entry<Integer, String> entry : result.entrySet()) {
+        Assert.assertEquals(entry.getValue(), "foo" + entry.getKey());
+      }
+      Assert.assertEquals(reader.<Integer, String>getAllAsync(keys, executor).join(), result);
+      Assert.assertTrue(reader.getAllAsync(Arrays.asList(200, 300)).join().isEmpty());
+    } finally {
+      executor.shutdown();
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testSetAndMultimap() {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.MULTIMAP_ENABLED, "true");
+    StoreWriter writer = PalDB.createShardedWriter(storeFolder, 3, configuration);
+    for (int i = 0; i < 300; i++) {
+      writer.put("node" + (i % 30), i);
+    }
+    writer.close();
+
+    ShardedStoreReader reader = PalDB.createShardedReader(storeFolder, configuration);
+    try {
+      Assert.assertEquals(reader.size(), 30L);
+      for (int i = 0; i < 30; i++) {
+        List<Integer> values = reader.<Integer>getAll("node" + i).collect(Collectors.toList());
+        Assert.assertEquals(values, Arrays.asList(i, i + 30, i + 60, i + 90, i + 120, i + 150, i + 180, i + 210,
+            i + 240, i + 270));
+      }
+      Assert.assertEquals(reader.getAll("node30").count(), 0L);
+    } finally {
+      reader.close();
+    }
+
+    // Sets are routed like put keys
+    cleanUp();
+    storeFolder.mkdirs();
+    writer = PalDB.createShardedWriter(storeFolder, 2, new Configuration());
+    for (int i = 0; i < 100; i++) {
+      writer.add("key" + i);
+    }
+    writer.close();
+    reader = PalDB.createShardedReader(storeFolder, new Configuration());
+    try {
+      for (int i = 0; i < 200; i++) {
+        Assert.assertEquals(reader.contains("key" + i), i < 100);
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testSingleShard() {
+    StoreWriter writer = PalDB.createShardedWriter(storeFolder, 1, new Configuration());
+    writer.put("foo", "bar");
+    writer.close();
+
+    // A single shard is a regular store
+    StoreReader store = PalDB.createReader(new File(storeFolder, Shards.getFileName(0)), new Configuration());
+    try {
+      Assert.assertEquals(store.get("foo"), "bar");
+    } finally {
+      store.close();
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testIllegalShardCount() {
+    PalDB.createShardedWriter(storeFolder, 0, new Configuration());
+  }
+
+  @Test
+  public void testWriterOpenFailure() {
+    // The second shard can't be opened as its file is a folder, the first one is then closed and deleted
+    new File(storeFolder, Shards.getFileName(1)).mkdir();
+    try {
+      PalDB.createShardedWriter(storeFolder, 3, new Configuration());
+      Assert.fail("The second shard can't be opened");
+    } catch (RuntimeException ex) {
+    }
+    Assert.assertFalse(new File(storeFolder, Shards.getFileName(0)).exists());
+    Assert.assertFalse(new File(storeFolder, Shards.getFileName(2)).exists());
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void testTruncatedShard()
+      throws Exception {
+    StoreWriter writer = PalDB.createShardedWriter(storeFolder, 2, new Configuration());
+    for (int i = 0; i < 100; i++) {
+      writer.put(i, i);
+    }
+    writer.close();
+
+    RandomAccessFile file = new RandomAccessFile(new File(storeFolder, Shards.getFileName(1)), "rw");
+    file.setLength(file.length() - 1);
+    file.close();
+    PalDB.createShardedReader(storeFolder, new Configuration());
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void testClosed() {
+    StoreWriter writer = PalDB.createShardedWriter(storeFolder, 2, new Configuration());
+    writer.put(1, 1);
+    writer.close();
+
+    ShardedStoreReader reader = PalDB.createShardedReader(storeFolder, new Configuration());
+    reader.close();
+    reader.get(1);
+  }
+
+  @Test(expectedExceptions = UnsupportedOperationException.class)
+  public void testNamespace() {
+    StoreWriter writer = PalDB.createShardedWriter(storeFolder, 2, new Configuration());
+    try {
+      writer.namespace("foo");
+    } finally {
+      writer.close();
+    }
+  }
+}
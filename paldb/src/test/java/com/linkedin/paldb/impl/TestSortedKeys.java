@@ -0,0 +1,110 @@
+/*
+* Copyright 2015 LinkedIn Corp. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*/
+
+package com.linkedin.paldb.impl;
+
+import com.linkedin.paldb.utils.TempUtils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+
+public class TestSortedKeys {
+
+  private File tempFolder;
+
+  @BeforeMethod
+  public void setUp() {
+    tempFolder = TempUtils.createTempDir("paldbtestsortedkeys");
+  }
+
+  @AfterMethod
+  public void cleanUp() {
+    File[] files = tempFolder.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    tempFolder.delete();
+  }
+
+  @Test
+  public void testEncodeOrder() {
+    Object[] keys = new Object[]{Long.MIN_VALUE, -1000, (short) -1, (byte) 0, 1, 300L, Integer.MAX_VALUE,
+        Long.MAX_VALUE, Double.NEGATIVE_INFINITY, -1.5, -0.5f, 0.0, 1e-10, 2.5f, Double.MAX_VALUE, "", "a", "ab",
+        "b", "é", "￿", new byte[0], new byte[]{1}, new byte[]{(byte) 0x80}, new byte[]{(byte) 0xff}};
+    for (int i = 1; i < keys.length; i++) {
+      Assert.assertTrue(SortedKeys.compare(SortedKeys.encode(keys[i - 1]), SortedKeys.encode(keys[i])) < 0,
+          "Wrong order at " + i);
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testEncodeUnsupportedType() {
+    SortedKeys.encode(new int[]{1});
+  }
+
+  @Test
+  public void testBuilderRuns()
+      throws IOException {
+    // Small runs are merged
+    SortedKeys.Builder builder = new SortedKeys.Builder(tempFolder, 1024);
+    for (int i = 999; i >= 0; i--) {
+      builder.add(SortedKeys.encode(i * 2), new byte[]{(byte) i}, i);
+    }
+    File keysFile = new File(tempFolder, "keys.dat");
+    File blocksFile = new File(tempFolder, "blocks.dat");
+    builder.build(keysFile, blocksFile);
+    Assert.assertEquals(blocksFile.length(), (1000 + SortedKeys.BLOCK_SIZE - 1) / SortedKeys.BLOCK_SIZE * 8);
+    SortedKeys sortedKeys = new SortedKeys(ByteBuffer.wrap(Files.readAllBytes(keysFile.toPath())),
+        ByteBuffer.wrap(Files.readAllBytes(blocksFile.toPath())));
+
+    List<Long> handles = new ArrayList<Long>();
+    SortedKeys.Cursor cursor = sortedKeys.seek(null);
+    while (cursor.next()) {
+      handles.add(cursor.getHandle());
+    }
+    Assert.assertEquals(handles.size(), 1000);
+    for (int i = 0; i < handles.size(); i++) {
+      Assert.assertEquals(handles.get(i).longValue(), i);
+    }
+
+    // Seek and floor on present and absent keys
+    for (int i = -1; i < 2001; i++) {
+      cursor = sortedKeys.seek(SortedKeys.encode(i));
+      if (i < 1999) {
+        Assert.assertTrue(cursor.next());
+        Assert.assertEquals(cursor.getHandle(), (i + 1) / 2);
+      } else {
+        Assert.assertFalse(cursor.next());
+      }
+      cursor = sortedKeys.floor(SortedKeys.encode(i));
+      if (i < 0) {
+        Assert.assertNull(cursor);
+      } else {
+        Assert.assertTrue(cursor.next());
+        Assert.assertEquals(cursor.getHandle(), Math.min(i / 2, 999));
+      }
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/*
+* Copyright 2015 LinkedIn Corp. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*/
+
+package com.linkedin.paldb.impl;
+
+import com.linkedin.paldb.api.Configuration;
+import com.linkedin.paldb.api.PalDB;
+import java.io.IOException;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+
+public class TestStorageInterner {
+
+  private Configuration _configuration;
+  private StorageSerialization _serialization;
+
+  @BeforeMethod
+  public void setUp() {
+    _configuration = PalDB.newConfiguration();
+    _configuration.set(Configuration.INTERN_ENABLED, "true");
+    _serialization = new StorageSerialization(_configuration);
+  }
+
+  @Test
+  public void testDisabled() throws IOException {
+    StorageInterner interner = StorageInterner.initInterner(PalDB.newConfiguration());
+    byte[] bytes = _serialization.serialize("foo");
+    String value = new String("foo");
+    Assert.assertSame(interner.put(bytes, value), value);
+    Assert.assertNull(interner.get(bytes));
+  }
+
+  @Test
+  public void testPutAndGet() throws IOException {
+    StorageInterner interner = StorageInterner.initInterner(_configuration);
+    String first = new String("foo");
+    Assert.assertSame(interner.put(_serialization.serialize("foo"), first), first);
+    Assert.assertSame(interner.put(_serialization.serialize("foo"), new String("foo")), first);
+    Assert.assertSame(interner.get(_serialization.serialize("foo")), first);
+    Assert.assertNull(interner.get(_serialization.serialize("bar")));
+    Assert.assertEquals(interner.size(), 1);
+  }
+
+  @Test
+  public void testStringArray() throws IOException {
+    StorageInterner interner = StorageInterner.initInterner(_configuration);
+    String[] first = new String[]{"a", "b"};
+    interner.put(_serialization.serialize(first), first);
+    Assert.assertSame(interner.get(_serialization.serialize(new String[]{"a", "b"})), first);
+  }
+
+  @Test
+  public void testOtherTypesNotInterned() throws IOException {
+    StorageInterner interner = StorageInterner.initInterner(_configuration);
+    interner.put(_serialization.serialize(42L), 42L);
+    interner.put(_serialization.serialize(""), "");
+    Assert.assertNull(interner.get(_serialization.serialize(42L)));
+    Assert.assertEquals(interner.size(), 0);
+  }
+
+  @Test
+  public void testMaxEntries() throws IOException {
+    _configuration.set(Configuration.INTERN_MAX_ENTRIES, "2");
+    StorageInterner interner = StorageInterner.initInterner(_configuration);
+    interner.put(_serialization.serialize("a"), "a");
+    interner.put(_serialization.serialize("b"), "b");
+    String c = new String("c");
+    Assert.assertSame(interner.put(_serialization.serialize("c"), c), c);
+    Assert.assertNull(interner.get(_serialization.serialize("c")));
+    Assert.assertEquals(interner.size(), 2);
+  }
+}
@@ -16,7 +16,10 @@ package com.linkedin.paldb.impl;
 
 import com.linkedin.paldb.api.Configuration;
 import com.linkedin.paldb.api.Serializer;
+import com.linkedin.paldb.api.SparseVector;
 import com.linkedin.paldb.api.UnsupportedTypeException;
+import com.linkedin.paldb.utils.DataInputOutput;
+import com.linkedin.paldb.utils.LongPacker;
 
 import java.awt.*;
 import java.io.ByteArrayInputStream;
@@ -28,7 +31,16 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
@@ -232,6 +244,88 @@ public class TestStorageSerialization {
     Assert.assertEquals(serialization.deserialize(buf), a);
   }
 
+  @Test
+  public void testMap()
+      throws Throwable {
+    Map<Object, Object> map = new HashMap<Object, Object>();
+    for (int i = 0; i < 100; i++) {
+      map.put("feature" + i, i * 0.5);
+    }
+    map.put(42, new int[]{1, 2});
+    map.put("nested", Collections.singletonMap("a", "b"));
+    byte[] buf = serialization.serialize(map);
+    Map<Object, Object> result = (Map<Object, Object>) serialization.deserialize(buf);
+    Assert.assertEquals(result.size(), map.size());
+    Assert.assertEquals(result.get("feature7"), 3.5);
+    Assert.assertEquals(result.get(42), new int[]{1, 2});
+    Assert.assertEquals(((Map) result.get("nested")).get("a"), "b");
+    Assert.assertNull(result.get("missing"));
+    Assert.assertFalse(result.containsKey(43));
+    Assert.assertTrue(result.containsKey("feature99"));
+    int count = 0;
+    for (Map.Entry<Object, Object> entry : result.entrySet()) {
+      if (entry.getKey() instanceof String && ((String) entry.getKey()).startsWith("feature")) {
+        Assert.assertEquals(entry.getValue(), map.get(entry.getKey()));
+      }
+      count++;
+    }
+    Assert.assertEquals(count, map.size());
+  }
+
+  @Test
+  public void testMapConcurrentGet()
+      throws Throwable {
+    Map<String, Integer> map = new HashMap<String, Integer>();
+    for (int i = 0; i < 1000; i++) {
+      map.put("feature" + i, i);
+    }
+    final Map<Object, Object> result = (Map<Object, Object>) serialization.deserialize(serialization.serialize(map));
+
+    // The map view is read-only and can be shared by threads
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+      for (int t = 0; t < 4; t++) {
+        futures.add(executor.submit(() -> {
+          for (int n = 0; n < 20; n++) {
+            for (int i = 0; i < 1000; i++) {
+              if (!Integer.valueOf(i).equals(result.get("feature" + i)) || result.containsKey("missing" + i)) {
+                return false;
+              }
+            }
+          }
+          return true;
+        }));
+      }
+      for (Future<Boolean> future : futures) {
+        Assert.assertTrue(future.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testEmptyMap()
+      throws Throwable {
+    byte[] buf = serialization.serialize(new HashMap<Object, Object>());
+    Map<Object, Object> result = (Map<Object, Object>) serialization.deserialize(buf);
+    Assert.assertTrue(result.isEmpty());
+    Assert.assertNull(result.get("a"));
+    Assert.assertEquals(result, Collections.emptyMap());
+  }
+
+  @Test
+  public void testMapFromStream()
+      throws Throwable {
+    Map<String, Long> map = new HashMap<String, Long>();
+    map.put("a", 1L);
+    map.put("b", 2L);
+    byte[] buf = serialization.serialize(map);
+    Object result = serialization.deserialize(new DataInputStream(new ByteArrayInputStream(buf)));
+    Assert.assertEquals(result, map);
+  }
+
   @Test
   public void testNull()
       throws Throwable {
@@ -586,6 +680,100 @@ public class TestStorageSerialization {
     Assert.assertEquals(d, res);
   }
 
+  @Test
+  public void testSparseVector()
+      throws IOException, ClassNotFoundException {
+    SparseVector v = new SparseVector(new int[]{0, 3, 200, 100000}, new float[]{1.5f, -2f, 0.25f, 8f});
+    byte[] buf = serialization.serialize(v);
+    Assert.assertEquals(buf[0] & 0xff, StorageSerialization.SPARSE_VECTOR);
+    Assert.assertEquals(serialization.deserialize(buf), v);
+    Assert.assertEquals(StorageSerialization.getType(buf[0] & 0xff), SparseVector.class);
+
+    float[] query = new float[201];
+    query[0] = 2f;
+    query[3] = 1f;
+    query[200] = 4f;
+    Assert.assertEquals(StorageSerialization.dotSparseVector(ByteBuffer.wrap(buf), query), 2f);
+    Assert.assertEquals(v.dot(query), 2f);
+
+    final StringBuilder sb = new StringBuilder();
+    StorageSerialization.forEachNonZero(ByteBuffer.wrap(buf), new SparseVector.Consumer() {
+      @Override
+      public void accept(int index, float value) {
+        sb.append(index).append('=').append(value).append(' ');
+      }
+    });
+    Assert.assertEquals(sb.toString(), "0=1.5 3=-2.0 200=0.25 100000=8.0 ");
+  }
+
+  @Test
+  public void testSparseVectorQuantized()
+      throws IOException, ClassNotFoundException {
+    SparseVector v = new SparseVector(new int[]{1, 5, 9}, new float[]{1f, -0.5f, 0.125f});
+    float[] query = new float[]{0f, 2f, 0f, 0f, 0f, 2f, 0f, 0f, 0f, 8f};
+    for (String quantization : new String[]{"int8", "fp16"}) {
+      Configuration config = new Configuration();
+      config.set(Configuration.SPARSE_VECTOR_QUANTIZATION, quantization);
+      StorageSerialization s = new StorageSerialization(config);
+      byte[] buf = s.serialize(v);
+      Assert.assertTrue(buf.length < serialization.serialize(v).length);
+      SparseVector res = (SparseVector) s.deserialize(buf);
+      Assert.assertEquals(res.size(), 3);
+      for (int i = 0; i < res.size(); i++) {
+        Assert.assertEquals(res.getIndex(i), v.getIndex(i));
+        Assert.assertEquals(res.getValue(i), v.getValue(i), 0.01f);
+      }
+      Assert.assertEquals(StorageSerialization.dotSparseVector(ByteBuffer.wrap(buf), query), 2f, 0.05f);
+    }
+  }
+
+  @Test
+  public void testAlignedArray()
+      throws IOException, ClassNotFoundException {
+    Configuration config = new Configuration();
+    config.set(Configuration.ALIGNED_ARRAYS_ENABLED, "true");
+    StorageSerialization s = new StorageSerialization(config);
+    int[] ints = generateIntArray(100);
+    long[] longs = generateLongArray(20);
+    double[] doubles = generateDoubleArray(5);
+    Assert.assertEquals(s.serializeValue(ints)[0] & 0xff, StorageSerialization.ALIGNED_INT_ARRAY);
+    // Keys aren't aligned
+    Assert.assertEquals(s.serializeKey(ints)[0] & 0xff, serialization.serializeKey(ints)[0] & 0xff);
+
+    for (Object array : new Object[]{ints, longs, doubles, new int[0], new long[300]}) {
+      byte[] value = s.serializeValue(array);
+      for (int position = 0; position < 16; position++) {
+        byte[] aligned = StorageSerialization.alignArray(value, position);
+        Object res = s.deserialize(aligned);
+        Assert.assertEquals(res.getClass(), array.getClass());
+        Assert.assertEquals(StorageSerialization.getType(aligned[0] & 0xff), array.getClass());
+
+        // The content starts at an aligned position once the size is written
+        DataInputOutput out = new DataInputOutput();
+        int sizeLength = LongPacker.packInt(out, aligned.length);
+        ByteBuffer buffer = ByteBuffer.wrap(aligned);
+        ByteBuffer view = StorageSerialization.getAlignedView(buffer, aligned[0] & 0xff);
+        Assert.assertEquals((position + sizeLength + view.arrayOffset()) % StorageSerialization.ALIGNMENT, 0);
+        Assert.assertEquals(buffer.position(), 0);
+      }
+      Assert.assertNull(StorageSerialization.getAlignedView(ByteBuffer.wrap(value), StorageSerialization.SPARSE_VECTOR));
+    }
+    Assert.assertEquals(s.deserialize(StorageSerialization.alignArray(s.serializeValue(ints), 3)), ints);
+    Assert.assertEquals(s.deserialize(StorageSerialization.alignArray(s.serializeValue(longs), 5)), longs);
+    Assert.assertEquals(s.deserialize(StorageSerialization.alignArray(s.serializeValue(doubles), 7)), doubles);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testSparseVectorDecreasingIndices() {
+    new SparseVector(new int[]{3, 1}, new float[]{1f, 2f});
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testDotNotSparseVector()
+      throws IOException {
+    StorageSerialization.dotSparseVector(ByteBuffer.wrap(serialization.serialize("foo")), new float[1]);
+  }
+
   // UTILITY
 
   private static int[] generateIntArray(int size) {
@@ -26,11 +26,33 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 import org.testng.Assert;
 import org.testng.annotations.AfterClass;
@@ -248,6 +270,1558 @@ public class TestStore {
     reader.close();
   }
 
+  @Test
+  public void testReadHeapBuffer()
+      throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    bos.write(12345);
+    bos.write(FormatVersion.getPrefixBytes()[0]);
+    StoreWriter writer = PalDB.createWriter(bos, new Configuration());
+    writer.put(1, "foo");
+    writer.put(2, "bar");
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(ByteBuffer.wrap(bos.toByteArray()), new Configuration());
+    Assert.assertNull(reader.getFile());
+    Assert.assertEquals(reader.size(), 2);
+    Assert.assertEquals(reader.get(1), "foo");
+    Assert.assertEquals(reader.get(2), "bar");
+    Assert.assertNull(reader.get(3));
+    reader.close();
+  }
+
+  @Test
+  public void testReadDirectBuffer()
+      throws IOException {
+    Integer[] keys = GenerateTestData.generateIntKeys(100);
+    String[] values = GenerateTestData.generateStringData(keys.length, 100);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    StoreWriter writer = PalDB.createWriter(bos, new Configuration());
+    writer.putAll(keys, values);
+    writer.close();
+
+    byte[] bytes = bos.toByteArray();
+    ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 10);
+    buffer.position(10);
+    buffer.put(bytes);
+    buffer.position(10);
+
+    //Small segments so values are spread over multiple buffers
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.MMAP_SEGMENT_SIZE, "1000");
+    configuration.set(Configuration.MMAP_DATA_ENABLED, "false");
+    StoreReader reader = PalDB.createReader(buffer, configuration);
+    Assert.assertEquals(reader.size(), keys.length);
+    for (int i = 0; i < keys.length; i++) {
+      Assert.assertEquals(reader.getString(keys[i]), values[i]);
+    }
+    int count = 0;
+    for (Map.Entry<Integer, String> entry : reader.<Integer, String>iterable()) {
+      Assert.assertEquals(entry.getValue(), values[entry.getKey()]);
+      count++;
+    }
+    Assert.assertEquals(count, keys.length);
+    reader.close();
+  }
+
+  @Test
+  public void testReadByteArray()
+      throws NotFoundException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    StoreWriter writer = PalDB.createWriter(bos, new Configuration());
+    writer.put("foo", new int[]{1, 2, 3});
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(bos.toByteArray(), new Configuration());
+    Assert.assertEquals(reader.getIntArray("foo"), new int[]{1, 2, 3});
+    reader.close();
+  }
+
+  @Test
+  public void testReadMemoryLoad() {
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    writer.put(1, "foo");
+    writer.close();
+
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.MEMORY_LOAD_ENABLED, "true");
+    StoreReader reader = PalDB.createReader(STORE_FILE, configuration);
+    Assert.assertEquals(reader.getFile(), STORE_FILE);
+    Assert.assertEquals(reader.get(1), "foo");
+    reader.close();
+  }
+
+  @Test
+  public void testReadStreamMemoryLoad() {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    StoreWriter writer = PalDB.createWriter(bos, new Configuration());
+    writer.put(1, "foo");
+    writer.close();
+
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.MEMORY_LOAD_ENABLED, "true");
+    StoreReader reader = PalDB.createReader(new ByteArrayInputStream(bos.toByteArray()), configuration);
+    Assert.assertNull(reader.getFile());
+    Assert.assertEquals(reader.get(1), "foo");
+    reader.close();
+  }
+
+  @Test
+  public void testReadFileResource()
+      throws IOException {
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    writer.put(1, "foo");
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE.toURI().toURL(), new Configuration());
+    Assert.assertEquals(reader.getFile().getAbsoluteFile(), STORE_FILE.getAbsoluteFile());
+    Assert.assertEquals(reader.get(1), "foo");
+    reader.close();
+  }
+
+  @Test
+  public void testReadJarResource()
+      throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    StoreWriter writer = PalDB.createWriter(bos, new Configuration());
+    writer.put(1, "foo");
+    writer.close();
+
+    File jarFile = new File(STORE_FOLDER, "store.jar");
+    JarOutputStream jarOutputStream = new JarOutputStream(new FileOutputStream(jarFile));
+    jarOutputStream.putNextEntry(new JarEntry("store.paldb"));
+    jarOutputStream.write(bos.toByteArray());
+    jarOutputStream.close();
+
+    URLClassLoader classLoader = new URLClassLoader(new URL[]{jarFile.toURI().toURL()}, null);
+    StoreReader reader = PalDB.createReader(classLoader.getResource("store.paldb"), new Configuration());
+    Assert.assertNull(reader.getFile());
+    Assert.assertEquals(reader.get(1), "foo");
+    reader.close();
+    jarFile.delete();
+  }
+
+  @Test
+  public void testGetStream()
+      throws IOException {
+    testGetStream(new Configuration());
+  }
+
+  @Test
+  public void testGetStreamSmallSegments()
+      throws IOException {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.MMAP_SEGMENT_SIZE, "1000");
+    testGetStream(configuration);
+  }
+
+  @Test
+  public void testGetStreamDisk()
+      throws IOException {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.MMAP_DATA_ENABLED, "false");
+    testGetStream(configuration);
+  }
+
+  @Test
+  public void testGetStreamCompressed()
+      throws IOException {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.COMPRESSION_ENABLED, "true");
+    testGetStream(configuration);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testGetStreamNotByteArray() {
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    writer.put("foo", "bar");
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      reader.getStream("foo");
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testOrdinals() {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.ORDINAL_ENABLED, "true");
+    Object[] keys = new Object[]{1, 200, 300000, "foo", "foobar", 3L, -5};
+    Object[] values = new Object[]{"a", "a", "b", 1, new int[]{1, 2}, "c", "c"};
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, configuration);
+    writer.putAll(keys, values);
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      Set<Integer> ordinals = new HashSet<Integer>();
+      for (int i = 0; i < keys.length; i++) {
+        int ordinal = reader.ordinal(keys[i]);
+        Assert.assertTrue(ordinal >= 0 && ordinal < keys.length);
+        Assert.assertTrue(ordinals.add(ordinal));
+        Object value = reader.getByOrdinal(ordinal);
+        if (values[i] instanceof int[]) {
+          Assert.assertEquals((int[]) value, (int[]) values[i]);
+        } else {
+          Assert.assertEquals(value, values[i]);
+        }
+      }
+      Assert.assertEquals(reader.ordinal(2), -1);
+      Assert.assertEquals(reader.ordinal("bar"), -1);
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testOrdinalsSequential() {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.ORDINAL_ENABLED, "true");
+    Integer[] keys = GenerateTestData.generateIntKeys(1000);
+    String[] values = GenerateTestData.generateStringData(keys.length, 10);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    StoreWriter writer = PalDB.createWriter(bos, configuration);
+    writer.putAll(keys, values);
+    writer.close();
+
+    //Ordinals are dense and follow the data order
+    StoreReader reader = PalDB.createReader(bos.toByteArray(), new Configuration());
+    try {
+      long[] handles = new long[keys.length];
+      for (int i = 0; i < keys.length; i++) {
+        int ordinal = reader.ordinal(keys[i]);
+        Assert.assertEquals(handles[ordinal], 0L);
+        handles[ordinal] = reader.resolve(keys[i]);
+        Assert.assertEquals(reader.getByOrdinal(ordinal), values[i]);
+      }
+      for (int i = 1; i < handles.length; i++) {
+        Assert.assertTrue(handles[i] > handles[i - 1]);
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testOrdinalsDisk() {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.ORDINAL_ENABLED, "true");
+    configuration.set(Configuration.MMAP_DATA_ENABLED, "false");
+    Integer[] keys = GenerateTestData.generateIntKeys(100);
+    String[] values = GenerateTestData.generateStringData(keys.length, 100);
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, configuration);
+    writer.putAll(keys, values);
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, configuration);
+    try {
+      for (int i = 0; i < keys.length; i++) {
+        Assert.assertEquals(reader.getByOrdinal(reader.ordinal(keys[i])), values[i]);
+        Assert.assertEquals(reader.getString(keys[i]), values[i]);
+      }
+      int count = 0;
+      for (Map.Entry<Integer, String> entry : reader.<Integer, String>iterable()) {
+        count++;
+      }
+      Assert.assertEquals(count, keys.length);
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test(expectedExceptions = IndexOutOfBoundsException.class)
+  public void testOrdinalOutOfRange() {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.ORDINAL_ENABLED, "true");
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, configuration);
+    writer.put(1, "foo");
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      reader.getByOrdinal(1);
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test(expectedExceptions = UnsupportedOperationException.class)
+  public void testOrdinalsDisabled() {
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    writer.put(1, "foo");
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      reader.ordinal(1);
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testSample() {
+    Integer[] keys = GenerateTestData.generateIntKeys(1000);
+    String[] values = GenerateTestData.generateStringData(keys.length, 10);
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    writer.putAll(keys, values);
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      List<Map.Entry<Integer, String>> sample = reader.sample(50, 42);
+      Assert.assertEquals(sample.size(), 50);
+      Set<Integer> sampledKeys = new HashSet<Integer>();
+      for (Map.Entry<Integer, String> entry : sample) {
+        Assert.assertTrue(sampledKeys.add(entry.getKey()));
+        Assert.assertEquals(entry.getValue(), values[Arrays.asList(keys).indexOf(entry.getKey())]);
+      }
+      Assert.assertEquals(reader.<Integer, String>sample(50, 42), sample);
+      Assert.assertTrue(reader.sample(0, 42).isEmpty());
+
+      //Larger than the store
+      sampledKeys.clear();
+      for (Map.Entry<Integer, String> entry : reader.<Integer, String>sample(5000, 7)) {
+        Assert.assertTrue(sampledKeys.add(entry.getKey()));
+      }
+      Assert.assertEquals(sampledKeys, new HashSet<Integer>(Arrays.asList(keys)));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testSampleUniform() {
+    //Keys with different serialized lengths, 10% are short
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    for (int i = 0; i < 100; i++) {
+      writer.put(i, i);
+    }
+    for (int i = 0; i < 900; i++) {
+      writer.put("key" + i, i);
+    }
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      int shortKeys = 0;
+      int total = 0;
+      for (int seed = 0; seed < 200; seed++) {
+        for (Map.Entry<Object, Integer> entry : reader.<Object, Integer>sample(20, seed)) {
+          if (entry.getKey() instanceof Integer) {
+            shortKeys++;
+          }
+          total++;
+        }
+      }
+      Assert.assertEquals(shortKeys / (double) total, 0.1, 0.02);
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testSampleEmpty() {
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      Assert.assertTrue(reader.sample(10, 42).isEmpty());
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testCursor()
+      throws Exception {
+    testCursor(new Configuration());
+  }
+
+  @Test
+  public void testCursorSmallSegments()
+      throws Exception {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.MMAP_SEGMENT_SIZE, "1000");
+    testCursor(configuration);
+  }
+
+  @Test
+  public void testCursorDisk()
+      throws Exception {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.MMAP_DATA_ENABLED, "false");
+    testCursor(configuration);
+  }
+
+  @Test
+  public void testKeyLog() {
+    testKeyLog(new Configuration());
+  }
+
+  @Test
+  public void testKeyLogDisk() {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.MMAP_DATA_ENABLED, "false");
+    testKeyLog(configuration);
+  }
+
+  @Test
+  public void testKeyLogStream() {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.KEY_LOG_ENABLED, "true");
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    StoreWriter writer = PalDB.createWriter(bos, configuration);
+    writer.put("foo", "bar");
+    writer.put(1, 2);
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(bos.toByteArray(), new Configuration());
+    try {
+      Set<Object> keys = new HashSet<Object>();
+      for (Object key : reader.keys()) {
+        keys.add(key);
+      }
+      Assert.assertEquals(keys, new HashSet<Object>(Arrays.asList("foo", 1)));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testAccessProfile()
+      throws IOException {
+    testAccessProfile(new Configuration(), new Configuration());
+  }
+
+  @Test
+  public void testAccessProfileKeyLogOrdinals()
+      throws IOException {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.KEY_LOG_ENABLED, "true");
+    configuration.set(Configuration.ORDINAL_ENABLED, "true");
+    testAccessProfile(configuration, new Configuration());
+  }
+
+  @Test
+  public void testAccessProfileCache()
+      throws IOException {
+    // Hot keys are served by the cache and must still outrank the others
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.CACHE_ENABLED, "true");
+    testAccessProfile(new Configuration(), configuration);
+  }
+
+  @Test(expectedExceptions = UnsupportedOperationException.class)
+  public void testAccessProfileDisabled() {
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    writer.put(1, 1);
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      reader.writeAccessProfile(new File(STORE_FOLDER, "profile.dat"));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testSet()
+      throws Exception {
+    testSet(new Configuration());
+  }
+
+  @Test
+  public void testSetDisk()
+      throws Exception {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.MMAP_DATA_ENABLED, "false");
+    testSet(configuration);
+  }
+
+  @Test
+  public void testSetSmallerThanMap() {
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    for (int i = 0; i < 1000; i++) {
+      writer.put(i * 7919L, Boolean.TRUE);
+    }
+    writer.close();
+    long mapLength = STORE_FILE.length();
+
+    writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    for (int i = 0; i < 1000; i++) {
+      writer.add(i * 7919L);
+    }
+    writer.close();
+    Assert.assertTrue(STORE_FILE.length() < mapLength);
+  }
+
+  @Test
+  public void testContains() {
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    writer.put(1, "foo");
+    writer.put(2, null);
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      Assert.assertTrue(reader.contains(1));
+      Assert.assertTrue(reader.contains(2));
+      Assert.assertFalse(reader.contains(3));
+      Assert.assertFalse(reader.contains("foo"));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void testSetPutAfterAdd() {
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    try {
+      writer.add(1);
+      writer.put(2, 2);
+    } finally {
+      writer.close();
+    }
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void testSetAddAfterPut() {
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    try {
+      writer.put(1, 1);
+      writer.add(2);
+    } finally {
+      writer.close();
+    }
+  }
+
+  @Test
+  public void testDenseKeys()
+      throws Exception {
+    testDenseKeys(new Configuration(), new Configuration());
+  }
+
+  @Test
+  public void testDenseKeysDisk()
+      throws Exception {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.MMAP_DATA_ENABLED, "false");
+    testDenseKeys(new Configuration(), configuration);
+  }
+
+  @Test
+  public void testDenseKeysInline()
+      throws Exception {
+    Configuration writeConfiguration = new Configuration();
+    writeConfiguration.set(Configuration.INLINE_MAX_SIZE, "16");
+    testDenseKeys(writeConfiguration, new Configuration());
+  }
+
+  @Test
+  public void testDenseKeysSet()
+      throws Exception {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.DENSE_KEYS_ENABLED, "true");
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, configuration);
+    for (long i = 100; i < 200; i += 2) {
+      writer.add(i);
+    }
+    writer.close();
+
+    Assert.assertTrue(hasSection(StorageWriter.DENSE_INDEX_SECTION));
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      for (long i = 90; i < 210; i++) {
+        Assert.assertEquals(reader.contains(i), i >= 100 && i < 200 && i % 2 == 0);
+      }
+      Assert.assertFalse(reader.contains(100));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testDenseKeysSparse()
+      throws Exception {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.DENSE_KEYS_ENABLED, "true");
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, configuration);
+    for (int i = 0; i < 100; i++) {
+      writer.put(i * 3, i);
+    }
+    writer.close();
+
+    Assert.assertFalse(hasSection(StorageWriter.DENSE_INDEX_SECTION));
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      Assert.assertEquals(reader.get(297), Integer.valueOf(99));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testDenseKeysMixedTypes()
+      throws Exception {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.DENSE_KEYS_ENABLED, "true");
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, configuration);
+    writer.put(1, "foo");
+    writer.put(2L, "bar");
+    writer.close();
+
+    Assert.assertFalse(hasSection(StorageWriter.DENSE_INDEX_SECTION));
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      Assert.assertEquals(reader.get(1), "foo");
+      Assert.assertEquals(reader.get(2L), "bar");
+      Assert.assertNull(reader.get(2));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testVectors() {
+    testVectors("none", 1e-6f);
+  }
+
+  @Test
+  public void testVectorsInt8() {
+    testVectors("int8", 0.02f);
+  }
+
+  @Test
+  public void testVectorsFp16() {
+    testVectors("fp16", 0.01f);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testVectorInvalidDimension() {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.VECTOR_DIMENSION, "4");
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, configuration);
+    try {
+      writer.addVector(1, new float[3]);
+    } finally {
+      writer.close();
+    }
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void testVectorPut() {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.VECTOR_DIMENSION, "4");
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, configuration);
+    try {
+      writer.put(1, new float[4]);
+    } finally {
+      writer.close();
+    }
+  }
+
+  @Test(expectedExceptions = UnsupportedOperationException.class)
+  public void testVectorsDisabled() {
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    writer.put(1, new float[4]);
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      reader.getVector(1);
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testSparseVectors() {
+    testSparseVectors(new Configuration(), new Configuration(), 0f);
+  }
+
+  @Test
+  public void testSparseVectorsDisk() {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.MMAP_DATA_ENABLED, "false");
+    testSparseVectors(new Configuration(), configuration, 0f);
+  }
+
+  @Test
+  public void testSparseVectorsSmallSegments() {
+    // Values spread over segments are copied
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.MMAP_SEGMENT_SIZE, "64");
+    testSparseVectors(new Configuration(), configuration, 0f);
+  }
+
+  @Test
+  public void testSparseVectorsInline() {
+    Configuration writeConfiguration = new Configuration();
+    writeConfiguration.set(Configuration.INLINE_MAX_SIZE, "1024");
+    testSparseVectors(writeConfiguration, new Configuration(), 0f);
+  }
+
+  @Test
+  public void testSparseVectorsQuantized() {
+    Configuration writeConfiguration = new Configuration();
+    writeConfiguration.set(Configuration.SPARSE_VECTOR_QUANTIZATION, "int8");
+    testSparseVectors(writeConfiguration, new Configuration(), 0.05f);
+    writeConfiguration.set(Configuration.SPARSE_VECTOR_QUANTIZATION, "fp16");
+    testSparseVectors(writeConfiguration, new Configuration(), 0.01f);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testDotNotSparseVector() {
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    writer.put("foo", "bar");
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      reader.dot("foo", new float[1]);
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testAlignedArrays()
+      throws Exception {
+    Configuration writeConfiguration = new Configuration();
+    writeConfiguration.set(Configuration.ALIGNED_ARRAYS_ENABLED, "true");
+    testAlignedArrays(writeConfiguration, new Configuration(), true);
+  }
+
+  @Test
+  public void testAlignedArraysDisk()
+      throws Exception {
+    Configuration writeConfiguration = new Configuration();
+    writeConfiguration.set(Configuration.ALIGNED_ARRAYS_ENABLED, "true");
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.MMAP_DATA_ENABLED, "false");
+    testAlignedArrays(writeConfiguration, configuration, false);
+  }
+
+  @Test
+  public void testAlignedArraysInline()
+      throws Exception {
+    Configuration writeConfiguration = new Configuration();
+    writeConfiguration.set(Configuration.ALIGNED_ARRAYS_ENABLED, "true");
+    writeConfiguration.set(Configuration.INLINE_MAX_SIZE, "1024");
+    // Inline arrays are viewed in the index
+    testAlignedArrays(writeConfiguration, new Configuration(), true);
+  }
+
+  @Test
+  public void testArrayBuffersNotAligned()
+      throws Exception {
+    testAlignedArrays(new Configuration(), new Configuration(), false);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testIntBufferWrongType() {
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    writer.put("foo", new long[]{1L});
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      reader.getIntBuffer("foo");
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testSortedKeys() {
+    testSortedKeys(new Configuration(), new Configuration());
+  }
+
+  @Test
+  public void testSortedKeysDisk() {
+    Configuration writeConfiguration = new Configuration();
+    writeConfiguration.set(Configuration.INLINE_MAX_SIZE, "16");
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.MMAP_DATA_ENABLED, "false");
+    testSortedKeys(writeConfiguration, configuration);
+  }
+
+  @Test
+  public void testSortedKeysMixedTypes() {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.SORTED_KEYS_ENABLED, "true");
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, configuration);
+    writer.put("b", 1);
+    writer.put(10L, 2);
+    writer.put(-5, 3);
+    writer.put("a", 4);
+    writer.put(2.5, 5);
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      List<Object> keys = new ArrayList<Object>();
+      for (Map.Entry<Object, Integer> entry : reader.<Object, Integer>range(null, null).collect(Collectors.toList())) {
+        keys.add(entry.getKey());
+      }
+      Assert.assertEquals(keys, Arrays.<Object>asList(-5, 10L, 2.5, "a", "b"));
+      Assert.assertEquals(reader.range(0, 100).count(), 1L);
+      Assert.assertEquals(reader.<Object, Integer>floor(9).getKey(), -5);
+      Assert.assertEquals(reader.<Object, Integer>ceiling(11).getKey(), 2.5);
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testSortedKeysSet() {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.SORTED_KEYS_ENABLED, "true");
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, configuration);
+    for (int i = 0; i < 100; i++) {
+      writer.add(i * 3);
+    }
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      List<Map.Entry<Integer, Boolean>> entries = reader.<Integer, Boolean>range(10, 20).collect(Collectors.toList());
+      Assert.assertEquals(entries.size(), 3);
+      Assert.assertEquals(entries.get(0).getKey().intValue(), 12);
+      Assert.assertTrue(entries.get(0).getValue());
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testSortedKeysUnsupportedType() {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.SORTED_KEYS_ENABLED, "true");
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, configuration);
+    try {
+      writer.put(new int[]{1}, "foo");
+    } finally {
+      writer.close();
+    }
+  }
+
+  @Test(expectedExceptions = UnsupportedOperationException.class)
+  public void testSortedKeysDisabled() {
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    writer.put("foo", "bar");
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      reader.range(null, null);
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testKeyFst() {
+    testKeyFst(new Configuration(), new Configuration());
+  }
+
+  @Test
+  public void testKeyFstDisk() {
+    Configuration writeConfiguration = new Configuration();
+    writeConfiguration.set(Configuration.INLINE_MAX_SIZE, "16");
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.MMAP_DATA_ENABLED, "false");
+    testKeyFst(writeConfiguration, configuration);
+  }
+
+  @Test
+  public void testKeyFstWithSortedKeys() {
+    Configuration writeConfiguration = new Configuration();
+    writeConfiguration.set(Configuration.SORTED_KEYS_ENABLED, "true");
+    testKeyFst(writeConfiguration, new Configuration());
+  }
+
+  @Test
+  public void testKeyFstSet() {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.FST_INDEX_ENABLED, "true");
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, configuration);
+    writer.add("apple");
+    writer.add("apricot");
+    writer.add("banana");
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      List<Map.Entry<String, Boolean>> entries = reader.<Boolean>prefix("ap").collect(Collectors.toList());
+      Assert.assertEquals(entries.size(), 2);
+      Assert.assertEquals(entries.get(1).getKey(), "apricot");
+      Assert.assertTrue(entries.get(1).getValue());
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testKeyFstUnsupportedType() {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.FST_INDEX_ENABLED, "true");
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, configuration);
+    try {
+      writer.put(1, "foo");
+    } finally {
+      writer.close();
+    }
+  }
+
+  @Test
+  public void testKeyFstUnpairedSurrogate() {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.FST_INDEX_ENABLED, "true");
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, configuration);
+    writer.put("a?", "foo");
+    writer.put("b\uD83D\uDE00", "bar");
+    try {
+      writer.put("a\uD800", "baz");
+      Assert.fail("Unpaired surrogates can't be stored in the key fst");
+    } catch (IllegalArgumentException ex) {
+    }
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      Assert.assertEquals(reader.get("a?"), "foo");
+      Assert.assertEquals(reader.get("b\uD83D\uDE00"), "bar");
+      Assert.assertNull(reader.get("a\uD800"));
+      Assert.assertEquals(reader.size(), 2);
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test(expectedExceptions = UnsupportedOperationException.class)
+  public void testKeyFstDisabled() {
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    writer.put("foo", "bar");
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      reader.prefix("f");
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testInvertedIndex() {
+    testInvertedIndex(new Configuration(), new Configuration());
+  }
+
+  @Test
+  public void testInvertedIndexDisk() {
+    Configuration writeConfiguration = new Configuration();
+    writeConfiguration.set(Configuration.INLINE_MAX_SIZE, "16");
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.MMAP_DATA_ENABLED, "false");
+    testInvertedIndex(writeConfiguration, configuration);
+  }
+
+  @Test
+  public void testInvertedIndexExtractor() {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.INVERTED_INDEX_ENABLED, "true");
+    configuration.set(Configuration.INVERTED_INDEX_EXTRACTOR, WordExtractor.class.getName());
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, configuration);
+    writer.put("doc1", "red green");
+    writer.put("doc2", "green blue");
+    writer.put("doc3", 42);
+    writer.put("doc4", "red red");
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      Assert.assertEquals(new HashSet<Object>(reader.keysForValue("red")),
+          new HashSet<Object>(Arrays.asList("doc1", "doc4")));
+      Assert.assertEquals(reader.keysForValue("blue"), Arrays.asList("doc2"));
+      Assert.assertTrue(reader.keysForValue("red green").isEmpty());
+      Assert.assertTrue(reader.keysForValue(42).isEmpty());
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testInvertedIndexRepeatedTerm() {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.INVERTED_INDEX_ENABLED, "true");
+    configuration.set(Configuration.INVERTED_INDEX_EXTRACTOR, AllWordsExtractor.class.getName());
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, configuration);
+    writer.put("doc1", "a b a");
+    writer.put("doc2", "b");
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      Assert.assertEquals(reader.keysForValue("a"), Arrays.asList("doc1"));
+      Assert.assertEquals(new HashSet<Object>(reader.keysForValue("b")),
+          new HashSet<Object>(Arrays.asList("doc1", "doc2")));
+      Assert.assertEquals(reader.keysForValue("b").size(), 2);
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testInvertedIndexIllegalExtractor() {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.INVERTED_INDEX_ENABLED, "true");
+    configuration.set(Configuration.INVERTED_INDEX_EXTRACTOR, "com.linkedin.paldb.NoSuchExtractor");
+    PalDB.createWriter(STORE_FILE, configuration);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testInvertedIndexNotAnExtractor() {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.INVERTED_INDEX_ENABLED, "true");
+    configuration.set(Configuration.INVERTED_INDEX_EXTRACTOR, String.class.getName());
+    PalDB.createWriter(STORE_FILE, configuration);
+  }
+
+  @Test(expectedExceptions = UnsupportedOperationException.class)
+  public void testInvertedIndexDisabled() {
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    writer.put("foo", "bar");
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      reader.keysForValue("bar");
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testMultimap() {
+    testMultimap(new Configuration(), new Configuration());
+  }
+
+  @Test
+  public void testMultimapDisk() {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.MMAP_DATA_ENABLED, "false");
+    testMultimap(new Configuration(), configuration);
+  }
+
+  @Test
+  public void testMultimapSmallSegments() {
+    Configuration writeConfiguration = new Configuration();
+    writeConfiguration.set(Configuration.INLINE_MAX_SIZE, "16");
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.MMAP_SEGMENT_SIZE, "64");
+    testMultimap(writeConfiguration, configuration);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void testMultimapAdd() {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.MULTIMAP_ENABLED, "true");
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, configuration);
+    try {
+      writer.add("foo");
+    } finally {
+      writer.close();
+    }
+  }
+
+  @Test(expectedExceptions = UnsupportedOperationException.class)
+  public void testMultimapDisabled() {
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    writer.put("foo", "bar");
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      reader.getAll("foo");
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testNamespaces() {
+    testNamespaces(new Configuration());
+  }
+
+  @Test
+  public void testNamespacesDisk() {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.MMAP_DATA_ENABLED, "false");
+    testNamespaces(configuration);
+  }
+
+  @Test
+  public void testNamespacesMemoryLoad() {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.MEMORY_LOAD_ENABLED, "true");
+    testNamespaces(configuration);
+  }
+
+  @Test
+  public void testNamespacesEmpty() {
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    writer.put("foo", "bar");
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      Assert.assertTrue(reader.namespaces().isEmpty());
+      Assert.assertNull(reader.namespace("foo"));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testNamespaceSameName() {
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    StoreWriter namespace = writer.namespace("a");
+    Assert.assertSame(writer.namespace("a"), namespace);
+    namespace.put(1, "foo");
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      StoreReader view = reader.namespace("a");
+      Assert.assertSame(reader.namespace("a"), view);
+      Assert.assertEquals(view.get(1), "foo");
+
+      // A closed view is reopened
+      view.close();
+      Assert.assertEquals(reader.namespace("a").get(1), "foo");
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void testNamespaceClosedWithWriter() {
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    StoreWriter namespace = writer.namespace("a");
+    writer.close();
+    namespace.put(1, "foo");
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void testNamespaceClosedWithReader() {
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    writer.namespace("a").put(1, "foo");
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    StoreReader view = reader.namespace("a");
+    reader.close();
+    view.get(1);
+  }
+
+  @Test
+  public void testInlineValues()
+      throws Exception {
+    testInlineValues(new Configuration(), true);
+  }
+
+  @Test
+  public void testInlineValuesDisk()
+      throws Exception {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.MMAP_DATA_ENABLED, "false");
+    testInlineValues(configuration, false);
+  }
+
+  @Test
+  public void testInlineValuesTooLarge() {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.INLINE_MAX_SIZE, "4");
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, configuration);
+    writer.put(1, 1L);
+    writer.put(2, 1L);
+    writer.put(3, 123456789012L);
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      Assert.assertEquals(reader.getLong(3), 123456789012L);
+      // Not inlined, identical values share their position
+      Assert.assertEquals(reader.resolve(1), reader.resolve(2));
+    } catch (NotFoundException ex) {
+      Assert.fail();
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testMapValues() {
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    for (int i = 0; i < 100; i++) {
+      Map<String, Double> features = new HashMap<String, Double>();
+      for (int j = 0; j < 20; j++) {
+        features.put("f" + j, i + j / 100.0);
+      }
+      writer.put("user" + i, features);
+    }
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      Map<String, Double> features = reader.get("user42");
+      Assert.assertEquals(features.size(), 20);
+      Assert.assertEquals(features.get("f3"), 42.03);
+      Assert.assertEquals(features.get("f19"), 42.19);
+      Assert.assertNull(features.get("f20"));
+      Assert.assertEquals(reader.<Map<String, Double>>get("user7").get("f0"), 7.0);
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testInternValues() {
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    writer.put(1, "FR");
+    writer.put(2, "FR");
+    writer.put(3, "US");
+    writer.put(4, new String[]{"a", "b"});
+    writer.put(5, new String[]{"a", "b"});
+    writer.close();
+
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.INTERN_ENABLED, "true");
+    StoreReader reader = PalDB.createReader(STORE_FILE, configuration);
+    try {
+      Assert.assertEquals(reader.get(1), "FR");
+      Assert.assertSame(reader.get(1), reader.get(2));
+      Assert.assertSame(reader.getByHandle(reader.resolve(2)), reader.get(1));
+      Assert.assertEquals(reader.get(3), "US");
+      Assert.assertSame(reader.get(4), reader.get(5));
+      Assert.assertSame(reader.getAsync(2).join(), reader.get(1));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testScanValueRange() {
+    testScanValueRange(new Configuration(), new Configuration());
+  }
+
+  @Test
+  public void testScanValueRangeZoneMap() {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.ZONE_MAP_ENABLED, "true");
+    configuration.set(Configuration.ZONE_MAP_BLOCK_SIZE, "16");
+    testScanValueRange(configuration, new Configuration());
+  }
+
+  @Test
+  public void testScanValueRangeZoneMapDisk() {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.ZONE_MAP_ENABLED, "true");
+    configuration.set(Configuration.ZONE_MAP_BLOCK_SIZE, "16");
+    Configuration readConfiguration = new Configuration();
+    readConfiguration.set(Configuration.MMAP_DATA_ENABLED, "false");
+    testScanValueRange(configuration, readConfiguration);
+  }
+
+  @Test
+  public void testScanValueRangeZoneMapSkipsBlocks()
+      throws IOException {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.ZONE_MAP_ENABLED, "true");
+    configuration.set(Configuration.ZONE_MAP_BLOCK_SIZE, "16");
+    // Values in random order, blocks of index slots would all span most of the range
+    List<Integer> values = new ArrayList<Integer>();
+    for (int i = 0; i < 10000; i++) {
+      values.add(i);
+    }
+    Collections.shuffle(values, new Random(42));
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, configuration);
+    for (int i = 0; i < values.size(); i++) {
+      writer.put("key" + i, values.get(i));
+    }
+    writer.put("foo", "bar");
+    writer.close();
+
+    StorageReader storage = new StorageReader(configuration, STORE_FILE);
+    try {
+      // Only the rows of the blocks overlapping the range are read
+      ReaderSpliterator<String, Integer> spliterator =
+          ReaderSpliterator.scan(configuration, storage, Filter.valueRange(1000, 1999));
+      Assert.assertTrue(spliterator.estimateSize() <= 1000 + 2 * 16, "Rows read " + spliterator.estimateSize());
+      List<Integer> matches = new ArrayList<Integer>();
+      while (spliterator.tryAdvance(entry -> matches.add(entry.getValue()))) {
+      }
+      Collections.sort(matches);
+      Assert.assertEquals(matches.size(), 1000);
+      Assert.assertEquals(matches.get(0).intValue(), 1000);
+      Assert.assertEquals(matches.get(999).intValue(), 1999);
+
+      Assert.assertTrue(ReaderSpliterator.scan(configuration, storage, Filter.valueRange(5000.5, 5000.7))
+          .estimateSize() <= 16);
+      Assert.assertEquals(ReaderSpliterator.scan(configuration, storage, Filter.valueRange(-10, -1)).estimateSize(), 0L);
+      Assert.assertEquals(ReaderSpliterator.scan(configuration, storage, Filter.valueRange(1e6, 1e7)).estimateSize(),
+          0L);
+    } finally {
+      storage.close();
+    }
+  }
+
+  @Test
+  public void testScanKeyPrefix() {
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    writer.put("apple", 1);
+    writer.put("apricot", 2);
+    writer.put("banana", 3);
+    writer.put("ap", 4);
+    writer.put(new byte[]{1, 2, 3}, 5);
+    writer.put(new byte[]{1, 3}, 6);
+    writer.put(42, 7);
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      Map<Object, Object> result = reader.scan(Filter.keyPrefix("ap"))
+          .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+      Assert.assertEquals(result.keySet(), new HashSet<Object>(Arrays.asList("apple", "apricot", "ap")));
+      Assert.assertEquals(reader.scan(Filter.keyPrefix("")).count(), 4);
+      List<Object> bytesValues = reader.scan(Filter.keyPrefix(new byte[]{1, 2}))
+          .map(Map.Entry::getValue).collect(Collectors.toList());
+      Assert.assertEquals(bytesValues, Arrays.asList((Object) 5));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testScanValueType() {
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    writer.put(1, "foo");
+    writer.put(2, 3L);
+    writer.put(3, 4.5);
+    writer.put(4, new int[]{1});
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      Set<Object> numbers = reader.scan(Filter.valueType(Number.class)).map(Map.Entry::getKey)
+          .collect(Collectors.toSet());
+      Assert.assertEquals(numbers, new HashSet<Object>(Arrays.asList(2, 3)));
+      Set<Object> strings = reader.scan(Filter.valueType(String.class)).map(Map.Entry::getKey)
+          .collect(Collectors.toSet());
+      Assert.assertEquals(strings, new HashSet<Object>(Arrays.asList(1)));
+      Set<Object> both = reader.scan(Filter.valueType(Number.class).and(Filter.valueRange(4, 5)))
+          .map(Map.Entry::getKey).collect(Collectors.toSet());
+      Assert.assertEquals(both, new HashSet<Object>(Arrays.asList(3)));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testScanParallel() {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.ZONE_MAP_ENABLED, "true");
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, configuration);
+    for (int i = 0; i < 10000; i++) {
+      writer.put("key" + i, i);
+    }
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      Filter filter = Filter.keyPrefix("key1").and(Filter.valueRange(1000, 1999));
+      Set<Object> keys = reader.scan(filter).parallel().map(Map.Entry::getKey).collect(Collectors.toSet());
+      Assert.assertEquals(keys.size(), 1000);
+      Assert.assertTrue(keys.contains("key1000"));
+      Assert.assertTrue(keys.contains("key1999"));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testFilterInvalidRange() {
+    Filter.valueRange(2, 1);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testFilterConflictingPrefix() {
+    Filter.keyPrefix("a").and(Filter.keyPrefix("b"));
+  }
+
+  @Test
+  public void testStream() {
+    Integer[] keys = GenerateTestData.generateIntKeys(1000);
+    String[] values = GenerateTestData.generateStringData(keys.length, 10);
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    writer.putAll(keys, values);
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      Map<Integer, String> expected = new HashMap<Integer, String>();
+      for (int i = 0; i < keys.length; i++) {
+        expected.put(keys[i], values[i]);
+      }
+      Map<Integer, String> actual = reader.<Integer, String>stream()
+          .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+      Assert.assertEquals(actual, expected);
+
+      Spliterator<Map.Entry<Integer, String>> spliterator = reader.spliterator();
+      Assert.assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED));
+      Assert.assertEquals(spliterator.getExactSizeIfKnown(), keys.length);
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testParallelStream() {
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    Map<Object, Integer> expected = new HashMap<Object, Integer>();
+    for (int i = 0; i < 20000; i++) {
+      Object key = i % 3 == 0 ? "key" + i : i % 3 == 1 ? (Object) i : (Object) (i * 1000000000L);
+      writer.put(key, i);
+      expected.put(key, i);
+    }
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      Map<Object, Integer> actual = reader.<Object, Integer>parallelStream()
+          .collect(Collectors.toConcurrentMap(Map.Entry::getKey, Map.Entry::getValue));
+      Assert.assertEquals(actual, expected);
+      Assert.assertEquals(reader.parallelStream().count(), expected.size());
+
+      //Splits sizes sum up to the store size
+      Spliterator<Map.Entry<Object, Integer>> spliterator = reader.spliterator();
+      Spliterator<Map.Entry<Object, Integer>> prefix = spliterator.trySplit();
+      Assert.assertNotNull(prefix);
+      long count = 0;
+      for (Spliterator<Map.Entry<Object, Integer>> split : Arrays.asList(prefix, spliterator)) {
+        long estimate = split.estimateSize();
+        long splitCount = StreamSupport.stream(split, false).count();
+        if (split.hasCharacteristics(Spliterator.SIZED)) {
+          Assert.assertEquals(splitCount, estimate);
+        }
+        count += splitCount;
+      }
+      Assert.assertEquals(count, expected.size());
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testPartitions() {
+    Integer[] keys = GenerateTestData.generateIntKeys(5000);
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    for (Integer key : keys) {
+      writer.put(key, -key);
+    }
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      Set<Integer> actual = new HashSet<Integer>();
+      for (int i = 0; i < 7; i++) {
+        for (Map.Entry<Integer, Integer> entry : reader.<Integer, Integer>partition(i, 7)
+            .collect(Collectors.toList())) {
+          Assert.assertTrue(actual.add(entry.getKey()));
+          Assert.assertEquals(entry.getValue().intValue(), -entry.getKey());
+        }
+      }
+      Assert.assertEquals(actual, new HashSet<Integer>(Arrays.asList(keys)));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testPartitionInvalid() {
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    writer.put(1, 1);
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      reader.partition(3, 3);
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testGetAllAsyncDisk() {
+    Integer[] keys = GenerateTestData.generateIntKeys(1000);
+    String[] values = GenerateTestData.generateStringData(keys.length, 100);
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    writer.putAll(keys, values);
+    writer.close();
+
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.MMAP_DATA_ENABLED, "false");
+    configuration.set(Configuration.ASYNC_THREADS, "8");
+    StoreReader reader = PalDB.createReader(STORE_FILE, configuration);
+    try {
+      List<Integer> fetched = new ArrayList<Integer>(Arrays.asList(keys));
+      fetched.add(-1);
+      Map<Integer, String> result = reader.<Integer, String>getAllAsync(fetched).join();
+      Assert.assertEquals(result.size(), keys.length);
+      for (int i = 0; i < keys.length; i++) {
+        Assert.assertEquals(result.get(keys[i]), values[i]);
+      }
+      //Mixed with synchronous lookups
+      Assert.assertEquals(reader.getString(keys[0]), values[0]);
+      Assert.assertEquals(reader.getAsync(keys[1]).join(), values[1]);
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testGetAsyncExecutor()
+      throws InterruptedException {
+    Integer[] keys = GenerateTestData.generateIntKeys(1000);
+    String[] values = GenerateTestData.generateStringData(keys.length, 100);
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    writer.putAll(keys, values);
+    writer.close();
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      List<CompletableFuture<String>> futures = new ArrayList<CompletableFuture<String>>();
+      for (Integer key : keys) {
+        futures.add(reader.<String>getAsync(key, executor));
+      }
+      for (int i = 0; i < keys.length; i++) {
+        Assert.assertEquals(futures.get(i).join(), values[i]);
+      }
+    } finally {
+      reader.close();
+      executor.shutdown();
+      executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+  }
+
   @Test
   public void testTwoFirstKeyLength()
       throws NotFoundException {
@@ -494,6 +2068,873 @@ public class TestStore {
 
   // UTILITY
 
+  private void testAccessProfile(Configuration writeConfiguration, Configuration configuration)
+      throws IOException {
+    // Keys of several lengths, consecutive keys share values
+    Integer[] keys = new Integer[1000];
+    String[] values = new String[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = i * 1000;
+      values[i] = "value" + (i / 2);
+    }
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, writeConfiguration);
+    writer.putAll(keys, values);
+    writer.close();
+
+    File profileFile = new File(STORE_FOLDER, "profile.dat");
+    configuration.set(Configuration.ACCESS_PROFILE_ENABLED, "true");
+    StoreReader reader = PalDB.createReader(STORE_FILE, configuration);
+    try {
+      for (int i = 0; i < 100; i++) {
+        reader.get(keys[500]);
+        reader.get(keys[501]);
+        reader.get(keys[3]);
+      }
+      // A cold key checked without the cache, less often than the hot keys are read
+      for (int i = 0; i < 10; i++) {
+        reader.contains(keys[999]);
+      }
+      reader.get(keys[999]);
+      reader.get(-1);
+      reader.writeAccessProfile(profileFile);
+    } finally {
+      reader.close();
+    }
+
+    writeConfiguration.set(Configuration.ACCESS_PROFILE_FILE, profileFile.getPath());
+    writeConfiguration.set(Configuration.ACCESS_PROFILE_HOT_RATIO, "0.9");
+    writer = PalDB.createWriter(STORE_FILE, writeConfiguration);
+    writer.putAll(keys, values);
+    writer.close();
+
+    reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      for (int i = 0; i < keys.length; i++) {
+        Assert.assertEquals(reader.get(keys[i]), values[i]);
+      }
+      // Hot values come first, the two hot keys sharing a value share its position
+      Assert.assertTrue(reader.resolve(keys[500]) < reader.resolve(keys[999]));
+      long hotPosition = Math.max(reader.resolve(keys[3]), reader.resolve(keys[500]));
+      Assert.assertEquals(reader.resolve(keys[501]), reader.resolve(keys[500]));
+      for (int i = 0; i < keys.length; i++) {
+        if (i != 3 && i != 500 && i != 501) {
+          Assert.assertTrue(reader.resolve(keys[i]) > hotPosition);
+        }
+      }
+      // The key log follows the data order within each key length
+      StorageSerialization serialization = new StorageSerialization(new Configuration());
+      boolean keyLog = writeConfiguration.getBoolean(Configuration.KEY_LOG_ENABLED);
+      int lastKeyLength = -1;
+      long lastPosition = -1;
+      Set<Object> iterated = new HashSet<Object>();
+      for (Map.Entry<Object, Object> entry : reader.iterable()) {
+        Assert.assertEquals(entry.getValue(), values[(Integer) entry.getKey() / 1000]);
+        iterated.add(entry.getKey());
+        int keyLength = serialization.serializeKey(entry.getKey()).length;
+        long position = reader.resolve(entry.getKey());
+        if (keyLog && keyLength == lastKeyLength) {
+          Assert.assertTrue(position >= lastPosition);
+        }
+        lastKeyLength = keyLength;
+        lastPosition = position;
+      }
+      Assert.assertEquals(iterated.size(), keys.length);
+      if (writeConfiguration.getBoolean(Configuration.ORDINAL_ENABLED)) {
+        for (int i = 0; i < keys.length; i++) {
+          Assert.assertEquals(reader.getByOrdinal(reader.ordinal(keys[i])), values[i]);
+        }
+      }
+    } finally {
+      reader.close();
+      profileFile.delete();
+    }
+  }
+
+  private void testSet(Configuration configuration)
+      throws Exception {
+    Configuration writeConfiguration = new Configuration();
+    writeConfiguration.set(Configuration.ORDINAL_ENABLED, "true");
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, writeConfiguration);
+    Set<Object> keys = new HashSet<Object>();
+    for (int i = 0; i < 1000; i++) {
+      Object key = i % 2 == 0 ? (Object) (i * 7919L) : "member" + i;
+      writer.add(key);
+      keys.add(key);
+    }
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, configuration);
+    try {
+      Assert.assertEquals(reader.size(), keys.size());
+      for (Object key : keys) {
+        Assert.assertTrue(reader.contains(key));
+        Assert.assertEquals(reader.get(key), Boolean.TRUE);
+        Assert.assertEquals(reader.getByHandle(reader.resolve(key)), Boolean.TRUE);
+        Assert.assertEquals(reader.getByOrdinal(reader.ordinal(key)), Boolean.TRUE);
+      }
+      Assert.assertFalse(reader.contains(-1L));
+      Assert.assertNull(reader.get("member0"));
+
+      Set<Object> iterated = new HashSet<Object>();
+      for (Map.Entry<Object, Object> entry : reader.iterable()) {
+        Assert.assertEquals(entry.getValue(), Boolean.TRUE);
+        iterated.add(entry.getKey());
+      }
+      Assert.assertEquals(iterated, keys);
+
+      StorageSerialization serialization = new StorageSerialization(configuration);
+      Set<Object> actual = new HashSet<Object>();
+      StoreCursor cursor = reader.cursor();
+      while (cursor.advance()) {
+        byte[] key = new byte[cursor.keyBuffer().remaining()];
+        cursor.keyBuffer().get(key);
+        byte[] value = new byte[cursor.valueBuffer().remaining()];
+        cursor.valueBuffer().get(value);
+        Assert.assertEquals(serialization.deserialize(value), Boolean.TRUE);
+        actual.add(serialization.deserialize(key));
+      }
+      Assert.assertEquals(actual, keys);
+    } finally {
+      reader.close();
+    }
+  }
+
+  private void testVectors(String quantization, float delta) {
+    Configuration configuration = new Configuration();
+    configuration.set(Configuration.VECTOR_DIMENSION, "16");
+    configuration.set(Configuration.VECTOR_QUANTIZATION, quantization);
+    Random random = new Random(42);
+    Map<Object, float[]> vectors = new HashMap<Object, float[]>();
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, configuration);
+    for (int i = 0; i < 500; i++) {
+      float[] vector = new float[16];
+      for (int j = 0; j < vector.length; j++) {
+        vector[j] = (float) random.nextGaussian();
+      }
+      Object key = i % 2 == 0 ? (Object) (i * 1000) : "item" + i;
+      writer.addVector(key, vector);
+      vectors.put(key, vector);
+    }
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, new Configuration());
+    try {
+      Assert.assertEquals(reader.size(), vectors.size());
+      for (Map.Entry<Object, float[]> entry : vectors.entrySet()) {
+        Assert.assertTrue(reader.contains(entry.getKey()));
+        FloatBuffer view = reader.getVector(entry.getKey());
+        Assert.assertEquals(view.remaining(), 16);
+        for (int j = 0; j < 16; j++) {
+          Assert.assertEquals(view.get(j), entry.getValue()[j], delta * 4);
+        }
+      }
+      Assert.assertNull(reader.getVector("missing"));
+
+      // The query matches its own key best
+      float[] query = vectors.get("item7");
+      List<Map.Entry<Object, Float>> best = reader.topK(query, 5, true);
+      Assert.assertEquals(best.size(), 5);
+      Assert.assertEquals(best.get(0).getKey(), "item7");
+      Assert.assertEquals(best.get(0).getValue(), 1f, delta);
+      for (int i = 1; i < best.size(); i++) {
+        Assert.assertTrue(best.get(i - 1).getValue() >= best.get(i).getValue());
+      }
+      best = reader.topK(query, 1000, false);
+      Assert.assertEquals(best.size(), vectors.size());
+    } finally {
+      reader.close();
+    }
+  }
+
+  private void testKeyFst(Configuration writeConfiguration, Configuration configuration) {
+    writeConfiguration.set(Configuration.FST_INDEX_ENABLED, "true");
+    // Urls sharing long prefixes and suffixes, written out of order
+    List<String> keys = new ArrayList<String>();
+    for (int i = 0; i < 1000; i++) {
+      keys.add("https://www.example.com/" + (i % 10 == 0 ? "café/" : "shop/") + i + "/index.html");
+    }
+    List<String> shuffled = new ArrayList<String>(keys);
+    Collections.shuffle(shuffled, new Random(42));
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, writeConfiguration);
+    for (String key : shuffled) {
+      writer.put(key, key.hashCode());
+    }
+    writer.close();
+    Collections.sort(keys);
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, configuration);
+    try {
+      // All keys in order
+      List<String> iterated = new ArrayList<String>();
+      for (Map.Entry<String, Integer> entry : reader.<Integer>prefix("").collect(Collectors.toList())) {
+        Assert.assertEquals(entry.getValue().intValue(), entry.getKey().hashCode());
+        iterated.add(entry.getKey());
+      }
+      Assert.assertEquals(iterated, keys);
+
+      // Prefixes
+      List<String> expected = new ArrayList<String>();
+      for (String key : keys) {
+        if (key.startsWith("https://www.example.com/shop/12")) {
+          expected.add(key);
+        }
+      }
+      List<String> actual = new ArrayList<String>();
+      for (Map.Entry<String, Integer> entry : reader.<Integer>prefix("https://www.example.com/shop/12")
+          .collect(Collectors.toList())) {
+        actual.add(entry.getKey());
+      }
+      Assert.assertEquals(actual, expected);
+      Assert.assertEquals(reader.prefix("https://www.example.com/café/").count(), 100L);
+      Assert.assertEquals(reader.prefix("https://www.example.org/").count(), 0L);
+
+      // Autocomplete
+      Assert.assertEquals(reader.complete("https://www.example.com/shop/99", 3),
+          Arrays.asList("https://www.example.com/shop/99/index.html", "https://www.example.com/shop/991/index.html",
+              "https://www.example.com/shop/992/index.html"));
+      Assert.assertTrue(reader.complete("ftp://", 3).isEmpty());
+
+      // Edit distance
+      List<Map.Entry<String, Integer>> matches = reader.fuzzy("https://www.example.com/cafe/10/index.html", 1);
+      Assert.assertEquals(matches.size(), 1);
+      Assert.assertEquals(matches.get(0).getKey(), "https://www.example.com/café/10/index.html");
+      Assert.assertEquals(matches.get(0).getValue().intValue(), matches.get(0).getKey().hashCode());
+      String query = "https://www.example.com/shop/5/index.htm";
+      expected.clear();
+      for (String key : keys) {
+        if (editDistance(key, query) <= 2) {
+          expected.add(key);
+        }
+      }
+      actual.clear();
+      for (Map.Entry<String, Integer> entry : reader.<Integer>fuzzy(query, 2)) {
+        actual.add(entry.getKey());
+      }
+      Assert.assertEquals(actual, expected);
+      Assert.assertTrue(reader.fuzzy("https://www.example.com/shop/10/index.html", 0).isEmpty());
+
+      // Point lookups still use the hash index
+      Assert.assertEquals(reader.<Integer>get(keys.get(0)).intValue(), keys.get(0).hashCode());
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static int editDistance(String a, String b) {
+    int[] row = new int[b.length() + 1];
+    for (int j = 0; j <= b.length(); j++) {
+      row[j] = j;
+    }
+    for (int i = 1; i <= a.length(); i++) {
+      int diagonal = row[0];
+      row[0] = i;
+      for (int j = 1; j <= b.length(); j++) {
+        int previous = row[j];
+        row[j] = Math.min(diagonal + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1), Math.min(row[j], row[j - 1]) + 1);
+        diagonal = previous;
+      }
+    }
+    return row[b.length()];
+  }
+
+  private void testMultimap(Configuration writeConfiguration, Configuration configuration) {
+    writeConfiguration.set(Configuration.MULTIMAP_ENABLED, "true");
+    // Values of mixed types put with interleaved keys of different lengths, one key has a large group
+    Map<Integer, List<Object>> valuesByKey = new HashMap<Integer, List<Object>>();
+    Random random = new Random(42);
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, writeConfiguration);
+    for (int i = 0; i < 10000; i++) {
+      int key = i % 3 == 0 ? 7 : random.nextInt(1000) * 1000;
+      Object value = i % 2 == 0 ? "value" + i : (Object) new int[]{i, i + 1};
+      writer.put(key, value);
+      if (!valuesByKey.containsKey(key)) {
+        valuesByKey.put(key, new ArrayList<Object>());
+      }
+      valuesByKey.get(key).add(value);
+    }
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, configuration);
+    try {
+      Assert.assertEquals(reader.size(), valuesByKey.size());
+      for (Map.Entry<Integer, List<Object>> entry : valuesByKey.entrySet()) {
+        List<Object> values = reader.getAll(entry.getKey()).collect(Collectors.toList());
+        Assert.assertEquals(values.size(), entry.getValue().size());
+        for (int i = 0; i < values.size(); i++) {
+          Assert.assertEquals(values.get(i), entry.getValue().get(i));
+        }
+        Object[] array = reader.get(entry.getKey());
+        Assert.assertEquals(array.length, entry.getValue().size());
+        Assert.assertEquals(array[0], entry.getValue().get(0));
+      }
+      Assert.assertEquals(reader.getAll(7).count(), 3334L);
+      Assert.assertEquals(reader.getAll(7).findFirst().get(), "value0");
+      Assert.assertEquals(reader.getAll(-1).count(), 0L);
+    } finally {
+      reader.close();
+    }
+  }
+
+  private void testNamespaces(Configuration configuration) {
+    // Keys in the container and interleaved puts in the namespaces, including a set
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
+    StoreWriter users = writer.namespace("users");
+    StoreWriter items = writer.namespace("items");
+    StoreWriter tags = writer.namespace("tags");
+    writer.namespace("empty");
+    for (int i = 0; i < 1000; i++) {
+      writer.put(i, "container" + i);
+      users.put(i, "user" + i);
+      items.put("item" + i, i * 2L);
+      if (i % 10 == 0) {
+        tags.add("tag" + i);
+      }
+    }
+    // Namespaces can be closed before the container
+    items.close();
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, configuration);
+    try {
+      Assert.assertEquals(reader.namespaces(), Arrays.asList("users", "items", "tags", "empty"));
+      Assert.assertEquals(reader.size(), 1000);
+      Assert.assertNull(reader.namespace("missing"));
+
+      StoreReader usersView = reader.namespace("users");
+      StoreReader itemsView = reader.namespace("items");
+      StoreReader tagsView = reader.namespace("tags");
+      Assert.assertEquals(usersView.size(), 1000);
+      Assert.assertEquals(itemsView.size(), 1000);
+      Assert.assertEquals(tagsView.size(), 100);
+      Assert.assertEquals(reader.namespace("empty").size(), 0);
+      Assert.assertNull(usersView.getFile());
+      for (int i = 0; i < 1000; i++) {
+        Assert.assertEquals(reader.get(i), "container" + i);
+        Assert.assertEquals(usersView.get(i), "user" + i);
+        Assert.assertEquals(itemsView.get("item" + i), (Object) (i * 2L));
+        Assert.assertEquals(tagsView.contains("tag" + i), i % 10 == 0);
+      }
+      Assert.assertNull(usersView.get("item0"));
+      Assert.assertNull(itemsView.get(0));
+    } finally {
+      reader.close();
+    }
+  }
+
+  private void testInvertedIndex(Configuration writeConfiguration, Configuration configuration) {
+    writeConfiguration.set(Configuration.INVERTED_INDEX_ENABLED, "true");
+    // Labels shared by many keys of different lengths, some values repeated in a row
+    Map<String, Set<Integer>> keysByLabel = new HashMap<String, Set<Integer>>();
+    Random random = new Random(42);
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, writeConfiguration);
+    for (int i = 0; i < 5000; i++) {
+      String label = "label" + (i % 7 == 0 ? 0 : random.nextInt(50));
+      writer.put(i * 1000, label);
+      if (!keysByLabel.containsKey(label)) {
+        keysByLabel.put(label, new HashSet<Integer>());
+      }
+      keysByLabel.get(label).add(i * 1000);
+    }
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, configuration);
+    try {
+      for (Map.Entry<String, Set<Integer>> entry : keysByLabel.entrySet()) {
+        List<Integer> keys = reader.keysForValue(entry.getKey());
+        Assert.assertEquals(keys.size(), entry.getValue().size());
+        Assert.assertEquals(new HashSet<Integer>(keys), entry.getValue());
+      }
+      Assert.assertTrue(reader.keysForValue("label50").isEmpty());
+      Assert.assertTrue(reader.keysForValue(0).isEmpty());
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Extracts the words of string values.
+   */
+  public static final class WordExtractor implements TermExtractor {
+
+    @Override
+    public Collection<?> extract(Object value) {
+      return value instanceof String ? new HashSet<String>(Arrays.asList(((String) value).split(" ")))
+          : Collections.emptySet();
+    }
+  }
+
+  /**
+   * Extracts all the words of string values, repeated words included.
+   */
+  public static final class AllWordsExtractor implements TermExtractor {
+
+    @Override
+    public Collection<?> extract(Object value) {
+      return value instanceof String ? Arrays.asList(((String) value).split(" ")) : Collections.emptySet();
+    }
+  }
+
+  private void testSortedKeys(Configuration writeConfiguration, Configuration configuration) {
+    writeConfiguration.set(Configuration.SORTED_KEYS_ENABLED, "true");
+    // Time bucketed keys of different lengths, written out of order
+    Random random = new Random(42);
+    List<String> keys = new ArrayList<String>();
+    for (int i = 0; i < 2000; i++) {
+      keys.add("event:" + (i * 7));
+    }
+    List<String> shuffled = new ArrayList<String>(keys);
+    Collections.shuffle(shuffled, random);
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, writeConfiguration);
+    for (String key : shuffled) {
+      writer.put(key, key.length());
+    }
+    writer.close();
+    Collections.sort(keys);
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, configuration);
+    try {
+      // Ordered iteration
+      List<String> iterated = new ArrayList<String>();
+      for (Map.Entry<String, Integer> entry : reader.<String, Integer>range(null, null).collect(Collectors.toList())) {
+        Assert.assertEquals(entry.getValue().intValue(), entry.getKey().length());
+        iterated.add(entry.getKey());
+      }
+      Assert.assertEquals(iterated, keys);
+
+      // Ranges between random bounds, present or not
+      for (int i = 0; i < 100; i++) {
+        String from = "event:" + random.nextInt(15000);
+        String to = "event:" + random.nextInt(15000);
+        List<String> expected = new ArrayList<String>();
+        for (String key : keys) {
+          if (key.compareTo(from) >= 0 && key.compareTo(to) < 0) {
+            expected.add(key);
+          }
+        }
+        List<String> actual = new ArrayList<String>();
+        for (Map.Entry<String, Integer> entry : reader.<String, Integer>range(from, to).collect(Collectors.toList())) {
+          actual.add(entry.getKey());
+        }
+        Assert.assertEquals(actual, expected);
+
+        int index = Collections.binarySearch(keys, from);
+        String floor = index >= 0 ? keys.get(index) : (-index - 2 >= 0 ? keys.get(-index - 2) : null);
+        String ceiling = index >= 0 ? keys.get(index) : (-index - 1 < keys.size() ? keys.get(-index - 1) : null);
+        Map.Entry<String, Integer> floorEntry = reader.floor(from);
+        Map.Entry<String, Integer> ceilingEntry = reader.ceiling(from);
+        Assert.assertEquals(floorEntry == null ? null : floorEntry.getKey(), floor);
+        Assert.assertEquals(ceilingEntry == null ? null : ceilingEntry.getKey(), ceiling);
+      }
+      Assert.assertNull(reader.floor("a"));
+      Assert.assertNull(reader.ceiling("z"));
+      Assert.assertEquals(reader.range("event:1", null).findFirst().get().getKey(), keys.get(1));
+      Assert.assertEquals(reader.range(null, keys.get(10)).count(), 10L);
+
+      // Point lookups still use the hash index
+      Assert.assertEquals(reader.<Integer>get("event:14").intValue(), 8);
+    } finally {
+      reader.close();
+    }
+  }
+
+  private void testAlignedArrays(Configuration writeConfiguration, Configuration configuration, boolean direct)
+      throws Exception {
+    Random random = new Random(42);
+    Map<Object, Object> arrays = new HashMap<Object, Object>();
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, writeConfiguration);
+    for (int i = 0; i < 300; i++) {
+      Object array;
+      int length = random.nextInt(40);
+      if (i % 3 == 0) {
+        int[] ints = new int[length];
+        for (int j = 0; j < length; j++) {
+          ints[j] = random.nextInt();
+        }
+        array = ints;
+      } else if (i % 3 == 1) {
+        long[] longs = new long[length];
+        for (int j = 0; j < length; j++) {
+          longs[j] = random.nextLong();
+        }
+        array = longs;
+      } else {
+        double[] doubles = new double[length];
+        for (int j = 0; j < length; j++) {
+          doubles[j] = random.nextGaussian();
+        }
+        array = doubles;
+      }
+      // Keys of different lengths, with repeated values
+      Object key = i % 2 == 0 ? (Object) i : "key" + i;
+      writer.put(key, array);
+      arrays.put(key, array);
+      if (i % 10 == 0) {
+        writer.put("copy" + i, array);
+        arrays.put("copy" + i, array);
+      }
+    }
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, configuration);
+    try {
+      for (Map.Entry<Object, Object> entry : arrays.entrySet()) {
+        Object array = entry.getValue();
+        if (array instanceof int[]) {
+          int[] expected = (int[]) array;
+          IntBuffer buffer = reader.getIntBuffer(entry.getKey());
+          Assert.assertEquals(buffer.isDirect(), direct && expected.length > 0);
+          int[] values = new int[buffer.remaining()];
+          buffer.get(values);
+          Assert.assertEquals(values, expected);
+          int[] dest = new int[expected.length + 2];
+          Assert.assertEquals(reader.getInto(entry.getKey(), dest, 2), expected.length);
+          Assert.assertEquals(Arrays.copyOfRange(dest, 2, dest.length), expected);
+          Assert.assertEquals(reader.getIntArray(entry.getKey()), expected);
+        } else if (array instanceof long[]) {
+          long[] expected = (long[]) array;
+          LongBuffer buffer = reader.getLongBuffer(entry.getKey());
+          long[] values = new long[buffer.remaining()];
+          buffer.get(values);
+          Assert.assertEquals(values, expected);
+          long[] dest = new long[expected.length];
+          Assert.assertEquals(reader.getInto(entry.getKey(), dest, 0), expected.length);
+          Assert.assertEquals(dest, expected);
+          Assert.assertEquals(reader.getLongArray(entry.getKey()), expected);
+        } else {
+          double[] expected = (double[]) array;
+          DoubleBuffer buffer = reader.getDoubleBuffer(entry.getKey());
+          double[] values = new double[buffer.remaining()];
+          buffer.get(values);
+          Assert.assertEquals(values, expected);
+          double[] dest = new double[expected.length];
+          Assert.assertEquals(reader.getInto(entry.getKey(), dest, 0), expected.length);
+          Assert.assertEquals(dest, expected);
+          Assert.assertEquals(reader.getDoubleArray(entry.getKey()), expected);
+        }
+      }
+      Assert.assertNull(reader.getIntBuffer("missing"));
+      Assert.assertEquals(reader.getInto("missing", new double[1], 0), -1);
+    } finally {
+      reader.close();
+    }
+  }
+
+  private void testSparseVectors(Configuration writeConfiguration, Configuration configuration, float delta) {
+    Random random = new Random(42);
+    Map<Integer, SparseVector> vectors = new HashMap<Integer, SparseVector>();
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, writeConfiguration);
+    for (int i = 0; i < 200; i++) {
+      int size = random.nextInt(20);
+      int[] indices = new int[size];
+      float[] values = new float[size];
+      for (int j = 0, index = -1; j < size; j++) {
+        index += 1 + random.nextInt(50);
+        indices[j] = index;
+        values[j] = (float) random.nextGaussian();
+      }
+      SparseVector vector = new SparseVector(indices, values);
+      writer.put(i, vector);
+      vectors.put(i, vector);
+    }
+    writer.close();
+
+    float[] weights = new float[500];
+    for (int i = 0; i < weights.length; i++) {
+      weights[i] = (float) random.nextGaussian();
+    }
+    StoreReader reader = PalDB.createReader(STORE_FILE, configuration);
+    try {
+      for (Map.Entry<Integer, SparseVector> entry : vectors.entrySet()) {
+        final SparseVector vector = entry.getValue();
+        final float valueDelta = delta;
+        Assert.assertEquals(reader.dot(entry.getKey(), weights), vector.dot(weights), delta * 20 + 1e-4f);
+
+        final int[] count = new int[1];
+        Assert.assertTrue(reader.forEachNonZero(entry.getKey(), new SparseVector.Consumer() {
+          @Override
+          public void accept(int index, float value) {
+            Assert.assertEquals(index, vector.getIndex(count[0]));
+            Assert.assertEquals(value, vector.getValue(count[0]), valueDelta * 4);
+            count[0]++;
+          }
+        }));
+        Assert.assertEquals(count[0], vector.size());
+
+        SparseVector res = reader.get(entry.getKey());
+        Assert.assertEquals(res.size(), vector.size());
+        if (delta == 0f) {
+          Assert.assertEquals(res, vector);
+        }
+      }
+      Assert.assertEquals(reader.dot(1000, weights), 0f);
+      Assert.assertFalse(reader.forEachNonZero(1000, new SparseVector.Consumer() {
+        @Override
+        public void accept(int index, float value) {
+          Assert.fail();
+        }
+      }));
+    } finally {
+      reader.close();
+    }
+  }
+
+  private void testDenseKeys(Configuration writeConfiguration, Configuration configuration)
+      throws Exception {
+    writeConfiguration.set(Configuration.DENSE_KEYS_ENABLED, "true");
+    // Dense ids with holes and shared values
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, writeConfiguration);
+    Map<Integer, Long> expected = new HashMap<Integer, Long>();
+    for (int i = -100; i < 1000; i++) {
+      if (i % 7 != 0) {
+        writer.put(i, (long) i / 3);
+        expected.put(i, (long) i / 3);
+      }
+    }
+    writer.close();
+
+    Assert.assertTrue(hasSection(StorageWriter.DENSE_INDEX_SECTION));
+    StoreReader reader = PalDB.createReader(STORE_FILE, configuration);
+    try {
+      for (int i = -200; i < 1100; i++) {
+        Long value = expected.get(i);
+        Assert.assertEquals(reader.get(i), value);
+        Assert.assertEquals(reader.contains(i), value != null);
+        Assert.assertEquals(reader.resolve(i) != -1, value != null);
+        if (value != null) {
+          Assert.assertEquals(reader.getByHandle(reader.resolve(i)), value);
+        }
+      }
+      // Other key types use the hash index
+      Assert.assertNull(reader.get(1L));
+      Assert.assertNull(reader.get("1"));
+
+      Map<Object, Object> iterated = new HashMap<Object, Object>();
+      for (Map.Entry<Object, Object> entry : reader.iterable()) {
+        iterated.put(entry.getKey(), entry.getValue());
+      }
+      Assert.assertEquals(iterated, expected);
+    } finally {
+      reader.close();
+    }
+  }
+
+  private boolean hasSection(String name)
+      throws IOException {
+    StorageReader storage = new StorageReader(new Configuration(), STORE_FILE);
+    try {
+      return storage.hasSection(name);
+    } finally {
+      storage.close();
+    }
+  }
+
+  private void testInlineValues(Configuration configuration, boolean keyLog)
+      throws Exception {
+    Configuration writeConfiguration = new Configuration();
+    writeConfiguration.set(Configuration.INLINE_MAX_SIZE, "12");
+    writeConfiguration.set(Configuration.ORDINAL_ENABLED, "true");
+    writeConfiguration.set(Configuration.KEY_LOG_ENABLED, String.valueOf(keyLog));
+    // Int keys of several lengths with small values inlined, string keys with large values in the data
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, writeConfiguration);
+    Map<Object, Object> expected = new HashMap<Object, Object>();
+    for (int i = 0; i < 1000; i++) {
+      writer.put(i * 1000, (long) i / 2);
+      expected.put(i * 1000, (long) i / 2);
+    }
+    for (int i = 0; i < 10; i++) {
+      String value = GenerateTestData.generateStringData(1, 100)[0];
+      writer.put("key" + i, value);
+      expected.put("key" + i, value);
+    }
+    writer.put(-1000, new byte[]{1, 2, 3});
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, configuration);
+    try {
+      for (Map.Entry<Object, Object> entry : expected.entrySet()) {
+        Assert.assertEquals(reader.get(entry.getKey()), entry.getValue());
+        Assert.assertEquals(reader.getByHandle(reader.resolve(entry.getKey())), entry.getValue());
+        Assert.assertEquals(reader.getByOrdinal(reader.ordinal(entry.getKey())), entry.getValue());
+      }
+      Assert.assertNull(reader.get(-1));
+      Assert.assertEquals(readFully(reader.getStream(-1000)), new byte[]{1, 2, 3});
+      // Inlined values have their own position even when identical
+      Assert.assertTrue(reader.resolve(0) != reader.resolve(1000));
+
+      Map<Object, Object> iterated = new HashMap<Object, Object>();
+      for (Map.Entry<Object, Object> entry : reader.iterable()) {
+        iterated.put(entry.getKey(), entry.getValue());
+      }
+      Assert.assertEquals((byte[]) iterated.remove(-1000), new byte[]{1, 2, 3});
+      Assert.assertEquals(iterated, expected);
+
+      StorageSerialization serialization = new StorageSerialization(configuration);
+      Map<Object, Object> actual = new HashMap<Object, Object>();
+      StoreCursor cursor = reader.cursor();
+      while (cursor.advance()) {
+        byte[] key = new byte[cursor.keyBuffer().remaining()];
+        cursor.keyBuffer().get(key);
+        byte[] value = new byte[cursor.valueBuffer().remaining()];
+        cursor.valueBuffer().get(value);
+        actual.put(serialization.deserialize(key), serialization.deserialize(value));
+      }
+      Assert.assertEquals((byte[]) actual.remove(-1000), new byte[]{1, 2, 3});
+      Assert.assertEquals(actual, expected);
+    } finally {
+      reader.close();
+    }
+  }
+
+  private void testScanValueRange(Configuration writeConfiguration, Configuration configuration) {
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, writeConfiguration);
+    for (int i = 0; i < 1000; i++) {
+      writer.put(i, i < 500 ? (Object) (long) i : (Object) (i + 0.5));
+    }
+    writer.put(1000, "foo");
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, configuration);
+    try {
+      Set<Object> keys = reader.scan(Filter.valueRange(100, 600)).map(Map.Entry::getKey).collect(Collectors.toSet());
+      Set<Object> expected = new HashSet<Object>();
+      for (int i = 100; i < 600; i++) {
+        expected.add(i);
+      }
+      Assert.assertEquals(keys, expected);
+      Assert.assertEquals(reader.scan(Filter.valueRange(2000, 3000)).count(), 0);
+      Map<Object, Object> entries = reader.scan(Filter.valueRange(499, 500.5))
+          .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+      Assert.assertEquals(entries.get(499), 499L);
+      Assert.assertEquals(entries.get(500), 500.5);
+      Assert.assertEquals(entries.size(), 2);
+    } finally {
+      reader.close();
+    }
+  }
+
+  private void testGetStream(Configuration configuration)
+      throws IOException {
+    Random random = new Random(42);
+    byte[] large = new byte[5000];
+    random.nextBytes(large);
+    byte[] small = new byte[]{1, 2, 3};
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, configuration);
+    writer.put("large", large);
+    writer.put("small", small);
+    writer.put("empty", new byte[0]);
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, configuration);
+    try {
+      Assert.assertEquals(readFully(reader.getStream("large")), large);
+      Assert.assertEquals(readFully(reader.getStream("small")), small);
+      Assert.assertEquals(readFully(reader.getStream("empty")), new byte[0]);
+      Assert.assertNull(reader.getStream("missing"));
+
+      //Interleaved with lookups
+      InputStream stream = reader.getStream("large");
+      Assert.assertEquals(stream.read(), large[0] & 0xff);
+      Assert.assertEquals(reader.getByteArray("small"), small);
+      Assert.assertEquals(stream.skip(99), 99);
+      byte[] rest = readFully(stream);
+      Assert.assertEquals(rest, Arrays.copyOfRange(large, 100, large.length));
+      Assert.assertEquals(stream.read(), -1);
+    } catch (NotFoundException ex) {
+      Assert.fail();
+    } finally {
+      reader.close();
+    }
+  }
+
+  private void testKeyLog(Configuration configuration) {
+    Configuration writeConfiguration = new Configuration();
+    writeConfiguration.set(Configuration.KEY_LOG_ENABLED, "true");
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, writeConfiguration);
+    List<Object> keys = new ArrayList<Object>();
+    for (int i = 0; i < 1000; i++) {
+      Object key = i % 2 == 0 ? (Object) (i * 7919) : "key" + i;
+      writer.put(key, i / 3);
+      keys.add(key);
+    }
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, configuration);
+    try {
+      //Values of each key length come in insertion order
+      List<Object> actualKeys = new ArrayList<Object>();
+      Map<Object, Integer> lastValues = new HashMap<Object, Integer>();
+      for (Map.Entry<Object, Integer> entry : reader.<Object, Integer>iterable()) {
+        Assert.assertEquals(entry.getValue().intValue(), keys.indexOf(entry.getKey()) / 3);
+        Class<?> type = entry.getKey().getClass();
+        if (type == String.class) {
+          Integer last = lastValues.put(String.valueOf(entry.getKey()).length(), entry.getValue());
+          Assert.assertTrue(last == null || last <= entry.getValue());
+        }
+        actualKeys.add(entry.getKey());
+      }
+      Assert.assertEquals(new HashSet<Object>(actualKeys), new HashSet<Object>(keys));
+      Assert.assertEquals(actualKeys.size(), keys.size());
+
+      int count = 0;
+      for (Object key : reader.keys()) {
+        Assert.assertEquals(key, actualKeys.get(count++));
+      }
+      Assert.assertEquals(count, keys.size());
+    } finally {
+      reader.close();
+    }
+  }
+
+  private void testCursor(Configuration configuration)
+      throws Exception {
+    Integer[] keys = GenerateTestData.generateIntKeys(500);
+    String[] values = GenerateTestData.generateStringData(keys.length, 300);
+    values[3] = "";
+    StoreWriter writer = PalDB.createWriter(STORE_FILE, configuration);
+    writer.putAll(keys, values);
+    writer.put("foo", "bar");
+    writer.close();
+
+    StoreReader reader = PalDB.createReader(STORE_FILE, configuration);
+    try {
+      Map<Object, Object> expected = new HashMap<Object, Object>();
+      for (int i = 0; i < keys.length; i++) {
+        expected.put(keys[i], values[i]);
+      }
+      expected.put("foo", "bar");
+
+      StorageSerialization serialization = new StorageSerialization(configuration);
+      Map<Object, Object> actual = new HashMap<Object, Object>();
+      StoreCursor cursor = reader.cursor();
+      while (cursor.advance()) {
+        ByteBuffer keyBuffer = cursor.keyBuffer();
+        Assert.assertEquals(keyBuffer.remaining(), cursor.keyLength());
+        byte[] key = new byte[keyBuffer.remaining()];
+        keyBuffer.get(key);
+        byte[] value = new byte[cursor.valueBuffer().remaining()];
+        cursor.valueBuffer().get(value);
+        //Interleaved lookups don't move the cursor buffers
+        Assert.assertNotNull(reader.get("foo"));
+        actual.put(serialization.deserialize(key), serialization.deserialize(value));
+      }
+      Assert.assertFalse(cursor.advance());
+      Assert.assertEquals(actual, expected);
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static byte[] readFully(InputStream stream)
+      throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    byte[] buffer = new byte[777];
+    int count;
+    while ((count = stream.read(buffer)) != -1) {
+      bos.write(buffer, 0, count);
+    }
+    return bos.toByteArray();
+  }
+
   private void testReadKeyToString(Object[] keys) {
     // Write
     StoreWriter writer = PalDB.createWriter(STORE_FILE, new Configuration());
@@ -22,6 +22,7 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
@@ -364,6 +365,68 @@ public class TestStoreReader {
     Assert.assertEquals(reader.get(19), new Point(4, 56));
   }
 
+  @Test
+  public void testResolve() {
+    for (int i = 0; i < testValues.length - 1; i++) {
+      long handle = reader.resolve(i);
+      Assert.assertTrue(handle > 0);
+      Object value = reader.getByHandle(handle);
+      if (testValues[i].getClass().isArray()) {
+        Assert.assertEquals(value.getClass(), testValues[i].getClass());
+      } else {
+        Assert.assertEquals(value, testValues[i]);
+      }
+    }
+    Assert.assertEquals(reader.resolve(-1), -1);
+  }
+
+  @Test
+  public void testResolveStable() {
+    long handle = reader.resolve(8);
+    reader.close();
+    reader = PalDB.createReader(STORE_FILE, new Configuration());
+    Assert.assertEquals(reader.resolve(8), handle);
+    Assert.assertEquals(reader.getByHandle(handle), "foo");
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testGetByHandleInvalid() {
+    reader.getByHandle(Long.MAX_VALUE);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testGetByHandleNotFound() {
+    reader.getByHandle(reader.resolve(-1));
+  }
+
+  @Test
+  public void testGetAsync() {
+    Assert.assertEquals(reader.getAsync(6).join(), 1);
+    Assert.assertEquals(reader.getAsync(8).join(), "foo");
+    Assert.assertNull(reader.getAsync(-1).join());
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void testGetAsyncNullKey() {
+    reader.getAsync(null);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void testGetAsyncStoreClosed() {
+    reader.close();
+    reader.getAsync(0);
+  }
+
+  @Test
+  public void testGetAllAsync() {
+    Map<Integer, Object> values = reader.<Integer, Object>getAllAsync(Arrays.asList(8, -1, 6, 0)).join();
+    Assert.assertEquals(values.size(), 3);
+    Assert.assertEquals(values.keySet().toArray(), new Object[]{8, 6, 0});
+    Assert.assertEquals(values.get(8), "foo");
+    Assert.assertEquals(values.get(6), 1);
+    Assert.assertEquals(values.get(0), true);
+  }
+
   @Test
   public void testIterator() {
     Iterable<Map.Entry<Integer, Object>> iter = reader.iterable();
@@ -0,0 +1,81 @@
+/*
+* Copyright 2015 LinkedIn Corp. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*/
+
+package com.linkedin.paldb.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+public class TestVectorMatrix {
+
+  @Test
+  public void testHalf() {
+    float[] values = new float[]{0f, -0f, 1f, -2.5f, 0.1f, 65504f, 6.1035156E-5f, 5.9604645E-8f, 1e-3f};
+    for (float value : values) {
+      Assert.assertEquals(VectorMatrix.fromHalf(VectorMatrix.toHalf(value)), value, Math.abs(value) / 1000);
+    }
+    Assert.assertEquals(VectorMatrix.fromHalf(VectorMatrix.toHalf(1e6f)), Float.POSITIVE_INFINITY);
+    Assert.assertTrue(Float.isNaN(VectorMatrix.fromHalf(VectorMatrix.toHalf(Float.NaN))));
+    Assert.assertEquals(VectorMatrix.fromHalf(VectorMatrix.toHalf(1e-9f)), 0f);
+  }
+
+  @Test
+  public void testMatrix()
+      throws IOException {
+    float[][] rows = new float[][]{{1f, 0f, 0f}, {0f, 2f, 0f}, {0.5f, 0.5f, -1f}};
+    for (int quantization : new int[]{VectorMatrix.NONE, VectorMatrix.INT8, VectorMatrix.FP16}) {
+      VectorMatrix matrix = createMatrix(rows, quantization);
+      Assert.assertEquals(matrix.getRows(), rows.length);
+      Assert.assertEquals(matrix.getDimension(), 3);
+      for (int i = 0; i < rows.length; i++) {
+        FloatBuffer view = matrix.getView(i);
+        Assert.assertEquals(view.remaining(), 3);
+        for (int j = 0; j < 3; j++) {
+          Assert.assertEquals(view.get(j), rows[i][j], 0.01f);
+        }
+      }
+      Assert.assertEquals(matrix.dot(2, new float[]{1f, 1f, 1f}), 0f, 0.01f);
+
+      // Dot product favors the longer vector, cosine the aligned one
+      PriorityQueue<Map.Entry<Integer, Float>> heap = matrix.topK(new float[]{1f, 0.9f, 0f}, 1, false, 0, 3);
+      Assert.assertEquals(heap.peek().getKey().intValue(), 1);
+      heap = matrix.topK(new float[]{1f, 0.9f, 0f}, 1, true, 0, 3);
+      Assert.assertEquals(heap.peek().getKey().intValue(), 0);
+      Assert.assertTrue(matrix.topK(new float[]{1f, 0.9f, 0f}, 0, false, 0, 3).isEmpty());
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testInvalidQuantization() {
+    VectorMatrix.getQuantization("int4");
+  }
+
+  private static VectorMatrix createMatrix(float[][] rows, int quantization)
+      throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    VectorMatrix.writeHeader(bos, rows[0].length, rows.length, quantization);
+    for (float[] row : rows) {
+      VectorMatrix.writeRow(bos, row, quantization);
+    }
+    return new VectorMatrix(ByteBuffer.wrap(bos.toByteArray()));
+  }
+}
@@ -28,6 +28,7 @@ public class TestFormatVersion {
   @Test
   public void testBytes() {
     Assert.assertEquals(FormatVersion.fromBytes(FormatVersion.PALDB_V1.getBytes()), FormatVersion.PALDB_V1);
+    Assert.assertEquals(FormatVersion.fromBytes(FormatVersion.PALDB_V2.getBytes()), FormatVersion.PALDB_V2);
   }
 
   @Test
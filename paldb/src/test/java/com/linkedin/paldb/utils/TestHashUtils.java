@@ -28,6 +28,12 @@ public class TestHashUtils {
     System.out.println(hashUtils.hash("foobar".getBytes()));
   }
 
+  @Test
+  public void testSeed() {
+    Assert.assertEquals(new HashUtils(42).hash("foo".getBytes()), hashUtils.hash("foo".getBytes()));
+    Assert.assertNotEquals(new HashUtils(7).hash("foo".getBytes()), hashUtils.hash("foo".getBytes()));
+  }
+
   @Test
   public void testEmpty() {
     Assert.assertTrue(hashUtils.hash(new byte[0]) > 0);